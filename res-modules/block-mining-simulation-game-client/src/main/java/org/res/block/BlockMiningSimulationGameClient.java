@@ -86,6 +86,8 @@ class BlockMiningSimulationGameClient {
 
 	public static void startClient(CommandLineArgumentCollection commandLineArgumentCollection) throws Exception{
 		BlockMiningSimulationGameClient.setupLogging(commandLineArgumentCollection.getUsedSingleValue("--log-file"));
+		//  Before any virtual threads get made:
+		BlockManagerThreadCollection.configureVirtualThreadScheduler();
 
 		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, true);
 
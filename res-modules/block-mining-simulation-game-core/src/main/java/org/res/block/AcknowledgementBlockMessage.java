@@ -49,12 +49,10 @@ public class AcknowledgementBlockMessage extends BlockMessage {
 		super(blockModelContext, conversationId, authorizedClientId);
 	}
 
-	public byte [] asByteArray() throws Exception{
-		BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer();
+	public void writeToBuffer(BlockMessageBinaryBuffer buffer) throws Exception{
 		BlockMessage.writeBlockMessageType(buffer, BlockMessageType.BLOCK_MESSAGE_TYPE_ACKNOWLEDGEMENT);
 		BlockMessage.writeConversationId(buffer, this.conversationId);
 		BlockMessage.writeAuthorizedClientId(buffer, this.authorizedClientId);
-		return buffer.getUsedBuffer();
 	}
 
 	public AcknowledgementBlockMessage(BlockModelContext blockModelContext, BlockMessageBinaryBuffer buffer, Long conversationId, Long authorizedClientId) throws Exception {
@@ -33,47 +33,37 @@
 package org.res.block;
 
 import java.util.List;
-import java.util.ArrayList;
-import java.nio.ByteBuffer;
-import java.nio.LongBuffer;
 import java.util.Map;
-import java.util.Arrays;
 
 public class AfterWriteCuboidsWorkItem extends BlockModelContextWorkItem {
 
+	private ServerBlockModelContext serverBlockModelContext;
 	private Long numDimensions;
-	private List<CuboidAddress> cuboidAddresses;
+	private List<Cuboid> writtenCuboids;
 	private Long authorizedClientId;
 
-	public AfterWriteCuboidsWorkItem(BlockModelContext blockModelContext, Long numDimensions, List<CuboidAddress> cuboidAddresses, Long authorizedClientId){
-		super(blockModelContext);
+	public AfterWriteCuboidsWorkItem(ServerBlockModelContext serverBlockModelContext, Long numDimensions, List<Cuboid> writtenCuboids, Long authorizedClientId){
+		super(serverBlockModelContext);
+		this.serverBlockModelContext = serverBlockModelContext;
 		this.numDimensions = numDimensions;
-		this.cuboidAddresses = cuboidAddresses;
+		this.writtenCuboids = writtenCuboids;
 		this.authorizedClientId = authorizedClientId;
 	}
 
 	public void doWork() throws Exception {
+		SubscriptionNotificationCoalescer coalescer = this.serverBlockModelContext.getSubscriptionNotificationCoalescer();
+		long nowNanos = System.nanoTime();
 		/*  For each user session, check if they're subscribed to this region and if so, notify them: */
 		for(Map.Entry<String, BlockSession> e : blockModelContext.getBlockWorldConnection().getSessionMap().entrySet()){
-			blockModelContext.logMessage("Enqueing a notify for session " + e.getKey() + " due to subscription intersection.");
-
-			Map<Long, Map<CuboidAddress, Long>> intersectingSubscribedCuboids = e.getValue().getSubscriptionIntersections(this.cuboidAddresses);
-
-			//  For every authorized client:
-			for(Map.Entry<Long, Map<CuboidAddress, Long>> clientEntry : intersectingSubscribedCuboids.entrySet()){
-				Long acid = clientEntry.getKey();
-				Map<CuboidAddress, Long> regions = clientEntry.getValue();
-				//  For every intersecting subscribed region:
-				for(Map.Entry<CuboidAddress, Long> intersectingSubscribedCuboid : regions.entrySet()){
-					List<Cuboid> notificationCuboids = blockModelContext.getBlockModelInterface().getBlocksInRegions(Arrays.asList(intersectingSubscribedCuboid.getKey()));
-
-					Long subscriptionConversationId = intersectingSubscribedCuboid.getValue();
-					DescribeRegionsBlockMessage notifyMessage = new DescribeRegionsBlockMessage(this.blockModelContext, this.numDimensions, notificationCuboids, subscriptionConversationId, acid);
-					SendBlockMessageToSessionWorkItem notifyWorkItem = new SendBlockMessageToSessionWorkItem(this.blockModelContext, e.getValue(), notifyMessage);
-
-					blockModelContext.putWorkItem(notifyWorkItem, WorkItemPriority.PRIORITY_LOW);
-				}
+			int numRegionUpdates = coalescer.addWrittenCuboids(e.getValue(), this.writtenCuboids, nowNanos);
+			if(numRegionUpdates > 0){
+				blockModelContext.logMessage("Enqueing " + numRegionUpdates + " region updates for session " + e.getKey() + " due to subscription intersection.");
 			}
 		}
+
+		if(coalescer.scheduleFlushIfNeeded()){
+			FlushSubscriptionNotificationsWorkItem flushWorkItem = new FlushSubscriptionNotificationsWorkItem(this.serverBlockModelContext);
+			blockModelContext.putWorkItem(flushWorkItem, WorkItemPriority.PRIORITY_LOW);
+		}
 	}
 }
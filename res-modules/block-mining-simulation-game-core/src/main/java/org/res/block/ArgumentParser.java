@@ -68,7 +68,29 @@ class ArgumentParser {
 		new ArgumentDescription("--database-port", 1, "The port for the database connection."),
 		new ArgumentDescription("--database-name", 1, "The 'name' of the database to connect to for the database connection string."),
 		new ArgumentDescription("--database-username", 1, "The username for the database connection."),
-		new ArgumentDescription("--database-password", 1, "The password for the database connection.")
+		new ArgumentDescription("--database-password", 1, "The password for the database connection."),
+		new ArgumentDescription("--database-write-batch-size", 1, "The maximum number of block rows sent to the database in a single JDBC batch when writing."),
+		new ArgumentDescription("--wire-protocol-version", 1, "The highest binary message protocol version the client will ask the server to use.  Version 1 is the original fixed-width format, version 2 uses varints, per-cuboid dictionaries and DEFLATE."),
+		new ArgumentDescription("--slow-consumer-policy", 1, "What to do when a websocket session's outbound queue is full.  One of 'drop', 'coalesce' (the default) or 'disconnect'."),
+		new ArgumentDescription("--max-outbound-queue-bytes", 1, "The maximum number of bytes of region data queued for sending to a single websocket session."),
+		new ArgumentDescription("--subscription-notify-window-ms", 1, "How long the server waits for more writes to the same subscribed region before notifying the subscribers.  Writes in this window are sent as one message."),
+		new ArgumentDescription("--server-chunk-cache-size", 1, "The maximum number of chunks the server keeps cached in front of the database.  Use 0 to turn the cache off."),
+		new ArgumentDescription("--server-chunk-cache-eviction", 1, "How the server chunk cache picks a chunk to evict.  One of 'lru' (the default) or 'clock'."),
+		new ArgumentDescription("--chunk-store", 1, "Where loaded chunks are kept on the client.  One of 'heap' (the default) or 'off-heap'."),
+		new ArgumentDescription("--chunk-store-spill-directory", 1, "A local directory for the off-heap chunk store to memory-map its data from, so very large view areas can be bigger than the heap."),
+		new ArgumentDescription("--noise-backend", 1, "The noise used to generate new terrain.  One of 'sha-512' (the default) or 'fast-hash'.  Terrain already generated with one backend won't line up with new terrain generated by the other."),
+		new ArgumentDescription("--chunk-generation-threads", 1, "How many worker threads generate new terrain.  Defaults to one less than the number of cores.  Use 0 to generate on the chunk initializer thread itself."),
+		new ArgumentDescription("--chunk-write-window", 1, "The most newly generated chunks that can be generating or waiting on a write acknowledgement from the server at once.  Defaults to 16."),
+		new ArgumentDescription("--world-seed", 1, "The seed used to generate terrain when a new world is created.  Defaults to 0.  A world keeps the seed it was created with, so this can't be changed for an existing world."),
+		new ArgumentDescription("--thread-mode", 1, "How work item queues are run.  One of 'platform' (the default), which gives each one its own operating system thread, or 'virtual', which runs them on virtual threads."),
+		new ArgumentDescription("--work-item-queue-capacity", 1, "The most work items of each priority that can wait in the queue for a client or server block model.  Defaults to 10000."),
+		new ArgumentDescription("--work-item-queue-overflow-policy", 1, "What to do when a block model's work item queue is full.  One of 'block' (the default), which makes the producer wait, 'reject', which answers network messages with an error, or 'coalesce', which replaces a queued work item for the same thing and otherwise waits like 'block'."),
+		new ArgumentDescription("--screen-layer-storage", 1, "How screen layers store their characters and colours.  One of 'columns' (the default), which keeps one object per screen cell, or 'planes', which keeps one primitive array per property."),
+		new ArgumentDescription("--screen-output-encoding", 1, "How screen updates are written to the terminal.  One of 'minimal' (the default), which tracks the cursor and colours to send as few bytes as possible, or 'absolute', which positions the cursor and sets the colours again for every changed character."),
+		new ArgumentDescription("--max-frames-per-second", 1, "The most screen updates that will be written to the terminal per second.  Changes that arrive sooner are combined into the next update.  Defaults to 60, and 0 means no limit."),
+		new ArgumentDescription("--disable-synchronized-update", 0, "Don't wrap screen updates in the synchronized update (DEC mode 2026) escape sequences."),
+		new ArgumentDescription("--text-width-mode", 1, "How the width of characters on the terminal is found.  One of 'table' (the default), which uses the built in Unicode width table and only measures characters it doesn't know on the terminal, or 'calibrate', which measures every character on the terminal."),
+		new ArgumentDescription("--text-width-cache-file", 1, "A file used to remember character widths that were measured on the terminal, so they don't need to be measured again on the next run.")
 	);
 
 	public static void tryToAddParam(Map<String, List<String>> params, String key, List<String> value) throws Exception{
@@ -0,0 +1,42 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.nio.ByteBuffer;
+import javax.websocket.SendHandler;
+
+public interface AsyncBinaryMessageSender {
+	//  Must not block.  'handler' is called exactly once when the send finishes or fails.
+	public void sendBinaryAsync(ByteBuffer byteBuffer, SendHandler handler) throws Exception;
+	public void close(String reason) throws Exception;
+}
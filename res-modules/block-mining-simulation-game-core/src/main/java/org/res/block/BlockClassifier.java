@@ -0,0 +1,156 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.nio.ByteBuffer;
+
+public class BlockClassifier {
+
+	/*
+		Classifies block data against a block schema's match descriptions
+		without scanning every description for every block:
+
+		1)  Byte comparison descriptions are exact matches, so their patterns are
+		    put into a hash table up front.  The answer stored for each pattern is
+		    whatever a full in-order scan returns for it, so 'first match wins'
+		    is preserved even if an earlier description would also match.
+		2)  Anything else only needs to be checked against the descriptions
+		    that are not byte comparisons, and the json/string forms of the data
+		    are only decoded once for all of them.
+		3)  Results for small blocks are kept in a bounded LRU cache, since the
+		    same json blocks (player positions, inventories) get classified repeatedly.
+	*/
+	public static final int DEFAULT_MAX_CACHED_RESULTS = 4096;
+	public static final int DEFAULT_MAX_CACHED_DATA_LENGTH = 1024;
+
+	private static final String NO_MATCH = new String("");
+
+	private final List<BlockMatchDescription> blockMatchDescriptions;
+	private final List<BlockMatchDescription> nonByteComparisonDescriptions = new ArrayList<BlockMatchDescription>();
+	private final Map<ByteBuffer, String> byteComparisonMatches = new HashMap<ByteBuffer, String>();
+	private final int maxByteComparisonLength;
+	private final int maxCachedDataLength;
+	private final Map<ByteBuffer, String> resultCache;
+	private long numCacheHits = 0L;
+	private long numCacheMisses = 0L;
+
+	public BlockClassifier(List<BlockMatchDescription> blockMatchDescriptions, int maxCachedResults, int maxCachedDataLength) throws Exception {
+		this.blockMatchDescriptions = blockMatchDescriptions;
+		this.maxCachedDataLength = maxCachedDataLength;
+		int maxLength = -1;
+		for(BlockMatchDescription bmd : blockMatchDescriptions){
+			if(bmd instanceof ByteComparisonBlockMatchDescription){
+				byte [] pattern = ((ByteComparisonBlockMatchDescription)bmd).getBytePattern();
+				ByteBuffer key = ByteBuffer.wrap(pattern.clone());
+				if(!this.byteComparisonMatches.containsKey(key)){
+					BlockMatchDescription firstMatch = BlockClassifier.getFirstMatchByLinearScan(blockMatchDescriptions, new BlockMatchCandidate(pattern));
+					this.byteComparisonMatches.put(key, firstMatch.getBlockInstanceClassName());
+				}
+				maxLength = Math.max(maxLength, pattern.length);
+			}else{
+				this.nonByteComparisonDescriptions.add(bmd);
+			}
+		}
+		this.maxByteComparisonLength = maxLength;
+		this.resultCache = new LinkedHashMap<ByteBuffer, String>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, String> eldest){
+				return size() > maxCachedResults;
+			}
+		};
+	}
+
+	public BlockClassifier(List<BlockMatchDescription> blockMatchDescriptions) throws Exception {
+		this(blockMatchDescriptions, DEFAULT_MAX_CACHED_RESULTS, DEFAULT_MAX_CACHED_DATA_LENGTH);
+	}
+
+	public static BlockMatchDescription getFirstMatchByLinearScan(List<BlockMatchDescription> blockMatchDescriptions, BlockMatchCandidate candidate) throws Exception {
+		for(BlockMatchDescription bmd : blockMatchDescriptions){
+			if(bmd.doesMatch(candidate)){
+				return bmd;
+			}
+		}
+		return null;
+	}
+
+	public String getBlockClassNameForByteArray(byte [] data) throws Exception {
+		/*  Returns null when no match description matches. */
+		ByteBuffer key = ByteBuffer.wrap(data);
+		if(data.length <= this.maxByteComparisonLength){
+			String byteComparisonMatch = this.byteComparisonMatches.get(key);
+			if(byteComparisonMatch != null){
+				return byteComparisonMatch;
+			}
+		}
+
+		boolean isCacheable = data.length <= this.maxCachedDataLength;
+		if(isCacheable){
+			synchronized(this.resultCache){
+				String cachedResult = this.resultCache.get(key);
+				if(cachedResult != null){
+					this.numCacheHits++;
+					return cachedResult == NO_MATCH ? null : cachedResult;
+				}
+				this.numCacheMisses++;
+			}
+		}
+
+		//  None of the byte comparisons can match, so only check the others:
+		BlockMatchDescription firstMatch = BlockClassifier.getFirstMatchByLinearScan(this.nonByteComparisonDescriptions, new BlockMatchCandidate(data));
+		String result = firstMatch == null ? null : firstMatch.getBlockInstanceClassName();
+		if(isCacheable){
+			synchronized(this.resultCache){
+				//  Copy the key since the caller owns the array:
+				this.resultCache.put(ByteBuffer.wrap(data.clone()), result == null ? NO_MATCH : result);
+			}
+		}
+		return result;
+	}
+
+	public long getNumCacheHits(){
+		synchronized(this.resultCache){
+			return this.numCacheHits;
+		}
+	}
+
+	public long getNumCacheMisses(){
+		synchronized(this.resultCache){
+			return this.numCacheMisses;
+		}
+	}
+}
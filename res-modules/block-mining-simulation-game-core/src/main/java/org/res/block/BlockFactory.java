@@ -0,0 +1,146 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.nio.ByteBuffer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+public class BlockFactory {
+
+	/*
+		Creates block instances from a class name and block data.  Constructors
+		are looked up once per class and kept as method handles.  Most block
+		types (rock, empty, minerals, tools) are just a wrapper around their data,
+		so the same instance is handed out for every block with the same class
+		and data.  Only block types that implement StatelessBlock are shared,
+		everything else is always created fresh.
+	*/
+	public interface BlockConstructor {
+		IndividualBlock makeBlock(byte [] data) throws Exception;
+	}
+
+	public static final int MAX_FLYWEIGHT_DATA_LENGTH = 256;
+	public static final int MAX_FLYWEIGHT_INSTANCES = 4096;
+
+	private static final Map<String, Boolean> statelessBlockClasses = new ConcurrentHashMap<String, Boolean>();
+	private static final Map<String, BlockConstructor> constructors = new ConcurrentHashMap<String, BlockConstructor>();
+	private static final Map<String, Map<ByteBuffer, IndividualBlock>> flyweights = new ConcurrentHashMap<String, Map<ByteBuffer, IndividualBlock>>();
+
+	public static boolean isStatelessBlockClass(String fullClassName) throws Exception {
+		Boolean isStateless = statelessBlockClasses.get(fullClassName);
+		if(isStateless == null){
+			try {
+				isStateless = StatelessBlock.class.isAssignableFrom(Class.forName(fullClassName));
+			} catch (java.lang.ClassNotFoundException e) {
+				throw new Exception("java.lang.ClassNotFoundException: " + fullClassName);
+			}
+			statelessBlockClasses.putIfAbsent(fullClassName, isStateless);
+		}
+		return isStateless;
+	}
+
+	private static BlockConstructor resolveConstructor(String fullClassName) throws Exception {
+		Class<?> clazz = null;
+		try {
+			clazz = Class.forName(fullClassName);
+		} catch (java.lang.ClassNotFoundException e) {
+			throw new Exception("java.lang.ClassNotFoundException: " + fullClassName);
+		}
+		if(!IndividualBlock.class.isAssignableFrom(clazz)){
+			throw new Exception("Class " + fullClassName + " is not a block type.");
+		}
+		MethodHandle handle = null;
+		try {
+			handle = MethodHandles.publicLookup().findConstructor(clazz, MethodType.methodType(void.class, byte[].class)).asType(MethodType.methodType(IndividualBlock.class, byte[].class));
+		} catch (java.lang.NoSuchMethodException e) {
+			throw new Exception("java.lang.NoSuchMethodException");
+		} catch (IllegalAccessException e) {
+			throw new Exception("IllegalAccessException");
+		}
+		final MethodHandle constructorHandle = handle;
+		return (byte [] data) -> {
+			try {
+				return (IndividualBlock)constructorHandle.invokeExact(data);
+			} catch (Exception e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new Exception("Failed to construct " + fullClassName, t);
+			}
+		};
+	}
+
+	public static BlockConstructor getConstructor(String fullClassName) throws Exception {
+		BlockConstructor constructor = constructors.get(fullClassName);
+		if(constructor == null){
+			constructor = resolveConstructor(fullClassName);
+			constructors.putIfAbsent(fullClassName, constructor);
+		}
+		return constructor;
+	}
+
+	public static IndividualBlock makeBlock(String fullClassName, byte [] data) throws Exception {
+		BlockConstructor constructor = BlockFactory.getConstructor(fullClassName);
+		if(data == null || data.length > MAX_FLYWEIGHT_DATA_LENGTH || !isStatelessBlockClass(fullClassName)){
+			return constructor.makeBlock(data);
+		}
+
+		Map<ByteBuffer, IndividualBlock> instancesForClass = flyweights.computeIfAbsent(fullClassName, (k) -> new ConcurrentHashMap<ByteBuffer, IndividualBlock>());
+		IndividualBlock existing = instancesForClass.get(ByteBuffer.wrap(data));
+		if(existing != null){
+			return existing;
+		}else if(instancesForClass.size() >= MAX_FLYWEIGHT_INSTANCES){
+			//  Lots of distinct data for one class, don't keep any more of them:
+			return constructor.makeBlock(data);
+		}else{
+			//  Copy the data so nothing the caller does with their array can change the shared
+			//  instance or the key's hash.  The block and the key share the copy since it's read only:
+			byte [] dataCopy = data.clone();
+			IndividualBlock created = constructor.makeBlock(dataCopy);
+			IndividualBlock previous = instancesForClass.putIfAbsent(ByteBuffer.wrap(dataCopy), created);
+			return previous == null ? created : previous;
+		}
+	}
+
+	public static int getNumFlyweightInstances(){
+		int total = 0;
+		for(Map<ByteBuffer, IndividualBlock> m : flyweights.values()){
+			total += m.size();
+		}
+		return total;
+	}
+}
@@ -129,7 +129,7 @@ public class BlockManagerServerBeanPostProcessor implements DestructionAwareBean
 				String databaseName = this.params.getDatabaseBlockWorldConnectionParameters().getDatabaseName();
 				String username = this.params.getDatabaseBlockWorldConnectionParameters().getUsername();
 				String password = this.params.getDatabaseBlockWorldConnectionParameters().getPassword();
-				this.postgresDataSource = new DriverManagerDataSource("jdbc:" + subprotocol + "://" + hostname + ":" + port + "/" + databaseName + "?rewriteBatchedStatements=true", username, password);
+				this.postgresDataSource = new DriverManagerDataSource("jdbc:" + subprotocol + "://" + hostname + ":" + port + "/" + databaseName + "?rewriteBatchedStatements=true&reWriteBatchedInserts=true", username, password);
 				this.postgresDataSource.setDriverClassName("org.postgresql.Driver");
 			}
 			return this.postgresDataSource;
@@ -155,6 +155,10 @@ public class BlockManagerServerBeanPostProcessor implements DestructionAwareBean
 		blockDAOImpl.setDataSource(this.dataSource());
 		blockDAOImpl.setTransactionManager(this.transactionManager());
         	blockDAOImpl.setBlockManagerServerApplicationContextParameters(this.params);
+		Integer writeBatchSize = this.params.getBlockModelContext().getBlockManagerThreadCollection().getDatabaseWriteBatchSize();
+		if(writeBatchSize != null){
+			blockDAOImpl.setWriteBatchSize(writeBatchSize);
+		}
 		return blockDAOImpl; 
 	}
 }
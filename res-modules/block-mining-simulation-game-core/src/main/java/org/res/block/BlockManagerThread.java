@@ -43,11 +43,26 @@ public abstract class BlockManagerThread extends Thread implements BlockManagerT
 	public abstract String getBetterClassName() throws Exception;
 
 	private BlockManagerThreadCollection blockManagerThreadCollection;
+	//  The thread that actually runs this one.  This is a virtual thread when running in ThreadExecutionMode.VIRTUAL:
+	private Thread executingThread = this;
 
 	public BlockManagerThread(BlockManagerThreadCollection blockManagerThreadCollection){
 		this.blockManagerThreadCollection = blockManagerThreadCollection;
 	}
 
+	public Thread getExecutingThread(){
+		return this.executingThread;
+	}
+
+	public void setExecutingThread(Thread executingThread){
+		this.executingThread = executingThread;
+	}
+
+	/*  Threads that can block inside native code or on stdin would hold on to a carrier thread, so they stay on platform threads. */
+	public boolean canRunOnVirtualThread(){
+		return false;
+	}
+
 	public BlockManagerThreadCollection getBlockManagerThreadCollection() throws Exception{
 		return this.blockManagerThreadCollection;
 	}
@@ -110,6 +110,11 @@ public class BlockManagerThreadCollection {
 	/*  This defines the dimensions of the 'chunks' that are loaded into memory as we move around */
 	private final CuboidAddress chunkSizeCuboidAddress = new CuboidAddress(new Coordinate(Arrays.asList(0L, 0L, 0L, 0L)), new Coordinate(Arrays.asList(3L, 3L, 5L, 1L)));
 
+	private static final String VIRTUAL_THREAD_PARALLELISM_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+	private static final int MIN_VIRTUAL_THREAD_CARRIERS = 4;
+	private static boolean isVirtualThreadSchedulerConfigured = false;
+	private static boolean hasMadeVirtualThread = false;
+
 	public BlockManagerThreadCollection(CommandLineArgumentCollection commandLineArgumentCollection, boolean ensureStdinIsATTY) throws Exception {
 		//  This is not very portable, but I actually don't know how many terminals
 		//  support advanced emoji characters out there.  Possibly make this guess better in the future:
@@ -141,6 +146,11 @@ public class BlockManagerThreadCollection {
 		}
 		
 		this.userInteractionConfig = new UserInteractionConfig(userInteractionJsonString);
+
+		ScreenLayerStorageType screenLayerStorageType = this.getScreenLayerStorageType();
+		if(screenLayerStorageType != null){
+			ScreenLayer.setDefaultStorageType(screenLayerStorageType);
+		}
 		if(ensureStdinIsATTY){
 			this.ensureStdinIsATTY();
 		}
@@ -238,6 +248,10 @@ public class BlockManagerThreadCollection {
 		return this.authorizedBlockWorldConnections;
 	}
 
+	public CuboidAddress getChunkSizeCuboidAddress(){
+		return this.chunkSizeCuboidAddress;
+	}
+
 	public final AuthorizedBlockWorldConnection getAuthorizedBlockWorldConnection(Long authorizedClientId, BlockWorldConnectionParameters params) throws Exception{
 		if(this.authorizedBlockWorldConnections.get(params).containsKey(authorizedClientId)){
 			return this.authorizedBlockWorldConnections.get(params).get(authorizedClientId);
@@ -337,6 +351,18 @@ public class BlockManagerThreadCollection {
 		return this.commandLineArgumentCollection.hasUsedKey("--use-emojis");
 	}
 
+	public boolean getDisableSynchronizedUpdate() {
+		return this.commandLineArgumentCollection.hasUsedKey("--disable-synchronized-update");
+	}
+
+	public Integer getMaxFramesPerSecond() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--max-frames-per-second")){
+			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--max-frames-per-second"));
+		}else{
+			return null;
+		}
+	}
+
 	public boolean getRightToLeftPrint() {
 		return this.commandLineArgumentCollection.hasUsedKey("--right-to-left-print");
 	}
@@ -359,6 +385,166 @@ public class BlockManagerThreadCollection {
 		}
 	}
 
+	public Integer getDatabaseWriteBatchSize() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--database-write-batch-size")){
+			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--database-write-batch-size"));
+		}else{
+			return null;
+		}
+	}
+
+	public Integer getWireProtocolVersion() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--wire-protocol-version")){
+			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--wire-protocol-version"));
+		}else{
+			return null;
+		}
+	}
+
+	public SlowConsumerPolicy getSlowConsumerPolicy() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--slow-consumer-policy")){
+			return SlowConsumerPolicy.forName(this.commandLineArgumentCollection.getUsedSingleValue("--slow-consumer-policy"));
+		}else{
+			return null;
+		}
+	}
+
+	public Long getMaxOutboundQueueBytes() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--max-outbound-queue-bytes")){
+			return Long.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--max-outbound-queue-bytes"));
+		}else{
+			return null;
+		}
+	}
+
+	public ChunkStoreType getChunkStoreType() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--chunk-store")){
+			return ChunkStoreType.forName(this.commandLineArgumentCollection.getUsedSingleValue("--chunk-store"));
+		}else{
+			return null;
+		}
+	}
+
+	public String getChunkStoreSpillDirectory() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--chunk-store-spill-directory")){
+			return this.commandLineArgumentCollection.getUsedSingleValue("--chunk-store-spill-directory");
+		}else{
+			return null;
+		}
+	}
+
+	public NoiseBackend getNoiseBackend() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--noise-backend")){
+			return NoiseBackend.forName(this.commandLineArgumentCollection.getUsedSingleValue("--noise-backend"));
+		}else{
+			return null;
+		}
+	}
+
+	public Integer getChunkGenerationThreads() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--chunk-generation-threads")){
+			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--chunk-generation-threads"));
+		}else{
+			return null;
+		}
+	}
+
+	public Integer getChunkWriteWindow() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--chunk-write-window")){
+			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--chunk-write-window"));
+		}else{
+			return null;
+		}
+	}
+
+	public Integer getWorkItemQueueCapacity() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--work-item-queue-capacity")){
+			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--work-item-queue-capacity"));
+		}else{
+			return null;
+		}
+	}
+
+	public WorkItemQueueOverflowPolicy getWorkItemQueueOverflowPolicy() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--work-item-queue-overflow-policy")){
+			return WorkItemQueueOverflowPolicy.forName(this.commandLineArgumentCollection.getUsedSingleValue("--work-item-queue-overflow-policy"));
+		}else{
+			return null;
+		}
+	}
+
+	public ScreenOutputEncodingType getScreenOutputEncodingType() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--screen-output-encoding")){
+			return ScreenOutputEncodingType.forName(this.commandLineArgumentCollection.getUsedSingleValue("--screen-output-encoding"));
+		}else{
+			return null;
+		}
+	}
+
+	public TextWidthMode getTextWidthMode() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--text-width-mode")){
+			return TextWidthMode.forName(this.commandLineArgumentCollection.getUsedSingleValue("--text-width-mode"));
+		}else{
+			return null;
+		}
+	}
+
+	public String getTextWidthCacheFile() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--text-width-cache-file")){
+			return this.commandLineArgumentCollection.getUsedSingleValue("--text-width-cache-file");
+		}else{
+			return null;
+		}
+	}
+
+	public final ScreenLayerStorageType getScreenLayerStorageType() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--screen-layer-storage")){
+			return ScreenLayerStorageType.forName(this.commandLineArgumentCollection.getUsedSingleValue("--screen-layer-storage"));
+		}else{
+			return null;
+		}
+	}
+
+	public ThreadExecutionMode getThreadExecutionMode() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--thread-mode")){
+			return ThreadExecutionMode.forName(this.commandLineArgumentCollection.getUsedSingleValue("--thread-mode"));
+		}else{
+			return null;
+		}
+	}
+
+	public Long getWorldSeed() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--world-seed")){
+			return Long.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--world-seed"));
+		}else{
+			return null;
+		}
+	}
+
+	public Integer getServerChunkCacheSize() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--server-chunk-cache-size")){
+			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--server-chunk-cache-size"));
+		}else{
+			return null;
+		}
+	}
+
+	public ChunkCacheEvictionPolicy getServerChunkCacheEvictionPolicy() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--server-chunk-cache-eviction")){
+			return ChunkCacheEvictionPolicy.forName(this.commandLineArgumentCollection.getUsedSingleValue("--server-chunk-cache-eviction"));
+		}else{
+			return null;
+		}
+	}
+
+	public Long getSubscriptionNotifyWindowMilliseconds() throws Exception {
+		if(this.commandLineArgumentCollection.hasUsedKey("--subscription-notify-window-ms")){
+			return Long.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--subscription-notify-window-ms"));
+		}else{
+			return null;
+		}
+	}
+
 	public Integer getCompatibilityWidth() throws Exception {
 		if(this.commandLineArgumentCollection.hasUsedKey("--compatibility-width")){
 			return Integer.valueOf(this.commandLineArgumentCollection.getUsedSingleValue("--compatibility-width"));
@@ -409,10 +595,43 @@ public class BlockManagerThreadCollection {
 		return this.linuxBlockJNIInterface;
 	}
 
+	/*
+		On JDK 21 a virtual thread that blocks inside a synchronized block holds on to its
+		carrier, and the default number of carriers is the number of cores.  Make sure
+		there are always a few carriers so one pinned thread can't stall all the others.
+		The JDK only reads this property when the first virtual thread is made, so this
+		needs to be called from main before anything else starts.
+	*/
+	public static synchronized void configureVirtualThreadScheduler(){
+		String existingValue = System.getProperty(VIRTUAL_THREAD_PARALLELISM_PROPERTY);
+		if(existingValue != null){
+			logger.info("Using " + VIRTUAL_THREAD_PARALLELISM_PROPERTY + "=" + existingValue + " from the JVM arguments.");
+		}else if(hasMadeVirtualThread){
+			logger.warn("Not setting " + VIRTUAL_THREAD_PARALLELISM_PROPERTY + " because virtual threads have already been made, so it would have no effect.");
+		}else{
+			String parallelism = String.valueOf(Math.max(MIN_VIRTUAL_THREAD_CARRIERS, Runtime.getRuntime().availableProcessors()));
+			System.setProperty(VIRTUAL_THREAD_PARALLELISM_PROPERTY, parallelism);
+			logger.info("Set " + VIRTUAL_THREAD_PARALLELISM_PROPERTY + "=" + parallelism + ".");
+		}
+		isVirtualThreadSchedulerConfigured = true;
+	}
+
+	public static synchronized Thread makeVirtualThread(Runnable t){
+		if(!hasMadeVirtualThread && !isVirtualThreadSchedulerConfigured && System.getProperty(VIRTUAL_THREAD_PARALLELISM_PROPERTY) == null){
+			logger.warn(VIRTUAL_THREAD_PARALLELISM_PROPERTY + " was not set at startup, so virtual threads will use the default of one carrier thread per core (" + Runtime.getRuntime().availableProcessors() + ").");
+		}
+		hasMadeVirtualThread = true;
+		return Thread.ofVirtual().unstarted(t);
+	}
+
 	public void addThread(BlockManagerThread t) throws Exception{
-		t.start();
+		ThreadExecutionMode threadExecutionMode = this.getThreadExecutionMode();
+		if(threadExecutionMode == ThreadExecutionMode.VIRTUAL && t.canRunOnVirtualThread()){
+			t.setExecutingThread(BlockManagerThreadCollection.makeVirtualThread(t));
+		}
+		t.getExecutingThread().start();
 		synchronized(lock){
-			Long threadId = t.threadId();
+			Long threadId = t.getExecutingThread().threadId();
 			if(this.allThreads.containsKey(threadId)){
 				throw new Exception("threadId=" + threadId + " already exists.");
 			}else{
@@ -424,7 +643,7 @@ public class BlockManagerThreadCollection {
 
 	public void removeThread(BlockManagerThread t) throws Exception{
 		synchronized(lock){
-			Long threadId = t.threadId();
+			Long threadId = t.getExecutingThread().threadId();
 			if(this.allThreads.containsKey(threadId)){
 				this.allThreads.remove(threadId);
 				int offset = this.activeThreadIds.indexOf(threadId);
@@ -455,13 +674,12 @@ public class BlockManagerThreadCollection {
 		return this.allThreads.get(id);
 	}
 
-	public void sendShutdownNotifies() throws Exception{
+	public void sendShutdownNotifies(List<BlockManagerThread> threadsToNotify) throws Exception{
 		// Initiates an orderly shutdown in which previously submitted tasks are executed, but
 		// no new tasks will be accepted. Invocation has no additional effect if already shut down.
-		for(int i = 0; i < this.activeThreadIds.size(); i++){
-			Long threadId = this.activeThreadIds.get(i);
-			BlockManagerThread t = this.allThreads.get(threadId);
-			logger.info(Thread.currentThread().getClass().getName() + " " + Thread.currentThread() + " " + Thread.currentThread().threadId() + " " + t.getBetterClassName() + " " + t + " " + t.threadId() + " == " + Thread.currentThread().equals(t));
+		for(BlockManagerThread t : threadsToNotify){
+			Thread executingThread = t.getExecutingThread();
+			logger.info(Thread.currentThread().getClass().getName() + " " + Thread.currentThread() + " " + Thread.currentThread().threadId() + " " + t.getBetterClassName() + " " + executingThread + " " + executingThread.threadId() + " == " + Thread.currentThread().equals(executingThread));
 			if(t instanceof StandardInputReaderTask){
 				try{
 					//  Close stdin to trigger exit of 'read' call for keyboard input task:
@@ -471,36 +689,43 @@ public class BlockManagerThreadCollection {
 					this.offendingExceptions.add(ex);
 				}
 			}else{
-				if(Thread.currentThread().equals(t)){
+				if(Thread.currentThread().equals(executingThread)){
 					logger.info("Don't interrupt the current thread because it's the one interrupting the others: " + t.getBetterClassName() + "...");
 				}else{
-					logger.info("t.isInterrupted()=" + t.isInterrupted() + ". Calling t.interrupt() on thread " + t.getBetterClassName() + "...");
-					t.interrupt();
-					logger.info("t.isInterrupted()=" + t.isInterrupted() + " now on thread " + t.getBetterClassName() + "...");
+					logger.info("t.isInterrupted()=" + executingThread.isInterrupted() + ". Calling t.interrupt() on thread " + t.getBetterClassName() + "...");
+					executingThread.interrupt();
+					logger.info("t.isInterrupted()=" + executingThread.isInterrupted() + " now on thread " + t.getBetterClassName() + "...");
 				}
 			}
 		}
 	}
 
 	public void setIsProcessFinished(boolean isProcessFinished, Exception e){
+		List<BlockManagerThread> threadsToNotify = null;
 		synchronized(lock){
 			this.isProcessFinished = isProcessFinished;
 			if(e != null){
 				this.offendingExceptions.add(e);
 			}
-			if(this.isProcessFinished){
-				try{
-					if(!this.shutdownNotifiesSent){
-						this.sendShutdownNotifies();
-						this.shutdownNotifiesSent = true;
-						//  Wake up threads that are blocked getting signals so they can shut down
-						if(this.getIsJNIEnabled()){
-							this.getLinuxBlockJNIInterface().shutdownInXMilliseconds(0);
-						}
-					}
-				}catch(Exception exception){
-					exception.printStackTrace();
+			if(this.isProcessFinished && !this.shutdownNotifiesSent){
+				this.shutdownNotifiesSent = true;
+				threadsToNotify = new ArrayList<BlockManagerThread>();
+				for(Long threadId : this.activeThreadIds){
+					threadsToNotify.add(this.allThreads.get(threadId));
+				}
+			}
+		}
+		/*  Send the notifies without holding the lock:  Virtual threads that block on 'lock' pin their
+		carrier thread, so logging in here could deadlock against a virtual thread holding the logger's lock. */
+		if(threadsToNotify != null){
+			try{
+				this.sendShutdownNotifies(threadsToNotify);
+				//  Wake up threads that are blocked getting signals so they can shut down
+				if(this.getIsJNIEnabled()){
+					this.getLinuxBlockJNIInterface().shutdownInXMilliseconds(0);
 				}
+			}catch(Exception exception){
+				exception.printStackTrace();
 			}
 		}
 	}
@@ -516,19 +741,19 @@ public class BlockManagerThreadCollection {
 					threadId = this.activeThreadIds.get(0);
 					t = this.allThreads.get(threadId);
 				}
-				t.join();
+				t.getExecutingThread().join();
 				//  Only remove it from the list after it's finished:
 				synchronized(lock){
 					this.activeThreadIds.remove(0);
 					//logger.info("blockUntilAllTasksHaveTerminated, Before removing threadId=" + threadId + ": this.activeThreadIds=" + this.activeThreadIds);
 					this.allThreads.remove(threadId);
 					//logger.info("blockUntilAllTasksHaveTerminated, After removing threadId=" + threadId + ": this.activeThreadIds=" + this.activeThreadIds);
-					if(!(t.threadId() == threadId)){
-						throw new Exception("t.threadId()=" + t.threadId() + " != threadId=" + threadId);
+					if(!(t.getExecutingThread().threadId() == threadId)){
+						throw new Exception("t.threadId()=" + t.getExecutingThread().threadId() + " != threadId=" + threadId);
 					}
-					logger.info("After thread join, removed threadId=" + threadId);
 					numActiveThreads = this.activeThreadIds.size();
 				}
+				logger.info("After thread join, removed threadId=" + threadId);
 			}catch(InterruptedException ex){
 			}
 		}
@@ -57,6 +57,10 @@ public abstract class BlockMatchDescription {
 
 	public abstract boolean doesMatch(byte [] data) throws Exception;
 
+	public boolean doesMatch(BlockMatchCandidate candidate) throws Exception{
+		return this.doesMatch(candidate.getData());
+	}
+
 	public String getBlockInstanceClassName(){
 		return blockClass;
 	}
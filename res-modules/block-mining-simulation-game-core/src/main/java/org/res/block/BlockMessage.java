@@ -65,13 +65,41 @@ public abstract class BlockMessage {
 	}
 
 	public static long extractAuthorizedClientId(BlockMessageBinaryBuffer buffer) throws Exception {
-		//  Long offset 0 is message type
-		//  Long offset 1 is conversation id
-		//  Long offset 2 is authorized client id
-		return buffer.peekLongAtOffset(2);
+		if(buffer.hasVersion2Marker()){
+			//  Marker byte, then varint message type, conversation id and authorized client id:
+			int startPosition = buffer.getReadPosition();
+			BlockMessage.readProtocolHeader(buffer);
+			buffer.readOneLongValue();
+			buffer.readOneLongValue();
+			long authorizedClientId = buffer.readOneLongValue();
+			buffer.setReadPosition(startPosition);
+			return authorizedClientId;
+		}else{
+			//  Long offset 0 is message type
+			//  Long offset 1 is conversation id
+			//  Long offset 2 is authorized client id
+			return buffer.peekLongAtOffset(2);
+		}
+	}
+
+	public static void readProtocolHeader(BlockMessageBinaryBuffer buffer) throws Exception {
+		//  Version 1 messages have no header, so both formats can arrive on the same session.
+		if(buffer.hasVersion2Marker()){
+			buffer.readOneByte();
+			buffer.setProtocolVersion(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2);
+		}else{
+			buffer.setProtocolVersion(BlockMessageBinaryBuffer.PROTOCOL_VERSION_1);
+		}
+	}
+
+	public static void writeProtocolHeader(BlockMessageBinaryBuffer buffer) throws Exception {
+		if(buffer.getProtocolVersion() == BlockMessageBinaryBuffer.PROTOCOL_VERSION_2){
+			buffer.writeOneByte(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2_MARKER);
+		}
 	}
 
 	public static BlockMessage consumeBlockMessage(BlockModelContext blockModelContext, BlockMessageBinaryBuffer buffer) throws Exception {
+		BlockMessage.readProtocolHeader(buffer);
 		BlockMessageType blockMessageType = BlockMessage.readBlockMessageType(buffer);
 		Long conversationId = buffer.readOneLongValue();
 		Long authorizedClientId = buffer.readOneLongValue();
@@ -116,5 +144,37 @@ public abstract class BlockMessage {
 	}
 
 	public abstract void doWork(BlockSession blockSession) throws Exception;
-	public abstract byte [] asByteArray() throws Exception;
+	public abstract void writeToBuffer(BlockMessageBinaryBuffer buffer) throws Exception;
+
+	public byte [] asByteArray() throws Exception{
+		return this.asByteArray(BlockMessageBinaryBuffer.PROTOCOL_VERSION_1);
+	}
+
+	public byte [] asByteArray(int protocolVersion) throws Exception{
+		//  Encode into pooled storage so the only allocation is the exact size result:
+		BlockMessageBinaryBuffer buffer = this.asPooledBuffer(protocolVersion);
+		try{
+			return buffer.getUsedBuffer();
+		}finally{
+			buffer.release();
+		}
+	}
+
+	public BlockMessageBinaryBuffer asPooledBuffer(int protocolVersion) throws Exception{
+		//  Caller must release() the returned buffer once it is done with getUsedByteBuffer():
+		BlockMessageBinaryBuffer buffer = BlockMessageBinaryBuffer.acquirePooledBuffer(protocolVersion, this.getEstimatedSize(protocolVersion));
+		try{
+			BlockMessage.writeProtocolHeader(buffer);
+			this.writeToBuffer(buffer);
+			return buffer;
+		}catch(Exception e){
+			buffer.release();
+			throw e;
+		}
+	}
+
+	public int getEstimatedSize(int protocolVersion){
+		//  Upper bound on the size of small messages, used to pre-size buffers:
+		return 128;
+	}
 }
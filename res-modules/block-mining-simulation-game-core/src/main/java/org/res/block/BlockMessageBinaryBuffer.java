@@ -33,39 +33,97 @@
 package org.res.block;
 
 import java.nio.ByteBuffer;
-import java.nio.LongBuffer;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.ArrayDeque;
 
 public class BlockMessageBinaryBuffer {
 
+	//  Version 1 writes every long as 8 big-endian bytes.  Version 2 writes
+	//  every long as a zigzag varint and is prefixed with a marker byte that
+	//  can never be the first byte of a version 1 message (whose first byte
+	//  is always the high byte of a small message type).
+	public static final int PROTOCOL_VERSION_1 = 1;
+	public static final int PROTOCOL_VERSION_2 = 2;
+	public static final int MAX_SUPPORTED_PROTOCOL_VERSION = PROTOCOL_VERSION_2;
+	public static final byte PROTOCOL_VERSION_2_MARKER = (byte)0x02;
+
+	//  Backing arrays of released pooled buffers, kept per thread so the lock on a pool is almost never contended.
+	//  A buffer can be released on another thread once an asynchronous send completes, so it goes back to the pool
+	//  it was taken from.  Every thread that encodes messages keeps its own pool, so the total retained per thread is kept small:
+	private static final int MAX_POOLED_ARRAYS_PER_THREAD = 4;
+	private static final int MIN_POOLED_ARRAY_SIZE = 1024;
+	private static final int MAX_POOLED_ARRAY_SIZE = 1024 * 1024;
+	private static final long MAX_POOLED_BYTES_PER_THREAD = 2L * 1024L * 1024L;
+	private static final ThreadLocal<ArrayDeque<byte []>> arrayPool = ThreadLocal.withInitial(() -> new ArrayDeque<byte []>());
+
 	private byte [] data = new byte [1];
+	//  Big-endian view of 'data' that is only re-created when 'data' is replaced:
+	private ByteBuffer view = ByteBuffer.wrap(this.data);
 	private int usedCapacity = 0;
 	private int readPosition = 0;
 	private int availableCapacity = 1;
+	private int protocolVersion = PROTOCOL_VERSION_1;
+	//  The pool this buffer's array came from, or null if it isn't pooled:
+	private ArrayDeque<byte []> pool = null;
+
+	public int getProtocolVersion(){
+		return this.protocolVersion;
+	}
+
+	public void setProtocolVersion(int protocolVersion) throws Exception{
+		this.protocolVersion = BlockMessageBinaryBuffer.checkProtocolVersion(protocolVersion);
+	}
+
+	public static int checkProtocolVersion(int protocolVersion) throws Exception{
+		if(protocolVersion != PROTOCOL_VERSION_1 && protocolVersion != PROTOCOL_VERSION_2){
+			throw new Exception("Unsupported protocol version: " + protocolVersion);
+		}
+		return protocolVersion;
+	}
 
-	public long [] readNLongValues(int numberOfLongValues){
-		ByteBuffer messageTypeBuffer = ByteBuffer.wrap(this.data, this.readPosition, Long.BYTES * numberOfLongValues);
-		LongBuffer longBuffer = messageTypeBuffer.asLongBuffer();
-		long[] l = new long[longBuffer.capacity()];
-		longBuffer.get(l);
-		this.readPosition += Long.BYTES * numberOfLongValues;
+	public int getReadPosition(){
+		return this.readPosition;
+	}
+
+	public void setReadPosition(int readPosition){
+		this.readPosition = readPosition;
+	}
+
+	public boolean hasVersion2Marker(){
+		return this.data.length > this.readPosition && this.data[this.readPosition] == PROTOCOL_VERSION_2_MARKER;
+	}
+
+	public long [] readNLongValues(int numberOfLongValues) throws Exception{
+		if(this.protocolVersion == PROTOCOL_VERSION_2){
+			long [] l = new long[numberOfLongValues];
+			for(int i = 0; i < numberOfLongValues; i++){
+				l[i] = this.readZigZagVarLong();
+			}
+			return l;
+		}
+		long[] l = new long[numberOfLongValues];
+		for(int i = 0; i < numberOfLongValues; i++){
+			l[i] = this.view.getLong(this.readPosition);
+			this.readPosition += Long.BYTES;
+		}
 		return l;
 	}
 
 	public long peekLongAtOffset(int offset){
-		ByteBuffer messageTypeBuffer = ByteBuffer.wrap(this.data, Long.BYTES * offset, Long.BYTES * 1);
-		LongBuffer longBuffer = messageTypeBuffer.asLongBuffer();
-		long[] l = new long[1];
-		longBuffer.get(l);
-		return l[0];
+		return this.view.getLong(Long.BYTES * offset);
 	}
 
 	public void writeLongValues(long [] values){
-		ByteBuffer bb = ByteBuffer.allocate(values.length * Long.BYTES);
-		bb.asLongBuffer().put(values);
-		this.writeBytes(bb.array());
+		if(this.protocolVersion == PROTOCOL_VERSION_2){
+			for(long v : values){
+				this.writeZigZagVarLong(v);
+			}
+			return;
+		}
+		this.increaseBufferCapacity(this.usedCapacity + values.length * Long.BYTES);
+		for(long v : values){
+			this.view.putLong(this.usedCapacity, v);
+			this.usedCapacity += Long.BYTES;
+		}
 	}
 
 	public byte [] getUsedBuffer(){
@@ -74,21 +132,52 @@ public class BlockMessageBinaryBuffer {
 		return newData;
 	}
 
+	public ByteBuffer getUsedByteBuffer(){
+		//  Read-only view of the written bytes.  Only valid until this buffer is written to or released:
+		return this.view.asReadOnlyBuffer().position(0).limit(this.usedCapacity).slice();
+	}
+
+	public int getUsedCapacity(){
+		return this.usedCapacity;
+	}
+
 	public void increaseBufferCapacity(int requiredCapacity){
+		if(requiredCapacity <= this.availableCapacity){
+			return;
+		}
 		int newCapacity = this.availableCapacity;
 		while(newCapacity < requiredCapacity) {
 			newCapacity *= 2;
 		}
-		byte [] newData = new byte [newCapacity];
+		byte [] newData = this.pool != null ? BlockMessageBinaryBuffer.takePooledArray(this.pool, newCapacity) : new byte [newCapacity];
 		System.arraycopy(data, 0, newData, 0, this.usedCapacity);
+		if(this.pool != null){
+			BlockMessageBinaryBuffer.returnPooledArray(this.pool, this.data);
+		}
+		this.setData(newData);
+	}
+
+	private void setData(byte [] newData){
 		this.data = newData;
-		this.availableCapacity = newCapacity;
+		this.view = ByteBuffer.wrap(newData);
+		this.availableCapacity = newData.length;
 	}
 
 	public void writeBytes(byte [] dataToWrite){
-		this.increaseBufferCapacity(this.usedCapacity + dataToWrite.length);
-		System.arraycopy(dataToWrite, 0, this.data, this.usedCapacity, dataToWrite.length);
-		this.usedCapacity += dataToWrite.length;
+		this.writeBytes(dataToWrite, 0, dataToWrite.length);
+	}
+
+	public void writeBytes(byte [] dataToWrite, int offset, int length){
+		this.increaseBufferCapacity(this.usedCapacity + length);
+		System.arraycopy(dataToWrite, offset, this.data, this.usedCapacity, length);
+		this.usedCapacity += length;
+	}
+
+	public void writeBytes(ByteBuffer dataToWrite){
+		int length = dataToWrite.remaining();
+		this.increaseBufferCapacity(this.usedCapacity + length);
+		dataToWrite.get(this.data, this.usedCapacity, length);
+		this.usedCapacity += length;
 	}
 
 	public byte [] readNBytes(int numBytes){
@@ -98,23 +187,138 @@ public class BlockMessageBinaryBuffer {
 		return rtn;
 	}
 
-	public long readOneLongValue(){
-		long [] values = this.readNLongValues(1);
-		return values[0];
+	public long readOneLongValue() throws Exception{
+		if(this.protocolVersion == PROTOCOL_VERSION_2){
+			return this.readZigZagVarLong();
+		}
+		long v = this.view.getLong(this.readPosition);
+		this.readPosition += Long.BYTES;
+		return v;
 	}
 
 	public void writeOneLongValue(long v){
-		long [] values = new long[1];
-		values[0] = v;
-		writeLongValues(values);
+		if(this.protocolVersion == PROTOCOL_VERSION_2){
+			this.writeZigZagVarLong(v);
+			return;
+		}
+		this.increaseBufferCapacity(this.usedCapacity + Long.BYTES);
+		this.view.putLong(this.usedCapacity, v);
+		this.usedCapacity += Long.BYTES;
+	}
+
+	public void writeOneByte(byte b){
+		this.increaseBufferCapacity(this.usedCapacity + 1);
+		this.data[this.usedCapacity] = b;
+		this.usedCapacity++;
+	}
+
+	public byte readOneByte(){
+		return this.data[this.readPosition++];
+	}
+
+	public void writeVarLong(long v){
+		//  Unsigned LEB128: 7 bits per byte, high bit set on all but the last byte.
+		this.increaseBufferCapacity(this.usedCapacity + 10);
+		while((v & ~0x7FL) != 0L){
+			this.data[this.usedCapacity++] = (byte)((v & 0x7FL) | 0x80L);
+			v >>>= 7;
+		}
+		this.data[this.usedCapacity++] = (byte)v;
+	}
+
+	public long readVarLong() throws Exception{
+		long result = 0L;
+		for(int shift = 0; shift < 64; shift += 7){
+			if(this.readPosition >= this.data.length){
+				throw new Exception("Truncated varint at position " + this.readPosition + ".");
+			}
+			byte b = this.data[this.readPosition++];
+			result |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return result;
+			}
+		}
+		throw new Exception("Malformed varint at position " + this.readPosition + ".");
+	}
+
+	public void writeZigZagVarLong(long v){
+		this.writeVarLong((v << 1) ^ (v >> 63));
+	}
+
+	public long readZigZagVarLong() throws Exception{
+		long v = this.readVarLong();
+		return (v >>> 1) ^ -(v & 1L);
+	}
+
+	private static byte [] takePooledArray(ArrayDeque<byte []> pool, int requiredCapacity){
+		synchronized(pool){
+			for(byte [] candidate : pool){
+				if(candidate.length >= requiredCapacity){
+					pool.remove(candidate);
+					return candidate;
+				}
+			}
+		}
+		return new byte [Math.max(MIN_POOLED_ARRAY_SIZE, Integer.highestOneBit(Math.max(1, requiredCapacity - 1)) << 1)];
+	}
+
+	private static void returnPooledArray(ArrayDeque<byte []> pool, byte [] array){
+		if(array.length > MAX_POOLED_ARRAY_SIZE){
+			return;
+		}
+		synchronized(pool){
+			pool.addFirst(array);
+			long pooledBytes = 0L;
+			for(byte [] pooled : pool){
+				pooledBytes += pooled.length;
+			}
+			//  Keep the most recently used arrays:
+			while(pool.size() > MAX_POOLED_ARRAYS_PER_THREAD || pooledBytes > MAX_POOLED_BYTES_PER_THREAD){
+				pooledBytes -= pool.removeLast().length;
+			}
+		}
+	}
+
+	public static BlockMessageBinaryBuffer acquirePooledBuffer(int protocolVersion, int estimatedSize) throws Exception {
+		ArrayDeque<byte []> pool = arrayPool.get();
+		BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer(protocolVersion, BlockMessageBinaryBuffer.takePooledArray(pool, estimatedSize));
+		buffer.pool = pool;
+		return buffer;
+	}
+
+	public void release(){
+		//  Hands the backing array back to the pool of the thread that acquired it.  Any slice from getUsedByteBuffer becomes invalid.
+		if(this.pool != null){
+			BlockMessageBinaryBuffer.returnPooledArray(this.pool, this.data);
+			this.pool = null;
+			this.setData(new byte [1]);
+			this.usedCapacity = 0;
+			this.readPosition = 0;
+		}
 	}
 
 	public BlockMessageBinaryBuffer(byte [] data, int usedCapacity) {
 		this.data = data;
+		this.view = ByteBuffer.wrap(data);
 		this.usedCapacity = usedCapacity;
 		this.availableCapacity = data.length;
 	}
 
 	public BlockMessageBinaryBuffer() {
 	}
+
+	public BlockMessageBinaryBuffer(int protocolVersion) throws Exception {
+		this.protocolVersion = BlockMessageBinaryBuffer.checkProtocolVersion(protocolVersion);
+	}
+
+	public BlockMessageBinaryBuffer(int protocolVersion, int estimatedSize) throws Exception {
+		this(protocolVersion, new byte [Math.max(1, estimatedSize)]);
+	}
+
+	private BlockMessageBinaryBuffer(int protocolVersion, byte [] initialData) throws Exception {
+		this.protocolVersion = BlockMessageBinaryBuffer.checkProtocolVersion(protocolVersion);
+		this.data = initialData;
+		this.view = ByteBuffer.wrap(initialData);
+		this.availableCapacity = initialData.length;
+	}
 }
@@ -38,7 +38,9 @@ import java.util.HashMap;
 public enum BlockMessageErrorType {
         MAX_REGION_SUBSCRPTIONS_EXCEEDED (1L),
         IDENTICAL_SUBSCRIPTION (2L),
-        ROOT_BLOCK_DICTIONARY_UNINITIALIZED (3L);
+        ROOT_BLOCK_DICTIONARY_UNINITIALIZED (3L),
+        WORK_ITEM_QUEUE_FULL (4L),
+        UNKNOWN_COMMAND_TYPE (5L);
 
         private final long id;
 
@@ -69,7 +69,7 @@ public abstract class BlockModelContext extends WorkItemQueueOwner<BlockModelCon
 
 	public abstract BlockModelInterface getBlockModelInterface();
 	public abstract boolean isServer();
-	public abstract void postCuboidsWrite(Long numDimensions, List<CuboidAddress> cuboidAddresses, Long authorizedClientId) throws Exception;
+	public abstract void postCuboidsWrite(Long numDimensions, List<Cuboid> writtenCuboids, Long authorizedClientId) throws Exception;
 	public abstract void onCommandBlockMessage(BlockSession blockSession, Long conversationId, Long authorizedClientId, CommandType authorizedCommandType, Coordinate coordinate) throws Exception;
 	public abstract void onErrorNotificationBlockMessage(BlockSession blockSession, Long conversationId, Long authorizedClientid, BlockMessageErrorType blockMessageErrorType) throws Exception;
 	public abstract void onAcknowledgementMessage(Long conversationId) throws Exception;
@@ -85,6 +85,7 @@ public abstract class BlockModelContext extends WorkItemQueueOwner<BlockModelCon
 
 	public BlockModelContext(BlockManagerThreadCollection blockManagerThreadCollection) throws Exception{
 		this.blockManagerThreadCollection = blockManagerThreadCollection;
+		this.workItemQueue.configure(blockManagerThreadCollection.getWorkItemQueueCapacity(), blockManagerThreadCollection.getWorkItemQueueOverflowPolicy(), null);
 	}
 
 	public BlockManagerThreadCollection getBlockManagerThreadCollection(){
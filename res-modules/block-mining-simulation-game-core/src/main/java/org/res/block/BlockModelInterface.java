@@ -37,5 +37,6 @@ import org.res.block.Cuboid;
 
 public interface BlockModelInterface{
 	public abstract void writeBlocksInRegion(Cuboid cuboid) throws Exception;
+	public abstract void writeBlocksInRegions(List<Cuboid> cuboids) throws Exception;
 	public abstract List<Cuboid> getBlocksInRegions(List<CuboidAddress> cuboidAddresses) throws Exception;
 }
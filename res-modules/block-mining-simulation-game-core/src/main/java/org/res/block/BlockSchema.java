@@ -58,6 +58,7 @@ public class BlockSchema {
 	protected final Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
 	protected final List<BlockMatchDescription> blockMatchDescriptions;
 	protected final boolean allowUnrecognizedBlockTypes;
+	protected final BlockClassifier blockClassifier;
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
 	public BlockSchema(String json, boolean allowUnrecognizedBlockTypes) throws Exception {
@@ -71,7 +72,8 @@ public class BlockSchema {
 		for(JsonElement e : blockMatchDescriptionsJson){
 			JsonObject o = (JsonObject)e;
 			if(o.get("match_type").getAsString().equals("json")){
-				if(o.get("match_subtype").getAsString().equals("generic")){
+				//  Schemas before v6 don't have sub types, and all of their json matches are generic:
+				if(!o.has("match_subtype") || o.get("match_subtype").getAsString().equals("generic")){
 					l.add(new JsonBlockMatchDescription(e));
 				}else if(o.get("match_subtype").getAsString().equals("player_position")){
 					l.add(new JsonPlayerPositionBlockMatchDescription(e));
@@ -92,6 +94,7 @@ public class BlockSchema {
 		}
 		this.blockMatchDescriptions = l;
 		this.version = blockSchemaObject.get("version").getAsLong();
+		this.blockClassifier = new BlockClassifier(l);
 	}
 
 	public String getInputJsonBlockSchema(){
@@ -112,15 +115,29 @@ public class BlockSchema {
 		return this.blockMatchDescriptions;
 	}
 
+	public Long getVersion(){
+		return this.version;
+	}
+
+	public BlockClassifier getBlockClassifier(){
+		return this.blockClassifier;
+	}
+
 	public String getFirstBlockMatchDescriptionForByteArray(byte [] data) throws Exception{
-		for(BlockMatchDescription bmd : this.blockMatchDescriptions){
-			if(bmd.doesMatch(data)){
-				logger.info("Block class name is: " + bmd.getBlockInstanceClassName());
-				return bmd.getBlockInstanceClassName();
-			}
-		}
-		logger.info("No match found...");
-		if(this.allowUnrecognizedBlockTypes){
+		String blockClassName = this.blockClassifier.getBlockClassNameForByteArray(data);
+		return this.getClassNameOrUnrecognized(blockClassName);
+	}
+
+	public String getFirstBlockMatchDescriptionForByteArrayByLinearScan(byte [] data) throws Exception{
+		/*  Checks every match description in order.  Only used to verify the classifier. */
+		BlockMatchDescription bmd = BlockClassifier.getFirstMatchByLinearScan(this.blockMatchDescriptions, new BlockMatchCandidate(data));
+		return this.getClassNameOrUnrecognized(bmd == null ? null : bmd.getBlockInstanceClassName());
+	}
+
+	private String getClassNameOrUnrecognized(String blockClassName){
+		if(blockClassName != null){
+			return blockClassName;
+		}else if(this.allowUnrecognizedBlockTypes){
 			return UnrecognizedBlock.class.getName();
 		}else{
 			return null;
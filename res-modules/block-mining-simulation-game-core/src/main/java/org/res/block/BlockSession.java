@@ -58,44 +58,30 @@ public abstract class BlockSession {
 	public abstract void close(String reason) throws Exception;
 
 	protected Object monitor = new Object();
-	//  Map of authorizedClientId -> CuboidAddress -> conversationId
-	protected Map<Long, Map<CuboidAddress, Long>> subscribedRegions = new TreeMap<Long, Map<CuboidAddress, Long>>();
+	//  Spatial index of authorizedClientId -> CuboidAddress -> conversationId
+	protected RegionSubscriptionIndex subscribedRegions = new RegionSubscriptionIndex();
+	//  Wire format used when sending on this session.  Stays at version 1 unless the peer asks for more:
+	protected volatile int protocolVersion = BlockMessageBinaryBuffer.PROTOCOL_VERSION_1;
 
 	public BlockSession() throws Exception {
 	}
 
-	private Map<CuboidAddress, Long> getCurrentSubscriptions(Long authorizedClientId){
-		return this.subscribedRegions.containsKey(authorizedClientId) ? this.subscribedRegions.get(authorizedClientId) : new HashMap<CuboidAddress, Long>();
+	public int getProtocolVersion(){
+		return this.protocolVersion;
+	}
+
+	public void setProtocolVersion(int protocolVersion){
+		this.protocolVersion = protocolVersion;
 	}
 
 	public Map<Long, Map<CuboidAddress, Long>> getSubscriptionIntersections(List<CuboidAddress> addresses) throws Exception {
-		Map<Long, Map<CuboidAddress, Long>> intersections = new TreeMap<Long, Map<CuboidAddress, Long>>();
-		for(CuboidAddress address : addresses){
-			for(Map.Entry<Long, Map<CuboidAddress, Long>> e : subscribedRegions.entrySet()){
-				Long authorizedClientId = e.getKey();
-				if(!intersections.containsKey(authorizedClientId)){
-					intersections.put(authorizedClientId, new TreeMap<CuboidAddress, Long>());
-				}
-				Map<CuboidAddress, Long> regionSubscription = e.getValue();
-				for(Map.Entry<CuboidAddress, Long> r : regionSubscription.entrySet()){
-					CuboidAddress subscribedAddress = r.getKey();
-					Long conversationId = r.getValue();
-					CuboidAddress intersection = subscribedAddress.getIntersectionCuboidAddress(address, true);
-					if(intersection != null){
-						intersections.get(authorizedClientId).put(intersection, conversationId);
-					}
-				}
-			}
-		}
-		return intersections;
+		return this.subscribedRegions.getIntersections(addresses);
 	}
 
 	public void unsubscribeFromRegions(List<CuboidAddress> regionsToUnsubscribeFrom, Long authorizedClientId) throws Exception {
-		Long proposedRegionSubscriptionCount = Long.valueOf(getCurrentSubscriptions(authorizedClientId).size() - regionsToUnsubscribeFrom.size());
+		Long proposedRegionSubscriptionCount = Long.valueOf(this.subscribedRegions.getNumSubscriptions(authorizedClientId) - regionsToUnsubscribeFrom.size());
 		logger.info("-proposedRegionSubscriptionCount=" + proposedRegionSubscriptionCount + ", MAX_REGION_SUBSCRIPTIONS=" + BlockSession.MAX_REGION_SUBSCRIPTIONS);
-		for(CuboidAddress regionToUnsubscribe : regionsToUnsubscribeFrom){
-			getCurrentSubscriptions(authorizedClientId).remove(regionToUnsubscribe);
-		}
+		this.subscribedRegions.removeSubscriptions(authorizedClientId, regionsToUnsubscribeFrom);
 	}
 
 	public void subscribeToRegions(BlockModelContext blockModelContext, List<CuboidAddress> regionsToSubscribeTo, Long conversationId, Long authorizedClientId) throws Exception {
@@ -103,19 +89,17 @@ public abstract class BlockSession {
 		List<CuboidAddress> preExistingSubscription = new ArrayList<CuboidAddress>();
 		for(CuboidAddress regionToSubscribeTo : regionsToSubscribeTo){
 			boolean addThisRegion = true;
-			if(getCurrentSubscriptions(authorizedClientId).containsKey(regionToSubscribeTo)){
+			if(this.subscribedRegions.containsSubscription(authorizedClientId, regionToSubscribeTo)){
 				//logger.info("Region " + regionToSubscribeTo + " is already subscribed to. Don't add it.");
 				addThisRegion = false;
 				preExistingSubscription.add(regionToSubscribeTo);
 			}else{
-				for(Map.Entry<CuboidAddress, Long> existingRegionSubscription : getCurrentSubscriptions(authorizedClientId).entrySet()){
-					CuboidAddress intersection = existingRegionSubscription.getKey().getIntersectionCuboidAddress(regionToSubscribeTo, true);
-					if(intersection == null){
-						//logger.info("Region " + regionToSubscribeTo + " has no intersection with " + existingRegionSubscription + ". Add it.");
-					}else{
-						logger.info("Region " + regionToSubscribeTo + " has an intersection (" + intersection + ") with " + existingRegionSubscription + " and is not the same. TODO: Consider this case.");
-						throw new Exception("Refusing to add a subscription that overlaps with another subscription.");
-					}
+				//  Only the subscriptions near this region need to be checked for overlap:
+				CuboidAddress existingRegionSubscription = this.subscribedRegions.findIntersectingSubscription(authorizedClientId, regionToSubscribeTo);
+				if(existingRegionSubscription != null){
+					CuboidAddress intersection = existingRegionSubscription.getIntersectionCuboidAddress(regionToSubscribeTo, true);
+					logger.info("Region " + regionToSubscribeTo + " has an intersection (" + intersection + ") with " + existingRegionSubscription + " and is not the same. TODO: Consider this case.");
+					throw new Exception("Refusing to add a subscription that overlaps with another subscription.");
 				}
 			}
 
@@ -124,7 +108,7 @@ public abstract class BlockSession {
 			}
 		}
 
-		Long proposedRegionSubscriptionCount = Long.valueOf(newSubscriptionsToAdd.size() + getCurrentSubscriptions(authorizedClientId).size());
+		Long proposedRegionSubscriptionCount = Long.valueOf(newSubscriptionsToAdd.size() + this.subscribedRegions.getNumSubscriptions(authorizedClientId));
 		logger.info("+proposedRegionSubscriptionCount=" + proposedRegionSubscriptionCount + ", MAX_REGION_SUBSCRIPTIONS=" + BlockSession.MAX_REGION_SUBSCRIPTIONS);
 
 		if(preExistingSubscription.size() > 0){
@@ -132,12 +116,8 @@ public abstract class BlockSession {
 			blockModelContext.sendBlockMessage(response, this);
 		}else if(proposedRegionSubscriptionCount < BlockSession.MAX_REGION_SUBSCRIPTIONS){
 			for(CuboidAddress subscriptionToAdd : newSubscriptionsToAdd){
-				if(!this.subscribedRegions.containsKey(authorizedClientId)){
-					// First subscription for this client:
-					this.subscribedRegions.put(authorizedClientId, new HashMap<CuboidAddress, Long>());
-				}
 				//  Track the subscription and the correspond conversation id that goes with it:
-				this.subscribedRegions.get(authorizedClientId).put(subscriptionToAdd, conversationId);
+				this.subscribedRegions.addSubscription(authorizedClientId, subscriptionToAdd, conversationId);
 			}
 		}else{
 			ErrorNotificationBlockMessage response = new ErrorNotificationBlockMessage(blockModelContext, BlockMessageErrorType.MAX_REGION_SUBSCRPTIONS_EXCEEDED, conversationId, authorizedClientId);
@@ -48,9 +48,9 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonNull;
 import com.google.gson.reflect.TypeToken;
 
-public class Bornite extends IndividualBlock {
+public class Bornite extends IndividualBlock implements StatelessBlock {
 
-	private byte [] data;
+	private final byte [] data;
 
 	public Bornite(byte [] data) throws Exception {
 		this.data = data;
@@ -0,0 +1,55 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+public interface ChunkBlockStore {
+	/*
+		Storage for the blocks of the chunks that InMemoryChunks keeps loaded.
+		Blocks are addressed by their chunk and their linear array index inside
+		that chunk.  The caller only lets one thread change the store at a time,
+		but implementations must allow containsChunk and readBlock to be called
+		from any number of other threads while that happens.
+	*/
+	public abstract void addChunk(CuboidAddress chunkAddress) throws Exception;  //  Starts out with no blocks written, replaces any existing chunk.
+	public abstract boolean containsChunk(CuboidAddress chunkAddress);
+	public abstract void removeChunk(CuboidAddress chunkAddress) throws Exception;
+	public abstract int getNumChunks();
+	/*  Null block data means the block is uninitialized.  The block class name was already checked by the caller. */
+	public abstract void writeBlock(CuboidAddress chunkAddress, int index, byte [] blockData, String blockClassName) throws Exception;
+	/*  Returns null for a block that was never written. */
+	public abstract IndividualBlock readBlock(CuboidAddress chunkAddress, int index) throws Exception;
+	/*  Like readBlock, but safe to call while another thread changes the store, as long as the result is thrown away when that happened.
+	    Returns null when the block can't be read that way, or was never written. */
+	public abstract IndividualBlock readBlockOptimistically(CuboidAddress chunkAddress, int index) throws Exception;
+	public abstract void close() throws Exception;
+}
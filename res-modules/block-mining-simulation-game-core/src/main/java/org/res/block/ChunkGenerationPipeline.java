@@ -0,0 +1,255 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.lang.invoke.MethodHandles;
+
+/*
+	Fans chunk generation out to a pool of worker threads and keeps up to
+	'writeWindow' chunks either generating or waiting on a server
+	acknowledgement at once.  With zero worker threads, chunks are generated
+	on the calling thread instead.
+*/
+public class ChunkGenerationPipeline {
+
+	public static final int DEFAULT_WRITE_WINDOW = 16;
+
+	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	private final Object lock = new Object();
+	private ChunkGenerator chunkGenerator;
+	private ChunkGenerationPipelineListener listener;
+	private ExecutorService workers = null;
+	private int numWorkerThreads;
+	private int writeWindow;
+	private long nextConversationId;
+	private Map<Long, Long> inFlightWriteStartTimes = new HashMap<Long, Long>(); //  conversationId -> System.nanoTime() when generation finished.
+	private Map<Long, Cuboid> inFlightWriteCuboids = new HashMap<Long, Cuboid>(); //  conversationId -> the chunk that was sent, in case it needs to be sent again.
+	private long numGenerating = 0L;
+	private long maxNumGenerating = 0L;
+	private long maxNumInFlightWrites = 0L;
+	private long numChunksGenerated = 0L;
+	private long numChunksWritten = 0L;
+	private long numChunksWithNothingToWrite = 0L;
+	private long numWritesRejected = 0L;
+	private long totalGenerationNanos = 0L;
+	private long totalWriteAcknowledgementNanos = 0L;
+	private long startTime = System.nanoTime();
+
+	public ChunkGenerationPipeline(ChunkGenerator chunkGenerator, ChunkGenerationPipelineListener listener, int numWorkerThreads, int writeWindow) throws Exception{
+		if(numWorkerThreads < 0){
+			throw new Exception("Number of chunk generation threads can't be negative: " + numWorkerThreads);
+		}
+		if(writeWindow < 1){
+			throw new Exception("Chunk write window must be at least 1: " + writeWindow);
+		}
+		this.chunkGenerator = chunkGenerator;
+		this.listener = listener;
+		this.numWorkerThreads = numWorkerThreads;
+		this.writeWindow = writeWindow;
+		//  Conversation ids just count up from a random place so they're unlikely to clash with unrelated writes.
+		this.nextConversationId = new Random().nextLong();
+		if(numWorkerThreads > 0){
+			this.workers = Executors.newFixedThreadPool(numWorkerThreads, (Runnable r) -> {
+				Thread t = new Thread(r, "chunk-generator");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	public static int getDefaultNumWorkerThreads(){
+		return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	}
+
+	public boolean hasCapacity(){
+		synchronized(lock){
+			return (this.numGenerating + this.inFlightWriteStartTimes.size()) < this.writeWindow;
+		}
+	}
+
+	public void generate(Cuboid cuboid) throws Exception{
+		synchronized(lock){
+			this.numGenerating++;
+			this.maxNumGenerating = Math.max(this.maxNumGenerating, this.numGenerating);
+		}
+		if(this.workers == null){
+			this.generateAndHandOff(cuboid, false);
+		}else{
+			this.workers.execute(() -> {
+				try{
+					this.generateAndHandOff(cuboid, true);
+				}catch(Exception e){
+					this.listener.onChunkGenerationException(e);
+				}
+			});
+		}
+	}
+
+	private void generateAndHandOff(Cuboid cuboid, boolean notifyCapacity) throws Exception{
+		long generationStart = System.nanoTime();
+		Cuboid generatedCuboid = null;
+		try{
+			generatedCuboid = this.chunkGenerator.generateCuboid(cuboid);
+		}finally{
+			Long conversationId = null;
+			long now = System.nanoTime();
+			synchronized(lock){
+				this.numGenerating--;
+				this.totalGenerationNanos += now - generationStart;
+				this.numChunksGenerated++;
+				if(generatedCuboid == null){
+					this.numChunksWithNothingToWrite++;
+				}else{
+					conversationId = this.addInFlightWrite(generatedCuboid, now);
+				}
+			}
+			if(conversationId != null){
+				this.listener.onChunkGenerated(generatedCuboid, conversationId);
+			}else if(notifyCapacity){
+				this.listener.onPipelineCapacityAvailable();
+			}
+		}
+	}
+
+	private Long addInFlightWrite(Cuboid generatedCuboid, long now){
+		Long conversationId = this.nextConversationId++;
+		this.inFlightWriteStartTimes.put(conversationId, now);
+		this.inFlightWriteCuboids.put(conversationId, generatedCuboid);
+		this.maxNumInFlightWrites = Math.max(this.maxNumInFlightWrites, this.inFlightWriteStartTimes.size());
+		return conversationId;
+	}
+
+	/*  Takes up a slot in the write window again for a chunk whose earlier write was rejected, and returns the new conversation id to send it with. */
+	public Long retryWrite(Cuboid generatedCuboid){
+		synchronized(lock){
+			return this.addInFlightWrite(generatedCuboid, System.nanoTime());
+		}
+	}
+
+	/*  Frees the write window slot of a write that the server turned away.  Returns the chunk so it can be sent again, or null if the conversation id wasn't a write from this pipeline. */
+	public Cuboid onWriteRejected(Long conversationId){
+		synchronized(lock){
+			Cuboid generatedCuboid = this.inFlightWriteCuboids.remove(conversationId);
+			if(generatedCuboid != null){
+				this.inFlightWriteStartTimes.remove(conversationId);
+				this.numWritesRejected++;
+			}
+			return generatedCuboid;
+		}
+	}
+
+	/*  Returns false if the conversation id wasn't a write from this pipeline. */
+	public boolean onWriteAcknowledged(Long conversationId){
+		synchronized(lock){
+			Long writeStart = this.inFlightWriteStartTimes.remove(conversationId);
+			this.inFlightWriteCuboids.remove(conversationId);
+			if(writeStart == null){
+				return false;
+			}else{
+				this.numChunksWritten++;
+				this.totalWriteAcknowledgementNanos += System.nanoTime() - writeStart;
+				return true;
+			}
+		}
+	}
+
+	public long getNumGenerating(){
+		synchronized(lock){
+			return this.numGenerating;
+		}
+	}
+
+	public long getNumInFlightWrites(){
+		synchronized(lock){
+			return this.inFlightWriteStartTimes.size();
+		}
+	}
+
+	public long getNumWritesRejected(){
+		synchronized(lock){
+			return this.numWritesRejected;
+		}
+	}
+
+	public long getNumChunksGenerated(){
+		synchronized(lock){
+			return this.numChunksGenerated;
+		}
+	}
+
+	public long getNumChunksWritten(){
+		synchronized(lock){
+			return this.numChunksWritten;
+		}
+	}
+
+	public double getChunksPerSecond(){
+		synchronized(lock){
+			double seconds = (System.nanoTime() - this.startTime) / 1000000000.0;
+			return seconds > 0.0 ? this.numChunksGenerated / seconds : 0.0;
+		}
+	}
+
+	public String getMetricsSummary(){
+		synchronized(lock){
+			double seconds = (System.nanoTime() - this.startTime) / 1000000000.0;
+			return "workerThreads=" + this.numWorkerThreads +
+				", writeWindow=" + this.writeWindow +
+				", generated=" + this.numChunksGenerated +
+				", written=" + this.numChunksWritten +
+				", nothingToWrite=" + this.numChunksWithNothingToWrite +
+				", writesRejected=" + this.numWritesRejected +
+				", chunksPerSecond=" + String.format("%.2f", seconds > 0.0 ? this.numChunksGenerated / seconds : 0.0) +
+				", generating=" + this.numGenerating + " (max " + this.maxNumGenerating + ")" +
+				", inFlightWrites=" + this.inFlightWriteStartTimes.size() + " (max " + this.maxNumInFlightWrites + ")" +
+				", avgGenerationMs=" + String.format("%.3f", this.numChunksGenerated == 0L ? 0.0 : (this.totalGenerationNanos / 1000000.0) / this.numChunksGenerated) +
+				", avgWriteAckMs=" + String.format("%.3f", this.numChunksWritten == 0L ? 0.0 : (this.totalWriteAcknowledgementNanos / 1000000.0) / this.numChunksWritten);
+		}
+	}
+
+	public void shutdown(){
+		if(this.workers != null){
+			this.workers.shutdownNow();
+		}
+		logger.info("Chunk generation pipeline shut down: " + this.getMetricsSummary());
+	}
+}
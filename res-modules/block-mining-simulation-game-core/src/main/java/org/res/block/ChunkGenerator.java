@@ -0,0 +1,251 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.security.MessageDigest;
+
+/*
+	Works out terrain for chunks that haven't been generated yet.  Safe to use
+	from several threads at once:  Each thread gets its own noise generator
+	because the SHA-512 backend keeps a MessageDigest around.
+*/
+public class ChunkGenerator {
+
+	private BlockManagerThreadCollection blockManagerThreadCollection;
+	private Long worldSeed;
+	private ThreadLocal<NoiseGenerator> noiseGenerators = new ThreadLocal<NoiseGenerator>();
+	private static final double SMALL_WAVE_FREQUENCY = 0.08;
+	private static final double SMALL_WAVE_AMPLITUDE = Math.pow(0.08, 1.2);
+	private static final double LARGE_WAVE_FREQUENCY = 0.01;
+	private static final double LARGE_WAVE_AMPLITUDE = Math.pow(0.01, 1.2);
+	private static final double CAVE_FREQUENCY = 0.005;
+	private static final double CAVE_AMPLITUDE = Math.pow(0.005, 1.2);
+
+	public ChunkGenerator(BlockManagerThreadCollection blockManagerThreadCollection, Long worldSeed) throws Exception{
+		this.blockManagerThreadCollection = blockManagerThreadCollection;
+		this.worldSeed = worldSeed;
+		//  Fail early on a bad --noise-backend instead of on the first worker thread:
+		this.noiseGenerators.set(ChunkGenerator.makeNoiseGenerator(blockManagerThreadCollection, worldSeed));
+	}
+
+	public Long getWorldSeed(){
+		return this.worldSeed;
+	}
+
+	public static NoiseGenerator makeNoiseGenerator(BlockManagerThreadCollection blockManagerThreadCollection, Long worldSeed) throws Exception{
+		NoiseBackend noiseBackend = blockManagerThreadCollection.getNoiseBackend();
+		switch(noiseBackend == null ? NoiseBackend.SHA_512 : noiseBackend){
+			case SHA_512:{
+				return new MultiDimensionalNoiseGenerator(worldSeed, MessageDigest.getInstance("SHA-512"));
+			}case FAST_HASH:{
+				return new FastHashNoiseGenerator(worldSeed);
+			}default:{
+				throw new Exception("Unexpected noise backend: " + noiseBackend);
+			}
+		}
+	}
+
+	public NoiseGenerator getNoiseGenerator() throws Exception{
+		NoiseGenerator noiseGenerator = this.noiseGenerators.get();
+		if(noiseGenerator == null){
+			noiseGenerator = ChunkGenerator.makeNoiseGenerator(this.blockManagerThreadCollection, this.worldSeed);
+			this.noiseGenerators.set(noiseGenerator);
+		}
+		return noiseGenerator;
+	}
+
+	/*  Returns a copy of the cuboid with its uninitialized blocks filled in, or null if there was nothing to fill in. */
+	public Cuboid generateCuboid(Cuboid cuboid) throws Exception{
+		NoiseGenerator noiseGenerator = this.getNoiseGenerator();
+		CuboidAddress cuboidAddress = cuboid.getCuboidAddress();
+		long cuboidVolumeInBlocks = cuboidAddress.getVolume();
+		BlockMessageBinaryBuffer newDataForOneCuboid = new BlockMessageBinaryBuffer();
+		long [] newDataLengths = new long [(int)cuboidVolumeInBlocks];
+		for(int j = 0; j < cuboidVolumeInBlocks; j++){
+			newDataLengths[j] = -1L; /*  Default to block not present. */
+		}
+
+		CuboidDataLengths oldDataLengths = cuboid.getCuboidDataLengths();
+		CuboidData oldData = cuboid.getCuboidData();
+		Long numBlocksThatWereInitialized = 0L;
+
+		//this.logMessage("In initializeUninitializedBlocksOnServer for cuboidAddress=" + cuboidAddress);
+		long [] oldLengths = oldDataLengths.getLengths();
+		long [] oldOffsets = oldDataLengths.getOffsets();
+		//  Working out the noise for the whole cuboid at once is only worth it when most of it needs to be generated:
+		CuboidAddress noiseRegion = cuboidAddress.getSubDimensions(0L, 3L);
+		long numBlocksToGenerate = 0L;
+		RegionCursor cursor = new RegionCursor(cuboidAddress);
+		for(; !cursor.isDone(); cursor.next()){
+			if(oldLengths[(int)cursor.getLinearArrayIndex()] < 0L && cursor.getValueAtIndex(3) == 0L){
+				numBlocksToGenerate++;
+			}
+		}
+		boolean useRegionNoise = numBlocksToGenerate * 2L >= noiseRegion.getVolume();
+		double [] smallWaveOctaves = null;
+		double [] largeWaveOctaves = null;
+		double [] caveOctaves = null;
+		long [] coordinate = new long [3];
+		cursor = new RegionCursor(cuboidAddress);
+		for(; !cursor.isDone(); cursor.next()){
+			int blockOffsetInArray = (int)cursor.getLinearArrayIndex();
+			long sizeOfBlock = oldLengths[blockOffsetInArray];
+			long offsetOfBlock = oldOffsets[blockOffsetInArray];
+			if(sizeOfBlock < 0L){
+				//  This block is uninitialized, initialize it.
+				byte [] blockData = null;
+				if(cursor.getValueAtIndex(3) == 0L){  //  Higher dimensional data like player inventory, player position etc. is never generated.
+					if(useRegionNoise){
+						if(smallWaveOctaves == null){
+							smallWaveOctaves = noiseGenerator.octaveNoiseForRegion(noiseRegion, SMALL_WAVE_FREQUENCY, SMALL_WAVE_AMPLITUDE);
+							largeWaveOctaves = noiseGenerator.octaveNoiseForRegion(noiseRegion, LARGE_WAVE_FREQUENCY, LARGE_WAVE_AMPLITUDE);
+							caveOctaves = noiseGenerator.octaveNoiseForRegion(noiseRegion, CAVE_FREQUENCY, CAVE_AMPLITUDE);
+						}
+						int noiseIndex = (int)noiseRegion.getLinearArrayIndexForXYZ(cursor.getX(), cursor.getY(), cursor.getZ());
+						blockData = this.getBlockDataForNoise(cursor.getX(), cursor.getY(), cursor.getZ(), smallWaveOctaves[noiseIndex], largeWaveOctaves[noiseIndex], caveOctaves[noiseIndex]);
+					}else{
+						coordinate[0] = cursor.getX();
+						coordinate[1] = cursor.getY();
+						coordinate[2] = cursor.getZ();
+						blockData = this.getBlockDataForCoordinate(noiseGenerator, coordinate);
+					}
+				}
+				if(blockData == null){
+					newDataLengths[blockOffsetInArray] = -1; // Keep it uninitialized.
+				}else{
+					newDataLengths[blockOffsetInArray] = blockData.length;
+					newDataForOneCuboid.writeBytes(blockData);
+					numBlocksThatWereInitialized++;
+				}
+			}else{
+				//  Block already initialized.
+				newDataLengths[blockOffsetInArray] = sizeOfBlock;
+				newDataForOneCuboid.writeBytes(oldData.getDataAtOffset(offsetOfBlock, sizeOfBlock));
+			}
+		}
+
+		CuboidDataLengths newCuboidDataLengths = new CuboidDataLengths(cuboidAddress, newDataLengths);
+		CuboidData newCuboidData = new CuboidData(newDataForOneCuboid.getUsedBuffer());
+		Cuboid newGeneratedCuboid = new Cuboid(cuboidAddress, newCuboidDataLengths, newCuboidData);
+
+		if(numBlocksThatWereInitialized > 0L){ //  Only send the update back when there is actually something to initialize (otherwise, we get stuck in a loop)
+			return newGeneratedCuboid;
+		}else{
+			return null;
+		}
+	}
+
+	public byte [] getBlockDataAtCoordinate(Coordinate c) throws Exception{
+		return this.getBlockDataAtXYZW(c.getLongX(), c.getLongY(), c.getLongZ(), c.getLongValueAtIndex(3L));
+	}
+
+	public byte [] getBlockDataAtXYZW(long x, long y, long z, long w) throws Exception{
+		//  Higher dimensional data like player inventory, player position etc.
+		if(w != 0L){
+			return null;
+		}
+
+		long [] coordinate = new long [3];
+		coordinate[0] = x;
+		coordinate[1] = y;
+		coordinate[2] = z;
+		return this.getBlockDataForCoordinate(this.getNoiseGenerator(), coordinate);
+	}
+
+	private byte [] getBlockDataForCoordinate(NoiseGenerator noiseGenerator, long [] coordinate) throws Exception{
+		return this.getBlockDataForNoise(
+			coordinate[0], coordinate[1], coordinate[2],
+			noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {SMALL_WAVE_FREQUENCY}, new double [] {SMALL_WAVE_AMPLITUDE}),
+			noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {LARGE_WAVE_FREQUENCY}, new double [] {LARGE_WAVE_AMPLITUDE}),
+			noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {CAVE_FREQUENCY}, new double [] {CAVE_AMPLITUDE})
+		);
+	}
+
+	public byte [] getBlockDataForNoise(long x, long y, long z, double smallWaveOctave, double largeWaveOctave, double caveOctave) throws Exception{
+		double smallWaveNoise = smallWaveOctave * 100;
+		double largeWaveNoise = (largeWaveOctave * 10000) - 3.0;
+		double caveNoise = (caveOctave * 10000);
+		double positiveLargeWaveNoise = largeWaveNoise < 0.0 ? 0.0 : largeWaveNoise; //  The large wave noise is used to 'switch on/off' the smaller wave noise.
+		double noiseAtPixel = smallWaveNoise * positiveLargeWaveNoise;
+		noiseAtPixel = noiseAtPixel > 1.0 ? 1.0 : noiseAtPixel;
+		noiseAtPixel = noiseAtPixel < -1.0 ? -1.0 : noiseAtPixel;
+
+		/*  Blank sphere around origin: */
+		if(((x * x) + (y * y) + (z * z)) < (8L * 8L * 8L)){
+			return "".getBytes("UTF-8");
+		}
+
+		/*  Caves */
+		if(caveNoise >= -0.2 && caveNoise <= 0.2){
+			return "".getBytes("UTF-8");
+		}
+
+		/*  Below Ground */
+		if(y < 0L){
+			if(noiseAtPixel <= 0.60){
+				return blockManagerThreadCollection.getBlockDataForClass(Rock.class);
+			}else if(noiseAtPixel <= 1.0){
+				//  Fill up this range of gradient with whatever interesting blocks are currently in the game:
+				double maxDifference = 1.0 - 0.60;
+				double observedDifference = noiseAtPixel - 0.60;
+				double fraction = observedDifference / maxDifference;
+				int index = Math.min(ChunkInitializerThreadState.interestingBlocks.length -1, (int)(fraction * ChunkInitializerThreadState.interestingBlocks.length));
+				return blockManagerThreadCollection.getBlockDataForClass((Class)ChunkInitializerThreadState.interestingBlocks[index]);
+			}else{
+				return blockManagerThreadCollection.getBlockDataForClass(IronPick.class);
+			}
+		/*  Ground Level */
+		}else if(y == 0L){
+			if(smallWaveNoise <= -0.6){
+				return blockManagerThreadCollection.getBlockDataForClass(WoodenBlock.class);
+			}else if(smallWaveNoise <= 0.5){
+				return "".getBytes("UTF-8");
+			}else if(smallWaveNoise <= 0.90){
+				return blockManagerThreadCollection.getBlockDataForClass(Rock.class);
+			}else if(smallWaveNoise <= 1.0){
+				return blockManagerThreadCollection.getBlockDataForClass(IronOxide.class);
+			}else{
+				return "".getBytes("UTF-8");
+			}
+		/*  Above Ground */
+		}else{
+			if(smallWaveNoise <= -0.7){
+				return blockManagerThreadCollection.getBlockDataForClass(WoodenBlock.class);
+			}else if(smallWaveNoise <= 1.0){
+				return "".getBytes("UTF-8");
+			}else{
+				return "".getBytes("UTF-8");
+			}
+		}
+	}
+}
@@ -46,6 +46,11 @@ public class ChunkInitializerNotifyMapAreaChangeWorkItem extends ChunkInitialize
 		this.mapArea = mapArea;
 	}
 
+	@Override
+	public Object getCoalescingKey(){
+		return ChunkInitializerNotifyMapAreaChangeWorkItem.class;
+	}
+
 	public void doWork() throws Exception{
 		this.chunkInitializerThreadState.onMapAreaChange(mapArea);
 	}
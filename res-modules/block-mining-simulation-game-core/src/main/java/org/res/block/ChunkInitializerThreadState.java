@@ -37,6 +37,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.ArrayDeque;
 import java.util.Random;
 
 import java.util.Set;
@@ -48,16 +50,19 @@ import java.lang.Thread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
-import java.security.MessageDigest;
 
-public class ChunkInitializerThreadState extends UIEventReceiverThreadState<ChunkInitializerWorkItem> {
+public class ChunkInitializerThreadState extends UIEventReceiverThreadState<ChunkInitializerWorkItem> implements ChunkGenerationPipelineListener {
 
 	protected BlockManagerThreadCollection blockManagerThreadCollection = null;
-	private Set<Long> outstandingChunkWriteConversations = new HashSet<Long>();
-	private MultiDimensionalNoiseGenerator noiseGenerator = new MultiDimensionalNoiseGenerator(0L, MessageDigest.getInstance("SHA-512"));
+	private ChunkGenerator chunkGenerator;
+	private ChunkGenerationPipeline chunkGenerationPipeline;
+	private long maxNumCuboidsToInitialize = 0L;
 	private Coordinate playerPosition = null;
 	private CuboidAddress reachableMapArea = null;
 	private Map<CuboidAddress, Cuboid> cuboidsToInitialize = new HashMap<CuboidAddress, Cuboid>();
+	private Deque<Cuboid> rejectedWrites = new ArrayDeque<Cuboid>();
+	private boolean isUsingDefaultWorldSeed = false;
+	private ChunkLoadScheduler initializationScheduler;
 	private ClientBlockModelContext clientBlockModelContext;
 	private InMemoryChunks inMemoryChunks;
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -103,6 +108,10 @@ public class ChunkInitializerThreadState extends UIEventReceiverThreadState<Chun
 		this.blockManagerThreadCollection = blockManagerThreadCollection;
 		this.clientBlockModelContext = clientBlockModelContext;
 		this.inMemoryChunks = inMemoryChunks;
+		this.initializationScheduler = new ChunkLoadScheduler(blockManagerThreadCollection.getChunkSizeCuboidAddress(), ChunkLoadScheduler.DEFAULT_DIRECTION_BIAS);
+		this.initializationScheduler.setPlayerPosition(0L, new Coordinate(Arrays.asList(0L, 0L, 0L, 0L)));
+		//  Only the newest map area matters, so older ones that are still queued get replaced:
+		this.workItemQueue.configure(null, WorkItemQueueOverflowPolicy.COALESCE, null);
 	}
 
 	protected void init(Object o) throws Exception{
@@ -122,6 +131,9 @@ public class ChunkInitializerThreadState extends UIEventReceiverThreadState<Chun
 	}
 
 	public void destroy(Object o) throws Exception{
+		if(this.chunkGenerationPipeline != null){
+			this.chunkGenerationPipeline.shutdown();
+		}
 
 	}
 
@@ -140,6 +152,7 @@ public class ChunkInitializerThreadState extends UIEventReceiverThreadState<Chun
 
 	public void onPlayerPositionChange(AuthorizedPlayerPositionXYZ newPosition) throws Exception{
 		this.playerPosition = newPosition == null ? null : newPosition.getPlayerPositionXYZ().getPosition();
+		this.initializationScheduler.setPlayerPosition(0L, this.playerPosition == null ? new Coordinate(Arrays.asList(0L, 0L, 0L, 0L)) : this.playerPosition);
 	}
 
 	public void onMapAreaChange(CuboidAddress reachableMapArea) throws Exception{
@@ -148,160 +161,79 @@ public class ChunkInitializerThreadState extends UIEventReceiverThreadState<Chun
 
 	public void onNewCuboidToInitialize(Cuboid cuboid) throws Exception{
 		cuboidsToInitialize.put(cuboid.getCuboidAddress(), cuboid);
+		this.maxNumCuboidsToInitialize = Math.max(this.maxNumCuboidsToInitialize, cuboidsToInitialize.size());
+		this.initializationScheduler.addChunk(cuboid.getCuboidAddress());
 		this.doChunkInitializationActivity();
 	}
 
-	private List<CuboidAddress> getClosestCuboidAddressList(Set<CuboidAddress> cuboidAddresses, Coordinate currentCoordinate) throws Exception {
-
-		if(currentCoordinate == null){
-			currentCoordinate = new Coordinate(Arrays.asList(0L, 0L, 0L, 0L));
-		}
-
-		Map<Double, CuboidAddress> distanceSortedTreemap = new TreeMap<Double, CuboidAddress>();
-		for(CuboidAddress ca : cuboidAddresses){
-			Double distance = ca.getCentroidDistanceFromCoordinate(currentCoordinate);
-			//blockModelContext.logMessage("Distance was " + distance + " for point " + currentCoordinate + " to cuboid " + ca + ".");
-			distanceSortedTreemap.put(distance, ca);
-		}
-
-		List<CuboidAddress> sortedCuboidAddresses = new ArrayList<CuboidAddress>();
-		for(Map.Entry<Double, CuboidAddress> e : distanceSortedTreemap.entrySet()){
-			sortedCuboidAddresses.add(e.getValue());
+	public void onWorldSeedUnavailable(String reason) throws Exception{
+		if(this.chunkGenerator == null){
+			logger.info("Chunk initializer thread: no world seed because " + reason + ".  Using the default world seed " + ServerBlockModelContext.DEFAULT_WORLD_SEED + " that older servers generate with.");
+			this.isUsingDefaultWorldSeed = true;
+			this.onWorldSeed(ServerBlockModelContext.DEFAULT_WORLD_SEED);
 		}
-
-		return sortedCuboidAddresses;
 	}
 
-	public void initializeOneCuboid(Cuboid cuboid) throws Exception{
-		CuboidAddress cuboidAddress = cuboid.getCuboidAddress();
-		long cuboidVolumeInBlocks = cuboidAddress.getVolume();
-		BlockMessageBinaryBuffer newDataForOneCuboid = new BlockMessageBinaryBuffer();
-		long [] newDataLengths = new long [(int)cuboidVolumeInBlocks];
-		for(int j = 0; j < cuboidVolumeInBlocks; j++){
-			newDataLengths[j] = -1L; /*  Default to block not present. */
-		}
-
-		CuboidDataLengths oldDataLengths = cuboid.getCuboidDataLengths();
-		CuboidData oldData = cuboid.getCuboidData();
-		Long numBlocksThatWereInitialized = 0L;
-
-		//this.logMessage("In initializeUninitializedBlocksOnServer for cuboidAddress=" + cuboidAddress);
-		RegionIteration regionIteration = new RegionIteration(cuboidAddress.getCanonicalLowerCoordinate(), cuboidAddress);
-		do{
-			Coordinate currentCoordinate = regionIteration.getCurrentCoordinate();
-			long blockOffsetInArray = cuboidAddress.getLinearArrayIndexForCoordinate(currentCoordinate);
-			long sizeOfBlock = oldDataLengths.getLengths()[(int)blockOffsetInArray];
-			long offsetOfBlock = oldDataLengths.getOffsets()[(int)blockOffsetInArray];
-			IndividualBlock blockWritten = null;
-			if(sizeOfBlock < 0L){
-				//  This block is uninitialized, initialize it.
-				byte [] blockData = getBlockDataAtCoordinate(currentCoordinate);
-				if(blockData == null){
-					newDataLengths[(int)blockOffsetInArray] = -1; // Keep it uninitialized.
-				}else{
-					newDataLengths[(int)blockOffsetInArray] = blockData.length;
-					newDataForOneCuboid.writeBytes(blockData);
-					numBlocksThatWereInitialized++;
-				}
-			}else{
-				//  Block already initialized.
-				newDataLengths[(int)blockOffsetInArray] = sizeOfBlock;
-				newDataForOneCuboid.writeBytes(oldData.getDataAtOffset(offsetOfBlock, sizeOfBlock));
+	public void onWorldSeed(Long worldSeed) throws Exception{
+		if(this.chunkGenerator == null){
+			logger.info("Chunk initializer thread: generating new terrain with world seed " + worldSeed + ".");
+			Integer numGenerationThreads = this.blockManagerThreadCollection.getChunkGenerationThreads();
+			Integer writeWindow = this.blockManagerThreadCollection.getChunkWriteWindow();
+			this.chunkGenerator = new ChunkGenerator(this.blockManagerThreadCollection, worldSeed);
+			this.chunkGenerationPipeline = new ChunkGenerationPipeline(
+				this.chunkGenerator,
+				this,
+				numGenerationThreads == null ? ChunkGenerationPipeline.getDefaultNumWorkerThreads() : numGenerationThreads,
+				writeWindow == null ? ChunkGenerationPipeline.DEFAULT_WRITE_WINDOW : writeWindow
+			);
+			//  Chunks that came in before the seed was known have been waiting:
+			this.doChunkInitializationActivity();
+		}else if(!this.chunkGenerator.getWorldSeed().equals(worldSeed)){
+			if(this.isUsingDefaultWorldSeed){
+				throw new Exception("The server's world seed " + worldSeed + " arrived after terrain generation had already fallen back to the default world seed " + this.chunkGenerator.getWorldSeed() + ".");
 			}
-		}while (regionIteration.incrementCoordinateWithinCuboidAddress());
-
-		CuboidDataLengths newCuboidDataLengths = new CuboidDataLengths(cuboidAddress, newDataLengths);
-		CuboidData newCuboidData = new CuboidData(newDataForOneCuboid.getUsedBuffer());
-		Cuboid newGeneratedCuboid = new Cuboid(cuboidAddress, newCuboidDataLengths, newCuboidData);
-
-		if(numBlocksThatWereInitialized > 0L){ //  Only send the update back when there is actually something to initialize (otherwise, we get stuck in a loop)
-			Long conversationId = this.getUnusedOustandingChunkWriteConversationId();
-			clientBlockModelContext.submitChunkToServer(cuboidAddress.getNumDimensions(), Arrays.asList(newGeneratedCuboid), WorkItemPriority.PRIORITY_LOW, conversationId);
-			outstandingChunkWriteConversations.add(conversationId);
+			throw new Exception("World seed changed from " + this.chunkGenerator.getWorldSeed() + " to " + worldSeed + " while the client was running.");
 		}
 	}
 
 	public byte [] getBlockDataAtCoordinate(Coordinate c) throws Exception{
-		//  Higher dimensional data like player inventory, player position etc.
-		if(!c.getValueAtIndex(3L).equals(0L)){
-			return null;
-		}
+		return this.chunkGenerator.getBlockDataAtXYZW(c.getLongX(), c.getLongY(), c.getLongZ(), c.getLongValueAtIndex(3L));
+	}
 
-		long [] coordinate = new long [3];
-		coordinate[0] = c.getX();
-		coordinate[1] = c.getY();
-		coordinate[2] = c.getZ();
-		double smallWaveNoise = noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {0.08}, new double [] {Math.pow(0.08, 1.2)}) * 100;
-		double largeWaveNoise = (noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {0.01}, new double [] {Math.pow(0.01, 1.2)}) * 10000) - 3.0;
-		double caveNoise = (noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {0.005}, new double [] {Math.pow(0.005, 1.2)}) * 10000);
-		double positiveLargeWaveNoise = largeWaveNoise < 0.0 ? 0.0 : largeWaveNoise; //  The large wave noise is used to 'switch on/off' the smaller wave noise.
-		double noiseAtPixel = smallWaveNoise * positiveLargeWaveNoise;
-		noiseAtPixel = noiseAtPixel > 1.0 ? 1.0 : noiseAtPixel;
-		noiseAtPixel = noiseAtPixel < -1.0 ? -1.0 : noiseAtPixel;
-
-		/*  Blank sphere around origin: */
-		if(((c.getX() * c.getX()) + (c.getY() * c.getY()) + (c.getZ() * c.getZ())) < (8L * 8L * 8L)){
-			return "".getBytes("UTF-8");
-		}
+	public byte [] getBlockDataAtXYZW(long x, long y, long z, long w) throws Exception{
+		return this.chunkGenerator.getBlockDataAtXYZW(x, y, z, w);
+	}
 
-		/*  Caves */
-		if(caveNoise >= -0.2 && caveNoise <= 0.2){
-			return "".getBytes("UTF-8");
-		}
+	public void onChunkGenerated(Cuboid generatedCuboid, Long conversationId) throws Exception{
+		CuboidAddress cuboidAddress = generatedCuboid.getCuboidAddress();
+		clientBlockModelContext.submitChunkToServer(cuboidAddress.getNumDimensions(), Arrays.asList(generatedCuboid), WorkItemPriority.PRIORITY_LOW, conversationId);
+	}
 
-		/*  Below Ground */
-		if(c.getY() < 0L){
-			if(noiseAtPixel <= 0.60){
-				return clientBlockModelContext.getBlockDataForClass(Rock.class);
-			}else if(noiseAtPixel <= 1.0){
-				//  Fill up this range of gradient with whatever interesting blocks are currently in the game:
-				double maxDifference = 1.0 - 0.60;
-				double observedDifference = noiseAtPixel - 0.60;
-				double fraction = observedDifference / maxDifference;
-				int index = Math.min(interestingBlocks.length -1, (int)(fraction * interestingBlocks.length));
-				return clientBlockModelContext.getBlockDataForClass((Class)interestingBlocks[index]);
-			}else{
-				return clientBlockModelContext.getBlockDataForClass(IronPick.class);
-			}
-		/*  Ground Level */
-		}else if(c.getY().equals(0L)){
-			if(smallWaveNoise <= -0.6){
-				return clientBlockModelContext.getBlockDataForClass(WoodenBlock.class);
-			}else if(smallWaveNoise <= 0.5){
-				return "".getBytes("UTF-8");
-			}else if(smallWaveNoise <= 0.90){
-				return clientBlockModelContext.getBlockDataForClass(Rock.class);
-			}else if(smallWaveNoise <= 1.0){
-				return clientBlockModelContext.getBlockDataForClass(IronOxide.class);
-			}else{
-				return "".getBytes("UTF-8");
-			}
-		/*  Above Ground */
-		}else{
-			if(smallWaveNoise <= -0.7){
-				return clientBlockModelContext.getBlockDataForClass(WoodenBlock.class);
-			}else if(smallWaveNoise <= 1.0){
-				return "".getBytes("UTF-8");
-			}else{
-				return "".getBytes("UTF-8");
-			}
-		}
+	public void onPipelineCapacityAvailable() throws Exception{
+		this.putWorkItem(new ChunkInitializerPipelineCapacityWorkItem(this), WorkItemPriority.PRIORITY_LOW);
 	}
-	public Long getUnusedOustandingChunkWriteConversationId(){
-		while (true){
-			Long l = new Random().nextLong();
-			if(!outstandingChunkWriteConversations.contains(l)){
-				return l;
-			}
-		}
+
+	public void onChunkGenerationException(Exception e){
+		logger.info("Chunk generation failed: " + e.getMessage());
+		this.blockManagerThreadCollection.setIsProcessFinished(true, e);
+	}
+
+	public String getMetricsSummary(){
+		return "queued=" + this.cuboidsToInitialize.size() + " (max " + this.maxNumCuboidsToInitialize + "), rejectedWritesToRetry=" + this.rejectedWrites.size() + ", " + (this.chunkGenerationPipeline == null ? "waiting on the world seed" : this.chunkGenerationPipeline.getMetricsSummary());
 	}
 
 	public void doChunkInitializationActivity() throws Exception{
-		Long maxOutstandingInitializingChunkWrites = 2L;
-		while(cuboidsToInitialize.size() > 0 && outstandingChunkWriteConversations.size() < maxOutstandingInitializingChunkWrites){
-			List<CuboidAddress> closestCuboidAddressList = this.getClosestCuboidAddressList(cuboidsToInitialize.keySet(), this.playerPosition);
-			if(closestCuboidAddressList.size() > 0){
-				CuboidAddress cuboidAddressToInitialize = closestCuboidAddressList.get(0);
+		if(this.chunkGenerationPipeline == null){
+			return; //  Nothing can be generated until the server says what the world seed is.
+		}
+		//  Chunks the server was too busy to write go out again before anything new is generated:
+		while(this.rejectedWrites.size() > 0 && this.chunkGenerationPipeline.hasCapacity()){
+			Cuboid generatedCuboid = this.rejectedWrites.pollFirst();
+			this.onChunkGenerated(generatedCuboid, this.chunkGenerationPipeline.retryWrite(generatedCuboid));
+		}
+		while(cuboidsToInitialize.size() > 0 && this.chunkGenerationPipeline.hasCapacity()){
+			CuboidAddress cuboidAddressToInitialize = this.initializationScheduler.pollFirstChunk();
+			if(cuboidAddressToInitialize != null){
 				//  Don't bother initializing chunks that are not visible in the game area, and also not loaded/loading in memory:
 				//  This could still discard a few chunks from the initialization queue if they are outside the visible game area, but in the
 				//  initially loaded area before inMemoryChunks has had a chance to issue the pending request.  You can just move around to correctly load the area though.
@@ -313,24 +245,34 @@ public class ChunkInitializerThreadState extends UIEventReceiverThreadState<Chun
 					logger.info("Chunk initializer thread discarding cuboid " + cuboidAddressToInitialize + " because it's not in a loaded memory area anymore.");
 				}else{
 					logger.info("Initializing this cuboid: " + cuboidAddressToInitialize + " because it was in the loaded memory area.");
-					this.initializeOneCuboid(cuboidsToInitialize.get(cuboidAddressToInitialize));
+					this.chunkGenerationPipeline.generate(cuboidsToInitialize.get(cuboidAddressToInitialize));
 				}
 				cuboidsToInitialize.remove(cuboidAddressToInitialize);
 			}else{
-				logger.info("Chunk initializer thread: no more cuboids left to initialize.");
+				logger.info("Chunk initializer thread: no more cuboids left to initialize.  " + this.getMetricsSummary());
 			}
 		}
 	}
 
 	public void onNewAcknowledgement(Long conversationId) throws Exception{
-		if(outstandingChunkWriteConversations.contains(conversationId)){
-			outstandingChunkWriteConversations.remove(conversationId);  // Server acknowledged this chunk write
+		if(this.chunkGenerationPipeline != null && this.chunkGenerationPipeline.onWriteAcknowledged(conversationId)){  // Server acknowledged this chunk write
 			this.doChunkInitializationActivity();
 		}else{
 			logger.info("Chunk initializer thread: conversationId=" + conversationId + " was not part of any initialied block write.  Most likely an unrelated write.");
 		}
 	}
 
+	public void onWriteRejected(Long conversationId) throws Exception{
+		Cuboid generatedCuboid = this.chunkGenerationPipeline == null ? null : this.chunkGenerationPipeline.onWriteRejected(conversationId);
+		if(generatedCuboid == null){
+			logger.info("Chunk initializer thread: rejected conversationId=" + conversationId + " was not part of any initialied block write.  Most likely an unrelated write.");
+		}else{
+			logger.info("Chunk initializer thread: the server rejected the write of " + generatedCuboid.getCuboidAddress() + " with conversationId=" + conversationId + ".  It will be sent again.");
+			this.rejectedWrites.addLast(generatedCuboid);
+			this.doChunkInitializationActivity();
+		}
+	}
+
 	public boolean doBackgroundProcessing() throws Exception{
 		return false;
 	}
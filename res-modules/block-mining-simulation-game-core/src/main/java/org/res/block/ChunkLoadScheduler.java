@@ -0,0 +1,244 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+public class ChunkLoadScheduler {
+
+	/*
+		Keeps the chunks that are waiting to be loaded ordered by how soon they
+		should be loaded.  The order is by priority and then by chunk address, so
+		chunks at the same distance are never dropped and always come out in the
+		same order.
+
+		The priority of a chunk is its smallest distance from any player, made
+		smaller for chunks in the direction the player is moving and bigger for
+		chunks behind them.  Priorities are measured from where a player entered
+		their current chunk, so they only need to be updated when a player
+		crosses into a different chunk.
+	*/
+
+	public static final double DEFAULT_DIRECTION_BIAS = 0.5;
+
+	private static class ScheduledChunk implements Comparable<ScheduledChunk> {
+		private final double priority;
+		private final CuboidAddress chunkAddress;
+
+		public ScheduledChunk(double priority, CuboidAddress chunkAddress){
+			this.priority = priority;
+			this.chunkAddress = chunkAddress;
+		}
+
+		@Override
+		public int compareTo(ScheduledChunk other){
+			int priorityComparison = Double.compare(this.priority, other.priority);
+			return priorityComparison == 0 ? this.chunkAddress.compareTo(other.chunkAddress) : priorityComparison;
+		}
+	}
+
+	private static class PlayerMovement {
+		private final CuboidAddress chunkAddress;  //  The chunk the player is currently in.
+		private final double [] position;  //  Where the player entered that chunk.
+		private final double [] direction;  //  Unit vector of the last chunk to chunk move, or null if the player hasn't moved yet.
+
+		public PlayerMovement(CuboidAddress chunkAddress, double [] position, double [] direction){
+			this.chunkAddress = chunkAddress;
+			this.position = position;
+			this.direction = direction;
+		}
+	}
+
+	private final CuboidAddress chunkSize;
+	private final double directionBias;
+	private final TreeSet<ScheduledChunk> orderedChunks = new TreeSet<ScheduledChunk>();
+	private final Map<CuboidAddress, ScheduledChunk> scheduledChunks = new HashMap<CuboidAddress, ScheduledChunk>();
+	private final Map<Long, PlayerMovement> players = new TreeMap<Long, PlayerMovement>();
+
+	private long numReprioritizations = 0L;
+	private long numPriorityChanges = 0L;
+
+	public ChunkLoadScheduler(CuboidAddress chunkSize, double directionBias) throws Exception{
+		if(directionBias < 0.0 || directionBias >= 1.0){
+			throw new Exception("Direction bias must be at least 0 and less than 1, but it was " + directionBias + ".");
+		}
+		this.chunkSize = chunkSize;
+		this.directionBias = directionBias;
+	}
+
+	private static double [] toDoubles(Coordinate c){
+		double [] rtn = new double [c.getNumDimensions().intValue()];
+		for(int i = 0; i < rtn.length; i++){
+			rtn[i] = (double)c.getLongValueAtIndex(i);
+		}
+		return rtn;
+	}
+
+	public double getPriority(CuboidAddress chunkAddress){
+		if(this.players.size() == 0){
+			return 0.0;  //  Nobody to be close to, so fall back to address order.
+		}
+		double rtn = Double.MAX_VALUE;
+		for(PlayerMovement player : this.players.values()){
+			int numDimensions = Math.min(player.position.length, chunkAddress.getNumDimensions().intValue());
+			double [] offset = new double [numDimensions];
+			double totalSquare = 0.0;
+			for(int i = 0; i < numDimensions; i++){
+				double centroid = (double)chunkAddress.getLowerValueForIndex(i) + ((double)chunkAddress.getWidthForIndex(i) / 2.0);
+				offset[i] = centroid - player.position[i];
+				totalSquare += offset[i] * offset[i];
+			}
+			double distance = Math.sqrt(totalSquare);
+			double priority = distance;
+			if(player.direction != null && distance > 0.0){
+				double dot = 0.0;
+				for(int i = 0; i < numDimensions; i++){
+					dot += offset[i] * player.direction[i];
+				}
+				//  Cosine of the angle between the movement and the chunk, so ahead is 1 and behind is -1:
+				priority = distance * (1.0 - this.directionBias * (dot / distance));
+			}
+			rtn = Math.min(rtn, priority);
+		}
+		return rtn;
+	}
+
+	public void setPlayerPosition(Long playerId, Coordinate position) throws Exception{
+		CuboidAddress chunkAddress = CuboidAddress.blockCoordinateToChunkCuboidAddress(position, this.chunkSize);
+		PlayerMovement previous = this.players.get(playerId);
+		if(previous != null && previous.chunkAddress.equals(chunkAddress)){
+			return;  //  Still in the same chunk, priorities haven't changed.
+		}
+		double [] newPosition = ChunkLoadScheduler.toDoubles(position);
+		double [] direction = previous == null ? null : previous.direction;
+		if(previous != null && previous.position.length == newPosition.length){
+			double [] move = new double [newPosition.length];
+			double length = 0.0;
+			for(int i = 0; i < move.length; i++){
+				move[i] = newPosition[i] - previous.position[i];
+				length += move[i] * move[i];
+			}
+			length = Math.sqrt(length);
+			if(length > 0.0){
+				for(int i = 0; i < move.length; i++){
+					move[i] /= length;
+				}
+				direction = move;
+			}
+		}
+		this.players.put(playerId, new PlayerMovement(chunkAddress, newPosition, direction));
+		this.reprioritize();
+	}
+
+	public void removePlayer(Long playerId){
+		if(this.players.remove(playerId) != null){
+			this.reprioritize();
+		}
+	}
+
+	private void reprioritize(){
+		//  Every chunk is rescored, because moving the point that distances are measured from changes the
+		//  priority of nearly every chunk, not just the ones near the player.  Since almost all of them move,
+		//  the order is rebuilt from scratch instead of removing and re-adding each chunk:
+		this.numReprioritizations++;
+		this.orderedChunks.clear();
+		for(Map.Entry<CuboidAddress, ScheduledChunk> e : this.scheduledChunks.entrySet()){
+			double newPriority = this.getPriority(e.getKey());
+			if(newPriority != e.getValue().priority){
+				e.setValue(new ScheduledChunk(newPriority, e.getKey()));
+				this.numPriorityChanges++;
+			}
+			this.orderedChunks.add(e.getValue());
+		}
+	}
+
+	public boolean addChunk(CuboidAddress chunkAddress){
+		if(this.scheduledChunks.containsKey(chunkAddress)){
+			return false;
+		}
+		ScheduledChunk scheduledChunk = new ScheduledChunk(this.getPriority(chunkAddress), chunkAddress);
+		this.scheduledChunks.put(chunkAddress, scheduledChunk);
+		this.orderedChunks.add(scheduledChunk);
+		return true;
+	}
+
+	public boolean removeChunk(CuboidAddress chunkAddress){
+		ScheduledChunk scheduledChunk = this.scheduledChunks.remove(chunkAddress);
+		if(scheduledChunk == null){
+			return false;
+		}
+		this.orderedChunks.remove(scheduledChunk);
+		return true;
+	}
+
+	public boolean containsChunk(CuboidAddress chunkAddress){
+		return this.scheduledChunks.containsKey(chunkAddress);
+	}
+
+	public int size(){
+		return this.scheduledChunks.size();
+	}
+
+	/*  The next chunks that should be loaded, without removing them. */
+	public List<CuboidAddress> getFirstChunks(long maxChunks){
+		List<CuboidAddress> rtn = new ArrayList<CuboidAddress>();
+		Iterator<ScheduledChunk> it = this.orderedChunks.iterator();
+		while(it.hasNext() && rtn.size() < maxChunks){
+			rtn.add(it.next().chunkAddress);
+		}
+		return rtn;
+	}
+
+	public CuboidAddress pollFirstChunk(){
+		ScheduledChunk first = this.orderedChunks.pollFirst();
+		if(first == null){
+			return null;
+		}
+		this.scheduledChunks.remove(first.chunkAddress);
+		return first.chunkAddress;
+	}
+
+	public long getNumReprioritizations(){
+		return this.numReprioritizations;
+	}
+
+	public long getNumPriorityChanges(){
+		return this.numPriorityChanges;
+	}
+}
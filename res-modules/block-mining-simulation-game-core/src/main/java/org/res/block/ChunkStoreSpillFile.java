@@ -0,0 +1,131 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.lang.invoke.MethodHandles;
+
+public class ChunkStoreSpillFile {
+
+	/*
+		A temporary file that one or more OffHeapChunkBlockStores map their pages
+		from, so the stripes of a StripedChunkBlockStore share one file instead
+		of each making their own.  Pages that a store no longer needs can be
+		handed back and given to any store that asks for one that fits, since
+		the file can't shrink.  Every store that uses the file retains it, and
+		the file is deleted once the last one releases it.  Thread safe.
+	*/
+
+	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel fileChannel;
+	private long size = 0L;
+	private int numReferences = 0;
+	private boolean isClosed = false;
+	private final List<ByteBuffer> freePages = new ArrayList<ByteBuffer>();
+
+	public ChunkStoreSpillFile(File spillDirectory) throws Exception {
+		if(!spillDirectory.isDirectory() && !spillDirectory.mkdirs()){
+			throw new Exception("Unable to create chunk store spill directory '" + spillDirectory + "'.");
+		}
+		this.file = File.createTempFile("chunk-store-", ".spill", spillDirectory);
+		this.file.deleteOnExit();
+		this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+		this.fileChannel = this.randomAccessFile.getChannel();
+	}
+
+	public synchronized void retain() throws Exception {
+		if(this.isClosed){
+			throw new Exception("Chunk store spill file '" + this.file + "' was already closed.");
+		}
+		this.numReferences++;
+	}
+
+	public synchronized void release() throws Exception {
+		this.numReferences--;
+		if(this.numReferences == 0){
+			//  Every store has released its own pages, so only the free ones are still mapped:
+			for(ByteBuffer page : this.freePages){
+				OffHeapChunkBlockStore.unmap(page);
+			}
+			this.freePages.clear();
+			this.isClosed = true;
+			this.fileChannel.close();
+			this.randomAccessFile.close();
+			if(!this.file.delete()){
+				logger.warn("Unable to delete chunk store spill file '" + this.file + "'.");
+			}
+		}
+	}
+
+	public synchronized ByteBuffer mapPage(int pageSize) throws Exception {
+		//  Mapping past the end of the file grows it:
+		ByteBuffer page = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, this.size, pageSize);
+		this.size += pageSize;
+		return page;
+	}
+
+	public synchronized ByteBuffer takeFreePage(int minimumSize){
+		//  The smallest free page that fits, so big pages are left for big payloads:
+		int best = -1;
+		for(int i = 0; i < this.freePages.size(); i++){
+			int capacity = this.freePages.get(i).capacity();
+			if(capacity >= minimumSize && (best < 0 || capacity < this.freePages.get(best).capacity())){
+				best = i;
+			}
+		}
+		return best < 0 ? null : this.freePages.remove(best);
+	}
+
+	public synchronized void addFreePage(ByteBuffer page){
+		this.freePages.add(page);
+	}
+
+	public File getFile(){
+		return this.file;
+	}
+
+	public synchronized long getSize(){
+		return this.size;
+	}
+}
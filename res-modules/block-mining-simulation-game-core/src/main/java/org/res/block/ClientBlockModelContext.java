@@ -57,6 +57,7 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	private ChunkInitializerThreadState chunkInitializerThreadState;
 	private Coordinate rootBlockDictionaryAddress = null;
+	private boolean hasWorldSeedAnswer = false;
 	private BlockDictionary rootBlockDictionary = null;
 
 	private PlayerPositionXYZ playerPositionXYZ = null;
@@ -587,12 +588,14 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 		getInMemoryChunks().putWorkItem(new HandlePendingChunkWriteWorkItem(getInMemoryChunks(), cuboid.copy(), this), WorkItemPriority.PRIORITY_LOW);
 
 		long numUninitializedBlocks = 0L;
-		RegionIteration regionIteration = new RegionIteration(cuboidAddress.getCanonicalLowerCoordinate(), cuboidAddress);
-		do{
-			Coordinate currentCoordinate = regionIteration.getCurrentCoordinate();
-			long blockOffsetInArray = cuboidAddress.getLinearArrayIndexForCoordinate(currentCoordinate);
-			long sizeOfBlock = dataLengths.getLengths()[(int)blockOffsetInArray];
-			long offsetOfBlock = dataLengths.getOffsets()[(int)blockOffsetInArray];
+		long [] lengths = dataLengths.getLengths();
+		long [] offsets = dataLengths.getOffsets();
+		RegionCursor cursor = new RegionCursor(cuboidAddress);
+		for(; !cursor.isDone(); cursor.next()){
+			Coordinate currentCoordinate = cursor.getCoordinate();
+			int blockOffsetInArray = (int)cursor.getLinearArrayIndex();
+			long sizeOfBlock = lengths[blockOffsetInArray];
+			long offsetOfBlock = offsets[blockOffsetInArray];
 			if(sizeOfBlock < 0L){
 				//this.logMessage("Size of block was negative.  Uninitialized block.");
 				numUninitializedBlocks++;
@@ -602,7 +605,7 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 				byte [] blockData = data.getDataAtOffset(offsetOfBlock, sizeOfBlock);
 				this.checkForSpecialCoordinateUpdates(currentCoordinate, blockData);
 			}
-		}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+		}
 
 		if(numUninitializedBlocks > 0L){
 			InitializeChunkWorkItem initializeChunkWorkItem = new InitializeChunkWorkItem(this.chunkInitializerThreadState, cuboid.copy());
@@ -610,6 +613,12 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 		}
 	}
 
+	public void writeBlocksInRegions(List<Cuboid> cuboids) throws Exception{
+		for(Cuboid cuboid : cuboids){
+			this.writeBlocksInRegion(cuboid);
+		}
+	}
+
 	public void sendBlockMessage(BlockMessage m, BlockSession session) throws Exception{
 		this.getSessionOperationInterface().sendBlockMessage(m, session);
 	}
@@ -661,7 +670,7 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 		this.sendUIEventsToSubscribedThreads(UINotificationType.UPDATE_MAP_AREA_FLAGS, ca.copy(), WorkItemPriority.PRIORITY_LOW);
 	}
 
-	public void postCuboidsWrite(Long numDimensions, List<CuboidAddress> cuboidAddresses, Long authorizedClientId) throws Exception{
+	public void postCuboidsWrite(Long numDimensions, List<Cuboid> writtenCuboids, Long authorizedClientId) throws Exception{
 
 	}
 
@@ -768,12 +777,29 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 		String sessionId = getClientSessionId();
 		BlockSession bs = getBlockWorldConnection().getSessionMap().get(sessionId);
 
-		CommandBlockMessage getRootMessage = new CommandBlockMessage(this, 12345L, getAuthorizedClientId(), CommandType.COMMAND_TYPE_REQUEST_ROOT_DICTIONARY_ADDRESS);
+		//  Older servers ignore the coordinate, newer ones answer with the protocol version to use and the world seed:
+		Integer requestedVersion = this.blockManagerThreadCollection.getWireProtocolVersion();
+		if(requestedVersion == null){
+			requestedVersion = BlockMessageBinaryBuffer.MAX_SUPPORTED_PROTOCOL_VERSION;
+		}
+		CommandBlockMessage getRootMessage = new CommandBlockMessage(this, 12345L, getAuthorizedClientId(), CommandType.COMMAND_TYPE_REQUEST_ROOT_DICTIONARY_ADDRESS, Coordinate.makeCoordinate(requestedVersion.longValue()));
 
 		SendBlockMessageToSessionWorkItem workItem = new SendBlockMessageToSessionWorkItem(this, bs, getRootMessage);
 		this.putWorkItem(workItem, WorkItemPriority.PRIORITY_LOW);
 	}
 
+	public void onRootDictionaryAnswer() throws Exception{
+		/*
+			Servers that store a world seed send it before answering the root dictionary request.
+			Messages on a session arrive in order, so if it hasn't come by now, the server is
+			older than world seeds, and its worlds were all generated with the default seed.
+		*/
+		if(!this.hasWorldSeedAnswer){
+			this.hasWorldSeedAnswer = true;
+			this.chunkInitializerThreadState.putWorkItem(new ChunkInitializerWorldSeedUnavailableWorkItem(this.chunkInitializerThreadState, "the server is older than world seeds"), WorkItemPriority.PRIORITY_HIGH);
+		}
+	}
+
 	public void onAcknowledgementMessage(Long conversationId) throws Exception{
 		ChunkInitializerWorkItem workItem = new ChunkInitializerNotifyAcknowledgementWorkItem(this.chunkInitializerThreadState, conversationId);
 		this.chunkInitializerThreadState.putWorkItem(workItem, WorkItemPriority.PRIORITY_LOW);
@@ -782,10 +808,19 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 	public void onErrorNotificationBlockMessage(BlockSession blockSession, Long conversationId, Long authorizedClientId, BlockMessageErrorType blockMessageErrorType) throws Exception{
 		switch(blockMessageErrorType){
 			case ROOT_BLOCK_DICTIONARY_UNINITIALIZED:{
+				this.onRootDictionaryAnswer();
 				this.requestPlayerProvisioning();
 				break;
 			}case IDENTICAL_SUBSCRIPTION:{
 				throw new Exception("IDENTICAL_SUBSCRIPTION: conversationId=" + conversationId + ", authorizedClientId=" + authorizedClientId);
+			}case WORK_ITEM_QUEUE_FULL:{
+				logger.info("The server was too busy to process a message: conversationId=" + conversationId + ", authorizedClientId=" + authorizedClientId);
+				//  If it was a chunk write, the chunk initializer needs to free its write window slot and send it again:
+				this.chunkInitializerThreadState.putWorkItem(new ChunkInitializerNotifyWriteRejectedWorkItem(this.chunkInitializerThreadState, conversationId), WorkItemPriority.PRIORITY_LOW);
+				break;
+			}case UNKNOWN_COMMAND_TYPE:{
+				logger.info("The server didn't recognize a command: conversationId=" + conversationId + ", authorizedClientId=" + authorizedClientId);
+				break;
 			}default:{
 				throw new Exception("Message type not expected: " + blockMessageErrorType);
 			}
@@ -795,9 +830,21 @@ public class ClientBlockModelContext extends BlockModelContext implements BlockM
 	public void onCommandBlockMessage(BlockSession blockSession, Long conversationId, Long authorizedClientId, CommandType authorizedCommandType, Coordinate coordinate) throws Exception{
 		switch(authorizedCommandType){
 			case COMMAND_TYPE_RESPOND_ROOT_DICTIONARY_ADDRESS:{
+				this.onRootDictionaryAnswer();
 				this.rootBlockDictionaryAddress = coordinate;
 				this.notifyLoadedRegionsChanged();
 				break;
+			}case COMMAND_TYPE_RESPOND_PROTOCOL_VERSION:{
+				long agreedVersion = coordinate.getLongValueAtIndex(0L);
+				if(agreedVersion < BlockMessageBinaryBuffer.PROTOCOL_VERSION_1 || agreedVersion > BlockMessageBinaryBuffer.MAX_SUPPORTED_PROTOCOL_VERSION){
+					throw new Exception("Server responded with protocol version " + agreedVersion + ", but only versions " + BlockMessageBinaryBuffer.PROTOCOL_VERSION_1 + " through " + BlockMessageBinaryBuffer.MAX_SUPPORTED_PROTOCOL_VERSION + " are supported.");
+				}
+				blockSession.setProtocolVersion((int)agreedVersion);
+				break;
+			}case COMMAND_TYPE_RESPOND_WORLD_SEED:{
+				this.hasWorldSeedAnswer = true;
+				this.chunkInitializerThreadState.putWorkItem(new ChunkInitializerNotifyWorldSeedWorkItem(this.chunkInitializerThreadState, coordinate.getLongValueAtIndex(0L)), WorkItemPriority.PRIORITY_HIGH);
+				break;
 			}default:{
 				throw new Exception("Message type not expected: " + authorizedCommandType);
 			}
@@ -46,6 +46,8 @@ public class CommandBlockMessage extends BlockMessage {
 
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	private CommandType authorizedCommandType;
+	//  Kept so commands from newer peers can be reported:
+	private long authorizedCommandTypeLong;
 	//  By default, coordinate is not used:
 	private Long numDimensions = 0L;
 	private Coordinate coordinate = new Coordinate(Arrays.asList());
@@ -53,35 +55,50 @@ public class CommandBlockMessage extends BlockMessage {
 	public CommandBlockMessage(BlockModelContext blockModelContext, Long conversationId, Long authorizedClientId, CommandType authorizedCommandType){
 		super(blockModelContext, conversationId, authorizedClientId);
 		this.authorizedCommandType = authorizedCommandType;
+		this.authorizedCommandTypeLong = authorizedCommandType.toLong();
 	}
 
 	public CommandBlockMessage(BlockModelContext blockModelContext, Long conversationId, Long authorizedClientId, CommandType authorizedCommandType, Coordinate c){
 		super(blockModelContext, conversationId, authorizedClientId);
 		this.authorizedCommandType = authorizedCommandType;
+		this.authorizedCommandTypeLong = authorizedCommandType.toLong();
 		this.numDimensions = c.getNumDimensions();
 		this.coordinate = c.copy();
 	}
 
-	public byte [] asByteArray() throws Exception{
-		BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer();
+	public void writeToBuffer(BlockMessageBinaryBuffer buffer) throws Exception{
 		BlockMessage.writeBlockMessageType(buffer, BlockMessageType.BLOCK_MESSAGE_TYPE_COMMAND);
 		BlockMessage.writeConversationId(buffer, this.conversationId);
 		BlockMessage.writeAuthorizedClientId(buffer, this.authorizedClientId);
 		buffer.writeOneLongValue(authorizedCommandType.toLong());
 		buffer.writeOneLongValue(this.numDimensions);
 		Coordinate.writeCoordinate(buffer, this.coordinate);
-		return buffer.getUsedBuffer();
 	}
 
 	public CommandBlockMessage(BlockModelContext blockModelContext, BlockMessageBinaryBuffer buffer, Long conversationId, Long authorizedClientId) throws Exception {
 		super(blockModelContext, conversationId, authorizedClientId);
-		long authorizedCommandTypeLong = buffer.readOneLongValue();
-		this.authorizedCommandType = CommandType.forValue(authorizedCommandTypeLong);
+		this.authorizedCommandTypeLong = buffer.readOneLongValue();
+		this.authorizedCommandType = CommandType.forValue(this.authorizedCommandTypeLong);
 		this.numDimensions = buffer.readOneLongValue();
 		this.coordinate = Coordinate.readCoordinate(buffer, numDimensions);
 	}
 
+	public CommandType getAuthorizedCommandType(){
+		return this.authorizedCommandType;
+	}
+
+	public Coordinate getCoordinate(){
+		return this.coordinate;
+	}
+
 	public void doWork(BlockSession blockSession) throws Exception{
+		if(this.authorizedCommandType == null){
+			//  Answer with an error instead of failing the thread that processes messages:
+			this.blockModelContext.logMessage("Unknown command type " + this.authorizedCommandTypeLong + " in conversationId=" + this.conversationId + ", authorizedClientId=" + this.authorizedClientId + ".");
+			ErrorNotificationBlockMessage response = new ErrorNotificationBlockMessage(this.blockModelContext, BlockMessageErrorType.UNKNOWN_COMMAND_TYPE, this.conversationId, this.authorizedClientId);
+			this.blockModelContext.sendBlockMessage(response, blockSession);
+			return;
+		}
 		this.blockModelContext.onCommandBlockMessage(blockSession, this.conversationId, this.authorizedClientId, this.authorizedCommandType, this.coordinate);
 		logger.info("In doWork for CommandBlockMessage conversationId=" + this.conversationId + ".");
 	}
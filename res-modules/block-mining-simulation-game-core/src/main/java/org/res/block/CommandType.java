@@ -38,7 +38,9 @@ import java.util.HashMap;
 public enum CommandType {
         COMMAND_TYPE_REQUEST_ROOT_DICTIONARY_ADDRESS (1L),
         COMMAND_TYPE_RESPOND_ROOT_DICTIONARY_ADDRESS (2L),
-        COMMAND_TYPE_PROVISION_PLAYER (3L);
+        COMMAND_TYPE_PROVISION_PLAYER (3L),
+        COMMAND_TYPE_RESPOND_PROTOCOL_VERSION (4L),
+        COMMAND_TYPE_RESPOND_WORLD_SEED (5L);
 
         private final long id;
 
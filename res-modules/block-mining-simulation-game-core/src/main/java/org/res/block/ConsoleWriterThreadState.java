@@ -44,6 +44,7 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.TreeMap;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.Collections;
@@ -80,6 +81,7 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 	private FrameDimensions currentTerminalFrameDimensions = null;
 	private HelpMenuFrameThreadState helpMenuFrameThreadState = null;
 	public static int numScreenLayers = 3;
+	public static final int DEFAULT_MAX_FRAMES_PER_SECOND = 60;
 	public static final int BUFFER_INDEX_DEFAULT = 0;
 	public static final int BUFFER_INDEX_OVERLAY = 1;
 	public static final int BUFFER_INDEX_MENU = 2;
@@ -88,6 +90,21 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 	//  Final output that's suppoused to be printed to screen
         //  after all layers have been merged:
 	private ScreenLayer mergedFinalScreenLayer = null;
+	//  Null when every change should be printed with absolute cursor positioning:
+	private final ScreenOutputEncoder screenOutputEncoder;
+	private final StringBuilder frameStringBuilder = new StringBuilder();
+	private final TerminalFrameOutputSink frameOutputSink;
+	private boolean isFrameDeadlineScheduled = false;
+	//  Null when every character should be measured on the terminal:
+	private final TextWidthTable textWidthTable;
+	//  Null unless a file was given to remember measured widths in:
+	private final TextWidthCalibrationCache textWidthCalibrationCache;
+	private final AtomicLong textWidthTableHits = new AtomicLong(0L);
+	private final AtomicLong textWidthCacheHits = new AtomicLong(0L);
+	private final AtomicLong textWidthProbes = new AtomicLong(0L);
+	private final AtomicLong textWidthProbeNanos = new AtomicLong(0L);
+	private final long constructionNanoTime = System.nanoTime();
+	private boolean hasPrintedFirstFrame = false;
 
 	public Long focusedFrameId = null;
 
@@ -99,6 +116,18 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 
 	public ConsoleWriterThreadState(BlockManagerThreadCollection blockManagerThreadCollection) throws Exception{
 		this.blockManagerThreadCollection = blockManagerThreadCollection;
+		ScreenOutputEncodingType screenOutputEncodingType = blockManagerThreadCollection.getScreenOutputEncodingType();
+		//  The merged final layer always spans the whole terminal, so erase-line is safe:
+		this.screenOutputEncoder = screenOutputEncodingType == ScreenOutputEncodingType.ABSOLUTE ? null : new ScreenOutputEncoder(true);
+		Integer maxFramesPerSecond = blockManagerThreadCollection.getMaxFramesPerSecond();
+		this.frameOutputSink = TerminalFrameOutputSink.forStandardOutput(
+			!blockManagerThreadCollection.getDisableSynchronizedUpdate(),
+			maxFramesPerSecond == null ? ConsoleWriterThreadState.DEFAULT_MAX_FRAMES_PER_SECOND : maxFramesPerSecond
+		);
+		TextWidthMode textWidthMode = blockManagerThreadCollection.getTextWidthMode();
+		this.textWidthTable = textWidthMode == TextWidthMode.CALIBRATE ? null : TextWidthTable.getInstance();
+		String textWidthCacheFile = blockManagerThreadCollection.getTextWidthCacheFile();
+		this.textWidthCalibrationCache = textWidthCacheFile == null ? null : new TextWidthCalibrationCache(new File(textWidthCacheFile));
 	}
 
 	public void init(Object o) throws Exception {
@@ -122,9 +151,23 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 		if(!measuredTextLengths.containsKey(text)){
 			Integer compatibilityWidth = this.blockManagerThreadCollection.getCompatibilityWidth();
 
-			TextWidthMeasurementWorkItem wm = new TextWidthMeasurementWorkItem(this, text);
-			logger.info("sending blocking work item for width of text '" + text + "'...");
-			TextWidthMeasurementWorkItemResult result = (TextWidthMeasurementWorkItemResult)this.putBlockingWorkItem(wm, WorkItemPriority.PRIORITY_LOW);
+			//  Widths measured on this terminal before win over the table, since they're what the terminal actually does:
+			TextWidthMeasurementWorkItemResult result = this.textWidthCalibrationCache == null ? null : this.textWidthCalibrationCache.get(text);
+			if(result != null){
+				this.textWidthCacheHits.incrementAndGet();
+			}else if(this.textWidthTable != null && (result = this.textWidthTable.getTextDisplacement(text)) != null){
+				this.textWidthTableHits.incrementAndGet();
+			}else{
+				TextWidthMeasurementWorkItem wm = new TextWidthMeasurementWorkItem(this, text);
+				logger.info("sending blocking work item for width of text '" + text + "'...");
+				long probeStart = System.nanoTime();
+				result = (TextWidthMeasurementWorkItemResult)this.putBlockingWorkItem(wm, WorkItemPriority.PRIORITY_LOW);
+				this.textWidthProbeNanos.addAndGet(System.nanoTime() - probeStart);
+				this.textWidthProbes.incrementAndGet();
+				if(this.textWidthCalibrationCache != null){
+					this.textWidthCalibrationCache.put(text, result);
+				}
+			}
 			if(
 				//  If compatibility width is turned on
 				compatibilityWidth != null &&
@@ -763,24 +806,12 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 		}
 
 		UserInterfaceFrameThreadState frame = this.getFrameStateById(frameChangeParams.getFrameId());
-		boolean activeLayerStateChange = false;
 		for(ScreenLayerPrintParameters param : params){
 			ScreenLayer changes = param.getScreenLayer();
 			int bufferIndex = param.getBufferIndex();
-			activeLayerStateChange |= this.screenLayers[bufferIndex].setIsLayerActive(changes.getIsLayerActive());
-		}
-		//  If one of the layers had an active change state, invalidate and
-		//  re-evaluate all layers from scratch.
-		//  This is not really a great approach, but right now it's necessary
-		//  because the current merging functions only evaluate changed areas 
-		//  in active layers/regions.
-		if(activeLayerStateChange){
-			for(int i = 0; i < ConsoleWriterThreadState.numScreenLayers; i++){
-				int width = this.screenLayers[i].getWidth();
-				int height = this.screenLayers[i].getHeight();
-				this.screenLayers[i].addChangedRegion(new ScreenRegion(ScreenRegion.makeScreenRegionCA(0,0, width, height)));
-				this.screenLayers[i].setAllChangedFlagStates(true);
-			}
+			//  The merging functions only evaluate changed areas in active layers, so this
+			//  also invalidates the area the layer covers in all the other layers:
+			ScreenLayer.setIsLayerActive(this.screenLayers, bufferIndex, changes.getIsLayerActive());
 		}
 		for(ScreenLayerPrintParameters param : params){
 			ScreenLayer changes = param.getScreenLayer();
@@ -799,7 +830,62 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 		Coordinate ffp = frame == null ? null : frame.getCurrentCursorPosition();
 		FrameDimensions fd = frame == null ? null : getFrameDimensionsForFrameId(frame.getFrameId());
 		Coordinate currentCursorPosition = ffp == null ? new Coordinate(Arrays.asList(0L, 0L)) : new Coordinate(Arrays.asList(fd.getFrameOffsetX() + ffp.getX(), fd.getFrameOffsetY() + ffp.getY()));
-		this.mergedFinalScreenLayer.printChanges(useCompatibilityWidth, useRightToLeftPrint, resetCursorPosition, 0, 0, currentCursorPosition);
+		this.frameStringBuilder.setLength(0);
+		this.mergedFinalScreenLayer.appendChanges(this.frameStringBuilder, useCompatibilityWidth, useRightToLeftPrint, resetCursorPosition, 0, 0, currentCursorPosition, this.screenOutputEncoder);
+		this.frameOutputSink.writeFrame(this.frameStringBuilder);
+		if(!this.hasPrintedFirstFrame){
+			this.hasPrintedFirstFrame = true;
+			logger.info("First frame printed " + ((System.nanoTime() - this.constructionNanoTime) / 1000000L) + "ms after startup, " + this.getTextWidthMetricsSummary() + ".");
+		}
+	}
+
+	public String getTextWidthMetricsSummary(){
+		return "text widths from table: " + this.textWidthTableHits.get() + ", from cache: " + this.textWidthCacheHits.get() + ", measured on terminal: " + this.textWidthProbes.get() + " (" + (this.textWidthProbeNanos.get() / 1000000L) + "ms)";
+	}
+
+	public void printTerminalTextChangesWhenFrameIsDue() throws Exception{
+		long nanosUntilNextFrame = this.frameOutputSink.getNanosUntilNextFrame();
+		if(nanosUntilNextFrame > 0L){
+			//  Too soon after the last frame.  The changes stay in the screen layers
+			//  and get merged into the next frame along with anything that comes after:
+			this.frameOutputSink.onFrameDeferred();
+			if(!this.isFrameDeadlineScheduled){
+				this.isFrameDeadlineScheduled = true;
+				this.scheduleFrameDeadline(nanosUntilNextFrame);
+			}
+		}else{
+			this.printTerminalTextChanges(true, false);
+		}
+	}
+
+	private void scheduleFrameDeadline(final long nanosUntilNextFrame){
+		final ConsoleWriterThreadState consoleWriterThreadState = this;
+		Thread frameDeadlineThread = BlockManagerThreadCollection.makeVirtualThread(new Runnable(){
+			public void run(){
+				try{
+					Thread.sleep(nanosUntilNextFrame / 1000000L, (int)(nanosUntilNextFrame % 1000000L));
+					if(!consoleWriterThreadState.getBlockManagerThreadCollection().getIsProcessFinished()){
+						consoleWriterThreadState.putWorkItem(new FrameDeadlineWorkItem(consoleWriterThreadState), WorkItemPriority.PRIORITY_LOW);
+					}
+				}catch(Exception e){
+					logger.info("Unable to schedule the next frame:", e);
+				}
+			}
+		});
+		frameDeadlineThread.setName("Frame deadline");
+		frameDeadlineThread.start();
+	}
+
+	public void onFrameDeadline() throws Exception{
+		synchronized(lock){
+			//  The frame itself gets printed in doBackgroundProcessing once the work item queue is empty:
+			this.isFrameDeadlineScheduled = false;
+		}
+	}
+
+	@Override
+	public String getWorkItemQueueMetricsSummary(){
+		return super.getWorkItemQueueMetricsSummary() + ", frame output: " + this.frameOutputSink.getMetricsSummary() + ", " + this.getTextWidthMetricsSummary();
 	}
 
 	public final void initializeConsole(Long terminalWidth, Long terminalHeight) throws Exception{
@@ -995,7 +1081,7 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 						//  If the thread expects a response, unblock it:
 						this.addResultForThreadId(result, w.getThreadId());
 					}
-					this.printTerminalTextChanges(true, false);
+					this.printTerminalTextChangesWhenFrameIsDue();
 				}
 			}else{
 				TextWidthMeasurementWorkItemResult r = this.currentTextWidthMeasurement.getResult();
@@ -1005,7 +1091,11 @@ public class ConsoleWriterThreadState extends WorkItemQueueOwner<ConsoleWriterWo
 					this.currentTextWidthMeasurement = null; //  Allow for processing of next character width request.
 				}
 			}
-			return (pendingQueueableWorkItems.size() > 0) || (currentTextWidthMeasurement == null && this.pendingTextWidthRequests.size() > 0); // There is no additional work we can do until we get another work item.
+			//  Only ask to be called again when there is something that can be done right now.  The terminal size and
+			//  cursor position reports both arrive as work items, so waiting on them here would just spin:
+			boolean canRunQueuedWork = this.currentTextWidthMeasurement == null && this.terminalWidth != null && this.terminalHeight != null;
+			boolean canStartTextWidthMeasurement = this.currentTextWidthMeasurement == null && this.pendingTextWidthRequests.size() > 0;
+			return (canRunQueuedWork && pendingQueueableWorkItems.size() > 0) || canStartTextWidthMeasurement; // There is no additional work we can do until we get another work item.
 		}
 	}
 
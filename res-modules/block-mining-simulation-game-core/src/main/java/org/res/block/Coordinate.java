@@ -75,6 +75,15 @@ public class Coordinate extends Vector{
 		super(coordinateValues);
 	}
 
+	/*  Takes ownership of the array, so the caller must not modify it afterwards. */
+	protected Coordinate(long [] values) {
+		super(values);
+	}
+
+	public static Coordinate makeCoordinate(long ... values) {
+		return new Coordinate(values.clone());
+	}
+
 	public Long getX() throws Exception {
 		return this.getValueAtIndex(0L);
 	}
@@ -87,64 +96,92 @@ public class Coordinate extends Vector{
 		return this.getValueAtIndex(2L);
 	}
 
+	/*  Primitive accessors that avoid boxing in hot loops: */
+	public long getLongX() {
+		return this.getLongValueAtIndex(0L);
+	}
+
+	public long getLongY() {
+		return this.getLongValueAtIndex(1L);
+	}
+
+	public long getLongZ() {
+		return this.getLongValueAtIndex(2L);
+	}
+
 	public Coordinate getSubDimensions(Long startDimension, Long endDimension) throws Exception {
 		return new Coordinate(super.getSubDimensions(startDimension, endDimension));
 	}
 
-	public Coordinate changeX(Long v) throws Exception {
-		return new Coordinate(super.changeValueAtIndex(0L, v));
+	public Coordinate changeX(long v) throws Exception {
+		return new Coordinate(super.changedValueAtIndex(0L, v));
 	}
 
-	public Coordinate changeY(Long v) throws Exception {
-		return new Coordinate(super.changeValueAtIndex(1L, v));
+	public Coordinate changeY(long v) throws Exception {
+		return new Coordinate(super.changedValueAtIndex(1L, v));
 	}
 
-	public Coordinate changeZ(Long v) throws Exception {
-		return new Coordinate(super.changeValueAtIndex(2L, v));
+	public Coordinate changeZ(long v) throws Exception {
+		return new Coordinate(super.changedValueAtIndex(2L, v));
 	}
 
-	public Coordinate addX(Long v) throws Exception {
-		return new Coordinate(super.addValueAtIndex(0L, v));
+	public Coordinate addX(long v) throws Exception {
+		return new Coordinate(super.changedValueAtIndex(0L, this.getLongX() + v));
 	}
 
-	public Coordinate addY(Long v) throws Exception {
-		return new Coordinate(super.addValueAtIndex(1L, v));
+	public Coordinate addY(long v) throws Exception {
+		return new Coordinate(super.changedValueAtIndex(1L, this.getLongY() + v));
 	}
 
-	public Coordinate addZ(Long v) throws Exception {
-		return new Coordinate(super.addValueAtIndex(2L, v));
+	public Coordinate addZ(long v) throws Exception {
+		return new Coordinate(super.changedValueAtIndex(2L, this.getLongZ() + v));
 	}
 
-	public Coordinate changeByDeltaXYZ(Long deltaX, Long deltaY, Long deltaZ) throws Exception {
-		return new Coordinate(super.changeValues(Arrays.asList(this.getX() + deltaX, this.getY() + deltaY, this.getZ() + deltaZ)));
+	public Coordinate changeByDeltaXYZ(long deltaX, long deltaY, long deltaZ) throws Exception {
+		return new Coordinate(this.changedByDeltas(deltaX, deltaY, deltaZ, 3));
 	}
 
-	public Coordinate changeByDeltaX(Long deltaX) throws Exception {
-		return new Coordinate(super.changeValues(Arrays.asList(this.getX() + deltaX)));
+	public Coordinate changeByDeltaX(long deltaX) throws Exception {
+		return new Coordinate(this.changedByDeltas(deltaX, 0L, 0L, 1));
 	}
 
-	public Coordinate changeByDeltaY(Long deltaY) throws Exception {
-		return new Coordinate(super.changeValues(Arrays.asList(this.getX() + 0L, this.getY() + deltaY)));
+	public Coordinate changeByDeltaY(long deltaY) throws Exception {
+		return new Coordinate(this.changedByDeltas(0L, deltaY, 0L, 2));
 	}
 
-	public Coordinate changeByDeltaXY(Long deltaX, Long deltaY) throws Exception {
-		return new Coordinate(super.changeValues(Arrays.asList(this.getX() + deltaX, this.getY() + deltaY)));
+	public Coordinate changeByDeltaXY(long deltaX, long deltaY) throws Exception {
+		return new Coordinate(this.changedByDeltas(deltaX, deltaY, 0L, 2));
+	}
+
+	private long [] changedByDeltas(long deltaX, long deltaY, long deltaZ, int numChanged) throws Exception {
+		if(numChanged > this.values.length){
+			throw new Exception("Trying to set values of length to " + numChanged + " beyond end of list length " + this);
+		}
+		long [] newValues = this.values.clone();
+		newValues[0] += deltaX;
+		if(numChanged > 1){
+			newValues[1] += deltaY;
+		}
+		if(numChanged > 2){
+			newValues[2] += deltaZ;
+		}
+		return newValues;
 	}
 
 	public Coordinate subtract(Coordinate other) throws Exception {
-		return new Coordinate(super.subtract(other));
+		return new Coordinate(super.subtractValues(other));
 	}
 
 	public Coordinate add(Coordinate other) throws Exception {
-		return new Coordinate(super.add(other));
+		return new Coordinate(super.addValues(other));
 	}
 
 	public Coordinate add(Vector other) throws Exception {
-		return new Coordinate(super.add(other));
+		return new Coordinate(super.addValues(other));
 	}
 
 	public Coordinate changeValueAtIndex(Long i, Long v) throws Exception {
-		return new Coordinate(super.changeValueAtIndex(i, v));
+		return new Coordinate(super.changedValueAtIndex(i, v));
 	}
 
 	@Override
@@ -153,12 +190,12 @@ public class Coordinate extends Vector{
 	}
 
 	public Coordinate copy() {
-		return new Coordinate(super.copy());
+		return new Coordinate(this.values.clone());
 	}
 
 	public boolean isLowerThanOrEqualTo(Coordinate c){
 		for(long i = 0L; i < c.getNumDimensions(); i++){
-			if(this.getValueAtIndex(i) <= c.getValueAtIndex(i)){
+			if(this.getLongValueAtIndex(i) <= c.getLongValueAtIndex(i)){
 			}else{
 				return false;
 			}
@@ -168,7 +205,7 @@ public class Coordinate extends Vector{
 
 	public boolean isHigherThanOrEqualTo(Coordinate c){
 		for(long i = 0L; i < c.getNumDimensions(); i++){
-			if(this.getValueAtIndex(i) >= c.getValueAtIndex(i)){
+			if(this.getLongValueAtIndex(i) >= c.getLongValueAtIndex(i)){
 			}else{
 				return false;
 			}
@@ -176,28 +213,18 @@ public class Coordinate extends Vector{
 		return true;
 	}
 
-	public static Coordinate readCoordinate(BlockMessageBinaryBuffer buffer, long numDimensions){
-		List<Long> rtn = new ArrayList<Long>();
-		long [] values = buffer.readNLongValues((int)numDimensions);
-		for(long l : values){
-			rtn.add(l);
-		}
-		return new Coordinate(rtn);
+	public static Coordinate readCoordinate(BlockMessageBinaryBuffer buffer, long numDimensions) throws Exception{
+		return new Coordinate(buffer.readNLongValues((int)numDimensions));
 	}
 
 	public static void writeCoordinate(BlockMessageBinaryBuffer buffer, Coordinate c){
-		long [] values = new long [c.getNumDimensions().intValue()];
-		for(long i = 0L; i < c.getNumDimensions(); i++){
-			values[(int)i] = c.getValueAtIndex(i);
-		}
-
-		buffer.writeLongValues(values);
+		buffer.writeLongValues(c.values);
 	}
 
 	public static Coordinate getRandomCoordinate(Random rand, Long numDimensions, int minCoordinateValue, int maxCoordinateValue) throws Exception {
-		List<Long> values = new ArrayList<Long>();
-		for(long i = 0; i < numDimensions; i++){
-			values.add((long)(rand.nextInt(maxCoordinateValue - minCoordinateValue) + minCoordinateValue));
+		long [] values = new long [numDimensions.intValue()];
+		for(int i = 0; i < values.length; i++){
+			values[i] = (long)(rand.nextInt(maxCoordinateValue - minCoordinateValue) + minCoordinateValue);
 		}
 		return new Coordinate(values);
 	}
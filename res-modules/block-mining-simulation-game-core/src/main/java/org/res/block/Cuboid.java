@@ -66,4 +66,50 @@ public class Cuboid {
 	public Long getNumDimensions(){
 		return this.cuboidAddress.getNumDimensions();
 	}
+
+	public Cuboid getSubCuboid(CuboidAddress region) throws Exception {
+		/*  Copy out the blocks in 'region', which must be entirely inside this cuboid: */
+		if(!region.getNumDimensions().equals(this.cuboidAddress.getNumDimensions())){
+			throw new Exception("Dimension mismatch: region=" + region + " cuboid=" + this.cuboidAddress);
+		}
+		int numDimensions = region.getNumDimensions().intValue();
+		for(int i = 0; i < numDimensions; i++){
+			if(region.getLowerValueForIndex(i) < this.cuboidAddress.getLowerValueForIndex(i) || region.getUpperValueForIndex(i) > this.cuboidAddress.getUpperValueForIndex(i)){
+				throw new Exception("Region " + region + " is not contained in cuboid " + this.cuboidAddress);
+			}
+		}
+
+		long [] sourceLengths = this.cuboidDataLengths.getLengths();
+		long [] sourceOffsets = this.cuboidDataLengths.getOffsets();
+		byte [] sourceData = this.cuboidData.getData();
+
+		int volume = (int)region.getVolume();
+		long [] lengths = new long [volume];
+		int [] sourceIndices = new int [volume];
+		long totalSize = 0L;
+		RegionCursor cursor = new RegionCursor(region);
+		while(!cursor.isDone()){
+			long sourceIndex = 0L;
+			for(int i = 0; i < numDimensions; i++){
+				sourceIndex += (cursor.getValueAtIndex(i) - this.cuboidAddress.getLowerValueForIndex(i)) * this.cuboidAddress.getStrideForIndex(i);
+			}
+			int index = (int)cursor.getLinearArrayIndex();
+			sourceIndices[index] = (int)sourceIndex;
+			lengths[index] = sourceLengths[(int)sourceIndex];
+			if(lengths[index] > 0L){
+				totalSize += lengths[index];
+			}
+			cursor.next();
+		}
+
+		byte [] data = new byte [(int)totalSize];
+		int dataOffset = 0;
+		for(int index = 0; index < volume; index++){
+			if(lengths[index] > 0L){
+				System.arraycopy(sourceData, (int)sourceOffsets[sourceIndices[index]], data, dataOffset, (int)lengths[index]);
+				dataOffset += (int)lengths[index];
+			}
+		}
+		return new Cuboid(region.copy(), new CuboidDataLengths(region.copy(), lengths), new CuboidData(data));
+	}
 }
@@ -54,10 +54,18 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 	private final Long numDimensions;
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/*  Primitive copies of the bounds, and the derived widths/strides so that
+	 *  index calculations don't need to box or re-derive them per block: */
+	private final long [] lowerValues;
+	private final long [] upperValues;
+	private final long [] widths;
+	private final long [] strides;
+	private final long volume;
+
 	private final int hashCode;
 
 	public final int getHashCode(){
-		return this.getCanonicalLowerCoordinate().hashCode() * this.getCanonicalUpperCoordinate().hashCode();
+		return 31 * this.getCanonicalLowerCoordinate().hashCode() + this.getCanonicalUpperCoordinate().hashCode();
 	}
 
 	private static Coordinate canonicalizeLowerCoordinate(Coordinate a, Coordinate b) {
@@ -69,17 +77,17 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 			every coordinate.  The canonical upper coordinate is an exclusive coordinate for which
 			every value in the coordinate is less than that found in the canonical upper coordinate.
 		*/
-		List<Long> canonical = new ArrayList<Long>();
-		for(long i = 0L; i < a.getNumDimensions(); i++){
-			canonical.add(Math.min(a.getValueAtIndex(i), b.getValueAtIndex(i)));
+		long [] canonical = new long [a.getNumDimensionsInt()];
+		for(int i = 0; i < canonical.length; i++){
+			canonical[i] = Math.min(a.getLongValueAtIndex(i), b.getLongValueAtIndex(i));
 		}
 		return new Coordinate(canonical);
 	}
 
 	private static Coordinate canonicalizeUpperCoordinate(Coordinate a, Coordinate b) {
-		List<Long> canonical = new ArrayList<Long>();
-		for(long i = 0L; i < a.getNumDimensions(); i++){
-			canonical.add(Math.max(a.getValueAtIndex(i), b.getValueAtIndex(i)));
+		long [] canonical = new long [a.getNumDimensionsInt()];
+		for(int i = 0; i < canonical.length; i++){
+			canonical[i] = Math.max(a.getLongValueAtIndex(i), b.getLongValueAtIndex(i));
 		}
 		return new Coordinate(canonical);
 	}
@@ -93,16 +101,10 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 
 	public Double getCentroidDistanceFromCoordinate(Coordinate c){
 		/*  Calculate the centroid of this cuboid address return the linear distance from a given coordinate. */
-		Coordinate lower = this.getCanonicalLowerCoordinate();
-		Coordinate upper = this.getCanonicalUpperCoordinate();
-		double centroid [] = new double [this.numDimensions.intValue()];
-		for(long i = 0L; i < this.numDimensions; i++){
-			centroid[(int)i] = (double)lower.getValueAtIndex(i) + ((double)(upper.getValueAtIndex(i) - lower.getValueAtIndex(i)) / 2.0);
-		}
-
 		double totalSquare = 0.0;
-		for(long i = 0L; i < this.numDimensions; i++){
-			double diff = c.getValueAtIndex(i) - centroid[(int)i];
+		for(int i = 0; i < this.lowerValues.length; i++){
+			double centroid = (double)this.lowerValues[i] + ((double)this.widths[i] / 2.0);
+			double diff = c.getLongValueAtIndex(i) - centroid;
 			totalSquare += diff * diff;
 		}
 		return Math.sqrt(totalSquare);
@@ -113,6 +115,18 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 			this.lower = CuboidAddress.canonicalizeLowerCoordinate(a,b);
 			this.upper = CuboidAddress.canonicalizeUpperCoordinate(a,b);
 			this.numDimensions = lower.getNumDimensions();
+			this.lowerValues = this.lower.toLongArray();
+			this.upperValues = this.upper.toLongArray();
+			int n = this.lowerValues.length;
+			this.widths = new long [n];
+			this.strides = new long [n];
+			long stride = 1L;
+			for(int i = 0; i < n; i++){
+				this.widths[i] = this.upperValues[i] - this.lowerValues[i];
+				this.strides[i] = stride;
+				stride *= this.widths[i];
+			}
+			this.volume = stride;
 			this.hashCode = this.getHashCode();
 		}else{
 			throw new Exception("Number of dimensions in both coords does not match lower:" + a.getNumDimensions() + " upper:" + a.getNumDimensions());
@@ -139,11 +153,10 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 	}
 
 	public boolean containsCoordinate(Coordinate c) throws Exception {
-		if(this.getNumDimensions().equals(c.getNumDimensions())){
-			Coordinate aLower = this.getCanonicalLowerCoordinate();
-			Coordinate aUpper = this.getCanonicalUpperCoordinate();
-			for(long i = 0; i < this.getNumDimensions(); i++){
-				if(c.getValueAtIndex(i) >= aLower.getValueAtIndex(i) && c.getValueAtIndex(i) < aUpper.getValueAtIndex(i)){
+		if(this.lowerValues.length == c.getNumDimensionsInt()){
+			for(int i = 0; i < this.lowerValues.length; i++){
+				long v = c.getLongValueAtIndex(i);
+				if(v >= this.lowerValues[i] && v < this.upperValues[i]){
 				}else{
 					return false;
 				}
@@ -154,22 +167,55 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 		return true;
 	}
 
+	public boolean containsXYZ(long x, long y, long z) {
+		/*  Primitive fast path that checks the first three dimensions only. */
+		return (
+			x >= this.getLowerValueForIndex(0) && x < this.getUpperValueForIndex(0) &&
+			y >= this.getLowerValueForIndex(1) && y < this.getUpperValueForIndex(1) &&
+			z >= this.getLowerValueForIndex(2) && z < this.getUpperValueForIndex(2)
+		);
+	}
+
 	public Long getLinearArrayIndexForCoordinate(Coordinate coordinate) throws Exception {
-		Coordinate lower = this.getCanonicalLowerCoordinate();
+		return this.getLinearArrayIndexForLongCoordinate(coordinate);
+	}
+
+	public long getLinearArrayIndexForLongCoordinate(Coordinate coordinate) throws Exception {
 		long totalIndex = 0L;
-		long dimensionValue = 1L;
-		for(long i = 0L; i < coordinate.getNumDimensions(); i++){
-			long dimensionOffset = coordinate.getValueAtIndex(i) - lower.getValueAtIndex(i);
+		for(int i = 0; i < coordinate.getNumDimensionsInt(); i++){
+			long dimensionOffset = coordinate.getLongValueAtIndex(i) - this.getLowerValueForIndex(i);
 			if(dimensionOffset < 0){
 				throw new Exception("DimensionOffset was negative? :" + dimensionOffset);
 			}
-			totalIndex += dimensionOffset * dimensionValue;
-			dimensionValue *= this.getWidthForIndex(i);
+			totalIndex += dimensionOffset * this.getStrideForIndex(i);
 		}
 
 		return totalIndex;
 	}
 
+	public long getLinearArrayIndexForXYZ(long x, long y, long z) throws Exception {
+		/*  Same as getLinearArrayIndexForCoordinate, but for a coordinate whose other dimensions are at the lower bound: */
+		long dx = x - this.getLowerValueForIndex(0);
+		long dy = y - this.getLowerValueForIndex(1);
+		long dz = z - this.getLowerValueForIndex(2);
+		if(dx < 0L || dy < 0L || dz < 0L){
+			throw new Exception("DimensionOffset was negative? :" + dx + ", " + dy + ", " + dz);
+		}
+		return dx * this.getStrideForIndex(0) + dy * this.getStrideForIndex(1) + dz * this.getStrideForIndex(2);
+	}
+
+	public long getLowerValueForIndex(int index) {
+		return index < this.lowerValues.length ? this.lowerValues[index] : 0L;
+	}
+
+	public long getUpperValueForIndex(int index) {
+		return index < this.upperValues.length ? this.upperValues[index] : 0L;
+	}
+
+	public long getStrideForIndex(int index) {
+		return index < this.strides.length ? this.strides[index] : 0L;
+	}
+
 
 	public final Coordinate getCanonicalLowerCoordinate() {
 		return this.lower;
@@ -236,6 +282,19 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 		return CuboidAddress.calculateIntersectionCuboidAddressFromDimensionalOverlapRanges(dimensionalOverlapRanges, returnNullOnEmptyIntersection);
 	}
 
+	public boolean intersects(CuboidAddress other) throws Exception {
+		//  Same rule as getOverlapRangeVector, without building the overlap ranges:
+		if(this.lowerValues.length != other.lowerValues.length){
+			throw new Exception("Number of dimensions in both cuboids not match a:" + this.lowerValues.length + " other:" + other.lowerValues.length);
+		}
+		for(int i = 0; i < this.lowerValues.length; i++){
+			if(this.upperValues[i] <= other.lowerValues[i] || this.lowerValues[i] >= other.upperValues[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public CuboidAddress getIntersectionCuboidAddress(CuboidAddress other) throws Exception {
 		return this.getIntersectionCuboidAddress(other, false);
 	}
@@ -285,19 +344,11 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 	}
 
 	public long getVolume() {
-		long total = 1L;
-		Coordinate lower = this.getCanonicalLowerCoordinate();
-		Coordinate upper = this.getCanonicalUpperCoordinate();
-		for(long i = 0L; i < lower.getNumDimensions(); i++){
-			total *= (upper.getValueAtIndex(i) - lower.getValueAtIndex(i));
-		}
-		return total;
+		return this.volume;
 	}
 
-	public long getWidthForIndex(Long index) {
-		Coordinate lower = this.getCanonicalLowerCoordinate();
-		Coordinate upper = this.getCanonicalUpperCoordinate();
-		return upper.getValueAtIndex(index) - lower.getValueAtIndex(index);
+	public long getWidthForIndex(long index) {
+		return index < this.widths.length ? this.widths[(int)index] : 0L;
 	}
 
 	public long getWidth() {
@@ -372,9 +423,9 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 
 
 	public static CuboidAddress calculateIntersectionCuboidAddressFromDimensionalOverlapRanges(List<Vector> dimensionalOverlapRanges, boolean returnNullOnEmptyIntersection) throws Exception {
-		List<Long> lowerValues = new ArrayList<Long>();
-		List<Long> upperValues = new ArrayList<Long>();
 		Long numDimensions = (long)dimensionalOverlapRanges.size();
+		long [] lowerValues = new long [numDimensions.intValue()];
+		long [] upperValues = new long [numDimensions.intValue()];
 		for(long l = 0L; l < numDimensions; l++){
 			Vector v = dimensionalOverlapRanges.get((int)l);
 			if(v == null){
@@ -389,25 +440,30 @@ public class CuboidAddress implements Comparable<CuboidAddress>{
 					);
 				}
 			}else{
-				lowerValues.add(v.getValueAtIndex(0L)); /*  First value is range min */
-				upperValues.add(v.getValueAtIndex(1L)); /*  First value is range max */
+				lowerValues[(int)l] = v.getLongValueAtIndex(0L); /*  First value is range min */
+				upperValues[(int)l] = v.getLongValueAtIndex(1L); /*  First value is range max */
 			}
 		}
 		return new CuboidAddress(new Coordinate(lowerValues), new Coordinate(upperValues));
 	}
 
 	public static CuboidAddress blockCoordinateToChunkCuboidAddress(Coordinate blockCoordinate, CuboidAddress chunkSize) throws Exception {
-		if(blockCoordinate.getNumDimensions().equals(chunkSize.getNumDimensions())){
-			List<Long> chunkCoordsLower = new ArrayList<Long>();
-			List<Long> chunkCoordsUpper = new ArrayList<Long>();
-			for(long i = 0L; i < chunkSize.getNumDimensions(); i++){
-				Coordinate chunkSizeLower = chunkSize.getCanonicalLowerCoordinate();
-				if(chunkSizeLower.getValueAtIndex(i).equals(0L)){
-					Long startingCuboidOffset = Math.floorDiv(blockCoordinate.getValueAtIndex(i), chunkSize.getWidthForIndex(i)) * chunkSize.getWidthForIndex(i);
-					chunkCoordsLower.add(startingCuboidOffset);
-					chunkCoordsUpper.add(startingCuboidOffset + chunkSize.getWidthForIndex(i));
+		return CuboidAddress.blockValuesToChunkCuboidAddress(blockCoordinate.values, chunkSize);
+	}
+
+	static CuboidAddress blockValuesToChunkCuboidAddress(long [] blockValues, CuboidAddress chunkSize) throws Exception {
+		/*  Only reads blockValues, so RegionCursor can pass its current position. */
+		if(blockValues.length == chunkSize.lowerValues.length){
+			long [] chunkCoordsLower = new long [chunkSize.lowerValues.length];
+			long [] chunkCoordsUpper = new long [chunkSize.lowerValues.length];
+			for(int i = 0; i < chunkSize.lowerValues.length; i++){
+				if(chunkSize.lowerValues[i] == 0L){
+					long width = chunkSize.widths[i];
+					long startingCuboidOffset = Math.floorDiv(blockValues[i], width) * width;
+					chunkCoordsLower[i] = startingCuboidOffset;
+					chunkCoordsUpper[i] = startingCuboidOffset + width;
 				}else{
-					throw new Exception("Chunk size cuboid address was supposed to be at origin, but it's at " + chunkSizeLower);
+					throw new Exception("Chunk size cuboid address was supposed to be at origin, but it's at " + chunkSize.getCanonicalLowerCoordinate());
 				}
 			}
 			return new CuboidAddress(new Coordinate(chunkCoordsLower), new Coordinate(chunkCoordsUpper));
@@ -66,6 +66,17 @@ public class CuboidDataLengths {
 		return total;
 	}
 
+	public long getNumMissingBlocks(){
+		//  A negative length means the block is not present:
+		long numMissing = 0L;
+		for(int i = 0; i < lengths.length; i++){
+			if(lengths[i] < 0){
+				numMissing++;
+			}
+		}
+		return numMissing;
+	}
+
 	public long [] getOffsets(){
 		long [] dataOffsets = new long [this.lengths.length];
 		long total = 0L;
@@ -78,7 +89,7 @@ public class CuboidDataLengths {
 		return dataOffsets;
 	}
 
-	public static CuboidDataLengths readCuboidDataLengths(BlockMessageBinaryBuffer buffer, CuboidAddress cuboidAddress){
+	public static CuboidDataLengths readCuboidDataLengths(BlockMessageBinaryBuffer buffer, CuboidAddress cuboidAddress) throws Exception{
 		long [] values = buffer.readNLongValues((int)cuboidAddress.getVolume());
 		return new CuboidDataLengths(cuboidAddress, values);
 	}
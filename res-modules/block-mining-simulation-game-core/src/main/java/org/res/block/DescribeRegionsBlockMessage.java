@@ -48,8 +48,7 @@ public class DescribeRegionsBlockMessage extends BlockMessage {
 		this.cuboids = cuboids;
 	}
 
-	public byte [] asByteArray() throws Exception{
-		BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer();
+	public void writeToBuffer(BlockMessageBinaryBuffer buffer) throws Exception{
 		BlockMessage.writeBlockMessageType(buffer, BlockMessageType.BLOCK_MESSAGE_TYPE_DESCRIBE_REGIONS);
 		BlockMessage.writeConversationId(buffer, this.conversationId);
 		BlockMessage.writeAuthorizedClientId(buffer, this.authorizedClientId);
@@ -61,15 +60,17 @@ public class DescribeRegionsBlockMessage extends BlockMessage {
 			CuboidAddress.writeCuboidAddress(buffer, this.cuboids.get(i).getCuboidAddress());
 		}
 
-		for(int i = 0; i < this.cuboids.size(); i++){
-			CuboidDataLengths.writeCuboidDataLengths(buffer, this.cuboids.get(i).getCuboidDataLengths());
-		}
+		if(buffer.getProtocolVersion() == BlockMessageBinaryBuffer.PROTOCOL_VERSION_2){
+			DictionaryEncodedCuboidData.writeDataSection(buffer, this.cuboids);
+		}else{
+			for(int i = 0; i < this.cuboids.size(); i++){
+				CuboidDataLengths.writeCuboidDataLengths(buffer, this.cuboids.get(i).getCuboidDataLengths());
+			}
 
-		for(int i = 0; i < this.cuboids.size(); i++){
-			CuboidData.writeCuboidData(buffer, this.cuboids.get(i).getCuboidData());
+			for(int i = 0; i < this.cuboids.size(); i++){
+				CuboidData.writeCuboidData(buffer, this.cuboids.get(i).getCuboidData());
+			}
 		}
-
-		return buffer.getUsedBuffer();
 	}
 
 	public DescribeRegionsBlockMessage(BlockModelContext blockModelContext, BlockMessageBinaryBuffer buffer, Long conversationId, Long authorizedClientId) throws Exception {
@@ -85,12 +86,16 @@ public class DescribeRegionsBlockMessage extends BlockMessage {
 			cuboidAddresses.add(CuboidAddress.readCuboidAddress(buffer, numDimensions));
 		}
 
-		for(int i = 0; i < numCuboids; i++){
-			cuboidDataLengths.add(CuboidDataLengths.readCuboidDataLengths(buffer, cuboidAddresses.get(i)));
-		}
+		if(buffer.getProtocolVersion() == BlockMessageBinaryBuffer.PROTOCOL_VERSION_2){
+			DictionaryEncodedCuboidData.readDataSection(buffer, cuboidAddresses, cuboidDataLengths, cuboidData);
+		}else{
+			for(int i = 0; i < numCuboids; i++){
+				cuboidDataLengths.add(CuboidDataLengths.readCuboidDataLengths(buffer, cuboidAddresses.get(i)));
+			}
 
-		for(int i = 0; i < numCuboids; i++){
-			cuboidData.add(CuboidData.readCuboidData(buffer, cuboidDataLengths.get(i)));
+			for(int i = 0; i < numCuboids; i++){
+				cuboidData.add(CuboidData.readCuboidData(buffer, cuboidDataLengths.get(i)));
+			}
 		}
 
 		this.cuboids = new ArrayList<Cuboid>();
@@ -103,6 +108,23 @@ public class DescribeRegionsBlockMessage extends BlockMessage {
 		return this.numDimensions;
 	}
 
+	public int getEstimatedSize(int protocolVersion){
+		if(protocolVersion == BlockMessageBinaryBuffer.PROTOCOL_VERSION_2){
+			//  Dictionary encoding makes the size depend on content, so start small and grow:
+			return 64 + 64 * this.cuboids.size();
+		}
+		long size = 5L * Long.BYTES;
+		for(Cuboid cuboid : this.cuboids){
+			long volume = cuboid.getCuboidAddress().getVolume();
+			size += 2L * this.numDimensions * Long.BYTES + volume * Long.BYTES + cuboid.getCuboidData().getData().length;
+		}
+		return (int)Math.min(size, (long)Integer.MAX_VALUE - 8L);
+	}
+
+	public List<Cuboid> getCuboids(){
+		return this.cuboids;
+	}
+
 	public Long getNumCuboids(){
 		return Long.valueOf(this.cuboids.size());
 	}
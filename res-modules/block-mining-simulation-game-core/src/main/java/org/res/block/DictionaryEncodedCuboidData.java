@@ -0,0 +1,218 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+	Protocol version 2 encoding of the block data of a list of cuboids.  Each
+	cuboid gets a dictionary of its distinct (length, payload) pairs followed by
+	run-length encoded dictionary indices in linear array order.  The whole
+	section is DEFLATE compressed when it is large enough and compression helps.
+*/
+public class DictionaryEncodedCuboidData {
+
+	private static final byte SECTION_FORMAT_RAW = 0;
+	private static final byte SECTION_FORMAT_DEFLATE = 1;
+	public static final int MIN_DEFLATE_SECTION_SIZE = 512;
+
+	public static void writeDataSection(BlockMessageBinaryBuffer buffer, List<Cuboid> cuboids) throws Exception {
+		BlockMessageBinaryBuffer section = BlockMessageBinaryBuffer.acquirePooledBuffer(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2, MIN_DEFLATE_SECTION_SIZE);
+		BlockMessageBinaryBuffer compressed = null;
+		try{
+			for(Cuboid cuboid : cuboids){
+				DictionaryEncodedCuboidData.writeCuboid(section, cuboid.getCuboidDataLengths().getLengths(), cuboid.getCuboidData().getData());
+			}
+			int rawLength = section.getUsedCapacity();
+			compressed = rawLength < MIN_DEFLATE_SECTION_SIZE ? null : DictionaryEncodedCuboidData.deflate(section.getUsedByteBuffer());
+			if(compressed != null && compressed.getUsedCapacity() < rawLength){
+				buffer.writeOneByte(SECTION_FORMAT_DEFLATE);
+				buffer.writeVarLong(rawLength);
+				buffer.writeVarLong(compressed.getUsedCapacity());
+				buffer.writeBytes(compressed.getUsedByteBuffer());
+			}else{
+				buffer.writeOneByte(SECTION_FORMAT_RAW);
+				buffer.writeVarLong(rawLength);
+				buffer.writeBytes(section.getUsedByteBuffer());
+			}
+		}finally{
+			if(compressed != null){
+				compressed.release();
+			}
+			section.release();
+		}
+	}
+
+	public static void readDataSection(BlockMessageBinaryBuffer buffer, List<CuboidAddress> cuboidAddresses, List<CuboidDataLengths> cuboidDataLengths, List<CuboidData> cuboidData) throws Exception {
+		byte format = buffer.readOneByte();
+		int rawLength = (int)buffer.readVarLong();
+		byte [] raw = null;
+		if(format == SECTION_FORMAT_RAW){
+			raw = buffer.readNBytes(rawLength);
+		}else if(format == SECTION_FORMAT_DEFLATE){
+			int compressedLength = (int)buffer.readVarLong();
+			raw = DictionaryEncodedCuboidData.inflate(buffer.readNBytes(compressedLength), rawLength);
+		}else{
+			throw new Exception("Unknown cuboid data section format: " + format);
+		}
+
+		BlockMessageBinaryBuffer section = new BlockMessageBinaryBuffer(raw, raw.length);
+		section.setProtocolVersion(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2);
+		for(CuboidAddress cuboidAddress : cuboidAddresses){
+			long [] lengths = new long [(int)cuboidAddress.getVolume()];
+			byte [] data = DictionaryEncodedCuboidData.readCuboid(section, lengths);
+			cuboidDataLengths.add(new CuboidDataLengths(cuboidAddress, lengths));
+			cuboidData.add(new CuboidData(data));
+		}
+	}
+
+	private static void writeCuboid(BlockMessageBinaryBuffer section, long [] lengths, byte [] data) throws Exception {
+		Map<ByteBuffer, Integer> indexForPayload = new HashMap<ByteBuffer, Integer>();
+		Map<Long, Integer> indexForNegativeLength = new HashMap<Long, Integer>();
+		BlockMessageBinaryBuffer dictionary = BlockMessageBinaryBuffer.acquirePooledBuffer(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2, 256);
+		int [] indices = new int [lengths.length];
+		try{
+			int numEntries = 0;
+			int offset = 0;
+			//  Lookups go through one reusable view, a new key is only made for a new dictionary entry:
+			ByteBuffer probe = ByteBuffer.wrap(data);
+			for(int i = 0; i < lengths.length; i++){
+				long length = lengths[i];
+				Integer index = null;
+				if(length < 0L){
+					index = indexForNegativeLength.get(length);
+					if(index == null){
+						index = numEntries++;
+						indexForNegativeLength.put(length, index);
+						dictionary.writeZigZagVarLong(length);
+					}
+				}else{
+					probe.limit(offset + (int)length).position(offset);
+					index = indexForPayload.get(probe);
+					if(index == null){
+						index = numEntries++;
+						indexForPayload.put(ByteBuffer.wrap(data, offset, (int)length), index);
+						dictionary.writeZigZagVarLong(length);
+						dictionary.writeBytes(data, offset, (int)length);
+					}
+					offset += (int)length;
+				}
+				indices[i] = index;
+			}
+
+			section.writeVarLong(numEntries);
+			section.writeBytes(dictionary.getUsedByteBuffer());
+		}finally{
+			dictionary.release();
+		}
+		int i = 0;
+		while(i < indices.length){
+			int runEnd = i + 1;
+			while(runEnd < indices.length && indices[runEnd] == indices[i]){
+				runEnd++;
+			}
+			section.writeVarLong(runEnd - i);
+			section.writeVarLong(indices[i]);
+			i = runEnd;
+		}
+	}
+
+	private static byte [] readCuboid(BlockMessageBinaryBuffer section, long [] lengths) throws Exception {
+		int numEntries = (int)section.readVarLong();
+		long [] entryLengths = new long [numEntries];
+		byte [][] entryPayloads = new byte [numEntries][];
+		for(int i = 0; i < numEntries; i++){
+			entryLengths[i] = section.readZigZagVarLong();
+			entryPayloads[i] = entryLengths[i] > 0L ? section.readNBytes((int)entryLengths[i]) : new byte [0];
+		}
+
+		BlockMessageBinaryBuffer data = new BlockMessageBinaryBuffer();
+		int position = 0;
+		while(position < lengths.length){
+			long runLength = section.readVarLong();
+			long index = section.readVarLong();
+			if(runLength < 1L || position + runLength > lengths.length || index < 0L || index >= numEntries){
+				throw new Exception("Malformed cuboid run: runLength=" + runLength + ", index=" + index + ", position=" + position + ", volume=" + lengths.length + ", numEntries=" + numEntries);
+			}
+			for(long r = 0L; r < runLength; r++){
+				lengths[position++] = entryLengths[(int)index];
+				data.writeBytes(entryPayloads[(int)index]);
+			}
+		}
+		return data.getUsedBuffer();
+	}
+
+	private static BlockMessageBinaryBuffer deflate(ByteBuffer raw) throws Exception {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		BlockMessageBinaryBuffer out = BlockMessageBinaryBuffer.acquirePooledBuffer(BlockMessageBinaryBuffer.PROTOCOL_VERSION_1, raw.remaining() / 2 + 16);
+		try{
+			deflater.setInput(raw);
+			deflater.finish();
+			byte [] chunk = new byte [8192];
+			while(!deflater.finished()){
+				int n = deflater.deflate(chunk);
+				out.writeBytes(chunk, 0, n);
+			}
+			return out;
+		}catch(Exception e){
+			out.release();
+			throw e;
+		}finally{
+			deflater.end();
+		}
+	}
+
+	private static byte [] inflate(byte [] compressed, int rawLength) throws Exception {
+		Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+		byte [] raw = new byte [rawLength];
+		int total = 0;
+		while(total < rawLength && !inflater.finished()){
+			int n = inflater.inflate(raw, total, rawLength - total);
+			if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+				break;
+			}
+			total += n;
+		}
+		inflater.end();
+		if(total != rawLength){
+			throw new Exception("Inflated cuboid data section has length " + total + " but expected " + rawLength + ".");
+		}
+		return raw;
+	}
+}
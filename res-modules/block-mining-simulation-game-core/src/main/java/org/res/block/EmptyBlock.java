@@ -48,13 +48,13 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonNull;
 import com.google.gson.reflect.TypeToken;
 
-public class EmptyBlock extends IndividualBlock {
+public class EmptyBlock extends IndividualBlock implements StatelessBlock {
 
 	/*
 		A block that represents a truly empty region of the world (not just an uninitialized region)
 	*/
 
-	private byte [] data;
+	private final byte [] data;
 
 	public EmptyBlock(byte [] data) throws Exception {
 		this.data = data;
@@ -46,13 +46,11 @@ public class ErrorNotificationBlockMessage extends BlockMessage {
 		this.blockMessageErrorType = blockMessageErrorType;
 	}
 
-	public byte [] asByteArray() throws Exception{
-		BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer();
+	public void writeToBuffer(BlockMessageBinaryBuffer buffer) throws Exception{
 		BlockMessage.writeBlockMessageType(buffer, BlockMessageType.BLOCK_MESSAGE_TYPE_ERROR_NOTIFICATION);
 		BlockMessage.writeConversationId(buffer, this.conversationId);
 		BlockMessage.writeAuthorizedClientId(buffer, this.authorizedClientId);
 		buffer.writeOneLongValue(this.blockMessageErrorType.toLong());
-		return buffer.getUsedBuffer();
 	}
 
 	public ErrorNotificationBlockMessage(BlockModelContext blockModelContext, BlockMessageBinaryBuffer buffer, Long conversationId, Long authorizedClientId) throws Exception {
@@ -61,6 +59,10 @@ public class ErrorNotificationBlockMessage extends BlockMessage {
 		this.blockMessageErrorType = BlockMessageErrorType.forValue(blockMessageErrorTypeLong);
 	}
 
+	public BlockMessageErrorType getBlockMessageErrorType(){
+		return this.blockMessageErrorType;
+	}
+
 	public void doWork(BlockSession blockSession) throws Exception{
 		this.blockModelContext.onErrorNotificationBlockMessage(blockSession, conversationId, authorizedClientId, blockMessageErrorType);
 	}
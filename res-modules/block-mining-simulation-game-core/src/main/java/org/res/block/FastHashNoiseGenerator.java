@@ -0,0 +1,232 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+public class FastHashNoiseGenerator implements NoiseGenerator {
+
+	/*
+		The same gradient noise as MultiDimensionalNoiseGenerator, but the random
+		gradient at each lattice vertex comes from SplitMix64 style integer mixing
+		of the seed and the vertex coordinate instead of a SHA-512 digest.  It
+		keeps no state besides the seed, so one instance can be used from any
+		number of threads at once.  The noise values are different from the
+		SHA-512 generator, so a world has to keep using whichever one made it.
+
+		octaveNoiseForRegion works out the gradients for every lattice vertex
+		that touches the region once, instead of once for every block next to
+		that vertex.
+	*/
+
+	public static final int MAX_DIMENSIONS = 8;
+
+	private final long seed;
+
+	public FastHashNoiseGenerator(long seed){
+		this.seed = seed;
+	}
+
+	public long getSeed(){
+		return this.seed;
+	}
+
+	private static long mix64(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private long hashVertex(long [] vertex){
+		long h = mix64(this.seed);
+		for(int i = 0; i < vertex.length; i++){
+			h = mix64(h + vertex[i] * 0x9E3779B97F4A7C15L);
+		}
+		return h;
+	}
+
+	private static double getGradientComponent(long vertexHash, int component){
+		//  The top 53 bits as a signed fraction in [-1, 1):
+		return (double)(mix64(vertexHash + (component + 1) * 0xD1B54A32D192ED03L) >> 11) * 0x1.0p-52;
+	}
+
+	private static double smooth(double c){
+		return (c * (c * 6.0 - 15.0) + 10.0) * c * c * c;
+	}
+
+	private static double interpolateCorners(double [] cornerValues, double [] weights){
+		//  Bit d of a corner's index is its offset in dimension d.  Collapse one dimension at a time:
+		for(int d = weights.length - 1; d >= 0; d--){
+			int half = 1 << d;
+			for(int c = 0; c < half; c++){
+				cornerValues[c] = (cornerValues[c + half] - cornerValues[c]) * weights[d] + cornerValues[c];
+			}
+		}
+		return cornerValues[0];
+	}
+
+	private static void checkNumDimensions(int numDimensions) throws Exception{
+		if(numDimensions < 1 || numDimensions > MAX_DIMENSIONS){
+			throw new Exception("Cannot handle " + numDimensions + " dimensions, the fast hash noise generator supports 1 to " + MAX_DIMENSIONS + ".");
+		}
+	}
+
+	public double noiseAtCoordinate(double [] coordinateDouble){
+		int n = coordinateDouble.length;
+		long [] cell = new long [n];
+		double [] offsets = new double [n];
+		double [] weights = new double [n];
+		for(int d = 0; d < n; d++){
+			cell[d] = (long)Math.floor(coordinateDouble[d]);
+			offsets[d] = coordinateDouble[d] - (double)cell[d];
+			weights[d] = smooth(offsets[d]);
+		}
+		long [] vertex = new long [n];
+		double [] cornerValues = new double [1 << n];
+		for(int c = 0; c < cornerValues.length; c++){
+			for(int d = 0; d < n; d++){
+				vertex[d] = cell[d] + ((c >> d) & 1);
+			}
+			long h = this.hashVertex(vertex);
+			double dot = 0.0;
+			for(int j = 0; j < n; j++){
+				dot += getGradientComponent(h, j) * (offsets[j] - (double)((c >> j) & 1));
+			}
+			cornerValues[c] = dot / n;
+		}
+		return interpolateCorners(cornerValues, weights);
+	}
+
+	public double multiOctaveNoiseAtCoordinate(long [] coordinateLong, double [] frequencies, double [] amplitudes) throws Exception{
+		if(frequencies.length != amplitudes.length){
+			throw new Exception("Length missmatch between frequencies: " + frequencies.length + " and amplitudes:" + amplitudes.length);
+		}
+		checkNumDimensions(coordinateLong.length);
+		double totalSoFar = 0.0;
+		double [] scaled = new double [coordinateLong.length];
+		for(int i = 0; i < frequencies.length; i++){
+			for(int d = 0; d < coordinateLong.length; d++){
+				scaled[d] = (double)coordinateLong[d] * frequencies[i];
+			}
+			totalSoFar += this.noiseAtCoordinate(scaled) * amplitudes[i];
+		}
+		return totalSoFar;
+	}
+
+	@Override
+	public double [] octaveNoiseForRegion(CuboidAddress region, double frequency, double amplitude) throws Exception{
+		int n = region.getNumDimensions().intValue();
+		checkNumDimensions(n);
+		int [] widths = new int [n];
+		long [] cellMin = new long [n];
+		long [][] cells = new long [n][];
+		double [][] offsets = new double [n][];
+		double [][] weights = new double [n][];
+
+		//  Lattice cell, offset and smoothing weight for every position along each dimension:
+		int [] gridSizes = new int [n];
+		int [] gridStrides = new int [n];
+		int numVertices = 1;
+		for(int d = 0; d < n; d++){
+			widths[d] = (int)region.getWidthForIndex(d);
+			cells[d] = new long [widths[d]];
+			offsets[d] = new double [widths[d]];
+			weights[d] = new double [widths[d]];
+			long cellMax = Long.MIN_VALUE;
+			cellMin[d] = Long.MAX_VALUE;
+			for(int k = 0; k < widths[d]; k++){
+				double p = (double)(region.getLowerValueForIndex(d) + k) * frequency;
+				cells[d][k] = (long)Math.floor(p);
+				offsets[d][k] = p - (double)cells[d][k];
+				weights[d][k] = smooth(offsets[d][k]);
+				cellMin[d] = Math.min(cellMin[d], cells[d][k]);
+				cellMax = Math.max(cellMax, cells[d][k]);
+			}
+			gridSizes[d] = widths[d] == 0 ? 0 : (int)(cellMax - cellMin[d]) + 2;
+			gridStrides[d] = numVertices;
+			numVertices *= gridSizes[d];
+		}
+		double [] rtn = new double [(int)region.getVolume()];
+		if(rtn.length == 0){
+			return rtn;
+		}
+
+		//  Gradients for every lattice vertex around the region:
+		double [] gradients = new double [numVertices * n];
+		long [] vertex = new long [n];
+		int [] g = new int [n];
+		for(int v = 0; v < numVertices; v++){
+			for(int d = 0; d < n; d++){
+				vertex[d] = cellMin[d] + g[d];
+			}
+			long h = this.hashVertex(vertex);
+			for(int j = 0; j < n; j++){
+				gradients[v * n + j] = getGradientComponent(h, j);
+			}
+			for(int d = 0; d < n && ++g[d] == gridSizes[d]; d++){
+				g[d] = 0;
+			}
+		}
+
+		int numCorners = 1 << n;
+		int [] cornerVertexOffsets = new int [numCorners];
+		for(int c = 0; c < numCorners; c++){
+			for(int d = 0; d < n; d++){
+				cornerVertexOffsets[c] += ((c >> d) & 1) * gridStrides[d];
+			}
+		}
+
+		double [] cornerValues = new double [numCorners];
+		double [] blockWeights = new double [n];
+		int [] k = new int [n];
+		for(int index = 0; index < rtn.length; index++){
+			int baseVertex = 0;
+			for(int d = 0; d < n; d++){
+				baseVertex += (int)(cells[d][k[d]] - cellMin[d]) * gridStrides[d];
+				blockWeights[d] = weights[d][k[d]];
+			}
+			for(int c = 0; c < numCorners; c++){
+				int gradientIndex = (baseVertex + cornerVertexOffsets[c]) * n;
+				double dot = 0.0;
+				for(int j = 0; j < n; j++){
+					dot += gradients[gradientIndex + j] * (offsets[j][k[j]] - (double)((c >> j) & 1));
+				}
+				cornerValues[c] = dot / n;
+			}
+			//  Adding to 0.0 like the sum in multiOctaveNoiseAtCoordinate, so the values match exactly:
+			rtn[index] = 0.0 + interpolateCorners(cornerValues, blockWeights) * amplitude;
+			for(int d = 0; d < n && ++k[d] == widths[d]; d++){
+				k[d] = 0;
+			}
+		}
+		return rtn;
+	}
+}
@@ -70,6 +70,9 @@ public class HelpMenuFrameThreadState extends UserInterfaceFrameThreadState {
 
 	private Long previousRootSplitId = null;
 	private HelpMenu helpMenu = null;
+	private ScreenRegion previousMenuBoxRegion = null;
+	private int previousTerminalWidth = -1;
+	private int previousTerminalHeight = -1;
 
 	public static String DISPLAY_TITLE = "Help Menu Overlay";
 
@@ -518,7 +521,22 @@ public class HelpMenuFrameThreadState extends UserInterfaceFrameThreadState {
 			}
 		}
 
-		ScreenRegion region = new ScreenRegion(ScreenRegion.makeScreenRegionCA(0, 0, terminalWidth, terminalHeight));
+		//  Only the area of the old and new menu boxes changes, unless the terminal was resized:
+		ScreenRegion menuBoxRegion = new ScreenRegion(ScreenRegion.makeScreenRegionCA(xOffset, yOffset, xOffset + menuWidth, yOffset + menuHeight));
+		ScreenRegion region;
+		if(this.previousMenuBoxRegion == null || terminalWidth != this.previousTerminalWidth || terminalHeight != this.previousTerminalHeight){
+			region = new ScreenRegion(ScreenRegion.makeScreenRegionCA(0, 0, terminalWidth, terminalHeight));
+		}else{
+			region = new ScreenRegion(ScreenRegion.makeScreenRegionCA(
+				Math.max(Math.min(menuBoxRegion.getStartX(), this.previousMenuBoxRegion.getStartX()), 0),
+				Math.max(Math.min(menuBoxRegion.getStartY(), this.previousMenuBoxRegion.getStartY()), 0),
+				Math.min(Math.max(menuBoxRegion.getEndX(), this.previousMenuBoxRegion.getEndX()), terminalWidth),
+				Math.min(Math.max(menuBoxRegion.getEndY(), this.previousMenuBoxRegion.getEndY()), terminalHeight)
+			));
+		}
+		this.previousMenuBoxRegion = menuBoxRegion;
+		this.previousTerminalWidth = terminalWidth;
+		this.previousTerminalHeight = terminalHeight;
 		changes.addChangedRegion(region);
 		this.bufferedScreenLayers[ConsoleWriterThreadState.BUFFER_INDEX_MENU].mergeDown(changes, false, ScreenLayerMergeType.PREFER_INPUT_TRANSPARENCY);
 
@@ -43,6 +43,8 @@ import java.util.HashSet;
 import java.util.TreeSet;
 import java.util.TreeMap;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.io.File;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +57,10 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 
 	private Map<InMemoryChunksClient, MemoryChunkStateMachine> chunkStateMachines = new TreeMap<InMemoryChunksClient, MemoryChunkStateMachine>();
 
+	/*  Number of chunks in each state across all clients, kept up to date by the state machines
+	    so it can be checked without taking the lock.  Indexed by MemoryChunkStateType ordinal. */
+	private final AtomicLongArray numChunksInState = new AtomicLongArray(MemoryChunkStateType.values().length);
+
 	private Map<Long, PlayerPositionXYZ> playerPositions = new HashMap<Long, PlayerPositionXYZ>();
 
 	protected BlockManagerThreadCollection blockManagerThreadCollection = null;
@@ -67,8 +73,9 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 	 *  Map of authorized client id -> required regions:  */
 	private Map<InMemoryChunksClient, Set<CuboidAddress>> lastRequiredRegions = new TreeMap<InMemoryChunksClient, Set<CuboidAddress>>();
 
-	/*  The map of chunks that currently resides in memory. */
-	private Map<CuboidAddress, IndividualBlock[]> blockChunks = new TreeMap<CuboidAddress, IndividualBlock[]>();
+	/*  The chunks that currently reside in memory.  Only changed while holding the lock, but
+	    read without it so that rendering the map doesn't wait on chunks streaming in. */
+	private ChunkBlockStore blockChunks = null;
 
 	/*  Max chunks we allow to be in pending state at once: */
 	private Long maxPendingChunks;
@@ -82,23 +89,19 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 	}
 
 	public boolean isEmptyAndFinished(){
-		synchronized(lock){
-			return (
-				this.getAllChunksInState(MemoryChunkStateType.PENDING).size() == 0 &&
-				this.getAllChunksInState(MemoryChunkStateType.REQUESTED).size() == 0 &&
-				this.getWorkItemQueueSize() == 0
-			);
-		}
+		return (
+			this.getNumChunksInState(MemoryChunkStateType.PENDING) == 0L &&
+			this.getNumChunksInState(MemoryChunkStateType.REQUESTED) == 0L &&
+			this.getWorkItemQueueSize() == 0
+		);
 	}
 
 	public void printSizes(){
-		synchronized(lock){
-			logger.info(
-				"this.getAllChunksInState(MemoryChunkStateType.PENDING).size()=" + this.getAllChunksInState(MemoryChunkStateType.PENDING).size() +
-				", this.getAllChunksInState(MemoryChunkStateType.REQUESTED).size()=" + this.getAllChunksInState(MemoryChunkStateType.REQUESTED).size() +
-				", this.getWorkItemQueueSize()=" + this.getWorkItemQueueSize()
-			);
-		}
+		logger.info(
+			"this.getNumChunksInState(MemoryChunkStateType.PENDING)=" + this.getNumChunksInState(MemoryChunkStateType.PENDING) +
+			", this.getNumChunksInState(MemoryChunkStateType.REQUESTED)=" + this.getNumChunksInState(MemoryChunkStateType.REQUESTED) +
+			", this.getWorkItemQueueSize()=" + this.getWorkItemQueueSize()
+		);
 	}
 
 	public void registerPlayer(ClientBlockModelContext clientBlockModelContext) throws Exception{
@@ -124,29 +127,42 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 	}
 
 	public void destroy(Object o) throws Exception{
+		synchronized(lock){
+			this.blockChunks.close();
+		}
+	}
+
+	public void onChunkStateCountChange(MemoryChunkStateType oldState, MemoryChunkStateType newState){
+		if(oldState != null){
+			this.numChunksInState.decrementAndGet(oldState.ordinal());
+		}
+		if(newState != null){
+			this.numChunksInState.incrementAndGet(newState.ordinal());
+		}
+	}
 
+	public long getNumChunksInState(MemoryChunkStateType stateType){
+		return this.numChunksInState.get(stateType.ordinal());
 	}
 
 	public boolean isChunkLoading(CuboidAddress c){
 		return (
-			!this.blockChunks.containsKey(c) &&
+			!this.blockChunks.containsChunk(c) &&
 			(
-				this.getAllChunksInState(MemoryChunkStateType.REQUESTED).size() > 0 ||
-				this.getAllChunksInState(MemoryChunkStateType.PENDING).size() > 0
+				this.getNumChunksInState(MemoryChunkStateType.REQUESTED) > 0L ||
+				this.getNumChunksInState(MemoryChunkStateType.PENDING) > 0L
 			)
 		);
 	}
 
 	public boolean isChunkLoadedOrPending(InMemoryChunksClient inMemoryChunksClient, CuboidAddress c) throws Exception{
-		synchronized(lock){
-			if(
-				this.isChunkLoading(c) ||
-				this.blockChunks.containsKey(c)
-			){
-				return true;
-			}else{
-				return false;
-			}
+		if(
+			this.isChunkLoading(c) ||
+			this.blockChunks.containsChunk(c)
+		){
+			return true;
+		}else{
+			return false;
 		}
 	}
 
@@ -170,7 +186,7 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 				break;
 			}case AVAILABLE:{
 				//  Remove the chunk to free up memory.
-				this.blockChunks.remove(ca);
+				this.blockChunks.removeChunk(ca);
 				this.sendSignal(clientThatDiscarded, new ChunkSignal(null, Arrays.asList(ca)));
 				break;
 			}default:{
@@ -181,7 +197,11 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 
 	public void setupClientStateMachine(InMemoryChunksClient inMemoryChunksClient) throws Exception{
 		if(!this.chunkStateMachines.containsKey(inMemoryChunksClient)){
-			this.chunkStateMachines.put(inMemoryChunksClient, new MemoryChunkStateMachine(this));
+			MemoryChunkStateMachine sm = new MemoryChunkStateMachine(this);
+			for(Map.Entry<Long, PlayerPositionXYZ> e : this.playerPositions.entrySet()){
+				sm.getPendingChunkScheduler().setPlayerPosition(e.getKey(), e.getValue().getPosition());
+			}
+			this.chunkStateMachines.put(inMemoryChunksClient, sm);
 		}
 	}
 
@@ -211,6 +231,7 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 		}
 	}
 
+	/*  Caller must hold the lock.  Use getNumChunksInState when only the count is needed. */
 	public List<Map.Entry<InMemoryChunksClient, CuboidAddress>> getAllChunksInState(MemoryChunkStateType stateType){
 		ChunkMemoryState state = new ChunkMemoryState(stateType);
 		List<Map.Entry<InMemoryChunksClient, CuboidAddress>> rtn = new ArrayList<Map.Entry<InMemoryChunksClient, CuboidAddress>>();
@@ -226,20 +247,10 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 
 	public boolean onHasPendingNotYetRequestedChunks() throws Exception{
 		synchronized(lock){
-			//  Only start a request for more chunks if we've not already exceeded the max outstanding chunks.
-			if(this.getAllChunksInState(MemoryChunkStateType.REQUESTED).size() < maxPendingChunks){
-				List<Map.Entry<InMemoryChunksClient, CuboidAddress>> closestFirstCuboidAddressList = this.getClosestCuboidAddressList(this.getAllChunksInState(MemoryChunkStateType.PENDING), this.playerPositions);
-
-				Long numChunksSelected = 0L;
-				List<Map.Entry<InMemoryChunksClient, CuboidAddress>> pendingChunksToRequest = new ArrayList<Map.Entry<InMemoryChunksClient, CuboidAddress>>();
-				for(Map.Entry<InMemoryChunksClient, CuboidAddress> clientChunkToRequest : closestFirstCuboidAddressList){
-					if(numChunksSelected < maxPendingChunks){
-						numChunksSelected++;
-						pendingChunksToRequest.add(clientChunkToRequest);
-					}else{
-						break;
-					}
-				}
+			//  Only request as many more chunks as it takes to reach the max outstanding chunks.
+			long numFreeRequestSlots = maxPendingChunks - this.getNumChunksInState(MemoryChunkStateType.REQUESTED);
+			if(numFreeRequestSlots > 0L){
+				List<Map.Entry<InMemoryChunksClient, CuboidAddress>> pendingChunksToRequest = this.getClosestPendingChunks(numFreeRequestSlots);
 
 				if(pendingChunksToRequest.size() > 0){
 					Set<Long> uniqueDimensions = new HashSet<Long>();
@@ -270,29 +281,37 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 	}
 
 	public void onPlayerPositionChange(AuthorizedPlayerPositionXYZ newPosition) throws Exception{
-		this.playerPositions.put(newPosition.getAuthorizedClientId(), newPosition.getPlayerPositionXYZ());
+		synchronized(lock){
+			this.playerPositions.put(newPosition.getAuthorizedClientId(), newPosition.getPlayerPositionXYZ());
+			for(MemoryChunkStateMachine sm : this.chunkStateMachines.values()){
+				sm.getPendingChunkScheduler().setPlayerPosition(newPosition.getAuthorizedClientId(), newPosition.getPlayerPositionXYZ().getPosition());
+			}
+		}
 	}
 
-	private List<Map.Entry<InMemoryChunksClient, CuboidAddress>> getClosestCuboidAddressList(List<Map.Entry<InMemoryChunksClient, CuboidAddress>> cuboidAddresses, Map<Long, PlayerPositionXYZ> playerPositions) throws Exception {
-
-		Map<Double, Map.Entry<InMemoryChunksClient, CuboidAddress>> distanceSortedTreemap = new TreeMap<Double, Map.Entry<InMemoryChunksClient, CuboidAddress>>();
-		for(Map.Entry<InMemoryChunksClient, CuboidAddress> oneClientChunk : cuboidAddresses){
-			List<Double> distancesFromPlayers = new ArrayList<Double>();
-			for(Map.Entry<Long, PlayerPositionXYZ> e : playerPositions.entrySet()){
-				PlayerPositionXYZ player = e.getValue();
-				Double distance = oneClientChunk.getValue().getCentroidDistanceFromCoordinate(player.getPosition());
-				distancesFromPlayers.add(distance);
+	/*  Caller must hold the lock.  Merges the per client schedulers, ties go to the client that sorts first. */
+	public List<Map.Entry<InMemoryChunksClient, CuboidAddress>> getClosestPendingChunks(long maxChunks) throws Exception {
+		Map<Double, List<Map.Entry<InMemoryChunksClient, CuboidAddress>>> candidatesByPriority = new TreeMap<Double, List<Map.Entry<InMemoryChunksClient, CuboidAddress>>>();
+		for(Map.Entry<InMemoryChunksClient, MemoryChunkStateMachine> e : chunkStateMachines.entrySet()){
+			ChunkLoadScheduler scheduler = e.getValue().getPendingChunkScheduler();
+			for(CuboidAddress ca : scheduler.getFirstChunks(maxChunks)){
+				Double priority = scheduler.getPriority(ca);
+				if(!candidatesByPriority.containsKey(priority)){
+					candidatesByPriority.put(priority, new ArrayList<Map.Entry<InMemoryChunksClient, CuboidAddress>>());
+				}
+				candidatesByPriority.get(priority).add(Map.entry(e.getKey(), ca));
 			}
-			Double minDistanceValue = distancesFromPlayers.size() == 0 ? 0.0 : Collections.min(distancesFromPlayers);
-			distanceSortedTreemap.put(minDistanceValue, oneClientChunk);
 		}
 
-		List<Map.Entry<InMemoryChunksClient, CuboidAddress>> sortedCuboidAddresses = new ArrayList<Map.Entry<InMemoryChunksClient, CuboidAddress>>();
-		for(Map.Entry<Double, Map.Entry<InMemoryChunksClient, CuboidAddress>> e : distanceSortedTreemap.entrySet()){
-			sortedCuboidAddresses.add(e.getValue());
+		List<Map.Entry<InMemoryChunksClient, CuboidAddress>> rtn = new ArrayList<Map.Entry<InMemoryChunksClient, CuboidAddress>>();
+		for(List<Map.Entry<InMemoryChunksClient, CuboidAddress>> candidates : candidatesByPriority.values()){
+			for(Map.Entry<InMemoryChunksClient, CuboidAddress> candidate : candidates){
+				if(rtn.size() < maxChunks){
+					rtn.add(candidate);
+				}
+			}
 		}
-
-		return sortedCuboidAddresses;
+		return rtn;
 	}
 
 	public void addInMemoryChunk(Cuboid cuboid, InMemoryChunksClient inMemoryChunksClient) throws Exception{
@@ -316,35 +335,42 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 			}else{
 				//  If it was a pending request, acknowledge that the chunk has been received and processed:
 				this.chunkStateMachines.get(inMemoryChunksClient).makeChunkAvailable(cuboidAddress, inMemoryChunksClient);
-				this.blockChunks.put(cuboidAddress, new IndividualBlock [(int)this.chunkSize.getVolume()]);
+				this.blockChunks.addChunk(cuboidAddress);
 			}
 
-			RegionIteration regionIteration = new RegionIteration(cuboidAddress.getCanonicalLowerCoordinate(), cuboidAddress);
-			do{
-				Coordinate currentCoordinate = regionIteration.getCurrentCoordinate();
-				long blockOffsetInArray = cuboidAddress.getLinearArrayIndexForCoordinate(currentCoordinate);
-				long sizeOfBlock = dataLengths.getLengths()[(int)blockOffsetInArray];
-				long offsetOfBlock = dataLengths.getOffsets()[(int)blockOffsetInArray];
-				IndividualBlock blockToWrite = null;
-				if(sizeOfBlock < 0L){
-					blockToWrite = new UninitializedBlock();
-				}else{
-					byte [] blockData = data.getDataAtOffset(offsetOfBlock, sizeOfBlock);
-					String blockClassName = blockManagerThreadCollection.getBlockSchema().getFirstBlockMatchDescriptionForByteArray(blockData);
-					blockToWrite = IndividualBlock.makeBlockInstanceFromClassName(blockClassName, blockData);
+			long [] lengths = dataLengths.getLengths();
+			long [] offsets = dataLengths.getOffsets();
+			CuboidAddress chunkCuboidAddress = null;
+			boolean isChunkLoaded = false;
+			RegionCursor cursor = new RegionCursor(cuboidAddress);
+			for(; !cursor.isDone(); cursor.next()){
+				int blockOffsetInArray = (int)cursor.getLinearArrayIndex();
+				long sizeOfBlock = lengths[blockOffsetInArray];
+				long offsetOfBlock = offsets[blockOffsetInArray];
+				byte [] blockData = null;
+				String blockClassName = null;
+				if(sizeOfBlock >= 0L){
+					blockData = data.getDataAtOffset(offsetOfBlock, sizeOfBlock);
+					blockClassName = blockManagerThreadCollection.getBlockSchema().getFirstBlockMatchDescriptionForByteArray(blockData);
+					if(blockClassName == null){
+						throw new Exception("Unable to determine class of block with data = '" + BlockModelContext.convertToHex(blockData) + "'");
+					}
 				}
 
-				//  Figure out which 'chunk' this coordinate belongs to
-				CuboidAddress chunkCuboidAddress = CuboidAddress.blockCoordinateToChunkCuboidAddress(currentCoordinate, this.chunkSize);
-				long blockOffsetInChunkArray = chunkCuboidAddress.getLinearArrayIndexForCoordinate(currentCoordinate);
+				//  Figure out which 'chunk' this coordinate belongs to, only looking it up again when we cross into a different chunk:
+				if(chunkCuboidAddress == null || !cursor.isInside(chunkCuboidAddress)){
+					chunkCuboidAddress = cursor.getChunkCuboidAddress(this.chunkSize);
+					isChunkLoaded = this.blockChunks.containsChunk(chunkCuboidAddress);
+					if(!isChunkLoaded){
+						//  This case will naturally happen if we unsubscribed just as we're about to get an update from the server about a write that took place before the unsubscribe:
+						logger.info("Note:  Discarding updates to blocks in unloaded chunk " + chunkCuboidAddress + " (cuboidAddress=" + cuboidAddress + ").");
+					}
+				}
 
-				if(this.blockChunks.get(chunkCuboidAddress) == null){
-					//  This case will naturally happen if we unsubscribed just as we're about to get an update from the server about a write that took place before the unsubscribe:
-					logger.info("Note:  Discarding update to block at " + currentCoordinate + " (cuboidAddress=" + chunkCuboidAddress + ") in an unloaded region.");
-				}else{
-					this.blockChunks.get(chunkCuboidAddress)[(int)blockOffsetInChunkArray] = blockToWrite;
+				if(isChunkLoaded){
+					this.blockChunks.writeBlock(chunkCuboidAddress, (int)cursor.getLinearArrayIndexIn(chunkCuboidAddress), blockData, blockClassName);
 				}
-			}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+			}
 			this.sendSignal(inMemoryChunksClient, new ChunkSignal(MemoryChunkStateType.AVAILABLE, Arrays.asList(cuboidAddress.copy())));
 		}
 	}
@@ -352,16 +378,15 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 	private IndividualBlock readBlockAtCoordinate_Internal(Coordinate coordinate) throws Exception{
 		//  Figure out which 'chunk' this coordinate belongs to:
 		CuboidAddress chunkCuboidAddress = CuboidAddress.blockCoordinateToChunkCuboidAddress(coordinate, this.chunkSize);
-		long blockOffsetInArray = chunkCuboidAddress.getLinearArrayIndexForCoordinate(coordinate);
+		long blockOffsetInArray = chunkCuboidAddress.getLinearArrayIndexForLongCoordinate(coordinate);
 		if(this.isChunkLoading(chunkCuboidAddress)){
 			return null; //  Still waiting on chunk to come back from server.
 		}else{
-			IndividualBlock [] blocksInChunk = this.blockChunks.get(chunkCuboidAddress);
-			if(blocksInChunk == null){ //  Chunk not loaded at all, and not even in a pending request to server.
+			if(!this.blockChunks.containsChunk(chunkCuboidAddress)){ //  Chunk not loaded at all, and not even in a pending request to server.
 				return null;
 			}else{
-				IndividualBlock b = blocksInChunk[(int)blockOffsetInArray];
-				if(b instanceof UninitializedBlock && !coordinate.getValueAtIndex(3L).equals(0L)){
+				IndividualBlock b = this.blockChunks.readBlock(chunkCuboidAddress, (int)blockOffsetInArray);
+				if(b instanceof UninitializedBlock && coordinate.getLongValueAtIndex(3L) != 0L){
 					// Special case for Uninitialized block
 					// outside the map plane:
 					return new EmptyBlock(new byte []{});
@@ -372,24 +397,57 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 		}
 	}
 
+	/*  Reads don't take the lock, a chunk that's being written can show a mix of old and new blocks. */
 	public IndividualBlock readBlockAtCoordinate(Coordinate coordinate) throws Exception{
-		synchronized(lock){
-			return readBlockAtCoordinate_Internal(coordinate);
-		}
+		return readBlockAtCoordinate_Internal(coordinate);
 	}
 
 	public void loadBlocksFromMemory(ThreeDimensionalCircularBuffer<IndividualBlock> blockBuffer, CuboidAddress areaToInclude, CuboidAddress areaToExclude) throws Exception {
-		synchronized(lock){
-			RegionIteration regionIteration = new RegionIteration(areaToInclude.getCanonicalLowerCoordinate(), areaToInclude);
-			while(!regionIteration.isDone()){
-				Coordinate currentCoordinate = regionIteration.getCurrentCoordinate();
-				if(areaToExclude == null || !areaToExclude.containsCoordinate(currentCoordinate)){
-					IndividualBlock b = this.readBlockAtCoordinate_Internal(currentCoordinate);
-					if(b != null){ /* Chunk not even loaded. */
-						blockBuffer.setObjectAtCoordinate(currentCoordinate, b);
-					}
+		//  Same as readBlockAtCoordinate for every block, but the chunk is only looked up again when the cursor crosses into a different one:
+		RegionCursor cursor = new RegionCursor(areaToInclude);
+		CuboidAddress chunkCuboidAddress = null;
+		boolean isChunkLoaded = false;
+		for(; !cursor.isDone(); cursor.next()){
+			if(areaToExclude == null || !cursor.isInside(areaToExclude)){
+				if(chunkCuboidAddress == null || !cursor.isInside(chunkCuboidAddress)){
+					chunkCuboidAddress = cursor.getChunkCuboidAddress(this.chunkSize);
+					isChunkLoaded = this.blockChunks.containsChunk(chunkCuboidAddress);
+				}
+				if(!isChunkLoaded){
+					continue; /* Chunk not even loaded. */
+				}
+				IndividualBlock b = this.blockChunks.readBlock(chunkCuboidAddress, (int)cursor.getLinearArrayIndexIn(chunkCuboidAddress));
+				if(b instanceof UninitializedBlock && cursor.getValueAtIndex(3) != 0L){
+					b = new EmptyBlock(new byte []{});
+				}
+				if(b != null){ /* Chunk was unloaded while reading it. */
+					blockBuffer.setObjectAtXYZ(cursor.getX(), cursor.getY(), cursor.getZ(), b);
+				}
+			}
+		}
+	}
+
+	private static ChunkBlockStore makeChunkBlockStore(BlockManagerThreadCollection blockManagerThreadCollection, CuboidAddress chunkSize) throws Exception{
+		ChunkStoreType chunkStoreType = blockManagerThreadCollection.getChunkStoreType();
+		String spillDirectory = blockManagerThreadCollection.getChunkStoreSpillDirectory();
+		if(chunkStoreType == null){
+			//  A spill directory only makes sense for the off-heap store:
+			chunkStoreType = spillDirectory == null ? ChunkStoreType.HEAP : ChunkStoreType.OFF_HEAP;
+		}
+		switch(chunkStoreType){
+			case HEAP:{
+				return new HeapChunkBlockStore(chunkSize);
+			}case OFF_HEAP:{
+				//  The off-heap store needs a lock, so split it into stripes to keep readers from waiting on each other:
+				//  The stripes all map their pages from the same spill file:
+				ChunkStoreSpillFile spillFile = spillDirectory == null ? null : new ChunkStoreSpillFile(new File(spillDirectory));
+				List<ChunkBlockStore> stripes = new ArrayList<ChunkBlockStore>();
+				for(int i = 0; i < StripedChunkBlockStore.DEFAULT_NUM_STRIPES; i++){
+					stripes.add(new OffHeapChunkBlockStore(chunkSize, spillFile, OffHeapChunkBlockStore.DEFAULT_PAGE_SIZE / StripedChunkBlockStore.DEFAULT_NUM_STRIPES));
 				}
-				regionIteration.incrementCoordinateWithinCuboidAddress();
+				return new StripedChunkBlockStore(stripes);
+			}default:{
+				throw new Exception("Unexpected chunk store: " + chunkStoreType);
 			}
 		}
 	}
@@ -399,6 +457,7 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 			this.blockManagerThreadCollection = blockManagerThreadCollection;
 			this.chunkSize = chunkSize;
 			this.maxPendingChunks = maxPendingChunks;
+			this.blockChunks = InMemoryChunks.makeChunkBlockStore(blockManagerThreadCollection, chunkSize);
 			for(long i = 0; i < chunkSize.getNumDimensions(); i++){
 				if(chunkSize.getWidthForIndex(i) < 1L){
 					throw new Exception("Invalid chunk dimension size: " + chunkSize.getWidthForIndex(i));
@@ -411,6 +470,10 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 		return this.blockManagerThreadCollection;
 	}
 
+	public CuboidAddress getChunkSize(){
+		return this.chunkSize;
+	}
+
 	public InMemoryChunksWorkItem takeWorkItem() throws Exception {
 		InMemoryChunksWorkItem w = this.workItemQueue.takeWorkItem();
 		return w;
@@ -421,7 +484,7 @@ public class InMemoryChunks extends UIEventReceiverThreadState<InMemoryChunksWor
 	}
 
 	public boolean doBackgroundProcessing() throws Exception{
-		if(this.getAllChunksInState(MemoryChunkStateType.PENDING).size() > 0){
+		if(this.getNumChunksInState(MemoryChunkStateType.PENDING) > 0L){
 			if(onHasPendingNotYetRequestedChunks()){
 				return true; // More background work to do.
 			}
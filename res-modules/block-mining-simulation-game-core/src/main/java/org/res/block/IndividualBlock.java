@@ -44,10 +44,20 @@ import java.lang.reflect.InvocationTargetException;
 
 public abstract class IndividualBlock {
 
+	/*  The returned array is read only, shared blocks hand out the same array to every caller. */
 	public abstract byte [] getBlockData() throws Exception;
 	public abstract boolean isMineable() throws Exception;
 
 	public static IndividualBlock makeBlockInstanceFromClassName(String fullClassName, byte [] data) throws Exception {
+		if(fullClassName == null){
+			throw new Exception("Unable to determine class of block with data = '" + BlockModelContext.convertToHex(data) + "'");
+		}else{
+			return BlockFactory.makeBlock(fullClassName, data);
+		}
+	}
+
+	public static IndividualBlock makeBlockInstanceFromClassNameByReflection(String fullClassName, byte [] data) throws Exception {
+		/*  Always creates a new instance through reflection.  Only kept to compare against BlockFactory. */
 		if(fullClassName == null){
 			throw new Exception("Unable to determine class of block with data = '" + BlockModelContext.convertToHex(data) + "'");
 		}else{
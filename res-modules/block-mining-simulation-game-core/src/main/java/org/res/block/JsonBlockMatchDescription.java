@@ -74,13 +74,12 @@ public class JsonBlockMatchDescription extends BlockMatchDescription{
 	}
 
 	public boolean doesMatch(byte [] data) throws Exception{
-		JsonElement element = null;
-		try{
-			element = new Gson().fromJson(new String(data, "UTF-8"), JsonElement.class);
-		}catch(Exception e){
-			logger.info("Caught exception trying to deserialize block, so it must not have been json.");
-			return false;
-		}
+		return this.doesMatch(new BlockMatchCandidate(data));
+	}
+
+	public boolean doesMatch(BlockMatchCandidate candidate) throws Exception{
+		//  Null if the block data is not json:
+		JsonElement element = candidate.getJsonElement();
 		if(this.jsonSchema.doesMatchElement(element)){
 			return true;
 		}else{
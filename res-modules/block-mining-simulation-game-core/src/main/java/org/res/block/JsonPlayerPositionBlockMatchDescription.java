@@ -78,13 +78,12 @@ public class JsonPlayerPositionBlockMatchDescription extends BlockMatchDescripti
 	}
 
 	public boolean doesMatch(byte [] data) throws Exception{
-		JsonElement e = null;
-		try{
-			e = new Gson().fromJson(new String(data, "UTF-8"), JsonElement.class);
-		}catch(Exception ex){
-			logger.info("Caught exception trying to deserialize block, so it must not have been json.");
-			return false;
-		}
+		return this.doesMatch(new BlockMatchCandidate(data));
+	}
+
+	public boolean doesMatch(BlockMatchCandidate candidate) throws Exception{
+		//  Null if the block data is not json:
+		JsonElement e = candidate.getJsonElement();
 		if(e == null){
 			return false;
 		}
@@ -344,17 +344,17 @@ public class MapAreaInterfaceThreadState extends UserInterfaceFrameThreadState {
 		RegionIteration regionIteration = new RegionIteration(areaToUpdate.getCanonicalLowerCoordinate(), areaToUpdate);
 		while(!regionIteration.isDone()){
 			Coordinate currentMapAreaCoordinate = regionIteration.getCurrentCoordinate();
-			Coordinate underBlockCoordinate = currentMapAreaCoordinate.changeByDeltaXYZ(0L, -1L, 0L);
-			Long xCellOffset = currentMapAreaCoordinate.getX() - this.mapAreaCuboidAddress.getCanonicalLowerCoordinate().getX();
-			Long yCellOffset = (this.mapAreaCuboidAddress.getWidthForIndex(2L) -1L) - (currentMapAreaCoordinate.getZ() - this.mapAreaCuboidAddress.getCanonicalLowerCoordinate().getZ());
+			long x = currentMapAreaCoordinate.getLongX();
+			long y = currentMapAreaCoordinate.getLongY();
+			long z = currentMapAreaCoordinate.getLongZ();
 
-			IndividualBlock currentMapAreaCell = this.mapAreaBlocks.getObjectAtCoordinate(currentMapAreaCoordinate);
-			IndividualBlock underBlock = this.mapAreaBlocks.getObjectAtCoordinate(underBlockCoordinate);
+			IndividualBlock currentMapAreaCell = this.mapAreaBlocks.getObjectAtXYZ(x, y, z);
+			IndividualBlock underBlock = this.mapAreaBlocks.getObjectAtXYZ(x, y - 1L, z);
 
 			//  If the block underneath is loading, don't display the block on top of it, display the in progress block underneath:
 			boolean overStillLoadingBlock = underBlock instanceof UninitializedBlock || underBlock instanceof PendingLoadBlock;
 
-			//logger.info("printMapAreaUpdates() for " + currentMapAreaCoordinate + " xCellOffset=" + xCellOffset + " yCellOffset=" + yCellOffset);
+			//logger.info("printMapAreaUpdates() for " + currentMapAreaCoordinate);
 
 			boolean overSolidBlock = !(
 				underBlock instanceof EmptyBlock ||
@@ -368,10 +368,10 @@ public class MapAreaInterfaceThreadState extends UserInterfaceFrameThreadState {
 			String stringToWrite = overStillLoadingBlock ? BlockSkins.getPresentation(underBlock, useASCII) : BlockSkins.getPresentation(currentMapAreaCell, useASCII);
 			int [] colourCodes = UserInterfaceFrameThreadState.getColourCodesForMapCell(useASCII, overStillLoadingBlock, overExcitingBlock, overSolidBlock);
 
-			Long xCellOffsetInUpdateArea = currentMapAreaCoordinate.getX() - areaToUpdate.getCanonicalLowerCoordinate().getX();
-			Long yCellOffsetInUpdateArea = (areaToUpdateHeight -1L) -(currentMapAreaCoordinate.getZ() - areaToUpdate.getCanonicalLowerCoordinate().getZ());
-			updatedCellContents[xCellOffsetInUpdateArea.intValue()][yCellOffsetInUpdateArea.intValue()] = stringToWrite;
-			updatedBackgroundColours[xCellOffsetInUpdateArea.intValue()][yCellOffsetInUpdateArea.intValue()] = colourCodes;
+			int xCellOffsetInUpdateArea = (int)(x - areaToUpdate.getLowerValueForIndex(0));
+			int yCellOffsetInUpdateArea = (int)((areaToUpdateHeight -1L) -(z - areaToUpdate.getLowerValueForIndex(2)));
+			updatedCellContents[xCellOffsetInUpdateArea][yCellOffsetInUpdateArea] = stringToWrite;
+			updatedBackgroundColours[xCellOffsetInUpdateArea][yCellOffsetInUpdateArea] = colourCodes;
 			regionIteration.incrementCoordinateWithinCuboidAddress();
 		}
 
@@ -52,6 +52,8 @@ public class MemoryChunkStateMachine extends StateMachine<CuboidAddress, ChunkMe
 
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	private InMemoryChunks inMemoryChunks;
+	/*  The chunks in the PENDING state, in the order they should be requested: */
+	private ChunkLoadScheduler pendingChunkScheduler;
 
 	public static Set<ChunkMemoryState> getAllStatesSet() throws Exception{
 		Set<ChunkMemoryState> rtn = new TreeSet<ChunkMemoryState>();
@@ -64,6 +66,11 @@ public class MemoryChunkStateMachine extends StateMachine<CuboidAddress, ChunkMe
 	public MemoryChunkStateMachine(InMemoryChunks inMemoryChunks) throws Exception{
 		super(MemoryChunkStateMachine.getAllStatesSet());
 		this.inMemoryChunks = inMemoryChunks;
+		this.pendingChunkScheduler = new ChunkLoadScheduler(inMemoryChunks.getChunkSize(), ChunkLoadScheduler.DEFAULT_DIRECTION_BIAS);
+	}
+
+	public ChunkLoadScheduler getPendingChunkScheduler(){
+		return this.pendingChunkScheduler;
 	}
 
 	public void requireChunk(CuboidAddress ca, InMemoryChunksClient clientThatRequired) throws Exception{
@@ -144,7 +151,25 @@ public class MemoryChunkStateMachine extends StateMachine<CuboidAddress, ChunkMe
 		this.removeAllObjects(knownChunks);
 	}
 
+	@Override
+	protected void onObjectStateChange(CuboidAddress ca, ChunkMemoryState oldState, ChunkMemoryState newState) throws Exception{
+		if(oldState != null && oldState.getMemoryChunkStateType() == MemoryChunkStateType.PENDING){
+			this.pendingChunkScheduler.removeChunk(ca);
+		}
+		if(newState != null && newState.getMemoryChunkStateType() == MemoryChunkStateType.PENDING){
+			this.pendingChunkScheduler.addChunk(ca);
+		}
+		this.inMemoryChunks.onChunkStateCountChange(
+			oldState == null ? null : oldState.getMemoryChunkStateType(),
+			newState == null ? null : newState.getMemoryChunkStateType()
+		);
+	}
+
 	public Set<CuboidAddress> getChunksInState(ChunkMemoryState state){
 		return this.getObjectsInState(state);
 	}
+
+	public int getNumChunksInState(ChunkMemoryState state){
+		return this.getNumObjectsInState(state);
+	}
 }
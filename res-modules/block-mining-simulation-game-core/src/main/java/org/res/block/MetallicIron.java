@@ -48,9 +48,9 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonNull;
 import com.google.gson.reflect.TypeToken;
 
-public class MetallicIron extends IndividualBlock {
+public class MetallicIron extends IndividualBlock implements StatelessBlock {
 
-	private byte [] data;
+	private final byte [] data;
 
 	public MetallicIron(byte [] data) throws Exception {
 		this.data = data;
@@ -54,7 +54,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 
-public class MultiDimensionalNoiseGenerator {
+public class MultiDimensionalNoiseGenerator implements NoiseGenerator {
 
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	private Long seed;
@@ -202,7 +202,7 @@ public class MultiDimensionalNoiseGenerator {
 	}
 
 	/* Values returned by this function are NOT normalized to any fixed range.  If you submit large amplitudes, the return values will also be large.  */
-	double multiOctaveNoiseAtCoordinate(long [] coordinateLong, double [] frequencies, double [] amplitudes) throws Exception{
+	public double multiOctaveNoiseAtCoordinate(long [] coordinateLong, double [] frequencies, double [] amplitudes) throws Exception{
 		if(frequencies.length != amplitudes.length){
 			throw new Exception("Length missmatch between frequencies: " + frequencies.length + " and amplitudes:" + amplitudes.length);
 		}
@@ -0,0 +1,417 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.lang.invoke.MethodHandles;
+
+public class OffHeapChunkBlockStore implements ChunkBlockStore {
+
+	/*
+		Keeps the block data of loaded chunks outside of the Java heap, either in
+		direct memory or in memory-mapped pages of a spill file, so a very large
+		view area doesn't have to fit in the heap or be scanned by the garbage
+		collector.
+
+		Every chunk owns one fixed size slot in the table pages, which holds a
+		16 byte entry per block:  The position of the block's payload (8 bytes),
+		its length (4 bytes) and the index of its block class name (4 bytes).
+		Payloads are appended to payload pages.  Rewriting a block or removing a
+		chunk leaves the old payload behind as garbage, and the payload pages are
+		compacted once more than half of what they hold is garbage.  Payloads
+		that are bigger than a page get a page of their own.  After compaction
+		these are freed right away in direct memory, or handed back to the spill
+		file for reuse.
+		IndividualBlocks are only made when a block is read, and the most recently
+		made ones are remembered by payload position.
+
+		Not thread safe on its own, InMemoryChunks puts it behind a
+		StripedChunkBlockStore.  Any number of threads can read at the same time
+		though, and readBlockOptimistically never touches payload pages, which
+		compaction may free.  Table pages are only freed by close.
+	*/
+
+	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	public static final int DEFAULT_PAGE_SIZE = 1024 * 1024;
+	private static final int TABLE_ENTRY_SIZE = 16;
+	private static final int LENGTH_NEVER_WRITTEN = -2;
+	private static final int LENGTH_UNINITIALIZED = -1;
+	private static final int MATERIALIZED_CACHE_SIZE = 4096;  //  Must be a power of two.
+	private static final int MIN_PAGES_BEFORE_COMPACTION = 4;
+
+	private final int blocksPerChunk;
+	private final int slotSize;
+	private final int pageSize;
+	private final int slotsPerTablePage;
+
+	private final ChunkStoreSpillFile spillFile;
+	private long bytesAllocated = 0L;
+
+	private final List<ByteBuffer> tablePages = new ArrayList<ByteBuffer>();
+	private final ArrayDeque<Integer> freeSlots = new ArrayDeque<Integer>();
+	private int numSlots = 0;
+	private final Map<CuboidAddress, Integer> chunkSlots = new HashMap<CuboidAddress, Integer>();
+
+	private List<ByteBuffer> payloadPages = new ArrayList<ByteBuffer>();
+	private final ArrayDeque<ByteBuffer> freePayloadPages = new ArrayDeque<ByteBuffer>();
+	private int currentPayloadPage = -1;
+	private int currentPayloadOffset = 0;
+	private long liveBytes = 0L;
+	private long usedBytes = 0L;
+
+	private final List<String> blockClassNames = new ArrayList<String>();
+	private final Map<String, Integer> blockClassNameIndices = new HashMap<String, Integer>();
+
+	private static class MaterializedBlock {
+		//  The position and the block are replaced together, so concurrent readers never see one without the other.
+		private final long position;
+		private final IndividualBlock block;
+
+		public MaterializedBlock(long position, IndividualBlock block){
+			this.position = position;
+			this.block = block;
+		}
+	}
+
+	private final MaterializedBlock [] materializedBlocks = new MaterializedBlock [MATERIALIZED_CACHE_SIZE];
+
+	private long numCompactions = 0L;
+	private final AtomicLong numBlocksMaterialized = new AtomicLong(0L);
+
+	public OffHeapChunkBlockStore(CuboidAddress chunkSize, ChunkStoreSpillFile spillFile, int pageSize) throws Exception {
+		/*  A null spill file keeps the pages in direct memory. */
+		this.blocksPerChunk = (int)chunkSize.getVolume();
+		this.slotSize = this.blocksPerChunk * TABLE_ENTRY_SIZE;
+		this.pageSize = pageSize;
+		this.slotsPerTablePage = Math.max(1, pageSize / this.slotSize);
+		this.spillFile = spillFile;
+		if(spillFile != null){
+			spillFile.retain();
+		}
+	}
+
+	private ByteBuffer allocatePage(int size) throws Exception {
+		this.bytesAllocated += size;
+		return this.spillFile == null ? ByteBuffer.allocateDirect(size) : this.spillFile.mapPage(size);
+	}
+
+	private ByteBuffer getTablePage(int slot){
+		return this.tablePages.get(slot / this.slotsPerTablePage);
+	}
+
+	private int getEntryOffset(int slot, int index){
+		return (slot % this.slotsPerTablePage) * this.slotSize + index * TABLE_ENTRY_SIZE;
+	}
+
+	private int getBlockClassNameIndex(String blockClassName){
+		Integer index = this.blockClassNameIndices.get(blockClassName);
+		if(index == null){
+			index = this.blockClassNames.size();
+			this.blockClassNames.add(blockClassName);
+			this.blockClassNameIndices.put(blockClassName, index);
+		}
+		return index;
+	}
+
+	private long appendPayload(byte [] data) throws Exception {
+		int pageIndex;
+		int offset;
+		if(data.length > this.pageSize){
+			//  Too big for a normal page, so it gets a page of its own:
+			pageIndex = this.payloadPages.size();
+			offset = 0;
+			ByteBuffer page = this.spillFile == null ? null : this.spillFile.takeFreePage(data.length);
+			if(page == null){
+				page = this.allocatePage(data.length);
+			}else{
+				this.bytesAllocated += page.capacity();
+			}
+			this.payloadPages.add(page);
+		}else{
+			if(this.currentPayloadPage < 0 || this.currentPayloadOffset + data.length > this.pageSize){
+				this.currentPayloadPage = this.payloadPages.size();
+				this.currentPayloadOffset = 0;
+				this.payloadPages.add(this.freePayloadPages.isEmpty() ? this.allocatePage(this.pageSize) : this.freePayloadPages.poll());
+			}
+			pageIndex = this.currentPayloadPage;
+			offset = this.currentPayloadOffset;
+			this.currentPayloadOffset += data.length;
+		}
+		this.payloadPages.get(pageIndex).put(offset, data);
+		this.usedBytes += data.length;
+		this.liveBytes += data.length;
+		return ((long)pageIndex << 32) | (long)offset;
+	}
+
+	private void freePage(ByteBuffer page){
+		//  Mapped pages stay in the spill file's mapped range, so they are passed on instead:
+		this.bytesAllocated -= page.capacity();
+		if(this.spillFile == null){
+			OffHeapChunkBlockStore.unmap(page);
+		}else{
+			this.spillFile.addFreePage(page);
+		}
+	}
+
+	private static Object unsafe = null;
+	private static Method invokeCleaner = null;
+	private static boolean isUnmapUnavailable = false;
+
+	public static synchronized void unmap(ByteBuffer page){
+		//  There is no public way to release a direct or mapped buffer before it is garbage collected.
+		//  The caller must make sure nothing touches the page again, doing so would crash the JVM.
+		if(isUnmapUnavailable){
+			return;
+		}
+		try{
+			if(invokeCleaner == null){
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				unsafe = theUnsafe.get(null);
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			}
+			invokeCleaner.invoke(unsafe, page);
+		}catch(Exception e){
+			isUnmapUnavailable = true;
+			logger.warn("Unable to release off-heap chunk store pages, they will be released once they are garbage collected.", e);
+		}
+	}
+
+	private static byte [] readPayload(List<ByteBuffer> pages, long position, int length){
+		byte [] data = new byte [length];
+		pages.get((int)(position >>> 32)).get((int)position, data);
+		return data;
+	}
+
+	private void releasePayloads(int slot){
+		ByteBuffer table = this.getTablePage(slot);
+		for(int i = 0; i < this.blocksPerChunk; i++){
+			int length = table.getInt(this.getEntryOffset(slot, i) + 8);
+			if(length > 0){
+				this.liveBytes -= length;
+			}
+		}
+	}
+
+	private void compactIfNeeded() throws Exception {
+		if(this.usedBytes < (long)MIN_PAGES_BEFORE_COMPACTION * this.pageSize || this.liveBytes * 2L >= this.usedBytes){
+			return;
+		}
+		//  Copy every live payload into fresh pages, then reuse the old pages:
+		List<ByteBuffer> oldPages = this.payloadPages;
+		this.payloadPages = new ArrayList<ByteBuffer>();
+		this.currentPayloadPage = -1;
+		this.usedBytes = 0L;
+		this.liveBytes = 0L;
+		for(int slot : this.chunkSlots.values()){
+			ByteBuffer table = this.getTablePage(slot);
+			for(int i = 0; i < this.blocksPerChunk; i++){
+				int entryOffset = this.getEntryOffset(slot, i);
+				int length = table.getInt(entryOffset + 8);
+				if(length > 0){
+					table.putLong(entryOffset, this.appendPayload(readPayload(oldPages, table.getLong(entryOffset), length)));
+				}
+			}
+		}
+		for(ByteBuffer page : oldPages){
+			if(page.capacity() == this.pageSize){
+				this.freePayloadPages.add(page);
+			}else{
+				this.freePage(page);
+			}
+		}
+		//  Payload positions have all changed:
+		Arrays.fill(this.materializedBlocks, null);
+		this.numCompactions++;
+	}
+
+	public void addChunk(CuboidAddress chunkAddress) throws Exception {
+		Integer slot = this.chunkSlots.get(chunkAddress);
+		if(slot == null){
+			if(this.freeSlots.isEmpty()){
+				slot = this.numSlots++;
+				if(slot / this.slotsPerTablePage >= this.tablePages.size()){
+					this.tablePages.add(this.allocatePage(this.slotsPerTablePage * this.slotSize));
+				}
+			}else{
+				slot = this.freeSlots.poll();
+			}
+			this.chunkSlots.put(chunkAddress, slot);
+		}else{
+			this.releasePayloads(slot);
+		}
+		ByteBuffer table = this.getTablePage(slot);
+		for(int i = 0; i < this.blocksPerChunk; i++){
+			table.putInt(this.getEntryOffset(slot, i) + 8, LENGTH_NEVER_WRITTEN);
+		}
+		this.compactIfNeeded();
+	}
+
+	public boolean containsChunk(CuboidAddress chunkAddress){
+		return this.chunkSlots.containsKey(chunkAddress);
+	}
+
+	public void removeChunk(CuboidAddress chunkAddress) throws Exception {
+		Integer slot = this.chunkSlots.remove(chunkAddress);
+		if(slot != null){
+			this.releasePayloads(slot);
+			this.freeSlots.add(slot);
+			this.compactIfNeeded();
+		}
+	}
+
+	public int getNumChunks(){
+		return this.chunkSlots.size();
+	}
+
+	public void writeBlock(CuboidAddress chunkAddress, int index, byte [] blockData, String blockClassName) throws Exception {
+		Integer slot = this.chunkSlots.get(chunkAddress);
+		if(slot == null){
+			throw new Exception("Chunk " + chunkAddress + " is not loaded.");
+		}
+		ByteBuffer table = this.getTablePage(slot);
+		int entryOffset = this.getEntryOffset(slot, index);
+		int oldLength = table.getInt(entryOffset + 8);
+		if(oldLength > 0){
+			this.liveBytes -= oldLength;
+		}
+		if(blockData == null){
+			table.putInt(entryOffset + 8, LENGTH_UNINITIALIZED);
+		}else{
+			table.putLong(entryOffset, blockData.length > 0 ? this.appendPayload(blockData) : 0L);
+			table.putInt(entryOffset + 8, blockData.length);
+			table.putInt(entryOffset + 12, this.getBlockClassNameIndex(blockClassName));
+		}
+		if(oldLength > 0){
+			//  The old payload is now garbage, a chunk that keeps being rewritten would otherwise grow forever:
+			this.compactIfNeeded();
+		}
+	}
+
+	public IndividualBlock readBlock(CuboidAddress chunkAddress, int index) throws Exception {
+		return this.readBlock(chunkAddress, index, true);
+	}
+
+	public IndividualBlock readBlockOptimistically(CuboidAddress chunkAddress, int index) throws Exception {
+		return this.readBlock(chunkAddress, index, false);
+	}
+
+	private IndividualBlock readBlock(CuboidAddress chunkAddress, int index, boolean canReadPayload) throws Exception {
+		Integer slot = this.chunkSlots.get(chunkAddress);
+		if(slot == null){
+			return null;
+		}
+		ByteBuffer table = this.getTablePage(slot);
+		int entryOffset = this.getEntryOffset(slot, index);
+		int length = table.getInt(entryOffset + 8);
+		if(length == LENGTH_NEVER_WRITTEN){
+			return null;
+		}else if(length == LENGTH_UNINITIALIZED){
+			return new UninitializedBlock();
+		}else{
+			String blockClassName = this.blockClassNames.get(table.getInt(entryOffset + 12));
+			if(length == 0){
+				return IndividualBlock.makeBlockInstanceFromClassName(blockClassName, new byte [0]);
+			}
+			long position = table.getLong(entryOffset);
+			int cacheIndex = Long.hashCode(position * 0x9E3779B97F4A7C15L) & (MATERIALIZED_CACHE_SIZE - 1);
+			MaterializedBlock materializedBlock = this.materializedBlocks[cacheIndex];
+			if(materializedBlock != null && materializedBlock.position == position){
+				return materializedBlock.block;
+			}
+			if(!canReadPayload){
+				return null;
+			}
+			IndividualBlock block = IndividualBlock.makeBlockInstanceFromClassName(blockClassName, readPayload(this.payloadPages, position, length));
+			this.materializedBlocks[cacheIndex] = new MaterializedBlock(position, block);
+			this.numBlocksMaterialized.incrementAndGet();
+			return block;
+		}
+	}
+
+	public void close() throws Exception {
+		this.chunkSlots.clear();
+		Arrays.fill(this.materializedBlocks, null);
+		//  Release every page before the spill file is deleted so its space is given back right away:
+		for(List<ByteBuffer> pages : Arrays.asList(this.tablePages, this.payloadPages, new ArrayList<ByteBuffer>(this.freePayloadPages))){
+			for(ByteBuffer page : pages){
+				this.bytesAllocated -= page.capacity();
+				OffHeapChunkBlockStore.unmap(page);
+			}
+		}
+		this.tablePages.clear();
+		this.payloadPages.clear();
+		this.freePayloadPages.clear();
+		if(this.spillFile != null){
+			this.spillFile.release();
+		}
+	}
+
+	public long getBytesAllocated(){
+		return this.bytesAllocated;
+	}
+
+	public long getLivePayloadBytes(){
+		return this.liveBytes;
+	}
+
+	public long getUsedPayloadBytes(){
+		return this.usedBytes;
+	}
+
+	public long getNumCompactions(){
+		return this.numCompactions;
+	}
+
+	public long getNumBlocksMaterialized(){
+		return this.numBlocksMaterialized.get();
+	}
+
+	public File getSpillFile(){
+		return this.spillFile == null ? null : this.spillFile.getFile();
+	}
+}
@@ -0,0 +1,344 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+
+import javax.websocket.SendResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.lang.invoke.MethodHandles;
+
+/*
+	Per-session queue of encoded messages that are sent one at a time through
+	an asynchronous sender, so a slow client only ever delays its own messages.
+	Only DescribeRegions messages count against the byte limit and are subject
+	to the slow consumer policy, the other messages are small and losing one
+	(an acknowledgement for example) would stall the client.  Messages stay in
+	the pooled buffer they were encoded into until they are sent or discarded.
+*/
+public class OutboundMessageQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+	public static final long DEFAULT_MAX_QUEUED_BYTES = 64L * 1024L * 1024L;
+	public static final SlowConsumerPolicy DEFAULT_SLOW_CONSUMER_POLICY = SlowConsumerPolicy.COALESCE;
+
+	private static class QueuedMessage {
+		private BlockMessageBinaryBuffer buffer;
+		private final Object coalescingKey;
+		private long enqueueTimeNanos;
+
+		public QueuedMessage(BlockMessageBinaryBuffer buffer, Object coalescingKey, long enqueueTimeNanos){
+			this.buffer = buffer;
+			this.coalescingKey = coalescingKey;
+			this.enqueueTimeNanos = enqueueTimeNanos;
+		}
+	}
+
+	private final Object lock = new Object();
+	private final AsyncBinaryMessageSender sender;
+	private final SlowConsumerPolicy slowConsumerPolicy;
+	private final long maxQueuedBytes;
+	private final ArrayDeque<QueuedMessage> queue = new ArrayDeque<QueuedMessage>();
+	private final Map<Object, QueuedMessage> pendingByCoalescingKey = new HashMap<Object, QueuedMessage>();
+	private boolean isSendInFlight = false;
+	private boolean isDraining = false;
+	private boolean isClosed = false;
+
+	//  Metrics:
+	private long queuedBytes = 0L;
+	private long queuedMessages = 0L;
+	private long maxQueuedMessagesSeen = 0L;
+	private long maxQueuedBytesSeen = 0L;
+	private long numSent = 0L;
+	private long numDropped = 0L;
+	private long numCoalesced = 0L;
+	private long numFailed = 0L;
+	private long totalSendLatencyNanos = 0L;
+	private long maxSendLatencyNanos = 0L;
+
+	public OutboundMessageQueue(AsyncBinaryMessageSender sender, SlowConsumerPolicy slowConsumerPolicy, Long maxQueuedBytes){
+		this.sender = sender;
+		this.slowConsumerPolicy = slowConsumerPolicy == null ? DEFAULT_SLOW_CONSUMER_POLICY : slowConsumerPolicy;
+		this.maxQueuedBytes = maxQueuedBytes == null ? DEFAULT_MAX_QUEUED_BYTES : maxQueuedBytes;
+	}
+
+	public static Object getCoalescingKey(BlockMessage m){
+		//  A newer DescribeRegions for the same client, conversation and regions makes an unsent older one obsolete:
+		if(m instanceof DescribeRegionsBlockMessage){
+			DescribeRegionsBlockMessage d = (DescribeRegionsBlockMessage)m;
+			List<CuboidAddress> addresses = new ArrayList<CuboidAddress>();
+			for(Cuboid c : d.getCuboids()){
+				addresses.add(c.getCuboidAddress());
+			}
+			return Arrays.asList(d.getAuthorizedClientId(), d.getConversationId(), addresses);
+		}else{
+			return null;
+		}
+	}
+
+	public void enqueue(BlockMessage m, int protocolVersion) throws Exception{
+		this.enqueue(m.asPooledBuffer(protocolVersion), OutboundMessageQueue.getCoalescingKey(m));
+	}
+
+	public void enqueue(BlockMessageBinaryBuffer buffer, Object coalescingKey) throws Exception{
+		//  The queue owns 'buffer' from here on, and releases it once it has been sent or discarded.
+		boolean disconnect = false;
+		int length = buffer.getUsedCapacity();
+		synchronized(lock){
+			if(this.isClosed){
+				this.numDropped++;
+				buffer.release();
+				return;
+			}
+			if(coalescingKey != null && this.slowConsumerPolicy != SlowConsumerPolicy.DROP){
+				QueuedMessage older = this.pendingByCoalescingKey.get(coalescingKey);
+				if(older != null){
+					//  Replace the older message where it is so the update doesn't lose its place in line:
+					this.queuedBytes += length - older.buffer.getUsedCapacity();
+					this.maxQueuedBytesSeen = Math.max(this.maxQueuedBytesSeen, this.queuedBytes);
+					older.buffer.release();
+					older.buffer = buffer;
+					older.enqueueTimeNanos = System.nanoTime();
+					this.numCoalesced++;
+					return;
+				}
+			}
+			if(coalescingKey != null && this.queuedBytes + length > this.maxQueuedBytes){
+				buffer.release();
+				if(this.slowConsumerPolicy == SlowConsumerPolicy.DISCONNECT){
+					this.isClosed = true;
+					disconnect = true;
+					this.clearQueue();
+				}else{
+					this.numDropped++;
+					return;
+				}
+			}else{
+				QueuedMessage q = new QueuedMessage(buffer, coalescingKey, System.nanoTime());
+				this.queue.addLast(q);
+				if(coalescingKey != null){
+					this.pendingByCoalescingKey.put(coalescingKey, q);
+				}
+				this.queuedBytes += length;
+				this.queuedMessages++;
+				this.maxQueuedMessagesSeen = Math.max(this.maxQueuedMessagesSeen, this.queuedMessages);
+				this.maxQueuedBytesSeen = Math.max(this.maxQueuedBytesSeen, this.queuedBytes);
+			}
+		}
+		if(disconnect){
+			logger.info("Closing slow consumer with " + this.getMetricsSummary());
+			this.sender.close("Outbound queue exceeded " + this.maxQueuedBytes + " bytes.");
+		}else{
+			this.drain();
+		}
+	}
+
+	private QueuedMessage pollNextMessage(){
+		//  Must hold lock.
+		QueuedMessage q = this.queue.pollFirst();
+		if(q != null){
+			if(q.coalescingKey != null){
+				this.pendingByCoalescingKey.remove(q.coalescingKey);
+			}
+			this.queuedBytes -= q.buffer.getUsedCapacity();
+			this.queuedMessages--;
+		}
+		return q;
+	}
+
+	private void clearQueue(){
+		//  Must hold lock.
+		for(QueuedMessage q : this.queue){
+			q.buffer.release();
+		}
+		this.queue.clear();
+		this.pendingByCoalescingKey.clear();
+		this.queuedBytes = 0L;
+		this.queuedMessages = 0L;
+	}
+
+	private void drain() throws Exception{
+		//  Only one thread sends at a time, and a completion that runs inside sendBinaryAsync
+		//  just clears isSendInFlight so this loop picks up the next message without recursing.
+		synchronized(lock){
+			if(this.isDraining){
+				return;
+			}
+			this.isDraining = true;
+		}
+		try{
+			while(true){
+				QueuedMessage next = null;
+				synchronized(lock){
+					if(this.isSendInFlight || this.isClosed || (next = this.pollNextMessage()) == null){
+						this.isDraining = false;
+						return;
+					}
+					this.isSendInFlight = true;
+				}
+				final QueuedMessage sending = next;
+				try{
+					//  Sent straight from the pooled buffer, which onSendComplete releases:
+					this.sender.sendBinaryAsync(sending.buffer.getUsedByteBuffer(), (result) -> this.onSendComplete(sending, result));
+				}catch(Exception e){
+					sending.buffer.release();
+					throw e;
+				}
+			}
+		}catch(Exception e){
+			synchronized(lock){
+				this.isDraining = false;
+				this.isSendInFlight = false;
+			}
+			throw e;
+		}
+	}
+
+	private void onSendComplete(QueuedMessage q, SendResult result){
+		long latency = System.nanoTime() - q.enqueueTimeNanos;
+		synchronized(lock){
+			this.isSendInFlight = false;
+			if(result.isOK()){
+				this.numSent++;
+			}else{
+				this.numFailed++;
+			}
+			this.totalSendLatencyNanos += latency;
+			this.maxSendLatencyNanos = Math.max(this.maxSendLatencyNanos, latency);
+		}
+		if(!result.isOK()){
+			logger.info("Failed to send " + q.buffer.getUsedCapacity() + " bytes.", result.getException());
+		}
+		q.buffer.release();
+		try{
+			this.drain();
+		}catch(Exception e){
+			logger.error("Exception while sending queued messages.", e);
+		}
+	}
+
+	public void close(){
+		synchronized(lock){
+			this.isClosed = true;
+			this.clearQueue();
+		}
+	}
+
+	public boolean isClosed(){
+		synchronized(lock){
+			return this.isClosed;
+		}
+	}
+
+	public SlowConsumerPolicy getSlowConsumerPolicy(){
+		return this.slowConsumerPolicy;
+	}
+
+	public long getMaxQueuedBytes(){
+		return this.maxQueuedBytes;
+	}
+
+	public long getQueuedBytes(){
+		synchronized(lock){
+			return this.queuedBytes;
+		}
+	}
+
+	public long getQueuedMessages(){
+		synchronized(lock){
+			return this.queuedMessages;
+		}
+	}
+
+	public long getMaxQueuedMessagesSeen(){
+		synchronized(lock){
+			return this.maxQueuedMessagesSeen;
+		}
+	}
+
+	public long getMaxQueuedBytesSeen(){
+		synchronized(lock){
+			return this.maxQueuedBytesSeen;
+		}
+	}
+
+	public long getNumSent(){
+		synchronized(lock){
+			return this.numSent;
+		}
+	}
+
+	public long getNumDropped(){
+		synchronized(lock){
+			return this.numDropped;
+		}
+	}
+
+	public long getNumCoalesced(){
+		synchronized(lock){
+			return this.numCoalesced;
+		}
+	}
+
+	public long getNumFailed(){
+		synchronized(lock){
+			return this.numFailed;
+		}
+	}
+
+	public long getAverageSendLatencyNanos(){
+		synchronized(lock){
+			long completed = this.numSent + this.numFailed;
+			return completed == 0L ? 0L : this.totalSendLatencyNanos / completed;
+		}
+	}
+
+	public long getMaxSendLatencyNanos(){
+		synchronized(lock){
+			return this.maxSendLatencyNanos;
+		}
+	}
+
+	public String getMetricsSummary(){
+		synchronized(lock){
+			return "queuedMessages=" + this.queuedMessages + ", queuedBytes=" + this.queuedBytes + ", maxQueuedMessagesSeen=" + this.maxQueuedMessagesSeen + ", maxQueuedBytesSeen=" + this.maxQueuedBytesSeen + ", numSent=" + this.numSent + ", numDropped=" + this.numDropped + ", numCoalesced=" + this.numCoalesced + ", numFailed=" + this.numFailed + ", averageSendLatencyMs=" + (this.getAverageSendLatencyNanos() / 1000000L) + ", maxSendLatencyMs=" + (this.maxSendLatencyNanos / 1000000L);
+		}
+	}
+}
@@ -43,17 +43,28 @@ public class PrioritizedWorkItem<T> implements Comparable<PrioritizedWorkItem<T>
 	/*  This is required to keep track of ordering inside the blocking priority queue: */
 	private static final AtomicLong seq = new AtomicLong(0);
 	public final long seqNum;
+	private final long enqueueTimeNanos;
 
 	public PrioritizedWorkItem(T workItem, WorkItemPriority priority) {
 		this.workItem = workItem;
 		this.priority = priority;
 		this.seqNum = seq.getAndIncrement();
+		this.enqueueTimeNanos = System.nanoTime();
 	}
 
 	public T getWorkItem(){
 		return this.workItem;
 	}
 
+	public void setWorkItem(T workItem){
+		//  Used when a newer work item supersedes this one while it's still queued.
+		this.workItem = workItem;
+	}
+
+	public long getEnqueueTimeNanos(){
+		return this.enqueueTimeNanos;
+	}
+
 	public WorkItemPriority getPriority(){
 		return priority;
 	}
@@ -57,8 +57,7 @@ public class ProbeRegionsRequestBlockMessage extends BlockMessage {
 		}
 	}
 
-	public byte [] asByteArray() throws Exception{
-		BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer();
+	public void writeToBuffer(BlockMessageBinaryBuffer buffer) throws Exception{
 		BlockMessage.writeBlockMessageType(buffer, BlockMessageType.BLOCK_MESSAGE_TYPE_PROBE_REGIONS);
 		BlockMessage.writeConversationId(buffer, this.conversationId);
 		BlockMessage.writeAuthorizedClientId(buffer, this.authorizedClientId);
@@ -70,8 +69,6 @@ public class ProbeRegionsRequestBlockMessage extends BlockMessage {
 		for(int i = 0; i < this.cuboidAddresses.size(); i++){
 			CuboidAddress.writeCuboidAddress(buffer, this.cuboidAddresses.get(i));
 		}
-
-		return buffer.getUsedBuffer();
 	}
 
 	public ProbeRegionsRequestBlockMessage(BlockModelContext blockModelContext, BlockMessageBinaryBuffer buffer, Long conversationId, Long authorizedClientId) throws Exception {
@@ -55,4 +55,16 @@ public class ProcessBlockMessageWorkItem extends BlockModelContextWorkItem {
 	public void doWork() throws Exception{
 		blockMessage.doWork(this.blockSession);
 	}
+
+	@Override
+	public void onRejected(String reason) throws Exception{
+		//  Tell the sender that its message was dropped, but never answer an error with another error:
+		if(this.blockMessage instanceof ErrorNotificationBlockMessage){
+			this.blockModelContext.logMessage("Dropped an error notification.  " + reason);
+		}else{
+			this.blockModelContext.logMessage("Rejected " + this.blockMessage.getClass().getName() + ".  " + reason);
+			ErrorNotificationBlockMessage response = new ErrorNotificationBlockMessage(this.blockModelContext, BlockMessageErrorType.WORK_ITEM_QUEUE_FULL, this.blockMessage.getConversationId(), this.blockMessage.getAuthorizedClientId());
+			this.blockModelContext.sendBlockMessage(response, this.blockSession);
+		}
+	}
 }
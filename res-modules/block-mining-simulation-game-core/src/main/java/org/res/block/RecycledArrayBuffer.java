@@ -79,6 +79,9 @@ public class RecycledArrayBuffer {
 	private int [] oneDIntArray;
 	private int oneDIntArray_x;
 
+	private long [] oneDLongArray;
+	private int oneDLongArray_x;
+
 	public RecycledArrayBuffer() throws Exception{
 
 	}
@@ -206,4 +209,24 @@ public class RecycledArrayBuffer {
 		}
 		return this.oneDIntArray;
 	}
+
+	public long [] get1DLongArray(int x){
+		if(this.oneDLongArray == null){
+			this.oneDLongArray = new long [x];
+			this.oneDLongArray_x = x;
+		}else{
+			//  If the required array is smaller, don't trigger a re-allocation:
+			if(
+				x > this.oneDLongArray_x
+			){
+				int maxX = Math.max(x, this.oneDLongArray_x);
+				this.oneDLongArray = new long [maxX];
+				this.oneDLongArray_x = maxX;
+			}else{
+				//  Re-initialize the relevant part of the array:
+				Arrays.fill(this.oneDLongArray, 0, x, 0L);
+			}
+		}
+		return this.oneDLongArray;
+	}
 }
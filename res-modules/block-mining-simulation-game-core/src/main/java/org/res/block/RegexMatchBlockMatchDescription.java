@@ -55,11 +55,13 @@ public class RegexMatchBlockMatchDescription extends BlockMatchDescription{
 
 	private byte [] bytePattern;
 	private String regex;
+	private Pattern pattern;
 
 	public RegexMatchBlockMatchDescription(JsonElement e) {
 		super(e);
 		JsonObject o = (JsonObject)e;
 		this.regex = o.get("regex").getAsString();
+		this.pattern = Pattern.compile(this.regex);
 	}
 
 	public JsonElement asJsonElement() throws Exception{
@@ -74,11 +76,12 @@ public class RegexMatchBlockMatchDescription extends BlockMatchDescription{
 	}
 
 	public boolean doesMatch(byte [] data) throws Exception {
-		try{
-			String dataString = new String(data, "UTF-8");
-			Pattern pattern = Pattern.compile(this.regex);
+		return this.doesMatch(new BlockMatchCandidate(data));
+	}
 
-			if(pattern.matcher(dataString).find()){
+	public boolean doesMatch(BlockMatchCandidate candidate) throws Exception {
+		try{
+			if(this.pattern.matcher(candidate.getDataString()).find()){
 				return true;
 			}else{
 				return false;
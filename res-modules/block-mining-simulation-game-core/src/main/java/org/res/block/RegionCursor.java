@@ -0,0 +1,201 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+public class RegionCursor {
+
+	/*
+		A mutable alternative to RegionIteration that visits every coordinate in
+		a cuboid address without allocating.  Coordinates are visited in the same
+		order as RegionIteration (dimension 0 changes fastest), which is also the
+		order of the linear array index, so the index is simply incremented
+		on every step.
+	*/
+	private final CuboidAddress cuboidAddress;
+	private final long [] lower;
+	private final long [] upper;
+	private final long [] current;
+	private long linearArrayIndex = 0L;
+	private boolean isDone;
+
+	//  The chunks that the region overlaps, filled in as the cursor enters them:
+	private static final int MAX_CACHED_CHUNKS = 4096;
+	private CuboidAddress cachedChunkSize = null;
+	private long [] chunkWidths = null;
+	private long [] firstChunkIndices = null;
+	private long [] chunkGridStrides = null;
+	private CuboidAddress [] cachedChunks = null;
+
+	public RegionCursor(CuboidAddress cuboidAddress) {
+		this.cuboidAddress = cuboidAddress;
+		int numDimensions = cuboidAddress.getNumDimensions().intValue();
+		this.lower = new long [numDimensions];
+		this.upper = new long [numDimensions];
+		for(int i = 0; i < numDimensions; i++){
+			this.lower[i] = cuboidAddress.getLowerValueForIndex(i);
+			this.upper[i] = cuboidAddress.getUpperValueForIndex(i);
+		}
+		this.current = this.lower.clone();
+		//  If this iteration is initialized with a zero sized region, overflow immediately:
+		this.isDone = cuboidAddress.getVolume() == 0L;
+	}
+
+	public boolean isDone(){
+		return this.isDone;
+	}
+
+	public boolean next(){
+		/*  Returns true when the cursor was incremented, returns false on overflow condition. */
+		for(int i = 0; i < this.current.length; i++){
+			if(++this.current[i] < this.upper[i]){
+				this.linearArrayIndex++;
+				return true;
+			}else{
+				this.current[i] = this.lower[i];
+			}
+		}
+		this.isDone = true;
+		return false;
+	}
+
+	public long getLinearArrayIndex(){
+		return this.linearArrayIndex;
+	}
+
+	public long getValueAtIndex(int i){
+		return i < this.current.length ? this.current[i] : 0L;
+	}
+
+	public long getX(){
+		return this.getValueAtIndex(0);
+	}
+
+	public long getY(){
+		return this.getValueAtIndex(1);
+	}
+
+	public long getZ(){
+		return this.getValueAtIndex(2);
+	}
+
+	public CuboidAddress getCuboidAddress(){
+		return this.cuboidAddress;
+	}
+
+	public Coordinate getCoordinate(){
+		/*  Allocates a new immutable coordinate for the current position. */
+		return Coordinate.makeCoordinate(this.current);
+	}
+
+	public CuboidAddress getChunkCuboidAddress(CuboidAddress chunkSize) throws Exception {
+		/*  The chunk that contains the current position.  Each chunk's address is only made the first time the cursor enters it. */
+		if(chunkSize != this.cachedChunkSize){
+			this.makeChunkGrid(chunkSize);
+		}
+		if(this.cachedChunks == null){
+			return CuboidAddress.blockValuesToChunkCuboidAddress(this.current, chunkSize);
+		}
+		long gridIndex = 0L;
+		for(int i = 0; i < this.current.length; i++){
+			gridIndex += (Math.floorDiv(this.current[i], this.chunkWidths[i]) - this.firstChunkIndices[i]) * this.chunkGridStrides[i];
+		}
+		CuboidAddress rtn = this.cachedChunks[(int)gridIndex];
+		if(rtn == null){
+			rtn = CuboidAddress.blockValuesToChunkCuboidAddress(this.current, chunkSize);
+			this.cachedChunks[(int)gridIndex] = rtn;
+		}
+		return rtn;
+	}
+
+	private void makeChunkGrid(CuboidAddress chunkSize){
+		//  Without a grid, every lookup makes a new address, which also reports a chunk size that doesn't fit:
+		this.cachedChunkSize = chunkSize;
+		this.cachedChunks = null;
+		if(this.isDone || chunkSize.getNumDimensions().intValue() != this.current.length){
+			return;
+		}
+		this.chunkWidths = new long [this.current.length];
+		this.firstChunkIndices = new long [this.current.length];
+		this.chunkGridStrides = new long [this.current.length];
+		long numChunks = 1L;
+		for(int i = 0; i < this.current.length; i++){
+			if(chunkSize.getLowerValueForIndex(i) != 0L){
+				return;
+			}
+			this.chunkWidths[i] = chunkSize.getWidthForIndex((long)i);
+			this.firstChunkIndices[i] = Math.floorDiv(this.lower[i], this.chunkWidths[i]);
+			this.chunkGridStrides[i] = numChunks;
+			numChunks *= Math.floorDiv(this.upper[i] - 1L, this.chunkWidths[i]) - this.firstChunkIndices[i] + 1L;
+			if(numChunks > MAX_CACHED_CHUNKS){
+				return;
+			}
+		}
+		this.cachedChunks = new CuboidAddress [(int)numChunks];
+	}
+
+	public boolean isInside(CuboidAddress other){
+		if(other.getNumDimensions().intValue() != this.current.length){
+			return false;
+		}
+		for(int i = 0; i < this.current.length; i++){
+			if(this.current[i] < other.getLowerValueForIndex(i) || this.current[i] >= other.getUpperValueForIndex(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getLinearArrayIndexIn(CuboidAddress other) throws Exception {
+		/*  The linear array index of the current position inside some other cuboid address. */
+		long totalIndex = 0L;
+		for(int i = 0; i < this.current.length; i++){
+			long dimensionOffset = this.current[i] - other.getLowerValueForIndex(i);
+			if(dimensionOffset < 0){
+				throw new Exception("DimensionOffset was negative? :" + dimensionOffset);
+			}
+			totalIndex += dimensionOffset * other.getStrideForIndex(i);
+		}
+		return totalIndex;
+	}
+
+	public static void forEach(CuboidAddress cuboidAddress, IntLongLongLongConsumer visitor) throws Exception {
+		if(cuboidAddress.getVolume() > Integer.MAX_VALUE){
+			throw new Exception("Region " + cuboidAddress + " is too large to visit with an int index.");
+		}
+		RegionCursor cursor = new RegionCursor(cuboidAddress);
+		while(!cursor.isDone()){
+			visitor.accept((int)cursor.getLinearArrayIndex(), cursor.getX(), cursor.getY(), cursor.getZ());
+			cursor.next();
+		}
+	}
+}
@@ -0,0 +1,307 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/*
+	Grid hash from cells of 'cellWidth' blocks in every dimension to the region
+	subscriptions that touch them.  An intersection query only looks at the
+	subscriptions registered in the cells the queried address covers, so its
+	cost depends on the number of nearby subscriptions rather than the total.
+	Subscriptions or queries that cover too many cells fall back to a scan.
+*/
+public class RegionSubscriptionIndex {
+
+	public static final long DEFAULT_CELL_WIDTH = 16L;
+	private static final long MAX_CELLS_PER_SUBSCRIPTION = 4096L;
+
+	private static class Subscription {
+		private final Long authorizedClientId;
+		private final CuboidAddress address;
+		private Long conversationId;
+		private final List<Coordinate> cells; /* null when this is one of the large subscriptions */
+		private long lastQueryId = -1L;
+
+		public Subscription(Long authorizedClientId, CuboidAddress address, Long conversationId, List<Coordinate> cells){
+			this.authorizedClientId = authorizedClientId;
+			this.address = address;
+			this.conversationId = conversationId;
+			this.cells = cells;
+		}
+	}
+
+	private final Object lock = new Object();
+	private final long cellWidth;
+	private final Map<Coordinate, List<Subscription>> subscriptionsByCell = new HashMap<Coordinate, List<Subscription>>();
+	private final List<Subscription> largeSubscriptions = new ArrayList<Subscription>();
+	//  Map of authorizedClientId -> CuboidAddress -> subscription
+	private final Map<Long, Map<CuboidAddress, Subscription>> subscriptionsByClient = new TreeMap<Long, Map<CuboidAddress, Subscription>>();
+	private long numSubscriptions = 0L;
+	private long queryCounter = 0L;
+
+	public RegionSubscriptionIndex(long cellWidth){
+		this.cellWidth = cellWidth;
+	}
+
+	public RegionSubscriptionIndex(){
+		this(DEFAULT_CELL_WIDTH);
+	}
+
+	private long getNumCells(CuboidAddress address){
+		long numCells = 1L;
+		for(int i = 0; i < address.getNumDimensions().intValue(); i++){
+			long lower = address.getLowerValueForIndex(i);
+			long upper = Math.max(lower, address.getUpperValueForIndex(i) - 1L);
+			numCells *= Math.floorDiv(upper, this.cellWidth) - Math.floorDiv(lower, this.cellWidth) + 1L;
+			if(numCells > MAX_CELLS_PER_SUBSCRIPTION){
+				return numCells;
+			}
+		}
+		return numCells;
+	}
+
+	private List<Coordinate> getCells(CuboidAddress address){
+		//  Every cell that contains a block of the address.  Zero width dimensions still touch the cell at 'lower':
+		int numDimensions = address.getNumDimensions().intValue();
+		long [] lowerCell = new long [numDimensions];
+		long [] upperCell = new long [numDimensions];
+		for(int i = 0; i < numDimensions; i++){
+			long lower = address.getLowerValueForIndex(i);
+			long upper = Math.max(lower, address.getUpperValueForIndex(i) - 1L);
+			lowerCell[i] = Math.floorDiv(lower, this.cellWidth);
+			upperCell[i] = Math.floorDiv(upper, this.cellWidth);
+		}
+		List<Coordinate> cells = new ArrayList<Coordinate>();
+		long [] current = lowerCell.clone();
+		while(true){
+			cells.add(Coordinate.makeCoordinate(current));
+			int d = 0;
+			while(d < numDimensions && current[d] == upperCell[d]){
+				current[d] = lowerCell[d];
+				d++;
+			}
+			if(d == numDimensions){
+				return cells;
+			}
+			current[d]++;
+		}
+	}
+
+	public long getNumSubscriptions(){
+		synchronized(lock){
+			return this.numSubscriptions;
+		}
+	}
+
+	public long getNumSubscriptions(Long authorizedClientId){
+		synchronized(lock){
+			Map<CuboidAddress, Subscription> m = this.subscriptionsByClient.get(authorizedClientId);
+			return m == null ? 0L : m.size();
+		}
+	}
+
+	public boolean containsSubscription(Long authorizedClientId, CuboidAddress address){
+		synchronized(lock){
+			Map<CuboidAddress, Subscription> m = this.subscriptionsByClient.get(authorizedClientId);
+			return m != null && m.containsKey(address);
+		}
+	}
+
+	public void addSubscription(Long authorizedClientId, CuboidAddress address, Long conversationId){
+		synchronized(lock){
+			Map<CuboidAddress, Subscription> m = this.subscriptionsByClient.get(authorizedClientId);
+			if(m == null){
+				m = new HashMap<CuboidAddress, Subscription>();
+				this.subscriptionsByClient.put(authorizedClientId, m);
+			}
+			Subscription existing = m.get(address);
+			if(existing != null){
+				existing.conversationId = conversationId;
+				return;
+			}
+			Subscription s = null;
+			if(this.getNumCells(address) > MAX_CELLS_PER_SUBSCRIPTION){
+				s = new Subscription(authorizedClientId, address, conversationId, null);
+				this.largeSubscriptions.add(s);
+			}else{
+				s = new Subscription(authorizedClientId, address, conversationId, this.getCells(address));
+				for(Coordinate cell : s.cells){
+					List<Subscription> l = this.subscriptionsByCell.get(cell);
+					if(l == null){
+						l = new ArrayList<Subscription>(2);
+						this.subscriptionsByCell.put(cell, l);
+					}
+					l.add(s);
+				}
+			}
+			m.put(address, s);
+			this.numSubscriptions++;
+		}
+	}
+
+	public boolean removeSubscription(Long authorizedClientId, CuboidAddress address){
+		synchronized(lock){
+			Map<CuboidAddress, Subscription> m = this.subscriptionsByClient.get(authorizedClientId);
+			Subscription s = m == null ? null : m.remove(address);
+			if(s == null){
+				return false;
+			}
+			if(m.isEmpty()){
+				this.subscriptionsByClient.remove(authorizedClientId);
+			}
+			this.unindex(s);
+			return true;
+		}
+	}
+
+	public long removeSubscriptions(Long authorizedClientId, Collection<CuboidAddress> addresses){
+		synchronized(lock){
+			long numRemoved = 0L;
+			for(CuboidAddress address : addresses){
+				if(this.removeSubscription(authorizedClientId, address)){
+					numRemoved++;
+				}
+			}
+			return numRemoved;
+		}
+	}
+
+	public long removeAllSubscriptions(Long authorizedClientId){
+		synchronized(lock){
+			Map<CuboidAddress, Subscription> m = this.subscriptionsByClient.remove(authorizedClientId);
+			if(m == null){
+				return 0L;
+			}
+			for(Subscription s : m.values()){
+				this.unindex(s);
+			}
+			return m.size();
+		}
+	}
+
+	private void unindex(Subscription s){
+		if(s.cells == null){
+			this.largeSubscriptions.remove(s);
+		}else{
+			for(Coordinate cell : s.cells){
+				List<Subscription> l = this.subscriptionsByCell.get(cell);
+				l.remove(s);
+				if(l.isEmpty()){
+					this.subscriptionsByCell.remove(cell);
+				}
+			}
+		}
+		this.numSubscriptions--;
+	}
+
+	private interface SubscriptionVisitor {
+		//  Return false to stop the search.
+		public boolean visit(Subscription s) throws Exception;
+	}
+
+	private void forEachIntersectingSubscription(CuboidAddress address, SubscriptionVisitor visitor) throws Exception {
+		//  Each subscription is visited at most once per query even when it spans several of the cells:
+		long queryId = this.queryCounter++;
+		if(this.getNumCells(address) > Math.min(MAX_CELLS_PER_SUBSCRIPTION, this.numSubscriptions)){
+			for(Map<CuboidAddress, Subscription> m : this.subscriptionsByClient.values()){
+				for(Subscription s : m.values()){
+					if(s.address.intersects(address) && !visitor.visit(s)){
+						return;
+					}
+				}
+			}
+			return;
+		}
+		for(Subscription s : this.largeSubscriptions){
+			s.lastQueryId = queryId;
+			if(s.address.intersects(address) && !visitor.visit(s)){
+				return;
+			}
+		}
+		for(Coordinate cell : this.getCells(address)){
+			List<Subscription> l = this.subscriptionsByCell.get(cell);
+			if(l != null){
+				for(Subscription s : l){
+					if(s.lastQueryId != queryId){
+						s.lastQueryId = queryId;
+						if(s.address.intersects(address) && !visitor.visit(s)){
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public CuboidAddress findIntersectingSubscription(Long authorizedClientId, CuboidAddress address) throws Exception {
+		synchronized(lock){
+			//  Returns any subscribed region of this client that intersects 'address', or null.
+			CuboidAddress [] found = new CuboidAddress [1];
+			this.forEachIntersectingSubscription(address, (s) -> {
+				if(s.authorizedClientId.equals(authorizedClientId)){
+					found[0] = s.address;
+					return false;
+				}else{
+					return true;
+				}
+			});
+			return found[0];
+		}
+	}
+
+	public Map<Long, Map<CuboidAddress, Long>> getIntersections(List<CuboidAddress> addresses) throws Exception {
+		synchronized(lock){
+			//  Map of authorizedClientId -> intersection of written address and subscribed region -> conversationId.
+			//  Only clients with at least one intersection are included.
+			Map<Long, Map<CuboidAddress, Long>> intersections = new TreeMap<Long, Map<CuboidAddress, Long>>();
+			for(CuboidAddress address : addresses){
+				this.forEachIntersectingSubscription(address, (s) -> {
+					Map<CuboidAddress, Long> m = intersections.get(s.authorizedClientId);
+					if(m == null){
+						m = new TreeMap<CuboidAddress, Long>();
+						intersections.put(s.authorizedClientId, m);
+					}
+					m.put(s.address.getIntersectionCuboidAddress(address, true), s.conversationId);
+					return true;
+				});
+			}
+			return intersections;
+		}
+	}
+}
@@ -84,6 +84,11 @@ public class SIGWINCHListenerThreadState extends WorkItemQueueOwner<SIGWINCHList
 		this.workItemQueue.putWorkItem(workItem, priority);
 	}
 
+	@Override
+	public boolean getIsBlockingInNativeCode(){
+		return true; //  getSIGWINCH waits inside JNI.
+	}
+
 	public boolean doBackgroundProcessing() throws Exception{
 		while(true){
 			logger.info("Before getSIGWINCH.");
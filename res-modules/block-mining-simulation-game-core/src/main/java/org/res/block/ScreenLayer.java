@@ -40,6 +40,7 @@ import java.util.Arrays;
 import java.util.Objects;
 
 import java.util.Set;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.TreeMap;
 import java.io.ByteArrayOutputStream;
@@ -63,12 +64,14 @@ public class ScreenLayer {
 	private Coordinate placementOffset;  //  The offset of where the layer should end up once it's merged in.
 	private CuboidAddress dimensions;
 	public static final Long LINE_HEIGHT = 1L;
-	private ScreenLayerColumn [][] columns;
+	private static volatile ScreenLayerStorageType defaultStorageType = ScreenLayerStorageType.COLUMNS;
+	private final ScreenLayerStorageType storageType;
+	private ScreenLayerStorage storage;
 	private int [] defaultColourCodes = new int [] {};
-	private Set<ScreenRegion> changedRegions = new HashSet<ScreenRegion>();
+	private ScreenRegionSet changedRegions = new ScreenRegionSet();
 	private final StringBuilder stringBuilder = new StringBuilder();
 
-	private RecycledArrayBuffer changeFlagsRecycledBuffer = new RecycledArrayBuffer();
+	private RecycledArrayBuffer topColourKeysRecycledBuffer = new RecycledArrayBuffer();
 	private RecycledArrayBuffer activeStatesRecycledBuffer = new RecycledArrayBuffer();
 	private RecycledArrayBuffer finalActiveStatesRecycledBuffer = new RecycledArrayBuffer();
 	private RecycledArrayBuffer trustedChangedFlagsRecycledBuffer = new RecycledArrayBuffer();
@@ -79,32 +82,40 @@ public class ScreenLayer {
 		return this.isLayerActive;
 	}
 
-	public final ScreenLayerColumn getColumn(final int x, final int y){
-		return this.columns[x][y];
+	public final ScreenLayerColumn getColumn(final int x, final int y) throws Exception{
+		return this.storage.getColumn(x, y);
 	}
 
 	public final String getColumnCharacter(final int x, final int y){
-		return this.columns[x][y].getCharacter();
+		return this.storage.getCharacter(x, y);
 	}
 
 	public void setColumnCharacter(final int x, final int y, final String character){
-		this.columns[x][y].setCharacter(character);
+		this.storage.setCharacter(x, y, character);
 	}
 
 	public final int [] getColumnColourCodes(final int x, final int y){
-		return this.columns[x][y].getColourCodes();
+		return this.storage.getColourCodes(x, y);
 	}
 
 	public void setColumnColourCodes(final int x, final int y, final int [] colourCodes){
-		this.columns[x][y].setColourCodes(colourCodes);
+		this.storage.setColourCodes(x, y, colourCodes);
+	}
+
+	public final long getColumnColourKey(final int x, final int y){
+		return this.storage.getColourKey(x, y);
+	}
+
+	public void setColumnColourKey(final int x, final int y, final long colourKey){
+		this.storage.setColourKey(x, y, colourKey);
 	}
 
 	public final int getColumnCharacterWidth(final int x, final int y){
-		return this.columns[x][y].getCharacterWidth();
+		return this.storage.getCharacterWidth(x, y);
 	}
 
 	public final int getPositiveOnlyColumnCharacterWidth(final int x, final int y){
-		int v = this.columns[x][y].getCharacterWidth();
+		int v = this.storage.getCharacterWidth(x, y);
 		if(v > 0){
 			return v;
 		}else{
@@ -117,19 +128,12 @@ public class ScreenLayer {
 	}
 
 	public void setMultiColumnCharacter(final int x, final int y, String character, final int characterWidth, final int [] colourCodes, boolean changed, boolean active){
-		this.columns[x][y].setCharacterWidth(characterWidth);
-		this.columns[x][y].setCharacter(character);
-		this.columns[x][y].setColourCodes(colourCodes);
-		this.columns[x][y].setChanged(changed);
-		this.columns[x][y].setActive(active);
+		final long colourKey = ScreenLayerColourCodes.encode(colourCodes);
+		this.storage.setColumn(x, y, character, characterWidth, colourKey, changed, active);
 		for(int i = 1; i < characterWidth; i++){
 			//  For multi-column characters, widths after the first indicate
 			//  how many columns back to move to get to the first column.
-			this.columns[x+i][y].setCharacterWidth(-i);
-			this.columns[x+i][y].setCharacter(null);
-			this.columns[x+i][y].setColourCodes(colourCodes);
-			this.columns[x+i][y].setChanged(changed);
-			this.columns[x+i][y].setActive(active);
+			this.storage.setColumn(x+i, y, null, -i, colourKey, changed, active);
 		}
 	}
 
@@ -138,31 +142,39 @@ public class ScreenLayer {
 	}
 
 	public void setToEmpty(final int x, final int y, boolean changed, boolean active){
-		this.columns[x][y].setCharacterWidth(0);
-		this.columns[x][y].setCharacter(null);
-		this.columns[x][y].setColourCodes(new int [] {});
-		this.columns[x][y].setChanged(changed);
-		this.columns[x][y].setActive(active);
+		this.storage.setColumn(x, y, null, 0, ScreenLayerColourCodes.EMPTY, changed, active);
 	}
 
 	public void setColumnCharacterWidth(final int x, final int y, final int characterWidth){
-		this.columns[x][y].setCharacterWidth(characterWidth);
+		this.storage.setCharacterWidth(x, y, characterWidth);
 	}
 
 	public final boolean getColumnChanged(final int x, final int y){
-		return this.columns[x][y].getChanged();
+		return this.storage.getChanged(x, y);
 	}
 
 	public void setColumnChanged(final int x, final int y, final boolean newState){
-		this.columns[x][y].setChanged(newState);
+		this.storage.setChanged(x, y, newState);
 	}
 
 	public final boolean getColumnActive(final int x, final int y){
-		return this.columns[x][y].getActive();
+		return this.storage.getActive(x, y);
 	}
 
 	public void setColumnActive(final int x, final int y, final boolean newState){
-		this.columns[x][y].setActive(newState);
+		this.storage.setActive(x, y, newState);
+	}
+
+	public static ScreenLayerStorageType getDefaultStorageType(){
+		return ScreenLayer.defaultStorageType;
+	}
+
+	public static void setDefaultStorageType(ScreenLayerStorageType storageType){
+		ScreenLayer.defaultStorageType = storageType;
+	}
+
+	public ScreenLayerStorageType getStorageType(){
+		return this.storageType;
 	}
 
 	public static CuboidAddress makeDimensionsCA(int startX, int startY, int endX, int endY) throws Exception{
@@ -182,14 +194,71 @@ public class ScreenLayer {
 	public final boolean setIsLayerActive(boolean isLayerActive) throws Exception{
 		if(this.isLayerActive != isLayerActive){
 			this.isLayerActive = isLayerActive;
-			this.addChangedRegion(new ScreenRegion(ScreenRegion.makeScreenRegionCA(0,0, getWidth(), getHeight())));
-			this.setAllChangedFlagStates(true);
+			//  Only the visible columns show up when merged, so that's all that changes:
+			ScreenRegion activeRegion = this.getVisibleColumnsRegion();
+			if(activeRegion == null){
+				//  Nothing shows, but a changed region is still needed for the new state to be sent on:
+				activeRegion = new ScreenRegion(ScreenRegion.makeScreenRegionCA(0,0, getWidth(), getHeight()));
+			}
+			this.setScreenAreaChangeStates(activeRegion.getStartX(), activeRegion.getStartY(), activeRegion.getEndX(), activeRegion.getEndY(), true);
 			return true;
 		}else{
 			return false;
 		}
 	}
 
+	public static boolean setIsLayerActive(ScreenLayer [] screenLayers, int layerIndex, boolean isLayerActive) throws Exception{
+		//  Inactive layers get skipped when merging, so what was under or over the area that
+		//  this layer covers needs to be merged again in every layer.  Look at the area
+		//  before the change, since that's where this layer's columns are visible:
+		ScreenLayer layer = screenLayers[layerIndex];
+		ScreenRegion coveredRegion = layer.getVisibleColumnsRegion();
+		if(layer.setIsLayerActive(isLayerActive)){
+			if(coveredRegion != null){
+				int layerOffsetX = layer.getPlacementOffset().getX().intValue();
+				int layerOffsetY = layer.getPlacementOffset().getY().intValue();
+				for(int l = 0; l < screenLayers.length; l++){
+					if(l != layerIndex){
+						int xO = layerOffsetX - screenLayers[l].getPlacementOffset().getX().intValue();
+						int yO = layerOffsetY - screenLayers[l].getPlacementOffset().getY().intValue();
+						int startX = Math.max(coveredRegion.getStartX() + xO, 0);
+						int startY = Math.max(coveredRegion.getStartY() + yO, 0);
+						int endX = Math.min(coveredRegion.getEndX() + xO, screenLayers[l].getWidth());
+						int endY = Math.min(coveredRegion.getEndY() + yO, screenLayers[l].getHeight());
+						if(startX < endX && startY < endY){
+							screenLayers[l].setScreenAreaChangeStates(startX, startY, endX, endY, true);
+						}
+					}
+				}
+			}
+			return true;
+		}else{
+			return false;
+		}
+	}
+
+	public ScreenRegion getVisibleColumnsRegion() throws Exception{
+		//  The smallest region that holds every active column with a character or colour in it, or
+		//  null if there are none.  Active columns that are empty don't cover anything when merged:
+		int startX = Integer.MAX_VALUE;
+		int startY = Integer.MAX_VALUE;
+		int endX = Integer.MIN_VALUE;
+		int endY = Integer.MIN_VALUE;
+		int width = this.getWidth();
+		int height = this.getHeight();
+		for(int j = 0; j < height; j++){
+			for(int i = 0; i < width; i++){
+				if(this.getColumnActive(i, j) && (this.getColumnCharacterWidth(i, j) != 0 || this.getColumnColourKey(i, j) != ScreenLayerColourCodes.EMPTY)){
+					startX = Math.min(startX, i);
+					endX = Math.max(endX, i + 1);
+					startY = Math.min(startY, j);
+					endY = j + 1;
+				}
+			}
+		}
+		return startX == Integer.MAX_VALUE ? null : new ScreenRegion(ScreenRegion.makeScreenRegionCA(startX, startY, endX, endY));
+	}
+
 	public int getWidth(){
 		return (int)this.dimensions.getWidth();
 	}
@@ -231,16 +300,20 @@ public class ScreenLayer {
 		this.changedRegions.clear();
 	}
 
-	public void addChangedRegion(ScreenRegion r){
+	public void addChangedRegion(ScreenRegion r) throws Exception{
 		this.changedRegions.add(r);
 	}
 
-	public void addChangedRegions(Set<ScreenRegion> regions){
+	public void addChangedRegions(Collection<ScreenRegion> regions) throws Exception{
 		this.changedRegions.addAll(regions);
 	}
 
-	public Set<ScreenRegion> getChangedRegions(){
-		return this.changedRegions;
+	public void addChangedRegions(ScreenRegionSet regions) throws Exception{
+		this.changedRegions.addAll(regions.getRegions());
+	}
+
+	public List<ScreenRegion> getChangedRegions() throws Exception{
+		return this.changedRegions.getRegions();
 	}
 
 	public ScreenLayer() throws Exception{
@@ -252,88 +325,32 @@ public class ScreenLayer {
 	}
 
 	public ScreenLayer(Coordinate placementOffset, CuboidAddress dimensions) throws Exception{
+		this(placementOffset, dimensions, ScreenLayer.defaultStorageType);
+	}
+
+	public ScreenLayer(Coordinate placementOffset, CuboidAddress dimensions, ScreenLayerStorageType storageType) throws Exception{
 		int width = (int)dimensions.getWidth();
 		int height = (int)dimensions.getHeight();
-		this.columns = new ScreenLayerColumn [width][height];
-		for(int i = 0; i < width; i++){
-			for(int j = 0; j < height; j++){
-				this.columns[i][j] = new ScreenLayerColumn(
-					0,
-					new int [] {},
-					null,
-					false,
-					false
-				);
-			}
-		}
+		this.storageType = storageType;
+		this.storage = ScreenLayerStorage.create(storageType, width, height);
 		this.dimensions = dimensions;
 		this.placementOffset = placementOffset;
 	}
 
 	public void resizeLayer(CuboidAddress newDimensions) throws Exception{
-		int oldWidth = (int)dimensions.getWidth();
-		int oldHeight = (int)dimensions.getHeight();
 		int newWidth = (int)newDimensions.getWidth();
 		int newHeight = (int)newDimensions.getHeight();
-		ScreenLayerColumn [][] newColumns = new ScreenLayerColumn[newWidth][newHeight];
-
-		//  Preserved the common unchanged screen area:
-		int unchangedAreaWidth = Math.min(oldWidth, newWidth);
-		int unchangedAreaHeight = Math.min(oldHeight, newHeight);
-		for(int i = 0; i < unchangedAreaWidth; i++){
-			for(int j = 0; j < unchangedAreaHeight; j++){
-				newColumns[i][j] = this.columns[i][j];
-			}
-		}
-
-		//  Initialize any new area on right edge of screen layer:
-		for(int i = Math.min(newWidth, oldWidth); i < newWidth; i++){
-			for(int j = 0; j < newHeight; j++){
-				newColumns[i][j] =  new ScreenLayerColumn(
-					0,
-					new int [] {},
-					null,
-					false,
-					false
-				);
-			}
-		}
-
-		//  Initialize any new area on bottom edge of screen layer:
-		for(int i = 0; i < newWidth; i++){
-			for(int j = Math.min(newHeight, oldHeight); j < newHeight; j++){
-				newColumns[i][j] =  new ScreenLayerColumn(
-					0,
-					new int [] {},
-					null,
-					false,
-					false
-				);
-			}
-		}
-
-		this.columns = newColumns;
+		//  Preserves the common unchanged screen area, and initializes any new area on the right and bottom edges:
+		this.storage = this.storage.resized(newWidth, newHeight);
 		this.dimensions = newDimensions;
 	}
 
 	public void setAllChangedFlagStates(boolean state){
-		int width = this.getWidth();
-		int height = this.getHeight();
-		for(int i = 0; i < width; i++){
-			for(int j = 0; j < height; j++){
-				this.setColumnChanged(i, j, state);
-			}
-		}
+		this.storage.setAllChanged(state);
 	}
 
 	public void setAllActiveFlagStates(boolean state){
-		int width = this.getWidth();
-		int height = this.getHeight();
-		for(int i = 0; i < width; i++){
-			for(int j = 0; j < height; j++){
-				this.setColumnActive(i, j, state);
-			}
-		}
+		this.storage.setAllActive(state);
 	}
 
 	public void initialize() throws Exception{
@@ -361,13 +378,11 @@ public class ScreenLayer {
 			throw new Exception("chrWidth == 0 && s == null || chrWidth == 1");
 		}
 
-		for(int i = startX; i < endX; i++){
-			for(int j = startY; j < endY; j++){
-				this.setColumnCharacterWidth(i, j, chrWidth);
-				this.setColumnColourCodes(i, j, colourCodes);
-				this.setColumnCharacter(i, j, s);
-				this.setColumnChanged(i, j, defaultChangedFlag);
-				this.setColumnActive(i, j, defaultActiveFlag); //  Require the user to explicitly enable this column.
+		final long colourKey = ScreenLayerColourCodes.encode(colourCodes);
+		for(int j = startY; j < endY; j++){
+			for(int i = startX; i < endX; i++){
+				//  Require the user to explicitly enable this column with defaultActiveFlag.
+				this.storage.setColumn(i, j, s, chrWidth, colourKey, defaultChangedFlag, defaultActiveFlag);
 			}
 		}
 		if(msg != null){
@@ -437,7 +452,9 @@ public class ScreenLayer {
 	}
 
 	public final boolean isAtInitialColumnOfCharacter(final int x, final int y){
-		return this.columns[x][y].isAtInitialColumnOfCharacter();
+		//  Used to identify when we're on the first column
+		//  of a character.  Returns true for empty character too.
+		return this.storage.getCharacterWidth(x, y) > -1;
 	}
 
 	public void calculateOcclusions(final boolean isLeftToRight, final int startX, final int endX, final int j, final int startY, final ScreenLayer [] screenLayers, final int [] occlusions, final boolean [][][] activeStates, final int [] xO, final int [] yO, boolean [] trustedChangedFlags) throws Exception{
@@ -476,8 +493,7 @@ public class ScreenLayer {
 						}
 					}
 					if(!sawPopulatedColourCodes){
-						int [] colours = screenLayers[s].getColumnColourCodes(xSrc, ySrc);
-						boolean colourCodesAreEmpty = colours.length == 0;
+						boolean colourCodesAreEmpty = screenLayers[s].getColumnColourKey(xSrc, ySrc) == ScreenLayerColourCodes.EMPTY;
 						if(!colourCodesAreEmpty){
 							trustedChangedFlags[xR] |= columnChanged;
 							sawPopulatedColourCodes = true;
@@ -513,7 +529,7 @@ public class ScreenLayer {
 		}
 	}
 
-	public void populateTranslatedExpandedClippedRegions(ScreenLayer [] screenLayers, Set<ScreenRegion> translatedExpandedRegions, Set<ScreenRegion> translatedExpandedClippedRegions, int [] xO, int [] yO) throws Exception{
+	public void populateTranslatedExpandedClippedRegions(ScreenLayer [] screenLayers, ScreenRegionSet translatedExpandedRegions, ScreenRegionSet translatedExpandedClippedRegions, int [] xO, int [] yO) throws Exception{
 		//  Everything gets merged down into a coordinate system based on layer 0
 		CuboidAddress baseLayerCuboidAddress = ScreenRegion.makeScreenRegionCA(
 			0,
@@ -572,13 +588,14 @@ public class ScreenLayer {
 		}
 		
 		//  Regions that have been translated to base layer coordinates, and expanded to not cut multi-column characters:
-		Set<ScreenRegion> translatedExpandedRegions = new HashSet<ScreenRegion>(); 
+		//  These are never collapsed into a bounding box, because that could cut multi-column characters:
+		ScreenRegionSet translatedExpandedRegions = new ScreenRegionSet(Integer.MAX_VALUE, true);
 		//  Regions that have been translated to base layer coordinates, and expanded to not cut multi-column characters
 		//  and also clipped to be within the base layer:
-		Set<ScreenRegion> translatedExpandedClippedRegions = new HashSet<ScreenRegion>();
+		ScreenRegionSet translatedExpandedClippedRegions = new ScreenRegionSet(Integer.MAX_VALUE, true);
 		this.populateTranslatedExpandedClippedRegions(screenLayers, translatedExpandedRegions, translatedExpandedClippedRegions, xO, yO);
 
-		for(ScreenRegion region : translatedExpandedClippedRegions){
+		for(ScreenRegion region : translatedExpandedClippedRegions.getRegions()){
 			final int startX = region.getStartX();
 			final int startY = region.getStartY();
 			final int endX = region.getEndX();
@@ -587,11 +604,10 @@ public class ScreenLayer {
 			final int xWidth = endX - startX;
 			final int yHeight = endY - startY;
 			//  Pre-calculate the active states for all layers in the entire current horizontal strip:
-			final boolean [][][] changeFlags = this.changeFlagsRecycledBuffer.get3DBooleanArray(screenLayers.length, xWidth, yHeight);
 			final boolean [][][] activeStates = this.activeStatesRecycledBuffer.get3DBooleanArray(screenLayers.length, xWidth, yHeight);
 			final boolean [][] finalActiveStates = this.finalActiveStatesRecycledBuffer.get2DBooleanArray(xWidth, yHeight);
-			final int [][][] topColourCodes = new int [xWidth][yHeight][];
-			final int [] emptyColours = new int [] {};
+			//  Colour keys of the top most active layer with non-empty colours, row by row.  Starts as all EMPTY:
+			final long [] topColourKeys = this.topColourKeysRecycledBuffer.get1DLongArray(xWidth * yHeight);
 
 			//  Control whether layer 0 is forced active or inactive:
 			final boolean fbls = forcedBottomLayerState.toBoolean();
@@ -610,27 +626,18 @@ public class ScreenLayer {
 						final int yR = j-startY;
 						activeStates[s][xR][yR] = (s == 0) ? fbls : (layerActive && screenLayers[s].getColumnActive(xSrc, ySrc));
 
-						if(topColourCodes[xR][yR] == null){
-							topColourCodes[xR][yR] = emptyColours;
-						}
 						if(activeStates[s][xR][yR]){
 							finalActiveStates[xR][yR] = true;
-							int [] columnColourCodes = screenLayers[s].getColumnColourCodes(xSrc, ySrc);
-							if(topColourCodes[xR][yR].length == 0){
-								if(columnColourCodes.length > 0 && activeStates[s][xR][yR]){
-									topColourCodes[xR][yR] = columnColourCodes;
-								}
-							}
-
-							if(screenLayers[s].getColumnChanged(xSrc, ySrc)){
-								changeFlags[s][xR][yR] = true; //  Check all layers, just in case a layer underneath has a change of BG colour.
+							final int k = yR * xWidth + xR;
+							if(topColourKeys[k] == ScreenLayerColourCodes.EMPTY){
+								topColourKeys[k] = screenLayers[s].getColumnColourKey(xSrc, ySrc);
 							}
 						}
 					}
 				}
 			}
 
-			this.applyOcclusions(screenLayers, startX, endX, startY, endY, xWidth, topColourCodes, activeStates, finalActiveStates, xO, yO, trustChangedFlags);
+			this.applyOcclusions(screenLayers, startX, endX, startY, endY, xWidth, topColourKeys, activeStates, finalActiveStates, xO, yO, trustChangedFlags);
 		}
 
 		this.resetChangedFlags(screenLayers, translatedExpandedRegions, xO, yO);
@@ -638,7 +645,7 @@ public class ScreenLayer {
 		//this.throwExceptionOnValidationFailure();
 	}
 
-	public void applyOcclusions(final ScreenLayer [] screenLayers, final int startX, final int endX, final int startY, final int endY, final int xWidth, final int [][][] topColourCodes, final boolean [][][] activeStates, final boolean [][] finalActiveStates, final int [] xO, final int [] yO, final boolean trustChangedFlags) throws Exception{
+	public void applyOcclusions(final ScreenLayer [] screenLayers, final int startX, final int endX, final int startY, final int endY, final int xWidth, final long [] topColourKeys, final boolean [][][] activeStates, final boolean [][] finalActiveStates, final int [] xO, final int [] yO, final boolean trustChangedFlags) throws Exception{
 		final int [] rightwardOcclusions = rightwardOcclusionsRecycledBuffer.get1DIntArray(xWidth);
 		final int [] leftwardOcclusions = leftwardOcclusionsRecycledBuffer.get1DIntArray(xWidth);
 
@@ -656,6 +663,7 @@ public class ScreenLayer {
 			for(int i = outputStartX; i < outputEndX; i++){
 				final int xR = i-startX;
 				final int yR = j-startY;
+				final int k = yR * xWidth + xR;
 				String outputCharacters = null;
 				int outputCharacterWidths = 0;
 				boolean isAtInitialColumnOfCharacter;
@@ -711,7 +719,7 @@ public class ScreenLayer {
 				if(outputCharacterWidths < 0){ // non-first columns in multi-colun char
 					int before_i = i-1;
 					if(before_i >= 0){
-						topColourCodes[xR][yR] = this.getColumnColourCodes(before_i, j);
+						topColourKeys[k] = this.getColumnColourKey(before_i, j);
 						trustedChangedFlags[xR] = this.getColumnChanged(before_i, j);
 					}
 				}
@@ -729,33 +737,33 @@ public class ScreenLayer {
 							j,
 							outputCharacters,
 							outputCharacterWidths,
-							topColourCodes[xR][yR]
+							topColourKeys[k]
 						) || this.getColumnChanged(i, j); // if there is a pending changed flag that hasn't been printed yet.
 					}
 				}
 
-				this.setColumnCharacter(i, j, outputCharacters);
-				this.setColumnCharacterWidth(i, j, outputCharacterWidths);
-				this.setColumnColourCodes(i, j, topColourCodes[xR][yR]);
-				this.setColumnChanged(i, j, hasChange);
-				this.setColumnActive(i, j, finalActiveStates[xR][yR]);
+				this.storage.setColumn(i, j, outputCharacters, outputCharacterWidths, topColourKeys[k], hasChange, finalActiveStates[xR][yR]);
 			}
 		}
 	}
 
 	public boolean hasCharacterChanged(final int i, final int j, final String character, final int characterWidth, final int [] colourCodes) throws Exception{
+		return this.hasCharacterChanged(i, j, character, characterWidth, ScreenLayerColourCodes.encode(colourCodes));
+	}
+
+	public boolean hasCharacterChanged(final int i, final int j, final String character, final int characterWidth, final long colourKey) throws Exception{
 		return !(
 			(this.getColumnCharacterWidth(i, j) == characterWidth) &&
-			Arrays.equals(this.getColumnColourCodes(i, j), colourCodes) &&
+			this.getColumnColourKey(i, j) == colourKey &&
 			Objects.equals(this.getColumnCharacter(i, j), character)
 		);
 	}
 
-	public void resetChangedFlags(ScreenLayer [] screenLayers, Set<ScreenRegion> translatedExpandedRegions, int [] xO, int [] yO) throws Exception{
+	public void resetChangedFlags(ScreenLayer [] screenLayers, ScreenRegionSet translatedExpandedRegions, int [] xO, int [] yO) throws Exception{
 		//  If some of the changed regions overlap, there is a case where
 		//  the calculated change flags can be incorrect due to them being
 		//  cleared by a previous overlapping changed region.
-		for(ScreenRegion region : translatedExpandedRegions){
+		for(ScreenRegion region : translatedExpandedRegions.getRegions()){
 			for(int s = screenLayers.length -1; s >= 1; s--){
 				final int startX = Math.max(region.getStartX() - xO[s], 0);
 				final int startY = Math.max(region.getStartY() - yO[s], 0);
@@ -783,9 +791,33 @@ public class ScreenLayer {
 	}
 
 	public void printChanges(boolean useCompatibilityWidth, boolean useRightToLeftPrint, boolean resetCursorPosition, int xOffset, int yOffset, Coordinate cursorPosition) throws Exception{
+		this.printChanges(useCompatibilityWidth, useRightToLeftPrint, resetCursorPosition, xOffset, yOffset, cursorPosition, null);
+	}
+
+	public void printChanges(boolean useCompatibilityWidth, boolean useRightToLeftPrint, boolean resetCursorPosition, int xOffset, int yOffset, Coordinate cursorPosition, ScreenOutputEncoder encoder) throws Exception{
+		this.appendChanges(this.stringBuilder, useCompatibilityWidth, useRightToLeftPrint, resetCursorPosition, xOffset, yOffset, cursorPosition, encoder);
+		System.out.print(this.stringBuilder); //  Print accumulated output
+		this.stringBuilder.setLength(0);      //  clear buffer.
+	}
+
+	public void appendChanges(StringBuilder out, boolean useCompatibilityWidth, boolean useRightToLeftPrint, boolean resetCursorPosition, int xOffset, int yOffset, Coordinate cursorPosition, ScreenOutputEncoder encoder) throws Exception{
+		if(encoder == null){
+			this.appendAbsoluteChanges(out, useCompatibilityWidth, useRightToLeftPrint, xOffset, yOffset);
+		}else{
+			encoder.appendChanges(this, out, useCompatibilityWidth, useRightToLeftPrint, xOffset, yOffset);
+		}
+		this.clearChangedRegions();
+		if(resetCursorPosition){
+			Long x = cursorPosition == null ? 0L : cursorPosition.getX();
+			Long y = cursorPosition == null ? 0L : cursorPosition.getY();
+			out.append("\033[" + y + ";" + x + "H"); //  Move cursor to 0,0 after every print.
+		}
+	}
+
+	public void appendAbsoluteChanges(StringBuilder out, boolean useCompatibilityWidth, boolean useRightToLeftPrint, int xOffset, int yOffset) throws Exception{
 		int loopUpdate = useRightToLeftPrint ? -1 : 1;
 		boolean resetState = useRightToLeftPrint ? true : true; // TODO:  Optimize this in the future.
-		int [] lastUsedColourCodes = null;
+		long lastUsedColourKey = ScreenLayerColourCodes.NULL;
 		for(ScreenRegion region : this.getChangedRegions()){
 			int startX = region.getStartX();
 			int startY = region.getStartY();
@@ -799,7 +831,7 @@ public class ScreenLayer {
 				int chrsLeft = 0;
 				for(int i = startColumn; i != endColumn; i += loopUpdate){
 					//  Try to intelligently issue as few ANSI escape sequences as possible:
-					if(!Arrays.equals(this.getColumnColourCodes(i, j), lastUsedColourCodes)){
+					if(this.getColumnColourKey(i, j) != lastUsedColourKey){
 						mustSetColourCodes = true;
 					}
 					if(chrsLeft <= 0){
@@ -811,25 +843,25 @@ public class ScreenLayer {
 					){
 						if(useCompatibilityWidth){
 							String currentPositionSequence = "\033[" + (j+1+yOffset) + ";" + (i+1+xOffset) + "H";
-							this.stringBuilder.append(currentPositionSequence);
+							out.append(currentPositionSequence);
 
 							List<String> codes = new ArrayList<String>();
 							for(int c : this.getColumnColourCodes(i, j)){
 								codes.add(String.valueOf(c));
 							}
 							String currentColorSequence = "\033[0m\033[" + String.join(";", codes) + "m";
-							this.stringBuilder.append(currentColorSequence);
+							out.append(currentColorSequence);
 							mustSetColourCodes = resetState;
-							lastUsedColourCodes = this.getColumnColourCodes(i, j);
+							lastUsedColourKey = this.getColumnColourKey(i, j);
 
 							int columnWidthValue = this.getColumnCharacterWidth(i, j)  > 0 ? this.getColumnCharacterWidth(i, j) : 0;
 							for(int k = 0; k < columnWidthValue; k++){
-								this.stringBuilder.append(" ");
+								out.append(" ");
 							}
 						}
 						if(mustSetCursorPosition){
 							String currentPositionSequence = "\033[" + (j+1+yOffset) + ";" + (i+1+xOffset) + "H";
-							this.stringBuilder.append(currentPositionSequence);
+							out.append(currentPositionSequence);
 							mustSetCursorPosition = resetState;
 						}
 						if(mustSetColourCodes){
@@ -838,16 +870,16 @@ public class ScreenLayer {
 								codes.add(String.valueOf(c));
 							}
 							String currentColorSequence = "\033[0m\033[" + String.join(";", codes) + "m";
-							this.stringBuilder.append(currentColorSequence);
+							out.append(currentColorSequence);
 							mustSetColourCodes = resetState;
-							lastUsedColourCodes = this.getColumnColourCodes(i, j);
+							lastUsedColourKey = this.getColumnColourKey(i, j);
 						}
 						if(this.getColumnCharacter(i, j) == null && chrsLeft == 0){
-							//this.stringBuilder.append("\033[43mX\033[0m"); // Highlight Nulls
-							this.stringBuilder.append("\033[0m "); //  Clear space with default colour space.
+							//out.append("\033[43mX\033[0m"); // Highlight Nulls
+							out.append("\033[0m "); //  Clear space with default colour space.
 						}else if(this.getColumnCharacter(i, j) == null){
 						}else{
-							this.stringBuilder.append(this.getColumnCharacter(i, j));
+							out.append(this.getColumnCharacter(i, j));
 						}
 						this.setColumnChanged(i, j, false);
 					}else{
@@ -857,17 +889,9 @@ public class ScreenLayer {
 				}
 			}
 		}
-		this.clearChangedRegions();
-		if(resetCursorPosition){
-			Long x = cursorPosition == null ? 0L : cursorPosition.getX();
-			Long y = cursorPosition == null ? 0L : cursorPosition.getY();
-			this.stringBuilder.append("\033[" + y + ";" + x + "H"); //  Move cursor to 0,0 after every print.
-		}
-		System.out.print(this.stringBuilder); //  Print accumulated output
-		this.stringBuilder.setLength(0);      //  clear buffer.
 	}
 
-	public static boolean isInChangedRegion(int x, int y, Set<ScreenRegion> changedRegions) throws Exception{
+	public static boolean isInChangedRegion(int x, int y, Collection<ScreenRegion> changedRegions) throws Exception{
 		for(ScreenRegion r : changedRegions){
 			if(r.getRegion().containsCoordinate(new Coordinate(Arrays.asList((long)x, (long)y)))){
 				return true;
@@ -881,7 +905,7 @@ public class ScreenLayer {
 			for(int i = 0; i < this.getWidth(); i++){
 				int [] colourCodes = new int []{UserInterfaceFrameThreadState.RESET_BG_COLOR};
 				String characters = null;
-				boolean isInChangedRegion = ScreenLayer.isInChangedRegion(i, j, this.changedRegions);
+				boolean isInChangedRegion = ScreenLayer.isInChangedRegion(i, j, this.getChangedRegions());
 				if(debugType.equals("characters")){
 					if(this.getColumnCharacter(i, j) != null){
 
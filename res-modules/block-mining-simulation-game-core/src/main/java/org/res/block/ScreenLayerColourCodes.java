@@ -0,0 +1,132 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+	Packs an array of ANSI colour codes into one long, so screen cells can store
+	and compare their colours without holding on to an array each.  Up to 7 codes
+	that each fit in a byte are packed directly with the number of codes in the
+	top byte, which covers a 24 bit foreground or background colour along with
+	the attribute codes.  Longer arrays are interned and stored by id.  The same
+	array contents always give the same key, so comparing keys is the same as
+	comparing the arrays with Arrays.equals.
+*/
+public class ScreenLayerColourCodes {
+
+	public static final long EMPTY = 0L;
+	public static final long NULL = 0xFEL << 56;
+	private static final long INTERNED = 0xFFL << 56;
+	private static final int MAX_PACKED_CODES = 7;
+	private static final int DECODE_CACHE_SIZE = 1024;
+
+	private static class DecodedColourCodes {
+		private final long key;
+		private final int [] colourCodes;
+
+		public DecodedColourCodes(long key, int [] colourCodes){
+			this.key = key;
+			this.colourCodes = colourCodes;
+		}
+	}
+
+	private static final Object lock = new Object();
+	/*  Direct mapped, so decoding a key doesn't box it.  A collision just means another trip through the slow path: */
+	private static final DecodedColourCodes [] decodeCache = new DecodedColourCodes [DECODE_CACHE_SIZE];
+	private static final Map<String, Long> internedKeys = new HashMap<String, Long>();
+	private static volatile int [][] internedColourCodes = new int [16][];
+	private static int numInterned = 0;
+
+	public static long encode(int [] colourCodes){
+		if(colourCodes == null){
+			return NULL;
+		}
+		if(colourCodes.length <= MAX_PACKED_CODES){
+			long key = ((long)colourCodes.length) << 56;
+			boolean fits = true;
+			for(int i = 0; i < colourCodes.length; i++){
+				int c = colourCodes[i];
+				if(c < 0 || c > 0xFF){
+					fits = false;
+					break;
+				}
+				key |= ((long)c) << (8 * i);
+			}
+			if(fits){
+				return key;
+			}
+		}
+		return ScreenLayerColourCodes.intern(colourCodes);
+	}
+
+	private static long intern(int [] colourCodes){
+		String contents = Arrays.toString(colourCodes);
+		synchronized(lock){
+			Long key = internedKeys.get(contents);
+			if(key == null){
+				if(numInterned == internedColourCodes.length){
+					internedColourCodes = Arrays.copyOf(internedColourCodes, numInterned * 2);
+				}
+				internedColourCodes[numInterned] = Arrays.copyOf(colourCodes, colourCodes.length);
+				key = INTERNED | numInterned;
+				internedKeys.put(contents, key);
+				numInterned++;
+			}
+			return key;
+		}
+	}
+
+	public static int [] decode(long key){
+		if(key == NULL){
+			return null;
+		}
+		if((key & INTERNED) == INTERNED){
+			return internedColourCodes[(int)(key & 0xFFFFFFFFL)];
+		}
+		int slot = (int)((key ^ (key >>> 29)) & (DECODE_CACHE_SIZE - 1));
+		DecodedColourCodes cached = decodeCache[slot];
+		if(cached != null && cached.key == key){
+			return cached.colourCodes;
+		}
+		int numCodes = (int)(key >>> 56);
+		int [] colourCodes = new int [numCodes];
+		for(int i = 0; i < numCodes; i++){
+			colourCodes[i] = (int)((key >>> (8 * i)) & 0xFFL);
+		}
+		decodeCache[slot] = new DecodedColourCodes(key, colourCodes);
+		return colourCodes;
+	}
+}
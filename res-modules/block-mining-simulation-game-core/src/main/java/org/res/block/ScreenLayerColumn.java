@@ -62,6 +62,7 @@ public class ScreenLayerColumn {
 
 	private int characterWidth;
 	private int [] colourCodes;
+	private long colourKey;
 	private String character;
 	private boolean changed;
 	private boolean active;
@@ -80,6 +81,18 @@ public class ScreenLayerColumn {
 
 	public void setColourCodes(final int [] colourCodes){
 		this.colourCodes = colourCodes;
+		this.colourKey = ScreenLayerColourCodes.encode(colourCodes);
+	}
+
+	public final long getColourKey(){
+		return this.colourKey;
+	}
+
+	public void setColourKey(final long colourKey){
+		if(this.colourKey != colourKey){
+			this.colourCodes = ScreenLayerColourCodes.decode(colourKey);
+			this.colourKey = colourKey;
+		}
 	}
 
 	public final int getCharacterWidth(){
@@ -115,6 +128,7 @@ public class ScreenLayerColumn {
 	public ScreenLayerColumn(int characterWidth, int [] colourCodes, String character, boolean changed, boolean active) throws Exception{
 		this.characterWidth = characterWidth;
 		this.colourCodes = colourCodes;
+		this.colourKey = ScreenLayerColourCodes.encode(colourCodes);
 		this.character = character;
 		this.changed = changed;
 		this.active = active;
@@ -123,6 +137,7 @@ public class ScreenLayerColumn {
 	public ScreenLayerColumn(ScreenLayerColumn otherColumn) throws Exception{
 		this.characterWidth = otherColumn.getCharacterWidth();
 		this.colourCodes = otherColumn.getColourCodes();
+		this.colourKey = otherColumn.getColourKey();
 		this.character = otherColumn.getCharacter();
 		this.changed = otherColumn.getChanged();
 		this.active = otherColumn.getActive();
@@ -0,0 +1,157 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+/*
+	The original layout with one ScreenLayerColumn object for every cell.
+*/
+public class ScreenLayerColumnStorage extends ScreenLayerStorage {
+
+	private final ScreenLayerColumn [][] columns;
+	private final int width;
+	private final int height;
+
+	public ScreenLayerColumnStorage(int width, int height) throws Exception{
+		this(new ScreenLayerColumn [width][height], width, height, 0, 0);
+	}
+
+	private ScreenLayerColumnStorage(ScreenLayerColumn [][] columns, int width, int height, int initializedWidth, int initializedHeight) throws Exception{
+		this.columns = columns;
+		this.width = width;
+		this.height = height;
+		for(int i = 0; i < width; i++){
+			for(int j = 0; j < height; j++){
+				if(!(i < initializedWidth && j < initializedHeight)){
+					columns[i][j] = new ScreenLayerColumn(0, new int [] {}, null, false, false);
+				}
+			}
+		}
+	}
+
+	public int getWidth(){
+		return this.width;
+	}
+
+	public int getHeight(){
+		return this.height;
+	}
+
+	public String getCharacter(int x, int y){
+		return this.columns[x][y].getCharacter();
+	}
+
+	public void setCharacter(int x, int y, String character){
+		this.columns[x][y].setCharacter(character);
+	}
+
+	public int [] getColourCodes(int x, int y){
+		return this.columns[x][y].getColourCodes();
+	}
+
+	public void setColourCodes(int x, int y, int [] colourCodes){
+		this.columns[x][y].setColourCodes(colourCodes);
+	}
+
+	public long getColourKey(int x, int y){
+		return this.columns[x][y].getColourKey();
+	}
+
+	public void setColourKey(int x, int y, long colourKey){
+		this.columns[x][y].setColourKey(colourKey);
+	}
+
+	public int getCharacterWidth(int x, int y){
+		return this.columns[x][y].getCharacterWidth();
+	}
+
+	public void setCharacterWidth(int x, int y, int characterWidth){
+		this.columns[x][y].setCharacterWidth(characterWidth);
+	}
+
+	public boolean getChanged(int x, int y){
+		return this.columns[x][y].getChanged();
+	}
+
+	public void setChanged(int x, int y, boolean changed){
+		this.columns[x][y].setChanged(changed);
+	}
+
+	public boolean getActive(int x, int y){
+		return this.columns[x][y].getActive();
+	}
+
+	public void setActive(int x, int y, boolean active){
+		this.columns[x][y].setActive(active);
+	}
+
+	public void setColumn(int x, int y, String character, int characterWidth, long colourKey, boolean changed, boolean active){
+		ScreenLayerColumn column = this.columns[x][y];
+		column.setCharacter(character);
+		column.setCharacterWidth(characterWidth);
+		column.setColourKey(colourKey);
+		column.setChanged(changed);
+		column.setActive(active);
+	}
+
+	public void setAllChanged(boolean changed){
+		for(int i = 0; i < this.width; i++){
+			for(int j = 0; j < this.height; j++){
+				this.columns[i][j].setChanged(changed);
+			}
+		}
+	}
+
+	public void setAllActive(boolean active){
+		for(int i = 0; i < this.width; i++){
+			for(int j = 0; j < this.height; j++){
+				this.columns[i][j].setActive(active);
+			}
+		}
+	}
+
+	public ScreenLayerStorage resized(int newWidth, int newHeight) throws Exception{
+		ScreenLayerColumn [][] newColumns = new ScreenLayerColumn[newWidth][newHeight];
+		int unchangedAreaWidth = Math.min(this.width, newWidth);
+		int unchangedAreaHeight = Math.min(this.height, newHeight);
+		for(int i = 0; i < unchangedAreaWidth; i++){
+			for(int j = 0; j < unchangedAreaHeight; j++){
+				newColumns[i][j] = this.columns[i][j];
+			}
+		}
+		return new ScreenLayerColumnStorage(newColumns, newWidth, newHeight, unchangedAreaWidth, unchangedAreaHeight);
+	}
+
+	public ScreenLayerColumn getColumn(int x, int y) throws Exception{
+		return this.columns[x][y];
+	}
+}
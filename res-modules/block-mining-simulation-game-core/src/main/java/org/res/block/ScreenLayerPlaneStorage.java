@@ -0,0 +1,173 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+	Stores each column property in its own primitive array, indexed row by row.
+	Characters are stored as ids from ScreenLayerGlyphTable and colours as keys
+	from ScreenLayerColourCodes, so a full screen layer is a handful of arrays
+	instead of one object (and one colour array) per cell.
+*/
+public class ScreenLayerPlaneStorage extends ScreenLayerStorage {
+
+	private final int width;
+	private final int height;
+	private final int [] glyphIds;
+	private final long [] colourKeys;
+	private final byte [] characterWidths;
+	private final BitSet changed;
+	private final BitSet active;
+
+	public ScreenLayerPlaneStorage(int width, int height) throws Exception{
+		int size = width * height;
+		this.width = width;
+		this.height = height;
+		this.glyphIds = new int [size];
+		this.colourKeys = new long [size];
+		this.characterWidths = new byte [size];
+		this.changed = new BitSet(size);
+		this.active = new BitSet(size);
+	}
+
+	private final int index(int x, int y){
+		if(x < 0 || x >= this.width){
+			throw new ArrayIndexOutOfBoundsException("Index " + x + " out of bounds for width " + this.width);
+		}
+		return y * this.width + x;
+	}
+
+	public int getWidth(){
+		return this.width;
+	}
+
+	public int getHeight(){
+		return this.height;
+	}
+
+	public String getCharacter(int x, int y){
+		return ScreenLayerGlyphTable.getGlyph(this.glyphIds[this.index(x, y)]);
+	}
+
+	public void setCharacter(int x, int y, String character){
+		this.glyphIds[this.index(x, y)] = ScreenLayerGlyphTable.getGlyphId(character);
+	}
+
+	public int [] getColourCodes(int x, int y){
+		return ScreenLayerColourCodes.decode(this.colourKeys[this.index(x, y)]);
+	}
+
+	public void setColourCodes(int x, int y, int [] colourCodes){
+		this.colourKeys[this.index(x, y)] = ScreenLayerColourCodes.encode(colourCodes);
+	}
+
+	public long getColourKey(int x, int y){
+		return this.colourKeys[this.index(x, y)];
+	}
+
+	public void setColourKey(int x, int y, long colourKey){
+		this.colourKeys[this.index(x, y)] = colourKey;
+	}
+
+	public int getCharacterWidth(int x, int y){
+		return this.characterWidths[this.index(x, y)];
+	}
+
+	public void setCharacterWidth(int x, int y, int characterWidth){
+		this.characterWidths[this.index(x, y)] = (byte)characterWidth;
+	}
+
+	public boolean getChanged(int x, int y){
+		return this.changed.get(this.index(x, y));
+	}
+
+	public void setChanged(int x, int y, boolean changed){
+		this.changed.set(this.index(x, y), changed);
+	}
+
+	public boolean getActive(int x, int y){
+		return this.active.get(this.index(x, y));
+	}
+
+	public void setActive(int x, int y, boolean active){
+		this.active.set(this.index(x, y), active);
+	}
+
+	public void setColumn(int x, int y, String character, int characterWidth, long colourKey, boolean changed, boolean active){
+		int i = this.index(x, y);
+		this.glyphIds[i] = ScreenLayerGlyphTable.getGlyphId(character);
+		this.characterWidths[i] = (byte)characterWidth;
+		this.colourKeys[i] = colourKey;
+		this.changed.set(i, changed);
+		this.active.set(i, active);
+	}
+
+	public void setAllChanged(boolean changed){
+		this.changed.set(0, this.width * this.height, changed);
+	}
+
+	public void setAllActive(boolean active){
+		this.active.set(0, this.width * this.height, active);
+	}
+
+	public ScreenLayerStorage resized(int newWidth, int newHeight) throws Exception{
+		ScreenLayerPlaneStorage resized = new ScreenLayerPlaneStorage(newWidth, newHeight);
+		int unchangedAreaWidth = Math.min(this.width, newWidth);
+		int unchangedAreaHeight = Math.min(this.height, newHeight);
+		for(int j = 0; j < unchangedAreaHeight; j++){
+			int from = j * this.width;
+			int to = j * newWidth;
+			System.arraycopy(this.glyphIds, from, resized.glyphIds, to, unchangedAreaWidth);
+			System.arraycopy(this.colourKeys, from, resized.colourKeys, to, unchangedAreaWidth);
+			System.arraycopy(this.characterWidths, from, resized.characterWidths, to, unchangedAreaWidth);
+			for(int i = 0; i < unchangedAreaWidth; i++){
+				resized.changed.set(to + i, this.changed.get(from + i));
+				resized.active.set(to + i, this.active.get(from + i));
+			}
+		}
+		return resized;
+	}
+
+	public ScreenLayerColumn getColumn(int x, int y) throws Exception{
+		int i = this.index(x, y);
+		return new ScreenLayerColumn(
+			this.characterWidths[i],
+			ScreenLayerColourCodes.decode(this.colourKeys[i]),
+			ScreenLayerGlyphTable.getGlyph(this.glyphIds[i]),
+			this.changed.get(i),
+			this.active.get(i)
+		);
+	}
+}
@@ -0,0 +1,79 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+/*
+	Holds the per-column state of a ScreenLayer.  Colours are passed around as
+	the long keys from ScreenLayerColourCodes so that the merge code can compare
+	them without touching the arrays.
+*/
+public abstract class ScreenLayerStorage {
+
+	public abstract int getWidth();
+	public abstract int getHeight();
+
+	public abstract String getCharacter(int x, int y);
+	public abstract void setCharacter(int x, int y, String character);
+	public abstract int [] getColourCodes(int x, int y);
+	public abstract void setColourCodes(int x, int y, int [] colourCodes);
+	public abstract long getColourKey(int x, int y);
+	public abstract void setColourKey(int x, int y, long colourKey);
+	public abstract int getCharacterWidth(int x, int y);
+	public abstract void setCharacterWidth(int x, int y, int characterWidth);
+	public abstract boolean getChanged(int x, int y);
+	public abstract void setChanged(int x, int y, boolean changed);
+	public abstract boolean getActive(int x, int y);
+	public abstract void setActive(int x, int y, boolean active);
+
+	public abstract void setColumn(int x, int y, String character, int characterWidth, long colourKey, boolean changed, boolean active);
+	public abstract void setAllChanged(boolean changed);
+	public abstract void setAllActive(boolean active);
+
+	/*  Returns storage of the new size, with the area common to both sizes preserved: */
+	public abstract ScreenLayerStorage resized(int newWidth, int newHeight) throws Exception;
+
+	/*  Returns the column itself for COLUMNS storage, and a detached copy for PLANES storage: */
+	public abstract ScreenLayerColumn getColumn(int x, int y) throws Exception;
+
+	public static ScreenLayerStorage create(ScreenLayerStorageType type, int width, int height) throws Exception{
+		switch(type){
+			case COLUMNS:{
+				return new ScreenLayerColumnStorage(width, height);
+			}case PLANES:{
+				return new ScreenLayerPlaneStorage(width, height);
+			}default:{
+				throw new Exception("Unknown screen layer storage type " + type);
+			}
+		}
+	}
+}
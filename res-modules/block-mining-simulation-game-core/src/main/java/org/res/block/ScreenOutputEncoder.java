@@ -0,0 +1,363 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+/*
+	Turns the changed columns of a ScreenLayer into as few bytes of ANSI escape
+	sequences as it can.  It keeps track of where the terminal cursor is and
+	which colours are currently set, and for each changed column it picks the
+	cheapest of an absolute move, a relative move, or just re-printing the
+	columns in between.  A run of blank default coloured columns that reaches
+	the right edge of the terminal can be cleared with a single erase-line.
+
+	The tracked state is forgotten at the start of every call, because other
+	code (like the text width measurements) also writes to the terminal.
+*/
+public class ScreenOutputEncoder {
+
+	private static final int UNKNOWN = Integer.MIN_VALUE;
+	private static final int SGR_FOREGROUND = 1;
+	private static final int SGR_BACKGROUND = 2;
+	private static final int SGR_OTHER = 4;
+	private static final String ERASE_TO_END_OF_LINE = "\033[K";
+	private static final int MAX_OVERWRITE_COLUMNS = 4;
+
+	private int cursorX = UNKNOWN;
+	private int cursorY = UNKNOWN;
+	private long currentColourKey = ScreenLayerColourCodes.NULL;
+	private int currentColourFamilies = 0;
+	private boolean currentColourKnown = false;
+	private final boolean eraseLineEnabled;
+
+	/*  eraseLineEnabled must only be true when the right edge of the printed layer is the right edge of the terminal: */
+	public ScreenOutputEncoder(boolean eraseLineEnabled){
+		this.eraseLineEnabled = eraseLineEnabled;
+	}
+
+	public void forgetTerminalState(){
+		this.cursorX = UNKNOWN;
+		this.cursorY = UNKNOWN;
+		this.currentColourKey = ScreenLayerColourCodes.NULL;
+		this.currentColourFamilies = 0;
+		this.currentColourKnown = false;
+	}
+
+	public void appendChanges(ScreenLayer layer, StringBuilder out, boolean useCompatibilityWidth, boolean useRightToLeftPrint, int xOffset, int yOffset) throws Exception{
+		this.forgetTerminalState();
+		//  Character widths were measured on this terminal, but in the compatibility
+		//  modes they can't be relied on, so only trust plain ASCII there:
+		boolean trustMeasuredWidths = !(useCompatibilityWidth || useRightToLeftPrint);
+		int loopUpdate = useRightToLeftPrint ? -1 : 1;
+		int layerWidth = layer.getWidth();
+		for(ScreenRegion region : layer.getChangedRegions()){
+			int startX = region.getStartX();
+			int startY = region.getStartY();
+			int endX = region.getEndX();
+			int endY = region.getEndY();
+			int startColumn = useRightToLeftPrint ? endX -1 : startX;
+			int endColumn = useRightToLeftPrint ? startX -1 : endX;
+			for(int j = startY; j < endY; j++){
+				int chrsLeft = 0;
+				boolean eraseLineConsidered = !this.eraseLineEnabled || useRightToLeftPrint;
+				int blankTailStart = eraseLineConsidered ? layerWidth : this.getBlankTailStart(layer, j);
+				for(int i = startColumn; i != endColumn; i += loopUpdate){
+					if(chrsLeft <= 0){
+						int columnWidthValue = layer.getColumnCharacterWidth(i, j);
+						chrsLeft = columnWidthValue > 0 ? columnWidthValue : 0;
+					}
+					if(layer.getColumnChanged(i, j)){
+						if(!eraseLineConsidered && i >= blankTailStart){
+							eraseLineConsidered = true;
+							if(this.tryEraseToEndOfLine(layer, out, i, j, xOffset, yOffset)){
+								break;
+							}
+						}
+						String character = layer.getColumnCharacter(i, j);
+						int x = i + xOffset;
+						int y = j + yOffset;
+						if(useCompatibilityWidth){
+							this.moveCursor(layer, out, x, y, xOffset, yOffset);
+							this.setColourKey(out, layer.getColumnColourKey(i, j));
+							int columnWidthValue = layer.getPositiveOnlyColumnCharacterWidth(i, j);
+							for(int k = 0; k < columnWidthValue; k++){
+								out.append(" ");
+							}
+							this.afterPrint(x, y, columnWidthValue, true, layerWidth + xOffset);
+						}
+						if(character == null && chrsLeft == 0){
+							//  Clear space with default colour space.
+							this.moveCursor(layer, out, x, y, xOffset, yOffset);
+							this.setColourKey(out, ScreenLayerColourCodes.EMPTY);
+							out.append(" ");
+							this.afterPrint(x, y, 1, true, layerWidth + xOffset);
+						}else if(character != null){
+							int characterWidth = layer.getPositiveOnlyColumnCharacterWidth(i, j);
+							this.moveCursor(layer, out, x, y, xOffset, yOffset);
+							this.setColourKey(out, layer.getColumnColourKey(i, j));
+							out.append(character);
+							boolean trusted = ScreenOutputEncoder.isPlainAscii(character, characterWidth) || (trustMeasuredWidths && characterWidth > 0);
+							this.afterPrint(x, y, characterWidth, trusted, layerWidth + xOffset);
+						}
+						layer.setColumnChanged(i, j, false);
+					}
+					chrsLeft--;
+				}
+			}
+		}
+	}
+
+	private static boolean isPlainAscii(String character, int characterWidth){
+		if(characterWidth != 1 || character.length() != 1){
+			return false;
+		}
+		char c = character.charAt(0);
+		return c >= 0x20 && c < 0x7F;
+	}
+
+	private static boolean isBlank(ScreenLayer layer, int i, int j){
+		//  Null columns are always printed as a default coloured space.
+		String character = layer.getColumnCharacter(i, j);
+		int characterWidth = layer.getColumnCharacterWidth(i, j);
+		if(character == null){
+			return characterWidth == 0;
+		}else{
+			return characterWidth == 1 && character.equals(" ") && layer.getColumnColourKey(i, j) == ScreenLayerColourCodes.EMPTY;
+		}
+	}
+
+	private int getBlankTailStart(ScreenLayer layer, int j){
+		int i = layer.getWidth();
+		while(i > 0 && ScreenOutputEncoder.isBlank(layer, i - 1, j)){
+			i--;
+		}
+		return i;
+	}
+
+	private boolean tryEraseToEndOfLine(ScreenLayer layer, StringBuilder out, int i, int j, int xOffset, int yOffset) throws Exception{
+		//  Every changed column costs at least one byte to re-print, so only erase if that's more than the erase costs:
+		int numChanged = 0;
+		for(int k = i; k < layer.getWidth(); k++){
+			if(layer.getColumnChanged(k, j)){
+				numChanged++;
+			}
+		}
+		int eraseCost = ERASE_TO_END_OF_LINE.length() + this.getColourKeyCost(ScreenLayerColourCodes.EMPTY);
+		if(numChanged <= eraseCost){
+			return false;
+		}
+		this.moveCursor(layer, out, i + xOffset, j + yOffset, xOffset, yOffset);
+		this.setColourKey(out, ScreenLayerColourCodes.EMPTY);
+		out.append(ERASE_TO_END_OF_LINE);
+		for(int k = i; k < layer.getWidth(); k++){
+			layer.setColumnChanged(k, j, false);
+		}
+		return true;
+	}
+
+	private void afterPrint(int x, int y, int characterWidth, boolean trusted, int rightEdge){
+		//  Printing into the last column leaves the cursor in a terminal dependent 'pending wrap' state:
+		if(trusted && x + characterWidth < rightEdge){
+			this.cursorX = x + characterWidth;
+			this.cursorY = y;
+		}else{
+			this.cursorX = UNKNOWN;
+			this.cursorY = UNKNOWN;
+		}
+	}
+
+	private static int getNumDigits(int n){
+		int digits = 1;
+		while(n >= 10){
+			n /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	private static void appendAbsoluteMove(StringBuilder out, int x, int y){
+		out.append("\033[");
+		if(!(x == 0 && y == 0)){
+			out.append(y + 1);
+			if(x != 0){
+				out.append(';');
+				out.append(x + 1);
+			}
+		}
+		out.append('H');
+	}
+
+	private static int getAbsoluteMoveCost(int x, int y){
+		if(x == 0 && y == 0){
+			return 3;
+		}
+		return 3 + getNumDigits(y + 1) + (x == 0 ? 0 : 1 + getNumDigits(x + 1));
+	}
+
+	private static void appendRelativeMove(StringBuilder out, int distance, char forward, char backward){
+		if(distance != 0){
+			out.append("\033[");
+			int n = Math.abs(distance);
+			if(n != 1){
+				out.append(n);
+			}
+			out.append(distance > 0 ? forward : backward);
+		}
+	}
+
+	private static int getRelativeMoveCost(int distance){
+		if(distance == 0){
+			return 0;
+		}
+		int n = Math.abs(distance);
+		return 3 + (n == 1 ? 0 : getNumDigits(n));
+	}
+
+	private int getOverwriteCost(ScreenLayer layer, int x, int y, int xOffset, int yOffset){
+		//  Re-printing the columns between the cursor and the destination only
+		//  works if they are single column characters in the current colours:
+		if(!this.currentColourKnown || y != this.cursorY || x <= this.cursorX || x - this.cursorX > MAX_OVERWRITE_COLUMNS){
+			return Integer.MAX_VALUE;
+		}
+		int j = y - yOffset;
+		int cost = 0;
+		for(int i = this.cursorX - xOffset; i < x - xOffset; i++){
+			String character = layer.getColumnCharacter(i, j);
+			if(character == null || !ScreenOutputEncoder.isPlainAscii(character, layer.getColumnCharacterWidth(i, j)) || layer.getColumnColourKey(i, j) != this.currentColourKey){
+				return Integer.MAX_VALUE;
+			}
+			cost++;
+		}
+		return cost;
+	}
+
+	private void moveCursor(ScreenLayer layer, StringBuilder out, int x, int y, int xOffset, int yOffset){
+		if(this.cursorX == x && this.cursorY == y){
+			return;
+		}
+		int absoluteCost = getAbsoluteMoveCost(x, y);
+		if(this.cursorX == UNKNOWN){
+			appendAbsoluteMove(out, x, y);
+		}else{
+			int dx = x - this.cursorX;
+			int dy = y - this.cursorY;
+			int horizontalCost = (x == 0) ? 1 : getRelativeMoveCost(dx);  //  Carriage return for the first column.
+			int relativeCost = getRelativeMoveCost(dy) + horizontalCost;
+			int overwriteCost = this.getOverwriteCost(layer, x, y, xOffset, yOffset);
+			if(overwriteCost <= relativeCost && overwriteCost <= absoluteCost){
+				for(int i = this.cursorX; i < x; i++){
+					out.append(layer.getColumnCharacter(i - xOffset, y - yOffset));
+				}
+			}else if(relativeCost < absoluteCost){
+				appendRelativeMove(out, dy, 'B', 'A');
+				if(x == 0){
+					out.append('\r');
+				}else{
+					appendRelativeMove(out, dx, 'C', 'D');
+				}
+			}else{
+				appendAbsoluteMove(out, x, y);
+			}
+		}
+		this.cursorX = x;
+		this.cursorY = y;
+	}
+
+	private static int getColourFamilies(int [] colourCodes){
+		int families = 0;
+		for(int i = 0; i < colourCodes.length; i++){
+			int c = colourCodes[i];
+			if(c == 38 || c == 48){
+				families |= (c == 38) ? SGR_FOREGROUND : SGR_BACKGROUND;
+				if(i + 1 < colourCodes.length && colourCodes[i + 1] == 5){
+					i += 2;
+				}else if(i + 1 < colourCodes.length && colourCodes[i + 1] == 2){
+					i += 4;
+				}else{
+					families |= SGR_OTHER;
+				}
+			}else if((c >= 30 && c <= 37) || c == 39 || (c >= 90 && c <= 97)){
+				families |= SGR_FOREGROUND;
+			}else if((c >= 40 && c <= 47) || c == 49 || (c >= 100 && c <= 107)){
+				families |= SGR_BACKGROUND;
+			}else{
+				families |= SGR_OTHER;
+			}
+		}
+		return families;
+	}
+
+	private boolean canSetColoursWithoutReset(int [] colourCodes, int families){
+		//  New colours can be layered on top of the current ones if the current ones
+		//  are only colours, and the new ones replace every colour that's set now:
+		return this.currentColourKnown &&
+			colourCodes.length > 0 &&
+			(this.currentColourFamilies & SGR_OTHER) == 0 &&
+			(families & SGR_OTHER) == 0 &&
+			(this.currentColourFamilies & ~families) == 0;
+	}
+
+	private int getColourKeyCost(long colourKey){
+		if(this.currentColourKnown && this.currentColourKey == colourKey){
+			return 0;
+		}
+		int [] colourCodes = ScreenLayerColourCodes.decode(colourKey);
+		int cost = colourCodes.length == 0 ? 4 : 5;
+		for(int c : colourCodes){
+			cost += getNumDigits(c) + 1;
+		}
+		return cost;
+	}
+
+	private void setColourKey(StringBuilder out, long colourKey){
+		if(this.currentColourKnown && this.currentColourKey == colourKey){
+			return;
+		}
+		int [] colourCodes = ScreenLayerColourCodes.decode(colourKey);
+		int families = ScreenOutputEncoder.getColourFamilies(colourCodes);
+		if(colourCodes.length == 0){
+			out.append("\033[0m");
+		}else{
+			out.append(this.canSetColoursWithoutReset(colourCodes, families) ? "\033[" : "\033[0;");
+			for(int i = 0; i < colourCodes.length; i++){
+				if(i > 0){
+					out.append(';');
+				}
+				out.append(colourCodes[i]);
+			}
+			out.append('m');
+		}
+		this.currentColourKey = colourKey;
+		this.currentColourFamilies = families;
+		this.currentColourKnown = true;
+	}
+}
@@ -0,0 +1,161 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/*
+	The changed regions of a screen layer.  Regions are merged as they're added so
+	that repeated updates to the same area don't pile up:
+
+	-  A region inside one that's already in the set is dropped, and regions inside a
+	   new region are removed.
+	-  Regions on exactly the same rows that overlap or touch are joined into one.
+	-  If mergeVerticalNeighbours is set, regions with exactly the same columns that
+	   overlap or touch vertically are joined too.  This is only done once regions have
+	   been expanded to not cut multi-column characters, because expanding a taller
+	   region can widen rows that the original regions wouldn't have.
+	-  Once there are more than maxRegions, everything is replaced by the bounding box.
+
+	None of the joins change which columns are covered, except for the bounding box.
+*/
+public class ScreenRegionSet {
+
+	public static final int DEFAULT_MAX_REGIONS = 64;
+
+	private final int maxRegions;
+	private final boolean mergeVerticalNeighbours;
+	private final List<int []> regions = new ArrayList<int []>();  //  {startX, startY, endX, endY}
+	private List<ScreenRegion> screenRegions = null;  //  Built when asked for, null when out of date.
+
+	public ScreenRegionSet(){
+		this(ScreenRegionSet.DEFAULT_MAX_REGIONS, false);
+	}
+
+	public ScreenRegionSet(int maxRegions, boolean mergeVerticalNeighbours){
+		this.maxRegions = maxRegions;
+		this.mergeVerticalNeighbours = mergeVerticalNeighbours;
+	}
+
+	private static boolean contains(int [] outer, int [] inner){
+		return outer[0] <= inner[0] && outer[1] <= inner[1] && inner[2] <= outer[2] && inner[3] <= outer[3];
+	}
+
+	private boolean canJoin(int [] a, int [] b){
+		if(a[1] == b[1] && a[3] == b[3]){
+			return a[0] <= b[2] && b[0] <= a[2];
+		}else if(this.mergeVerticalNeighbours && a[0] == b[0] && a[2] == b[2]){
+			return a[1] <= b[3] && b[1] <= a[3];
+		}else{
+			return false;
+		}
+	}
+
+	public void add(ScreenRegion region) throws Exception{
+		this.add(region.getStartX(), region.getStartY(), region.getEndX(), region.getEndY());
+	}
+
+	public void add(int startX, int startY, int endX, int endY){
+		if(startX >= endX || startY >= endY){
+			return;  //  Covers nothing.
+		}
+		int [] added = new int [] {startX, startY, endX, endY};
+		boolean joined;
+		do{
+			joined = false;
+			for(int i = this.regions.size() -1; i >= 0; i--){
+				int [] existing = this.regions.get(i);
+				if(ScreenRegionSet.contains(existing, added)){
+					return;
+				}else if(ScreenRegionSet.contains(added, existing)){
+					this.removeAt(i);
+				}else if(this.canJoin(existing, added)){
+					//  The joined region might now be next to some other region, so check them all again:
+					added = new int [] {Math.min(existing[0], added[0]), Math.min(existing[1], added[1]), Math.max(existing[2], added[2]), Math.max(existing[3], added[3])};
+					this.removeAt(i);
+					joined = true;
+				}
+			}
+		}while(joined);
+		this.regions.add(added);
+		if(this.regions.size() > this.maxRegions){
+			int [] boundingBox = added.clone();
+			for(int [] r : this.regions){
+				boundingBox = new int [] {Math.min(boundingBox[0], r[0]), Math.min(boundingBox[1], r[1]), Math.max(boundingBox[2], r[2]), Math.max(boundingBox[3], r[3])};
+			}
+			this.regions.clear();
+			this.regions.add(boundingBox);
+		}
+		this.screenRegions = null;
+	}
+
+	private void removeAt(int i){
+		//  Order doesn't matter, so swap with the last one instead of shifting:
+		int last = this.regions.size() -1;
+		this.regions.set(i, this.regions.get(last));
+		this.regions.remove(last);
+	}
+
+	public void addAll(Collection<ScreenRegion> regions) throws Exception{
+		for(ScreenRegion region : regions){
+			this.add(region);
+		}
+	}
+
+	public void clear(){
+		this.regions.clear();
+		this.screenRegions = null;
+	}
+
+	public int size(){
+		return this.regions.size();
+	}
+
+	public boolean isEmpty(){
+		return this.regions.isEmpty();
+	}
+
+	public List<ScreenRegion> getRegions() throws Exception{
+		if(this.screenRegions == null){
+			List<ScreenRegion> rtn = new ArrayList<ScreenRegion>();
+			for(int [] r : this.regions){
+				rtn.add(new ScreenRegion(ScreenRegion.makeScreenRegionCA(r[0], r[1], r[2], r[3])));
+			}
+			this.screenRegions = Collections.unmodifiableList(rtn);
+		}
+		return this.screenRegions;
+	}
+}
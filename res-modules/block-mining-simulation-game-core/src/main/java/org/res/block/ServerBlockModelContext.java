@@ -54,6 +54,7 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import org.res.block.dao.BlockDAO;
+import org.res.block.dao.impl.ChunkCachingBlockDAO;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 import java.util.List;
@@ -75,12 +76,19 @@ import javax.websocket.WebSocketContainer;
 
 public class ServerBlockModelContext extends BlockModelContext implements Comparable<InMemoryChunksClient>{
 
+	public static final int DEFAULT_SERVER_CHUNK_CACHE_SIZE = 16384;
+	public static final long DEFAULT_WORLD_SEED = 0L; //  Worlds from before the seed was stored were all generated with 0.
+	public static final String WORLD_SEED_METADATA_NAME = "world_seed";
+
 	private AbstractApplicationContext context = null;
 	private BlockDAO blockDAO = null;
+	private BlockDAO cachedBlockDAO = null;
 	private ExecutorService executorService = null;
 	private ServerBlockModelInterface blockModelInterface = new ServerBlockModelInterface();
 	private DatabaseBlockWorldConnection databaseBlockWorldConnection;
 	private SessionOperationInterface sessionOperationInterface;
+	private SubscriptionNotificationCoalescer subscriptionNotificationCoalescer;
+	private Long worldSeed = null;
 
 	public BlockModelInterface getBlockModelInterface(){
 		return blockModelInterface;
@@ -94,6 +102,8 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 		super(blockManagerThreadCollection);
 		this.sessionOperationInterface = sessionOperationInterface;
 		this.databaseBlockWorldConnection = databaseBlockWorldConnection;
+		Long coalescingWindow = blockManagerThreadCollection.getSubscriptionNotifyWindowMilliseconds();
+		this.subscriptionNotificationCoalescer = new SubscriptionNotificationCoalescer(coalescingWindow == null ? SubscriptionNotificationCoalescer.DEFAULT_COALESCING_WINDOW_MILLISECONDS : coalescingWindow);
 	}
 
 	@Override
@@ -112,13 +122,47 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 		this.context.refresh();
 
 		this.blockDAO = (BlockDAO)context.getBean("blockDAO");
+		Integer chunkCacheSize = this.getBlockManagerThreadCollection().getServerChunkCacheSize();
+		if(chunkCacheSize == null || chunkCacheSize > 0){
+			ChunkCacheEvictionPolicy evictionPolicy = this.getBlockManagerThreadCollection().getServerChunkCacheEvictionPolicy();
+			this.cachedBlockDAO = new ChunkCachingBlockDAO(
+				this.blockDAO,
+				this.getBlockManagerThreadCollection().getChunkSizeCuboidAddress(),
+				chunkCacheSize == null ? DEFAULT_SERVER_CHUNK_CACHE_SIZE : chunkCacheSize,
+				evictionPolicy == null ? ChunkCacheEvictionPolicy.LRU : evictionPolicy
+			);
+		}else{
+			this.cachedBlockDAO = this.blockDAO;
+		}
 
 		this.logMessage("Ran constructor of ServerBlockModelContext.");
 
         	this.blockDAO.ensureBlockTableExists();
+		this.worldSeed = this.loadWorldSeed();
 		this.blockDAO.turnOffAutoCommit();
 	}
 
+	public Long loadWorldSeed() throws Exception{
+		Long requestedSeed = this.getBlockManagerThreadCollection().getWorldSeed();
+		String storedSeed = this.blockDAO.getWorldMetadataValue(WORLD_SEED_METADATA_NAME);
+		if(storedSeed == null){
+			Long seed = requestedSeed == null ? DEFAULT_WORLD_SEED : requestedSeed;
+			this.blockDAO.setWorldMetadataValue(WORLD_SEED_METADATA_NAME, String.valueOf(seed));
+			this.logMessage("Stored world seed " + seed + " for this world.");
+			return seed;
+		}else{
+			Long seed = Long.valueOf(storedSeed);
+			if(requestedSeed != null && !requestedSeed.equals(seed)){
+				throw new Exception("This world was created with --world-seed=" + seed + ", so it can't be opened with --world-seed=" + requestedSeed + ".");
+			}
+			return seed;
+		}
+	}
+
+	public Long getWorldSeed(){
+		return this.worldSeed;
+	}
+
 	public void destroy(Object o) throws Exception{
 
 	}
@@ -127,6 +171,11 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 		return this.blockDAO;
 	}
 
+	public BlockDAO getCachedBlockDAO(){
+		/*  The block DAO behind the server chunk cache, or just the block DAO if the cache is turned off. */
+		return this.cachedBlockDAO;
+	}
+
 	public boolean isServer(){
 		return true;
 	}
@@ -152,8 +201,12 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 		return 0L;
 	}
 
-	public void postCuboidsWrite(Long numDimensions, List<CuboidAddress> cuboidAddresses, Long authorizedClientId) throws Exception{
-		AfterWriteCuboidsWorkItem afterWriteCuboidsWorkItem = new AfterWriteCuboidsWorkItem(this, numDimensions, cuboidAddresses, authorizedClientId);
+	public SubscriptionNotificationCoalescer getSubscriptionNotificationCoalescer(){
+		return this.subscriptionNotificationCoalescer;
+	}
+
+	public void postCuboidsWrite(Long numDimensions, List<Cuboid> writtenCuboids, Long authorizedClientId) throws Exception{
+		AfterWriteCuboidsWorkItem afterWriteCuboidsWorkItem = new AfterWriteCuboidsWorkItem(this, numDimensions, writtenCuboids, authorizedClientId);
 		this.putWorkItem(afterWriteCuboidsWorkItem, WorkItemPriority.PRIORITY_LOW);
 	}
 
@@ -192,7 +245,13 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 
 	public void onErrorNotificationBlockMessage(BlockSession blockSession, Long conversationId, Long authorizedClientId, BlockMessageErrorType blockMessageErrorType) throws Exception{
 		switch(blockMessageErrorType){
-			default:{
+			case WORK_ITEM_QUEUE_FULL:{
+				this.logMessage("A client was too busy to process a message: conversationId=" + conversationId + ", authorizedClientId=" + authorizedClientId);
+				break;
+			}case UNKNOWN_COMMAND_TYPE:{
+				this.logMessage("A client didn't recognize a command: conversationId=" + conversationId + ", authorizedClientId=" + authorizedClientId);
+				break;
+			}default:{
 				throw new Exception("Message type not expected: " + blockMessageErrorType);
 			}
 		}
@@ -276,7 +335,7 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 		Cuboid c = new Cuboid(blocksToChangeAddress, currentCuboidDataLengths, currentCuboidData);
 		this.getBlockModelInterface().writeBlocksInRegion(c);
 
-		this.postCuboidsWrite(c.getNumDimensions(), Arrays.asList(c.getCuboidAddress()), authorizedClientId);
+		this.postCuboidsWrite(c.getNumDimensions(), Arrays.asList(c), authorizedClientId);
 	}
 
 	public void sendRootDictionaryAddress(BlockSession blockSession, Long conversationId, Long authorizedClientId, boolean allowError) throws Exception{
@@ -303,6 +362,19 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 	public void onCommandBlockMessage(BlockSession blockSession, Long conversationId, Long authorizedClientId, CommandType authorizedCommandType, Coordinate coordinate) throws Exception{
 		switch(authorizedCommandType){
 			case COMMAND_TYPE_REQUEST_ROOT_DICTIONARY_ADDRESS:{
+				/*
+					Older servers read and ignore the coordinate, so newer clients put the highest
+					protocol version they can decode in it.  The answers go out before the root
+					dictionary address, so the client knows an older server didn't send them.
+				*/
+				if(coordinate.getNumDimensions() > 0L){
+					long agreedVersion = Math.max((long)BlockMessageBinaryBuffer.PROTOCOL_VERSION_1, Math.min(coordinate.getLongValueAtIndex(0L), (long)BlockMessageBinaryBuffer.MAX_SUPPORTED_PROTOCOL_VERSION));
+					CommandBlockMessage versionResponse = new CommandBlockMessage(this, conversationId, authorizedClientId, CommandType.COMMAND_TYPE_RESPOND_PROTOCOL_VERSION, Coordinate.makeCoordinate(agreedVersion));
+					this.sendBlockMessage(versionResponse, blockSession);
+					blockSession.setProtocolVersion((int)agreedVersion);
+					CommandBlockMessage worldSeedResponse = new CommandBlockMessage(this, conversationId, authorizedClientId, CommandType.COMMAND_TYPE_RESPOND_WORLD_SEED, Coordinate.makeCoordinate(this.worldSeed.longValue()));
+					this.sendBlockMessage(worldSeedResponse, blockSession);
+				}
 				this.sendRootDictionaryAddress(blockSession, conversationId, authorizedClientId, true);
 				break;
 			}case COMMAND_TYPE_PROVISION_PLAYER:{
@@ -310,7 +382,11 @@ public class ServerBlockModelContext extends BlockModelContext implements Compar
 				this.sendRootDictionaryAddress(blockSession, conversationId, authorizedClientId, false);
 				break;
 			}default:{
-				throw new Exception("Message type not expected: " + authorizedCommandType);
+				//  A client shouldn't be able to stop the server by sending a command meant for clients:
+				this.logMessage("Command type not expected: " + authorizedCommandType + " in conversationId=" + conversationId + ", authorizedClientId=" + authorizedClientId + ".");
+				ErrorNotificationBlockMessage response = new ErrorNotificationBlockMessage(this, BlockMessageErrorType.UNKNOWN_COMMAND_TYPE, conversationId, authorizedClientId);
+				this.sendBlockMessage(response, blockSession);
+				break;
 			}
 		}
 	}
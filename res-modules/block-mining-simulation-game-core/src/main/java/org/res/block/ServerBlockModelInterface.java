@@ -47,10 +47,14 @@ public class ServerBlockModelInterface implements BlockModelInterface {
 	}
 
 	public void writeBlocksInRegion(Cuboid cuboid) throws Exception {
-		this.serverBlockModelContext.getBlockDAO().writeBlocksInRegion(cuboid);
+		this.serverBlockModelContext.getCachedBlockDAO().writeBlocksInRegion(cuboid);
+	}
+
+	public void writeBlocksInRegions(List<Cuboid> cuboids) throws Exception {
+		this.serverBlockModelContext.getCachedBlockDAO().writeBlocksInRegions(cuboids);
 	}
 
 	public List<Cuboid> getBlocksInRegions(List<CuboidAddress> cuboidAddresses)throws Exception {
-		return this.serverBlockModelContext.getBlockDAO().getBlocksInRegions(cuboidAddresses);
+		return this.serverBlockModelContext.getCachedBlockDAO().getBlocksInRegions(cuboidAddresses);
 	}
 }
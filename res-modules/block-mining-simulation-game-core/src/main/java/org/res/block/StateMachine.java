@@ -63,8 +63,16 @@ public abstract class StateMachine<T extends Comparable<T>, U extends StateMachi
 		}
 	}
 
+	/*  Called on every change of an object's state, null meaning not in the state machine. */
+	protected void onObjectStateChange(T object, U oldState, U newState) throws Exception{
+	}
+
 	public void addObjectIntoStateNoCheck(T object, U state) throws Exception{
-		objectToStateMap.put(object, state);
+		U oldState = objectToStateMap.put(object, state);
+		if(oldState != null){
+			stateToObjectsMap.get(oldState).remove(object);
+		}
+		this.onObjectStateChange(object, oldState, state);
 		if(state != null){
 			if(stateToObjectsMap.containsKey(state)){
 				stateToObjectsMap.get(state).add(object);
@@ -95,21 +103,25 @@ public abstract class StateMachine<T extends Comparable<T>, U extends StateMachi
 		return new TreeSet<T>(objectToStateMap.keySet());
 	}
 
-	public void removeObject(T obj){
+	public void removeObject(T obj) throws Exception{
 		U currentState = objectToStateMap.get(obj);
 		if(currentState != null){
 			stateToObjectsMap.get(currentState).remove(obj);
+			this.onObjectStateChange(obj, currentState, null);
 		}
 		objectToStateMap.remove(obj);
 	}
 
 	public void removeAllObjects(Set<T> objs) throws Exception{
-		objectToStateMap.keySet().removeAll(objs);
-		for(U state : this.allStatesSet){
-			stateToObjectsMap.get(state).removeAll(objs);
+		for(T obj : objs){
+			this.removeObject(obj);
 		}
 	}
 
+	public int getNumObjectsInState(U state){
+		return stateToObjectsMap.get(state).size();
+	}
+
 	public Set<T> getObjectsInState(U state){
 		return new TreeSet<T>(stateToObjectsMap.get(state));
 	}
@@ -0,0 +1,179 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+public class StripedChunkBlockStore implements ChunkBlockStore {
+
+	/*
+		Makes a store that isn't thread safe on its own usable from many threads
+		by splitting the chunks across several independent stores, each with its
+		own lock.  Reads first try without locking at all, and only take the
+		stripe's read lock if a write to the same stripe happened while they ran,
+		or the block needs to be read from a page that a write could free.
+		Readers never wait for each other, and writers only wait for those
+		locked reads.
+	*/
+
+	public static final int DEFAULT_NUM_STRIPES = 16;
+
+	private final List<ChunkBlockStore> stripes;
+	private final StampedLock [] stripeLocks;
+
+	public StripedChunkBlockStore(List<ChunkBlockStore> stripes) throws Exception {
+		if(stripes.size() == 0){
+			throw new Exception("A striped chunk store needs at least one stripe.");
+		}
+		this.stripes = new ArrayList<ChunkBlockStore>(stripes);
+		this.stripeLocks = new StampedLock [stripes.size()];
+		for(int i = 0; i < this.stripeLocks.length; i++){
+			this.stripeLocks[i] = new StampedLock();
+		}
+	}
+
+	private int getStripeIndex(CuboidAddress chunkAddress){
+		//  Spread the hash so that neighbouring chunks land in different stripes:
+		int h = chunkAddress.hashCode() * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % this.stripes.size();
+	}
+
+	public void addChunk(CuboidAddress chunkAddress) throws Exception {
+		int i = this.getStripeIndex(chunkAddress);
+		long stamp = this.stripeLocks[i].writeLock();
+		try{
+			this.stripes.get(i).addChunk(chunkAddress);
+		}finally{
+			this.stripeLocks[i].unlockWrite(stamp);
+		}
+	}
+
+	public boolean containsChunk(CuboidAddress chunkAddress){
+		int i = this.getStripeIndex(chunkAddress);
+		StampedLock lock = this.stripeLocks[i];
+		long stamp = lock.tryOptimisticRead();
+		if(stamp != 0L){
+			try{
+				boolean rtn = this.stripes.get(i).containsChunk(chunkAddress);
+				if(lock.validate(stamp)){
+					return rtn;
+				}
+			}catch(RuntimeException e){
+				//  The stripe was changed part way through, so read it again under the lock.
+			}
+		}
+		stamp = lock.readLock();
+		try{
+			return this.stripes.get(i).containsChunk(chunkAddress);
+		}finally{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	public void removeChunk(CuboidAddress chunkAddress) throws Exception {
+		int i = this.getStripeIndex(chunkAddress);
+		long stamp = this.stripeLocks[i].writeLock();
+		try{
+			this.stripes.get(i).removeChunk(chunkAddress);
+		}finally{
+			this.stripeLocks[i].unlockWrite(stamp);
+		}
+	}
+
+	public int getNumChunks(){
+		int rtn = 0;
+		for(int i = 0; i < this.stripeLocks.length; i++){
+			long stamp = this.stripeLocks[i].readLock();
+			try{
+				rtn += this.stripes.get(i).getNumChunks();
+			}finally{
+				this.stripeLocks[i].unlockRead(stamp);
+			}
+		}
+		return rtn;
+	}
+
+	public void writeBlock(CuboidAddress chunkAddress, int index, byte [] blockData, String blockClassName) throws Exception {
+		int i = this.getStripeIndex(chunkAddress);
+		long stamp = this.stripeLocks[i].writeLock();
+		try{
+			this.stripes.get(i).writeBlock(chunkAddress, index, blockData, blockClassName);
+		}finally{
+			this.stripeLocks[i].unlockWrite(stamp);
+		}
+	}
+
+	public IndividualBlock readBlock(CuboidAddress chunkAddress, int index) throws Exception {
+		int i = this.getStripeIndex(chunkAddress);
+		StampedLock lock = this.stripeLocks[i];
+		long stamp = lock.tryOptimisticRead();
+		if(stamp != 0L){
+			try{
+				IndividualBlock block = this.stripes.get(i).readBlockOptimistically(chunkAddress, index);
+				if(block != null && lock.validate(stamp)){
+					return block;
+				}
+			}catch(Exception e){
+				//  The stripe was changed part way through, so read it again under the lock.
+			}
+		}
+		stamp = lock.readLock();
+		try{
+			return this.stripes.get(i).readBlock(chunkAddress, index);
+		}finally{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	public IndividualBlock readBlockOptimistically(CuboidAddress chunkAddress, int index) throws Exception {
+		return this.readBlock(chunkAddress, index);
+	}
+
+	public void close() throws Exception {
+		//  Nothing may read from the store once this starts, an optimistic read of a freed page would crash the JVM.
+		for(int i = 0; i < this.stripeLocks.length; i++){
+			long stamp = this.stripeLocks[i].writeLock();
+			try{
+				this.stripes.get(i).close();
+			}finally{
+				this.stripeLocks[i].unlockWrite(stamp);
+			}
+		}
+	}
+
+	public List<ChunkBlockStore> getStripes(){
+		return this.stripes;
+	}
+}
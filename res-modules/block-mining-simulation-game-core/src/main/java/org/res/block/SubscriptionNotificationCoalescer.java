@@ -0,0 +1,237 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+	Holds the region updates that still need to be sent to subscribed clients
+	after a write.  The updates are clipped directly from the cuboids that were
+	just written, so no database read is needed to build them.  All updates that
+	land on the same subscription before the next flush are merged into one
+	DescribeRegions message, and a later write to exactly the same region
+	replaces the earlier one.
+*/
+public class SubscriptionNotificationCoalescer {
+
+	public static final long DEFAULT_COALESCING_WINDOW_MILLISECONDS = 5L;
+
+	public static class PendingNotification {
+		private final BlockSession blockSession;
+		private final Long authorizedClientId;
+		private final Long conversationId;
+		/*  Kept in the order of the writes so overlapping updates are applied in the right order: */
+		private final LinkedHashMap<CuboidAddress, Cuboid> cuboids = new LinkedHashMap<CuboidAddress, Cuboid>();
+
+		public PendingNotification(BlockSession blockSession, Long authorizedClientId, Long conversationId){
+			this.blockSession = blockSession;
+			this.authorizedClientId = authorizedClientId;
+			this.conversationId = conversationId;
+		}
+
+		public BlockSession getBlockSession(){
+			return this.blockSession;
+		}
+
+		public Long getAuthorizedClientId(){
+			return this.authorizedClientId;
+		}
+
+		public Long getConversationId(){
+			return this.conversationId;
+		}
+
+		public List<Cuboid> getCuboids(){
+			return new ArrayList<Cuboid>(this.cuboids.values());
+		}
+	}
+
+	private static class PendingNotificationKey {
+		private final BlockSession blockSession;
+		private final Long authorizedClientId;
+		private final Long conversationId;
+
+		public PendingNotificationKey(BlockSession blockSession, Long authorizedClientId, Long conversationId){
+			this.blockSession = blockSession;
+			this.authorizedClientId = authorizedClientId;
+			this.conversationId = conversationId;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof PendingNotificationKey)){
+				return false;
+			}
+			PendingNotificationKey other = (PendingNotificationKey)o;
+			return this.blockSession == other.blockSession && Objects.equals(this.authorizedClientId, other.authorizedClientId) && Objects.equals(this.conversationId, other.conversationId);
+		}
+
+		@Override
+		public int hashCode(){
+			return Objects.hash(System.identityHashCode(this.blockSession), this.authorizedClientId, this.conversationId);
+		}
+	}
+
+	private final Object lock = new Object();
+	private final long coalescingWindowNanos;
+	private final LinkedHashMap<PendingNotificationKey, PendingNotification> pendingNotifications = new LinkedHashMap<PendingNotificationKey, PendingNotification>();
+	private long firstPendingTimeNanos = 0L;
+	private boolean isFlushScheduled = false;
+
+	private long numRegionUpdates = 0L;
+	private long numRegionUpdatesReplaced = 0L;
+	private long numMessagesFlushed = 0L;
+	private long numDatabaseReadsAvoided = 0L;
+	private long numBlocksSentWithoutDatabaseRead = 0L;
+
+	public SubscriptionNotificationCoalescer(long coalescingWindowMilliseconds){
+		this.coalescingWindowNanos = coalescingWindowMilliseconds * 1000000L;
+	}
+
+	public void addRegionUpdate(BlockSession blockSession, Long authorizedClientId, Long conversationId, Cuboid cuboid, long nowNanos){
+		synchronized(lock){
+			if(this.pendingNotifications.isEmpty()){
+				this.firstPendingTimeNanos = nowNanos;
+			}
+			PendingNotificationKey key = new PendingNotificationKey(blockSession, authorizedClientId, conversationId);
+			PendingNotification pendingNotification = this.pendingNotifications.get(key);
+			if(pendingNotification == null){
+				pendingNotification = new PendingNotification(blockSession, authorizedClientId, conversationId);
+				this.pendingNotifications.put(key, pendingNotification);
+			}
+			//  Remove first so that the newest update moves to the end of the write order:
+			if(pendingNotification.cuboids.remove(cuboid.getCuboidAddress()) != null){
+				this.numRegionUpdatesReplaced++;
+			}
+			pendingNotification.cuboids.put(cuboid.getCuboidAddress(), cuboid);
+			this.numRegionUpdates++;
+			this.numBlocksSentWithoutDatabaseRead += cuboid.getCuboidAddress().getVolume();
+		}
+	}
+
+	public int addWrittenCuboids(BlockSession blockSession, List<Cuboid> writtenCuboids, long nowNanos) throws Exception {
+		/*  Returns the number of region updates that were added for this session. */
+		int numRegionUpdatesAdded = 0;
+		Set<Long> notifiedClientIds = new HashSet<Long>();
+		//  Cuboids are checked one at a time so every intersection is clipped from the cuboid that was written there:
+		for(Cuboid writtenCuboid : writtenCuboids){
+			Map<Long, Map<CuboidAddress, Long>> intersectingSubscribedCuboids = blockSession.getSubscriptionIntersections(Arrays.asList(writtenCuboid.getCuboidAddress()));
+			//  For every authorized client:
+			for(Map.Entry<Long, Map<CuboidAddress, Long>> clientEntry : intersectingSubscribedCuboids.entrySet()){
+				for(Map.Entry<CuboidAddress, Long> region : clientEntry.getValue().entrySet()){
+					//  The written data is exactly what is now in the database, so there's no need to read it back.
+					//  Writes with missing blocks are refused before they reach the database, so none are sent here:
+					this.addRegionUpdate(blockSession, clientEntry.getKey(), region.getValue(), writtenCuboid.getSubCuboid(region.getKey()), nowNanos);
+					numRegionUpdatesAdded++;
+					notifiedClientIds.add(clientEntry.getKey());
+				}
+			}
+		}
+		//  Reading the regions back from the database took one read per notified client of this session:
+		synchronized(lock){
+			this.numDatabaseReadsAvoided += notifiedClientIds.size();
+		}
+		return numRegionUpdatesAdded;
+	}
+
+	public boolean scheduleFlushIfNeeded(){
+		/*  Returns true if the caller should queue a flush, only one flush is ever queued at a time. */
+		synchronized(lock){
+			if(this.isFlushScheduled || this.pendingNotifications.isEmpty()){
+				return false;
+			}else{
+				this.isFlushScheduled = true;
+				return true;
+			}
+		}
+	}
+
+	public boolean isInsideCoalescingWindow(long nowNanos){
+		synchronized(lock){
+			return !this.pendingNotifications.isEmpty() && (nowNanos - this.firstPendingTimeNanos) < this.coalescingWindowNanos;
+		}
+	}
+
+	public List<PendingNotification> takePendingNotifications(){
+		synchronized(lock){
+			List<PendingNotification> rtn = new ArrayList<PendingNotification>(this.pendingNotifications.values());
+			this.pendingNotifications.clear();
+			this.isFlushScheduled = false;
+			this.numMessagesFlushed += rtn.size();
+			return rtn;
+		}
+	}
+
+	public long getNumRegionUpdates(){
+		synchronized(lock){
+			return this.numRegionUpdates;
+		}
+	}
+
+	public long getNumRegionUpdatesReplaced(){
+		synchronized(lock){
+			return this.numRegionUpdatesReplaced;
+		}
+	}
+
+	public long getNumMessagesFlushed(){
+		synchronized(lock){
+			return this.numMessagesFlushed;
+		}
+	}
+
+	public long getNumDatabaseReadsAvoided(){
+		synchronized(lock){
+			return this.numDatabaseReadsAvoided;
+		}
+	}
+
+	public long getNumBlocksSentWithoutDatabaseRead(){
+		synchronized(lock){
+			return this.numBlocksSentWithoutDatabaseRead;
+		}
+	}
+
+	public String getMetricsSummary(){
+		synchronized(lock){
+			return "regionUpdates=" + this.numRegionUpdates + ", regionUpdatesReplaced=" + this.numRegionUpdatesReplaced + ", messagesFlushed=" + this.numMessagesFlushed + ", databaseReadsAvoided=" + this.numDatabaseReadsAvoided + ", blocksSentWithoutDatabaseRead=" + this.numBlocksSentWithoutDatabaseRead;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+	Writes whole screen frames to the terminal.  Each frame is encoded once into
+	a direct buffer that gets re-used for every frame, and then handed to the
+	channel in a single write, so the terminal never sees half of a frame from
+	a PrintStream flushing part way through.  When synchronized update mode is
+	enabled, each frame is wrapped in the DEC 2026 begin/end sequences which tell
+	terminals that support them to hold off on drawing until the frame is done.
+	Terminals that don't know about 2026 just ignore it.
+*/
+public class TerminalFrameOutputSink {
+
+	private static final byte [] BEGIN_SYNCHRONIZED_UPDATE = "\033[?2026h".getBytes(StandardCharsets.US_ASCII);
+	private static final byte [] END_SYNCHRONIZED_UPDATE = "\033[?2026l".getBytes(StandardCharsets.US_ASCII);
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final boolean useSynchronizedUpdate;
+	private final long minFrameIntervalNanos;
+	private char [] characters = new char [INITIAL_BUFFER_SIZE];
+	private byte [] encoded = new byte [INITIAL_BUFFER_SIZE];
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+
+	private boolean hasWrittenFrame = false;
+	private long lastFrameWriteNanos = 0L;
+
+	private long numFrames = 0L;
+	private long numDeferredFrames = 0L;
+	private long numWriteCalls = 0L;
+	private long totalBytes = 0L;
+	private long lastFrameBytes = 0L;
+	private long maxFrameBytes = 0L;
+	private long totalEncodeNanos = 0L;
+	private long maxEncodeNanos = 0L;
+	private long totalWriteNanos = 0L;
+	private long maxWriteNanos = 0L;
+
+	/*  maxFramesPerSecond of 0 means frames are never held back: */
+	public TerminalFrameOutputSink(WritableByteChannel channel, boolean useSynchronizedUpdate, int maxFramesPerSecond) throws Exception{
+		if(maxFramesPerSecond < 0){
+			throw new Exception("maxFramesPerSecond=" + maxFramesPerSecond + " must not be negative.");
+		}
+		this.channel = channel;
+		this.useSynchronizedUpdate = useSynchronizedUpdate;
+		this.minFrameIntervalNanos = maxFramesPerSecond == 0 ? 0L : (1000000000L / maxFramesPerSecond);
+	}
+
+	public static TerminalFrameOutputSink forStandardOutput(boolean useSynchronizedUpdate, int maxFramesPerSecond) throws Exception{
+		//  Writes go straight to file descriptor 1 with write(2).  This channel is never
+		//  closed, since closing it would also close standard output:
+		FileOutputStream standardOutput = new FileOutputStream(FileDescriptor.out);
+		return new TerminalFrameOutputSink(standardOutput.getChannel(), useSynchronizedUpdate, maxFramesPerSecond);
+	}
+
+	public long getNanosUntilNextFrame(){
+		if(this.minFrameIntervalNanos == 0L || !this.hasWrittenFrame){
+			return 0L;
+		}
+		long nanosSinceLastFrame = System.nanoTime() - this.lastFrameWriteNanos;
+		return Math.max(0L, this.minFrameIntervalNanos - nanosSinceLastFrame);
+	}
+
+	public void onFrameDeferred(){
+		this.numDeferredFrames++;
+	}
+
+	private int encodeUTF8(int length){
+		//  Frames are almost all ASCII, and a plain loop over re-used arrays is
+		//  a lot quicker than a CharsetEncoder over a wrapped StringBuilder:
+		if(this.encoded.length < length * 3){
+			this.encoded = new byte [length * 3];
+		}
+		char [] c = this.characters;
+		byte [] e = this.encoded;
+		int n = 0;
+		for(int i = 0; i < length; i++){
+			char ch = c[i];
+			if(ch < 0x80){
+				e[n++] = (byte)ch;
+			}else if(ch < 0x800){
+				e[n++] = (byte)(0xC0 | (ch >> 6));
+				e[n++] = (byte)(0x80 | (ch & 0x3F));
+			}else if(Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(c[i + 1])){
+				int codePoint = Character.toCodePoint(ch, c[i + 1]);
+				i++;
+				e[n++] = (byte)(0xF0 | (codePoint >> 18));
+				e[n++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+				e[n++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+				e[n++] = (byte)(0x80 | (codePoint & 0x3F));
+			}else if(Character.isSurrogate(ch)){
+				e[n++] = (byte)'?';  //  Unpaired surrogate.
+			}else{
+				e[n++] = (byte)(0xE0 | (ch >> 12));
+				e[n++] = (byte)(0x80 | ((ch >> 6) & 0x3F));
+				e[n++] = (byte)(0x80 | (ch & 0x3F));
+			}
+		}
+		return n;
+	}
+
+	private void encode(CharSequence frame) throws Exception{
+		int length = frame.length();
+		if(this.characters.length < length){
+			this.characters = new char [length];
+		}
+		if(frame instanceof StringBuilder){
+			((StringBuilder)frame).getChars(0, length, this.characters, 0);
+		}else{
+			frame.toString().getChars(0, length, this.characters, 0);
+		}
+		int numEncoded = this.encodeUTF8(length);
+		int frameBytes = numEncoded + (this.useSynchronizedUpdate ? BEGIN_SYNCHRONIZED_UPDATE.length + END_SYNCHRONIZED_UPDATE.length : 0);
+		if(this.buffer.capacity() < frameBytes){
+			this.buffer = ByteBuffer.allocateDirect(Math.max(this.buffer.capacity() * 2, frameBytes));
+		}
+		this.buffer.clear();
+		if(this.useSynchronizedUpdate){
+			this.buffer.put(BEGIN_SYNCHRONIZED_UPDATE);
+		}
+		this.buffer.put(this.encoded, 0, numEncoded);
+		if(this.useSynchronizedUpdate){
+			this.buffer.put(END_SYNCHRONIZED_UPDATE);
+		}
+		this.buffer.flip();
+	}
+
+	public void writeFrame(CharSequence frame) throws Exception{
+		long encodeStartNanos = System.nanoTime();
+		this.encode(frame);
+		long encodeNanos = System.nanoTime() - encodeStartNanos;
+
+		//  Anything else that was printed through System.out has to reach the terminal first:
+		System.out.flush();
+		long writeStartNanos = System.nanoTime();
+		int frameBytes = this.buffer.remaining();
+		while(this.buffer.hasRemaining()){
+			this.channel.write(this.buffer);
+			this.numWriteCalls++;
+		}
+		long writeEndNanos = System.nanoTime();
+		long writeNanos = writeEndNanos - writeStartNanos;
+
+		this.hasWrittenFrame = true;
+		this.lastFrameWriteNanos = writeEndNanos;
+		this.numFrames++;
+		this.totalBytes += frameBytes;
+		this.lastFrameBytes = frameBytes;
+		this.maxFrameBytes = Math.max(this.maxFrameBytes, frameBytes);
+		this.totalEncodeNanos += encodeNanos;
+		this.maxEncodeNanos = Math.max(this.maxEncodeNanos, encodeNanos);
+		this.totalWriteNanos += writeNanos;
+		this.maxWriteNanos = Math.max(this.maxWriteNanos, writeNanos);
+	}
+
+	public long getNumFrames(){
+		return this.numFrames;
+	}
+
+	public long getNumDeferredFrames(){
+		return this.numDeferredFrames;
+	}
+
+	public long getNumWriteCalls(){
+		return this.numWriteCalls;
+	}
+
+	public long getTotalBytes(){
+		return this.totalBytes;
+	}
+
+	public long getLastFrameBytes(){
+		return this.lastFrameBytes;
+	}
+
+	public long getTotalEncodeNanos(){
+		return this.totalEncodeNanos;
+	}
+
+	public long getTotalWriteNanos(){
+		return this.totalWriteNanos;
+	}
+
+	public String getMetricsSummary(){
+		long frames = Math.max(this.numFrames, 1L);
+		return "numFrames=" + this.numFrames +
+			", numDeferredFrames=" + this.numDeferredFrames +
+			", numWriteCalls=" + this.numWriteCalls +
+			", totalBytes=" + this.totalBytes +
+			", meanFrameBytes=" + (this.totalBytes / frames) +
+			", maxFrameBytes=" + this.maxFrameBytes +
+			", meanEncodeMicros=" + (this.totalEncodeNanos / frames / 1000L) +
+			", maxEncodeMicros=" + (this.maxEncodeNanos / 1000L) +
+			", meanWriteMicros=" + (this.totalWriteNanos / frames / 1000L) +
+			", maxWriteMicros=" + (this.maxWriteNanos / 1000L);
+	}
+}
@@ -0,0 +1,113 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+	Remembers the widths that were measured on the terminal so later runs on
+	the same terminal don't need to measure them again.  Each line of the file
+	holds the code points of one character followed by its x and y displacement:
+
+	U+26CF,U+FE0F	2	0
+*/
+public class TextWidthCalibrationCache {
+
+	private final File cacheFile;
+	private final Map<String, TextWidthMeasurementWorkItemResult> measurements = new ConcurrentHashMap<String, TextWidthMeasurementWorkItemResult>();
+
+	public TextWidthCalibrationCache(File cacheFile) throws Exception{
+		this.cacheFile = cacheFile;
+		if(cacheFile.exists()){
+			try(BufferedReader reader = new BufferedReader(new FileReader(cacheFile, StandardCharsets.UTF_8))){
+				String line;
+				while((line = reader.readLine()) != null){
+					if(line.trim().length() == 0){
+						continue;
+					}
+					String [] parts = line.split("\t");
+					if(parts.length != 3){
+						throw new Exception("Unexpected line in text width cache file " + cacheFile + ": '" + line + "'");
+					}
+					this.measurements.put(
+						TextWidthCalibrationCache.decodeCodePoints(parts[0]),
+						new TextWidthMeasurementWorkItemResult(Long.valueOf(parts[1]), Long.valueOf(parts[2]))
+					);
+				}
+			}
+		}
+	}
+
+	public static String encodeCodePoints(String text){
+		List<String> codePoints = new ArrayList<String>();
+		text.codePoints().forEach(c -> codePoints.add(String.format("U+%04X", c)));
+		return String.join(",", codePoints);
+	}
+
+	public static String decodeCodePoints(String encoded) throws Exception{
+		StringBuilder sb = new StringBuilder();
+		for(String codePoint : encoded.split(",")){
+			if(!codePoint.startsWith("U+")){
+				throw new Exception("Expected code point in the form U+XXXX, but found '" + codePoint + "'.");
+			}
+			sb.appendCodePoint(Integer.parseInt(codePoint.substring(2), 16));
+		}
+		return sb.toString();
+	}
+
+	public int size(){
+		return this.measurements.size();
+	}
+
+	public TextWidthMeasurementWorkItemResult get(String text){
+		return this.measurements.get(text);
+	}
+
+	public synchronized void put(String text, TextWidthMeasurementWorkItemResult result) throws Exception{
+		if(this.measurements.put(text, result) == null){
+			try(Writer writer = new OutputStreamWriter(new FileOutputStream(this.cacheFile, true), StandardCharsets.UTF_8)){
+				writer.write(TextWidthCalibrationCache.encodeCodePoints(text) + "\t" + result.getDeltaX() + "\t" + result.getDeltaY() + "\n");
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.lang.invoke.MethodHandles;
+
+/*
+	How many terminal columns each character takes up, worked out from Unicode
+	data at build time by TextWidthTableGenerator.  This lets most text be
+	measured without printing it and waiting for a cursor position report.
+	Anything the table can't be sure about (control characters, unassigned
+	code points, regional indicators, and the joiners and modifiers used in
+	emoji sequences) is reported as unknown so the caller can fall back to
+	measuring it on the terminal.
+*/
+public class TextWidthTable {
+
+	public static final int UNKNOWN_WIDTH = -1;
+	public static final String TABLE_RESOURCE = "/text_width_table.bin";
+	private static final int VARIATION_SELECTOR_16 = 0xFE0F;
+	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private final int [] rangeStarts;
+	private final int [] rangeEnds;
+	private final byte [] rangeWidths;
+
+	private static class InstanceHolder {
+		private static final TextWidthTable instance = InstanceHolder.load();
+
+		private static TextWidthTable load(){
+			try(InputStream in = TextWidthTable.class.getResourceAsStream(TABLE_RESOURCE)){
+				if(in == null){
+					logger.warn("Could not find the text width table resource " + TABLE_RESOURCE + ".  Every character width will be measured on the terminal instead.");
+					return null;
+				}
+				return new TextWidthTable(in);
+			}catch(Exception e){
+				logger.warn("Could not load the text width table resource " + TABLE_RESOURCE + ".  Every character width will be measured on the terminal instead.", e);
+				return null;
+			}
+		}
+	}
+
+	/*  Returns null if the table couldn't be loaded, in which case text has to be measured on the terminal. */
+	public static TextWidthTable getInstance(){
+		return InstanceHolder.instance;
+	}
+
+	public TextWidthTable(InputStream inputStream) throws Exception{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+		int magic = in.readInt();
+		if(magic != TextWidthTableGenerator.TABLE_MAGIC){
+			throw new Exception("Text width table has magic number " + Integer.toHexString(magic) + ", expected " + Integer.toHexString(TextWidthTableGenerator.TABLE_MAGIC) + ".");
+		}
+		int numRanges = in.readInt();
+		this.rangeStarts = new int [numRanges];
+		this.rangeEnds = new int [numRanges];
+		this.rangeWidths = new byte [numRanges];
+		for(int i = 0; i < numRanges; i++){
+			this.rangeStarts[i] = in.readInt();
+			this.rangeEnds[i] = in.readInt();
+			this.rangeWidths[i] = in.readByte();
+		}
+	}
+
+	public int getNumRanges(){
+		return this.rangeStarts.length;
+	}
+
+	public int getCodePointWidth(int codePoint){
+		if(codePoint >= 0x20 && codePoint < 0x7F){
+			return 1;
+		}
+		int low = 0;
+		int high = this.rangeStarts.length - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			if(codePoint < this.rangeStarts[mid]){
+				high = mid - 1;
+			}else if(codePoint > this.rangeEnds[mid]){
+				low = mid + 1;
+			}else{
+				return this.rangeWidths[mid];
+			}
+		}
+		return 1;
+	}
+
+	/*  Returns null if the displacement can only be found by measuring it on the terminal: */
+	public TextWidthMeasurementWorkItemResult getTextDisplacement(String text){
+		if(text.equals("\n")){
+			return new TextWidthMeasurementWorkItemResult(0L, 1L);
+		}
+		long deltaX = 0L;
+		int previousCodePoint = -1;
+		int previousWidth = 0;
+		int i = 0;
+		while(i < text.length()){
+			int codePoint = text.codePointAt(i);
+			i += Character.charCount(codePoint);
+			if(codePoint == VARIATION_SELECTOR_16 && previousCodePoint != -1){
+				//  Asks for emoji presentation of a character that's text by default:
+				if(previousWidth == 1 && Character.isEmoji(previousCodePoint)){
+					deltaX += 1;
+					previousWidth = 2;
+				}
+				continue;
+			}
+			int width = this.getCodePointWidth(codePoint);
+			if(width == UNKNOWN_WIDTH){
+				return null;
+			}
+			deltaX += width;
+			previousCodePoint = codePoint;
+			previousWidth = width;
+		}
+		return new TextWidthMeasurementWorkItemResult(deltaX, 0L);
+	}
+}
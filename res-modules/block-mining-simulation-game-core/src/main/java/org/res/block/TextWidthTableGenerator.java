@@ -0,0 +1,160 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+	Run at build time (see the antrun step in pom.xml) to build the table that
+	TextWidthTable loads.  The East Asian Width and General Category data both
+	come from src/main/unicode, which is pinned to one Unicode version, so the
+	table doesn't change with the JDK that does the build.  This class must not
+	depend on anything outside of the JDK, because it runs with nothing but
+	target/classes on the class path.
+*/
+public class TextWidthTableGenerator {
+
+	public static final int TABLE_MAGIC = 0x54575431;  //  'TWT1'
+	private static final String UNICODE_VERSION_PREFIX = "# Unicode version:";
+
+	private static String readPropertyValues(String propertyFile, String [] values) throws Exception{
+		//  Fills in 'values' for every code point listed in 'propertyFile' and returns the file's Unicode version:
+		String unicodeVersion = null;
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(propertyFile), StandardCharsets.UTF_8))){
+			String line;
+			while((line = reader.readLine()) != null){
+				if(line.startsWith(UNICODE_VERSION_PREFIX)){
+					unicodeVersion = line.substring(UNICODE_VERSION_PREFIX.length()).trim();
+				}
+				int commentStart = line.indexOf('#');
+				String content = (commentStart == -1 ? line : line.substring(0, commentStart)).trim();
+				if(content.length() == 0){
+					continue;
+				}
+				String [] parts = content.split(";");
+				if(parts.length != 2){
+					throw new Exception("Unexpected line in " + propertyFile + ": '" + line + "'");
+				}
+				String value = parts[1].trim();
+				String [] range = parts[0].trim().split("\\.\\.");
+				int start = Integer.parseInt(range[0], 16);
+				int end = range.length == 2 ? Integer.parseInt(range[1], 16) : start;
+				for(int c = start; c <= end; c++){
+					values[c] = value;
+				}
+			}
+		}
+		if(unicodeVersion == null){
+			throw new Exception("No '" + UNICODE_VERSION_PREFIX + "' line in " + propertyFile + ".");
+		}
+		for(int c = 0; c <= Character.MAX_CODE_POINT; c++){
+			if(values[c] == null){
+				throw new Exception("Code point " + Integer.toHexString(c) + " is missing from " + propertyFile + ".");
+			}
+		}
+		return unicodeVersion;
+	}
+
+	public static int getWidth(int codePoint, String eastAsianWidth, String generalCategory){
+		if(generalCategory.equals("Cc") || generalCategory.equals("Cs")){
+			return TextWidthTable.UNKNOWN_WIDTH;
+		}
+		if(codePoint >= 0x1F1E6 && codePoint <= 0x1F1FF){
+			//  Regional indicators are drawn as one or two columns depending on the terminal:
+			return TextWidthTable.UNKNOWN_WIDTH;
+		}
+		if(codePoint == 0x200D || (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF) || (codePoint >= 0xE0020 && codePoint <= 0xE007F)){
+			//  Zero width joiners, skin tone modifiers and tags combine with the characters around them
+			//  into a single glyph on some terminals, so text that has them can't be measured by adding up widths:
+			return TextWidthTable.UNKNOWN_WIDTH;
+		}
+		if(codePoint == 0x00AD){
+			return 1;  //  Soft hyphen is a format character, but terminals show it.
+		}
+		if(generalCategory.equals("Mn") || generalCategory.equals("Me") || generalCategory.equals("Cf") || (codePoint >= 0x1160 && codePoint <= 0x11FF)){
+			return 0;  //  Combining marks, zero width characters and Hangul medial vowels and final consonants.
+		}
+		if(eastAsianWidth.equals("W") || eastAsianWidth.equals("F")){
+			return 2;  //  This includes emoji presentation characters.
+		}
+		if(generalCategory.equals("Cn")){
+			return TextWidthTable.UNKNOWN_WIDTH;
+		}
+		return 1;
+	}
+
+	public static void main(String [] args) throws Exception{
+		if(args.length != 2){
+			throw new Exception("Usage: TextWidthTableGenerator <Unicode data directory> <output table file>");
+		}
+		String [] eastAsianWidths = new String [Character.MAX_CODE_POINT + 1];
+		String [] generalCategories = new String [Character.MAX_CODE_POINT + 1];
+		String unicodeVersion = TextWidthTableGenerator.readPropertyValues(args[0] + "/EastAsianWidth.txt", eastAsianWidths);
+		String generalCategoryVersion = TextWidthTableGenerator.readPropertyValues(args[0] + "/DerivedGeneralCategory.txt", generalCategories);
+		if(!unicodeVersion.equals(generalCategoryVersion)){
+			throw new Exception("EastAsianWidth.txt is from Unicode " + unicodeVersion + ", but DerivedGeneralCategory.txt is from Unicode " + generalCategoryVersion + ".");
+		}
+		//  Only store the runs that aren't one column wide:
+		List<int []> ranges = new ArrayList<int []>();
+		int runStart = 0;
+		int runWidth = TextWidthTableGenerator.getWidth(0, eastAsianWidths[0], generalCategories[0]);
+		for(int c = 1; c <= Character.MAX_CODE_POINT + 1; c++){
+			int width = c > Character.MAX_CODE_POINT ? Integer.MIN_VALUE : TextWidthTableGenerator.getWidth(c, eastAsianWidths[c], generalCategories[c]);
+			if(width != runWidth){
+				if(runWidth != 1){
+					ranges.add(new int [] {runStart, c - 1, runWidth});
+				}
+				runStart = c;
+				runWidth = width;
+			}
+		}
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])))){
+			out.writeInt(TABLE_MAGIC);
+			out.writeInt(ranges.size());
+			for(int [] range : ranges){
+				out.writeInt(range[0]);
+				out.writeInt(range[1]);
+				out.writeByte(range[2]);
+			}
+		}
+		System.out.println("Wrote " + ranges.size() + " text width ranges to " + args[1] + " using Unicode " + unicodeVersion + " data from " + args[0] + ".");
+	}
+}
@@ -41,9 +41,9 @@ public class ThreeDimensionalCircularBuffer<T>{
 		Coordinate.makeOriginCoordinate(3L),
 		Coordinate.makeOriginCoordinate(3L)
 	);
-	private Long circularOffsetX = 0L;  //  The offset that describes where the circular buffer 'starts'.
-	private Long circularOffsetY = 0L;  //  The offset that describes where the circular buffer 'starts'.
-	private Long circularOffsetZ = 0L;  //  The offset that describes where the circular buffer 'starts'.
+	private long circularOffsetX = 0L;  //  The offset that describes where the circular buffer 'starts'.
+	private long circularOffsetY = 0L;  //  The offset that describes where the circular buffer 'starts'.
+	private long circularOffsetZ = 0L;  //  The offset that describes where the circular buffer 'starts'.
 
 	private Object [][][] buffer = new Object [0][0][0];
 	private Object uninitializedObject;
@@ -54,29 +54,33 @@ public class ThreeDimensionalCircularBuffer<T>{
 		this.uninitializedObject = uninitializedObject;
 	}
 
-	public static final Long pm(Long numerator, Long denominator){
-		return denominator.equals(0L) ? 0L : ((numerator % denominator) + denominator) % denominator;
+	public static final long pm(long numerator, long denominator){
+		return denominator == 0L ? 0L : ((numerator % denominator) + denominator) % denominator;
 	}
 
 	public static final int pm(int numerator, int denominator){
 		return denominator == 0 ? 0 : ((numerator % denominator) + denominator) % denominator;
 	}
 
-	public static void initializeEmptyRegions(Object [][][] a, Long circularOffsetX, Long circularOffsetY, Long circularOffsetZ, Long sizeX, Long sizeY, Long sizeZ, Object uninitializedObject, CuboidAddress intersection, CuboidAddress regionToInitialize) throws Exception{
+	public static void initializeEmptyRegions(Object [][][] a, long circularOffsetX, long circularOffsetY, long circularOffsetZ, long sizeX, long sizeY, long sizeZ, Object uninitializedObject, CuboidAddress intersection, CuboidAddress regionToInitialize) throws Exception{
 
 		boolean hasEmptyIntersection = intersection.getVolume() == 0L;
 		if(sizeX > 0L && sizeY > 0L && sizeZ > 0L){
-			RegionIteration regionIteration = new RegionIteration(regionToInitialize.getCanonicalLowerCoordinate(), regionToInitialize);
-			do{
-				Coordinate currentCoordinate = regionIteration.getCurrentCoordinate();
-				if(hasEmptyIntersection || !intersection.containsCoordinate(currentCoordinate)){
-					Coordinate lower = regionToInitialize.getCanonicalLowerCoordinate();
-					int xIndexInBuffer = (int)((circularOffsetX + currentCoordinate.getX() - lower.getX()) % sizeX);
-					int yIndexInBuffer = (int)((circularOffsetY + currentCoordinate.getY() - lower.getY()) % sizeY);
-					int zIndexInBuffer = (int)((circularOffsetZ + currentCoordinate.getZ() - lower.getZ()) % sizeZ);
-					a[xIndexInBuffer][yIndexInBuffer][zIndexInBuffer] = uninitializedObject;
+			long lowerX = regionToInitialize.getLowerValueForIndex(0);
+			long lowerY = regionToInitialize.getLowerValueForIndex(1);
+			long lowerZ = regionToInitialize.getLowerValueForIndex(2);
+			for(long z = lowerZ; z < lowerZ + sizeZ; z++){
+				int zIndexInBuffer = (int)((circularOffsetZ + z - lowerZ) % sizeZ);
+				for(long y = lowerY; y < lowerY + sizeY; y++){
+					int yIndexInBuffer = (int)((circularOffsetY + y - lowerY) % sizeY);
+					for(long x = lowerX; x < lowerX + sizeX; x++){
+						if(hasEmptyIntersection || !intersection.containsXYZ(x, y, z)){
+							int xIndexInBuffer = (int)((circularOffsetX + x - lowerX) % sizeX);
+							a[xIndexInBuffer][yIndexInBuffer][zIndexInBuffer] = uninitializedObject;
+						}
+					}
 				}
-			}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+			}
 		}
 	}
 
@@ -87,23 +91,23 @@ public class ThreeDimensionalCircularBuffer<T>{
 
 		CuboidAddress intersectionAddress = this.cuboidAddress.getIntersectionCuboidAddress(newCuboidAddress);
 
-		Long newXSize = newCuboidAddress.getWidthForIndex(0L);
-		Long newYSize = newCuboidAddress.getWidthForIndex(1L);
-		Long newZSize = newCuboidAddress.getWidthForIndex(2L);
+		long newXSize = newCuboidAddress.getWidthForIndex(0L);
+		long newYSize = newCuboidAddress.getWidthForIndex(1L);
+		long newZSize = newCuboidAddress.getWidthForIndex(2L);
 		if(
-			newXSize.equals(this.cuboidAddress.getWidthForIndex(0L)) &&
-			newYSize.equals(this.cuboidAddress.getWidthForIndex(1L)) &&
-			newZSize.equals(this.cuboidAddress.getWidthForIndex(2L))
+			newXSize == this.cuboidAddress.getWidthForIndex(0L) &&
+			newYSize == this.cuboidAddress.getWidthForIndex(1L) &&
+			newZSize == this.cuboidAddress.getWidthForIndex(2L)
 		){
 			//  Size has not changed, simply update pointers to advance through circular buffer
-			Long startXDisplacement = newCuboidAddress.getCanonicalLowerCoordinate().getX() - this.cuboidAddress.getCanonicalLowerCoordinate().getX();
-			Long startYDisplacement = newCuboidAddress.getCanonicalLowerCoordinate().getY() - this.cuboidAddress.getCanonicalLowerCoordinate().getY();
-			Long startZDisplacement = newCuboidAddress.getCanonicalLowerCoordinate().getZ() - this.cuboidAddress.getCanonicalLowerCoordinate().getZ();
+			long startXDisplacement = newCuboidAddress.getLowerValueForIndex(0) - this.cuboidAddress.getLowerValueForIndex(0);
+			long startYDisplacement = newCuboidAddress.getLowerValueForIndex(1) - this.cuboidAddress.getLowerValueForIndex(1);
+			long startZDisplacement = newCuboidAddress.getLowerValueForIndex(2) - this.cuboidAddress.getLowerValueForIndex(2);
 			this.circularOffsetX = pm(this.circularOffsetX + startXDisplacement, newXSize);
 			this.circularOffsetY = pm(this.circularOffsetY + startYDisplacement, newYSize);
 			this.circularOffsetZ = pm(this.circularOffsetZ + startZDisplacement, newZSize);
 		}else{
-			Object [][][] newBuffer = new Object [newXSize.intValue()][newYSize.intValue()][newZSize.intValue()];
+			Object [][][] newBuffer = new Object [(int)newXSize][(int)newYSize][(int)newZSize];
 
 			if(intersectionAddress != null){ //  No intersection, buffer covers entirely new region with no overlap
 				int intersectionSizeX = (int)intersectionAddress.getWidthForIndex(0L);
@@ -118,19 +122,19 @@ public class ThreeDimensionalCircularBuffer<T>{
 				int toCopyZOffset = (int)(intersectionAddress.getCanonicalLowerCoordinate().getZ() - newCuboidAddress.getCanonicalLowerCoordinate().getZ());
 				int fromCopyZOffset = (int)(intersectionAddress.getCanonicalLowerCoordinate().getZ() - this.cuboidAddress.getCanonicalLowerCoordinate().getZ());
 
-				Long oldXSize = this.cuboidAddress.getWidthForIndex(0L);
-				Long oldYSize = this.cuboidAddress.getWidthForIndex(1L);
-				Long oldZSize = this.cuboidAddress.getWidthForIndex(2L);
+				int oldXSize = (int)this.cuboidAddress.getWidthForIndex(0L);
+				int oldYSize = (int)this.cuboidAddress.getWidthForIndex(1L);
+				int oldZSize = (int)this.cuboidAddress.getWidthForIndex(2L);
 
 				for(int i = 0; i < intersectionSizeX; i++){
-					int fromX = pm(this.circularOffsetX.intValue() + i + fromCopyXOffset, oldXSize.intValue());
-					int toX = pm(i + toCopyXOffset, newXSize.intValue());
+					int fromX = pm((int)this.circularOffsetX + i + fromCopyXOffset, oldXSize);
+					int toX = pm(i + toCopyXOffset, (int)newXSize);
 					for(int j = 0; j < intersectionSizeY; j++){
-						int fromY = pm(this.circularOffsetY.intValue() + j + fromCopyYOffset, oldYSize.intValue());
-						int toY = pm(j + toCopyYOffset, newYSize.intValue());
+						int fromY = pm((int)this.circularOffsetY + j + fromCopyYOffset, oldYSize);
+						int toY = pm(j + toCopyYOffset, (int)newYSize);
 						for(int k = 0; k < intersectionSizeZ; k++){
-							int fromZ = pm(this.circularOffsetZ.intValue() + k + fromCopyZOffset, oldZSize.intValue());
-							int toZ = pm(k + toCopyZOffset, newZSize.intValue());
+							int fromZ = pm((int)this.circularOffsetZ + k + fromCopyZOffset, oldZSize);
+							int toZ = pm(k + toCopyZOffset, (int)newZSize);
 							newBuffer[toX][toY][toZ] = this.buffer[fromX][fromY][fromZ];
 						}
 					}
@@ -145,74 +149,62 @@ public class ThreeDimensionalCircularBuffer<T>{
 		this.cuboidAddress = newCuboidAddress;
 	}
 
+	private int getBufferIndex(long v, long circularOffset, int dimension){
+		/*  Returns -1 if the value is outside the buffer region for this dimension. */
+		long lowerBound = this.cuboidAddress.getLowerValueForIndex(dimension);
+		if(v >= lowerBound && v < this.cuboidAddress.getUpperValueForIndex(dimension)){
+			return (int)((circularOffset + v - lowerBound) % this.cuboidAddress.getWidthForIndex(dimension));
+		}else{
+			return -1;
+		}
+	}
+
+	private Exception makeOutOfBoundsException(long x, long y, long z){
+		return new Exception(
+			"(c.getX() = " + x + ", but c.getX() >= lowerBoundX && c.getX() < upperBoundX) &&" +
+			"(c.getY() = " + y + ", but c.getY() >= lowerBoundY && c.getY() < upperBoundY) &&" +
+			"(c.getZ() = " + z + ", but c.getZ() >= lowerBoundZ && c.getZ() < upperBoundZ)"
+		);
+	}
+
 	public void setObjectAtCoordinate(Coordinate c, T object) throws Exception{
+		this.setObjectAtXYZ(c.getLongX(), c.getLongY(), c.getLongZ(), object);
+	}
+
+	public void setObjectAtXYZ(long x, long y, long z, T object) throws Exception{
 		if(this.cuboidAddress == null){
 			throw new Exception("this.cuboidAddress == null");
 		}else{
-			Coordinate lower = this.cuboidAddress.getCanonicalLowerCoordinate();
-			Coordinate upper = this.cuboidAddress.getCanonicalUpperCoordinate();
-			Long lowerBoundX = lower.getX();
-			Long upperBoundX = upper.getX();
-			Long lowerBoundY = lower.getY();
-			Long upperBoundY = upper.getY();
-			Long lowerBoundZ = lower.getZ();
-			Long upperBoundZ = upper.getZ();
-			if(
-				(c.getX() >= lowerBoundX && c.getX() < upperBoundX) &&
-				(c.getY() >= lowerBoundY && c.getY() < upperBoundY) &&
-				(c.getZ() >= lowerBoundZ && c.getZ() < upperBoundZ)
-			){
-				Long sizeX = this.cuboidAddress.getWidthForIndex(0L);
-				Long sizeY = this.cuboidAddress.getWidthForIndex(1L);
-				Long sizeZ = this.cuboidAddress.getWidthForIndex(2L);
-				int xIndexInBuffer = (int)((this.circularOffsetX + c.getX() - lowerBoundX) % sizeX);
-				int yIndexInBuffer = (int)((this.circularOffsetY + c.getY() - lowerBoundY) % sizeY);
-				int zIndexInBuffer = (int)((this.circularOffsetZ + c.getZ() - lowerBoundZ) % sizeZ);
+			int xIndexInBuffer = this.getBufferIndex(x, this.circularOffsetX, 0);
+			int yIndexInBuffer = this.getBufferIndex(y, this.circularOffsetY, 1);
+			int zIndexInBuffer = this.getBufferIndex(z, this.circularOffsetZ, 2);
+			if(xIndexInBuffer >= 0 && yIndexInBuffer >= 0 && zIndexInBuffer >= 0){
 				this.buffer[xIndexInBuffer][yIndexInBuffer][zIndexInBuffer] = object;
 			}else{
-				throw new Exception(
-					"(c.getX() = " + c.getX() + ", but c.getX() >= lowerBoundX && c.getX() < upperBoundX) &&" +
-					"(c.getY() = " + c.getY() + ", but c.getY() >= lowerBoundY && c.getY() < upperBoundY) &&" +
-					"(c.getZ() = " + c.getZ() + ", but c.getZ() >= lowerBoundZ && c.getZ() < upperBoundZ)"
-				);
+				throw this.makeOutOfBoundsException(x, y, z);
 			}
 		}
 	}
 
 	public T getObjectAtCoordinate(Coordinate c) throws Exception{
+		return this.getObjectAtXYZ(c.getLongX(), c.getLongY(), c.getLongZ());
+	}
+
+	public T getObjectAtXYZ(long x, long y, long z) throws Exception{
 		if(this.cuboidAddress == null){
 			throw new Exception("this.cuboidAddress == null");
 		}else{
-			Coordinate lower = this.cuboidAddress.getCanonicalLowerCoordinate();
-			Coordinate upper = this.cuboidAddress.getCanonicalUpperCoordinate();
-			Long lowerBoundX = lower.getX();
-			Long upperBoundX = upper.getX();
-			Long lowerBoundY = lower.getY();
-			Long upperBoundY = upper.getY();
-			Long lowerBoundZ = lower.getZ();
-			Long upperBoundZ = upper.getZ();
-			if(
-				(c.getX() >= lowerBoundX && c.getX() < upperBoundX) &&
-				(c.getY() >= lowerBoundY && c.getY() < upperBoundY) &&
-				(c.getZ() >= lowerBoundZ && c.getZ() < upperBoundZ)
-			){
-				Long sizeX = this.cuboidAddress.getWidthForIndex(0L);
-				Long sizeY = this.cuboidAddress.getWidthForIndex(1L);
-				Long sizeZ = this.cuboidAddress.getWidthForIndex(2L);
-				int xIndexInBuffer = (int)((this.circularOffsetX + c.getX() - lowerBoundX) % sizeX);
-				int yIndexInBuffer = (int)((this.circularOffsetY + c.getY() - lowerBoundY) % sizeY);
-				int zIndexInBuffer = (int)((this.circularOffsetZ + c.getZ() - lowerBoundZ) % sizeZ);
+			int xIndexInBuffer = this.getBufferIndex(x, this.circularOffsetX, 0);
+			int yIndexInBuffer = this.getBufferIndex(y, this.circularOffsetY, 1);
+			int zIndexInBuffer = this.getBufferIndex(z, this.circularOffsetZ, 2);
+			if(xIndexInBuffer >= 0 && yIndexInBuffer >= 0 && zIndexInBuffer >= 0){
 				if(this.buffer[xIndexInBuffer][yIndexInBuffer][zIndexInBuffer] == null){
 					throw new Exception("this.buffer[xIndexInBuffer][yIndexInBuffer][zIndexInBuffer] == null");
 				}else{
 					return classType.cast(this.buffer[xIndexInBuffer][yIndexInBuffer][zIndexInBuffer]);
 				}
 			}else{
-				throw new Exception(
-					"(c.getX() = " + c.getX() + ", but c.getX() >= lowerBoundX && c.getX() < upperBoundX) &&" +
-					"(c.getY() = " + c.getY() + ", but c.getY() >= lowerBoundY && c.getY() < upperBoundY) &&" +
-					"(c.getZ() = " + c.getZ() + ", but c.getZ() >= lowerBoundZ && c.getZ() < upperBoundZ)"
-				);
+				throw this.makeOutOfBoundsException(x, y, z);
 			}
 		}
 	}
@@ -48,9 +48,9 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonNull;
 import com.google.gson.reflect.TypeToken;
 
-public class TitaniumDioxide extends IndividualBlock {
+public class TitaniumDioxide extends IndividualBlock implements StatelessBlock {
 
-	private byte [] data;
+	private final byte [] data;
 
 	public TitaniumDioxide(byte [] data) throws Exception {
 		this.data = data;
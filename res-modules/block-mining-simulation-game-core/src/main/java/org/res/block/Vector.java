@@ -34,23 +34,27 @@ package org.res.block;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 import java.lang.Comparable;
 
 public class Vector implements Comparable<Vector>{
 
-	protected final List<Long> coordinateValues;
+	/*  Values are stored as primitives to avoid boxing on hot paths.  The array
+	 *  is never exposed or mutated after construction so vectors stay immutable.
+	 *  That means the arithmetic methods (add, subtract, changeByDeltaXYZ, ...)
+	 *  still make a new vector every call.  Loops that can't afford that should
+	 *  read values with getLongValueAtIndex or copyValuesInto, or walk a region
+	 *  with RegionCursor. */
+	protected final long [] values;
 	protected final Long numDimensions;
 
 	private final int hashCode;
 
 	
 	public static Vector makeDiagonalVector(Long value, Long numDimensions){
-		List<Long> list = new ArrayList<>();
-		for(long l = 0L; l < numDimensions; l++){
-			list.add(value);
-		}
-		return new Vector(list);
+		long [] values = new long [numDimensions.intValue()];
+		Arrays.fill(values, value);
+		return new Vector(values);
 	}
 
 	public static Vector makeOriginVector(Long numDimensions){
@@ -61,26 +65,38 @@ public class Vector implements Comparable<Vector>{
 		return makeDiagonalVector(1L, numDimensions);
 	}
 
-	public final int getHashCode(){
-		/*  Initialize hash code once so it doesn't have to be calculated again: */
-		int total  = this.getNumDimensions().intValue() + 1;
-		for(long i = 0L; i < this.getNumDimensions(); i++){
-			total *= (this.getValueAtIndex(i).intValue() + 1);
+	public static int hashLongValues(long [] values){
+		/*  Mix every value into the hash (based on the murmur3 64 bit finalizer)
+		 *  so that nearby coordinates, or ones containing -1, don't collide: */
+		long h = values.length;
+		for(int i = 0; i < values.length; i++){
+			h = (h ^ values[i]) * 0x9E3779B97F4A7C15L;
+			h ^= (h >>> 32);
 		}
-		return total;
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return (int)(h ^ (h >>> 32));
+	}
+
+	public final int getHashCode(){
+		/*  Calculates the hash code, the constructors store it so hashCode() doesn't have to: */
+		return Vector.hashLongValues(this.values);
 	}
 
 	@Override
 	public int compareTo(Vector other) {
-		if(this.getNumDimensions() < other.getNumDimensions()){
+		if(this.values.length < other.values.length){
 			return -1;
-		}else if(this.getNumDimensions() > other.getNumDimensions()){
+		}else if(this.values.length > other.values.length){
 			return 1;
 		}else{
-			for(long i = 0L; i < this.getNumDimensions(); i++){
-				if(this.getValueAtIndex(i) < other.getValueAtIndex(i)){
+			for(int i = 0; i < this.values.length; i++){
+				if(this.values[i] < other.values[i]){
 					return -1;
-				}else if(this.getValueAtIndex(i) > other.getValueAtIndex(i)){
+				}else if(this.values[i] > other.values[i]){
 					return 1;
 				}else{
 					//  Continue.
@@ -98,35 +114,36 @@ public class Vector implements Comparable<Vector>{
 	@Override
 	public boolean equals(Object o){
 		Vector c = (Vector)o;
-		if(c != null && this.getNumDimensions().equals(c.getNumDimensions())){
-			for(long i = 0L; i < c.getNumDimensions(); i++){
-				if(!this.getValueAtIndex(i).equals(c.getValueAtIndex(i))){
-					return false;
-				}
-			}
-			return true;
+		if(c != null && this.hashCode == c.hashCode){
+			return Arrays.equals(this.values, c.values);
 		}else{
 			return false;
 		}
 	}
 
 	public Vector copy() {
-		List<Long> list = new ArrayList<>();
-		for(Long l : this.coordinateValues){
-			list.add(l);
-		}
-		return new Vector(list);
+		return new Vector(this.values.clone());
 	}
 
 	public Vector(Vector v) {
-		this.coordinateValues = v.coordinateValues;
+		this.values = v.values;
 		this.numDimensions = v.numDimensions;
-		this.hashCode = getHashCode();
+		this.hashCode = v.hashCode;
 	}
 
 	public Vector(List<Long> coordinateValues) {
-		this.coordinateValues = coordinateValues;
-		this.numDimensions = Long.valueOf(coordinateValues.size());
+		this.values = new long [coordinateValues.size()];
+		for(int i = 0; i < this.values.length; i++){
+			this.values[i] = coordinateValues.get(i);
+		}
+		this.numDimensions = Long.valueOf(this.values.length);
+		this.hashCode = getHashCode();
+	}
+
+	/*  Takes ownership of the array, so the caller must not modify it afterwards. */
+	protected Vector(long [] values) {
+		this.values = values;
+		this.numDimensions = Long.valueOf(values.length);
 		this.hashCode = getHashCode();
 	}
 
@@ -137,36 +154,57 @@ public class Vector implements Comparable<Vector>{
 		){
 			throw new Exception("(startDimension > this.getNumDimensions()) || (endDimension > this.getNumDimensions())");
 		}else{
-			List<Long> newValues = new ArrayList<Long>();
-			for(long i = startDimension; i < endDimension; i++){
-				newValues.add(this.getValueAtIndex(i));
-			}
-			return new Vector(newValues);
+			return new Vector(Arrays.copyOfRange(this.values, startDimension.intValue(), Math.max(startDimension.intValue(), endDimension.intValue())));
+		}
+	}
+
+	//Don't allow access to coordinate values so that the array cannot be mutated.
+	//public long [] getCoordinateValues();
+
+	public long [] toLongArray(){
+		return this.values.clone();
+	}
+
+	public List<Long> toList(){
+		List<Long> rtn = new ArrayList<Long>(this.values.length);
+		for(long l : this.values){
+			rtn.add(l);
 		}
+		return rtn;
 	}
 
-	//Don't allow access to coordinate values so that the list cannot be mutated.
-	//public List<Long> getCoordinateValues();
+	public void copyValuesInto(long [] destination){
+		/*  Allocation-free access to all values at once: */
+		System.arraycopy(this.values, 0, destination, 0, this.values.length);
+	}
 
 	public Vector subtract(Vector other) throws Exception{
-		if(this.getNumDimensions().equals(other.getNumDimensions())){
-			List<Long> newValues = new ArrayList<Long>();
-			for(long i = 0L; i < this.getNumDimensions(); i++){
-				newValues.add(this.getValueAtIndex(i) - other.getValueAtIndex(i));
+		return new Vector(this.subtractValues(other));
+	}
+
+	public Vector add(Vector other) throws Exception{
+		return new Vector(this.addValues(other));
+	}
+
+	protected long [] subtractValues(Vector other) throws Exception{
+		if(this.values.length == other.values.length){
+			long [] newValues = new long [this.values.length];
+			for(int i = 0; i < this.values.length; i++){
+				newValues[i] = this.values[i] - other.values[i];
 			}
-			return new Vector(newValues);
+			return newValues;
 		}else{
 			throw new Exception("Dimensions do not match: " + this.getNumDimensions() + " versus " + other.getNumDimensions());
 		}
 	}
 
-	public Vector add(Vector other) throws Exception{
-		if(this.getNumDimensions().equals(other.getNumDimensions())){
-			List<Long> newValues = new ArrayList<Long>();
-			for(long i = 0L; i < this.getNumDimensions(); i++){
-				newValues.add(this.getValueAtIndex(i) + other.getValueAtIndex(i));
+	protected long [] addValues(Vector other) throws Exception{
+		if(this.values.length == other.values.length){
+			long [] newValues = new long [this.values.length];
+			for(int i = 0; i < this.values.length; i++){
+				newValues[i] = this.values[i] + other.values[i];
 			}
-			return new Vector(newValues);
+			return newValues;
 		}else{
 			throw new Exception("Dimensions do not match: " + this.getNumDimensions() + " versus " + other.getNumDimensions());
 		}
@@ -176,9 +214,17 @@ public class Vector implements Comparable<Vector>{
 		return this.numDimensions;
 	}
 
+	public final int getNumDimensionsInt(){
+		return this.values.length;
+	}
+
 	public final Long getValueAtIndex(Long i){
-		if(i < this.coordinateValues.size()){
-			return this.coordinateValues.get(i.intValue());
+		return this.getLongValueAtIndex(i);
+	}
+
+	public final long getLongValueAtIndex(long i){
+		if(i < this.values.length){
+			return this.values[(int)i];
 		}else{
 			return 0L;
 		}
@@ -189,20 +235,20 @@ public class Vector implements Comparable<Vector>{
 	}
 
 	public Vector changeValueAtIndex(Long i, Long v) throws Exception {
+		return new Vector(this.changedValueAtIndex(i, v));
+	}
+
+	protected long [] changedValueAtIndex(long i, long v) throws Exception {
 		/*
 			Don't mutate the existing vector, instead create a new one
 		*/
-		List<Long> newValues = new ArrayList<Long>();
-		for(Long l : this.coordinateValues){
-			newValues.add(l);
-		}
-
-		if(i < newValues.size()){
-			newValues.set(i.intValue(), v);
+		if(i < this.values.length){
+			long [] newValues = this.values.clone();
+			newValues[(int)i] = v;
+			return newValues;
 		}else{
-			throw new Exception("Trying to set value to " + v + " beyond end of list at " + i + ".  List length is " + newValues.size());
+			throw new Exception("Trying to set value to " + v + " beyond end of list at " + i + ".  List length is " + this.values.length);
 		}
-		return new Vector(newValues);
 	}
 
 	public Vector changeValues(List<Long> valuesToUpdate) throws Exception {
@@ -210,23 +256,26 @@ public class Vector implements Comparable<Vector>{
 			Don't mutate the existing vector, instead create a new one
 			NOTE:  this vector could contain more elements than are being changed.
 		*/
-		if(!(valuesToUpdate.size() <= this.coordinateValues.size())){
-			throw new Exception("Trying to set values of length to " + valuesToUpdate.size() + " beyond end of list length " + this.coordinateValues);
+		if(!(valuesToUpdate.size() <= this.values.length)){
+			throw new Exception("Trying to set values of length to " + valuesToUpdate.size() + " beyond end of list length " + this);
 		}
 
-		List<Long> newValues = new ArrayList<Long>();
+		long [] newValues = this.values.clone();
 		for(int i = 0; i < valuesToUpdate.size(); i++){
-			newValues.add(valuesToUpdate.get(i));
-		}
-		//  Add any remaining coordinate values:
-		for(int i = valuesToUpdate.size(); i < this.coordinateValues.size(); i++){
-			newValues.add(this.coordinateValues.get(i));
+			newValues[i] = valuesToUpdate.get(i);
 		}
-
 		return new Vector(newValues);
 	}
 
 	public String toString(){
-		return "(" + this.coordinateValues.stream().map(Object::toString).collect(Collectors.joining(", ")) + ")";
+		StringBuilder sb = new StringBuilder("(");
+		for(int i = 0; i < this.values.length; i++){
+			if(i > 0){
+				sb.append(", ");
+			}
+			sb.append(this.values[i]);
+		}
+		sb.append(")");
+		return sb.toString();
 	}
 }
@@ -35,6 +35,8 @@ package org.res.block;
 import javax.websocket.Session;
 import javax.websocket.RemoteEndpoint;
 import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 
 import java.util.Set;
 import java.util.HashSet;
@@ -48,23 +50,55 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
 
-public class WebsocketBlockSession extends BlockSession {
+public class WebsocketBlockSession extends BlockSession implements AsyncBinaryMessageSender {
 
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 	private Session session; /* Don't return any references to session to ensure thread safety. */
 	private Object monitor = new Object();
+	private final SlowConsumerPolicy slowConsumerPolicy;
+	private final Long maxOutboundQueueBytes;
+	private OutboundMessageQueue outboundMessageQueue = null;
 
 	public WebsocketBlockSession(Session session) throws Exception {
+		this(session, null, null);
+	}
+
+	public WebsocketBlockSession(Session session, SlowConsumerPolicy slowConsumerPolicy, Long maxOutboundQueueBytes) throws Exception {
 		super();
 		this.session = session;
+		this.slowConsumerPolicy = slowConsumerPolicy;
+		this.maxOutboundQueueBytes = maxOutboundQueueBytes;
 	}
 
 	public void close(String reason) throws Exception {
+		this.getOutboundMessageQueue().close();
 		synchronized (monitor){
 			this.session.close();
 		}
 	}
 
+	public void enqueueBlockMessage(BlockMessage m) throws Exception{
+		this.getOutboundMessageQueue().enqueue(m, this.getProtocolVersion());
+	}
+
+	public OutboundMessageQueue getOutboundMessageQueue(){
+		synchronized (monitor){
+			if(this.outboundMessageQueue == null){
+				this.outboundMessageQueue = new OutboundMessageQueue(this, this.slowConsumerPolicy, this.maxOutboundQueueBytes);
+			}
+			return this.outboundMessageQueue;
+		}
+	}
+
+	public void sendBinaryAsync(ByteBuffer byteBuffer, SendHandler handler) throws Exception{
+		if(this.session.isOpen()){
+			this.getAsyncRemote().sendBinary(byteBuffer, handler);
+		}else{
+			logger.info("Session '" + this.session.getId() + "' was closed.  Discarding the " + byteBuffer.remaining() + " bytes that were scheduled to be sent to this session.");
+			handler.onResult(new SendResult(new IOException("Session '" + this.session.getId() + "' was closed.")));
+		}
+	}
+
 	public void sendBytes(byte [] bytes) throws Exception{
 		if(this.session.isOpen()){
 			this.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes));
@@ -79,6 +113,12 @@ public class WebsocketBlockSession extends BlockSession {
 		}
 	}
 
+	private RemoteEndpoint.Async getAsyncRemote(){
+		synchronized (monitor){
+			return this.session.getAsyncRemote();
+		}
+	}
+
 	public String getId(){
 		synchronized (monitor){
 			return this.session.getId();
@@ -157,7 +157,7 @@ public class WebsocketsCommunicationProcessor{
 	@OnOpen
 	public void onOpen(Session session) throws Exception {
 		logger.info("In onOpen...");
-		this.blockManagerThreadCollection.onOpen(getBlockWorldConnection(), new WebsocketBlockSession(session));
+		this.blockManagerThreadCollection.onOpen(getBlockWorldConnection(), new WebsocketBlockSession(session, this.blockManagerThreadCollection.getSlowConsumerPolicy(), this.blockManagerThreadCollection.getMaxOutboundQueueBytes()));
 	}
 
 	@OnMessage
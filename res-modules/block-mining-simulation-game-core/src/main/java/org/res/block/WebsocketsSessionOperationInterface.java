@@ -57,7 +57,6 @@ import java.lang.invoke.MethodHandles;
 public class WebsocketsSessionOperationInterface implements SessionOperationInterface{
 
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-	protected Object lock = new Object();
 
 	public WebsocketsSessionOperationInterface(){
 	}
@@ -65,10 +64,8 @@ public class WebsocketsSessionOperationInterface implements SessionOperationInte
 
 	public void sendBlockMessage(BlockMessage m, BlockSession session) throws Exception{
 		if(session instanceof WebsocketBlockSession){
-			synchronized(lock){
-				byte [] byteEncodedResponse = m.asByteArray();
-				((WebsocketBlockSession)session).sendBytes(byteEncodedResponse);
-			}
+			//  Each session has its own queue, so a slow client doesn't hold up sends to the others:
+			((WebsocketBlockSession)session).enqueueBlockMessage(m);
 		}else{
 			throw new Exception("Expected sesion to be of type WebsocketBlockSession but it had type " + session.getClass().getName());
 		}
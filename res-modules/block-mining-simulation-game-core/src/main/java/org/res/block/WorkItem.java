@@ -66,5 +66,15 @@ public abstract class WorkItem {
 		return threadId;
 	}
 
+	public Object getCoalescingKey(){
+		//  Under the COALESCE overflow policy, a queued work item is replaced by a newer one with the same non-null key.
+		return null;
+	}
+
+	public void onRejected(String reason) throws Exception{
+		//  Called on the producer's thread when the work item queue has no room for this work item.
+		throw new Exception("Work item " + this.getClass().getName() + " was rejected.  " + reason);
+	}
+
 	public abstract void doWork() throws Exception;
 }
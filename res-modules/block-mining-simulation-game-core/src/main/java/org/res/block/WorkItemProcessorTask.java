@@ -73,7 +73,12 @@ public class WorkItemProcessorTask<T extends WorkItem> extends BlockManagerThrea
 
 	@Override
 	public String getBetterClassName() throws Exception{
-		return this.getClass().getName() + "<" + this.workItemClass.getName() + ", " + this.descriptiveClass.getName() + ">, thread.threadId()=" + threadId();
+		return this.getClass().getName() + "<" + this.workItemClass.getName() + ", " + this.descriptiveClass.getName() + ">, thread.threadId()=" + this.getExecutingThread().threadId();
+	}
+
+	@Override
+	public boolean canRunOnVirtualThread(){
+		return !this.workItemQueueOwner.getIsBlockingInNativeCode();
 	}
 
 	@Override
@@ -118,6 +123,6 @@ public class WorkItemProcessorTask<T extends WorkItem> extends BlockManagerThrea
 				this.workItemQueueOwner.getBlockManagerThreadCollection().setIsProcessFinished(true, e);
 			}
 		}
-		logger.info("Exiting WorkItemProcessorTask (id=" + Thread.currentThread().threadId() + "), exiting thread getName()=" + this.workItemQueueOwner.getClass().getName() + ", getIsProcessFinished()=" + this.workItemQueueOwner.getBlockManagerThreadCollection().getIsProcessFinished() + ", isInterrupted()=" + Thread.currentThread().isInterrupted() + ", this.getIsThreadFinished()=" + this.getIsThreadFinished());
+		logger.info("Exiting WorkItemProcessorTask (id=" + Thread.currentThread().threadId() + "), exiting thread getName()=" + this.workItemQueueOwner.getClass().getName() + ", getIsProcessFinished()=" + this.workItemQueueOwner.getBlockManagerThreadCollection().getIsProcessFinished() + ", isInterrupted()=" + Thread.currentThread().isInterrupted() + ", this.getIsThreadFinished()=" + this.getIsThreadFinished() + ", work item queue: " + this.workItemQueueOwner.getWorkItemQueueMetricsSummary());
 	}
 }
@@ -32,15 +32,18 @@
 //  SOFTWARE.
 package org.res.block;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.Comparator;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.ArrayList;
 
 import org.res.block.WorkItem;
@@ -50,46 +53,183 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 
+/*
+	Bounded work item queue with a separate capacity for each priority.  When
+	a priority is full the overflow policy decides whether the producer blocks,
+	the new work item gets rejected, or it replaces a queued work item with the
+	same coalescing key.  A rejected work item is told through onRejected().
+*/
 public class WorkItemQueue<T extends WorkItem> {
 
 	private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-	private int MAX_ITEMS = 10000;
-	private PriorityBlockingQueue<PrioritizedWorkItem<T>> priorityBlockingQueue;
+	public static final int DEFAULT_CAPACITY_PER_PRIORITY = 10000;
+	public static final WorkItemQueueOverflowPolicy DEFAULT_OVERFLOW_POLICY = WorkItemQueueOverflowPolicy.BLOCK;
+	public static final long DEFAULT_BLOCK_TIMEOUT_MILLISECONDS = 30000L;
+	public static final int NUM_WAIT_TIME_BUCKETS = 24; //  Bucket i counts waits shorter than 2^i microseconds that didn't fit in bucket i - 1.
+
+	/*  Not 'synchronized', so a virtual thread that waits in here gives up its carrier thread: */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
 	private int numPriorities = WorkItemPriority.size;
-	private Map<Long, BlockingQueue<WorkItemResult>> blockingWorkItemResults = new ConcurrentHashMap<Long, BlockingQueue<WorkItemResult>>();
+	private final List<ArrayDeque<PrioritizedWorkItem<T>>> queuesByPriority = new ArrayList<ArrayDeque<PrioritizedWorkItem<T>>>();
+	private final List<Condition> notFullByPriority = new ArrayList<Condition>();
+	private final Map<Object, PrioritizedWorkItem<T>> pendingByCoalescingKey = new HashMap<Object, PrioritizedWorkItem<T>>();
+	private int capacityPerPriority = DEFAULT_CAPACITY_PER_PRIORITY;
+	private WorkItemQueueOverflowPolicy overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+	private long blockTimeoutMilliseconds = DEFAULT_BLOCK_TIMEOUT_MILLISECONDS;
+	private volatile int size = 0;
+	private Long consumerThreadId = null;
+
+	private final Map<Long, WorkItemResultFuture> pendingResultFutures = new ConcurrentHashMap<Long, WorkItemResultFuture>();
+	private final ConcurrentLinkedQueue<WorkItemResultFuture> resultFuturePool = new ConcurrentLinkedQueue<WorkItemResultFuture>();
+	private final AtomicLong numResultFuturesAllocated = new AtomicLong(0L);
+
+	//  Metrics:
+	private int maxSizeSeen = 0;
+	private long numPut = 0L;
+	private long numTaken = 0L;
+	private long numCoalesced = 0L;
+	private long numRejected = 0L;
+	private long numProducerWaits = 0L;
+	private long totalProducerWaitNanos = 0L;
+	private long totalWaitNanos = 0L;
+	private long maxWaitNanos = 0L;
+	private final long [] waitTimeHistogram = new long [NUM_WAIT_TIME_BUCKETS];
 
 	public WorkItemQueue() {
-		this.priorityBlockingQueue = new PriorityBlockingQueue<PrioritizedWorkItem<T>>(MAX_ITEMS, new PrioritizedWorkItemComparator<T>());
+		for(int i = 0; i < this.numPriorities; i++){
+			this.queuesByPriority.add(new ArrayDeque<PrioritizedWorkItem<T>>());
+			this.notFullByPriority.add(this.lock.newCondition());
+		}
+	}
+
+	public void configure(Integer capacityPerPriority, WorkItemQueueOverflowPolicy overflowPolicy, Long blockTimeoutMilliseconds) throws Exception {
+		if(capacityPerPriority != null && capacityPerPriority < 1){
+			throw new Exception("Expected a work item queue capacity of at least 1, but it was " + capacityPerPriority + ".");
+		}
+		lock.lock();
+		try{
+			this.capacityPerPriority = capacityPerPriority == null ? DEFAULT_CAPACITY_PER_PRIORITY : capacityPerPriority;
+			this.overflowPolicy = overflowPolicy == null ? DEFAULT_OVERFLOW_POLICY : overflowPolicy;
+			this.blockTimeoutMilliseconds = blockTimeoutMilliseconds == null ? DEFAULT_BLOCK_TIMEOUT_MILLISECONDS : blockTimeoutMilliseconds;
+			for(Condition notFull : this.notFullByPriority){
+				notFull.signalAll();
+			}
+		}finally{
+			lock.unlock();
+		}
 	}
 
 	public int size(){
-		return this.priorityBlockingQueue.size();
+		return this.size;
 	}
 
-	private void putWorkItemInternal(T workItem, WorkItemPriority priority) throws Exception {
-		while (true) {
-			try {
-				if(this.priorityBlockingQueue.size() == this.MAX_ITEMS){
-					throw new Exception("Blocking queue is full, MAX_ITEMS=" + MAX_ITEMS + ".  Expect a deadlock.  TODO: make this work better. ");
+	private boolean offerWorkItemInternal(T workItem, WorkItemPriority priority, long timeoutMilliseconds) throws Exception {
+		int p = priority.getPriorityValue();
+		ArrayDeque<PrioritizedWorkItem<T>> queue = this.queuesByPriority.get(p);
+		lock.lockInterruptibly();
+		try{
+			Object coalescingKey = this.overflowPolicy == WorkItemQueueOverflowPolicy.COALESCE ? workItem.getCoalescingKey() : null;
+			if(queue.size() >= this.capacityPerPriority){
+				if(coalescingKey != null){
+					//  The queued work item keeps its place, but does the newer work:
+					PrioritizedWorkItem<T> older = this.pendingByCoalescingKey.get(coalescingKey);
+					if(older != null){
+						older.setWorkItem(workItem);
+						this.numCoalesced++;
+						return true;
+					}
+				}
+				//  The consumer can never make room for itself, so it doesn't wait:
+				boolean isConsumer = this.consumerThreadId != null && this.consumerThreadId == Thread.currentThread().threadId();
+				if(this.overflowPolicy == WorkItemQueueOverflowPolicy.REJECT || isConsumer || timeoutMilliseconds <= 0L){
+					this.numRejected++;
+					return false;
+				}
+				long waitStart = System.nanoTime();
+				long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+				this.numProducerWaits++;
+				while(queue.size() >= this.capacityPerPriority && remainingNanos > 0L){
+					remainingNanos = this.notFullByPriority.get(p).awaitNanos(remainingNanos);
 				}
-				this.priorityBlockingQueue.put(new PrioritizedWorkItem<T>(workItem, priority));
-				return;
-			} catch (InterruptedException e) {
-				logger.info("produceWorkItem InterruptedException");
+				this.totalProducerWaitNanos += System.nanoTime() - waitStart;
+				if(queue.size() >= this.capacityPerPriority){
+					this.numRejected++;
+					return false;
+				}
+			}
+			PrioritizedWorkItem<T> prioritizedWorkItem = new PrioritizedWorkItem<T>(workItem, priority);
+			queue.addLast(prioritizedWorkItem);
+			if(coalescingKey != null){
+				this.pendingByCoalescingKey.put(coalescingKey, prioritizedWorkItem);
 			}
+			this.size++;
+			this.numPut++;
+			this.maxSizeSeen = Math.max(this.maxSizeSeen, this.size);
+			this.notEmpty.signal();
+			return true;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	public boolean offerWorkItem(T workItem, WorkItemPriority priority, long timeoutMilliseconds) throws Exception {
+		/*  Returns false instead of calling onRejected() if there is still no room after the timeout. */
+		if(workItem.getIsBlocking()){
+			throw new Exception("Expected a non-blocking work item.");
+		}else{
+			return this.offerWorkItemInternal(workItem, priority, timeoutMilliseconds);
 		}
 	}
+
 	public void putWorkItem(T workItem, WorkItemPriority priority) throws Exception {
 		if(workItem.getIsBlocking()){
 			throw new Exception("Expected a non-blocking work item.");
 		}else{
-			this.putWorkItemInternal(workItem, priority);
+			if(!this.offerWorkItemInternal(workItem, priority, this.blockTimeoutMilliseconds)){
+				workItem.onRejected(this.getRejectionDescription(priority));
+			}
 		}
 	}
 
 	protected T takeWorkItem() throws Exception {
-		T workItem = this.priorityBlockingQueue.take().getWorkItem();
-		return workItem;
+		lock.lockInterruptibly();
+		try{
+			this.consumerThreadId = Thread.currentThread().threadId();
+			while(this.size == 0){
+				this.notEmpty.await();
+			}
+			for(int p = 0; p < this.numPriorities; p++){
+				PrioritizedWorkItem<T> prioritizedWorkItem = this.queuesByPriority.get(p).pollFirst();
+				if(prioritizedWorkItem != null){
+					T workItem = prioritizedWorkItem.getWorkItem();
+					Object coalescingKey = this.overflowPolicy == WorkItemQueueOverflowPolicy.COALESCE ? workItem.getCoalescingKey() : null;
+					if(coalescingKey != null && this.pendingByCoalescingKey.get(coalescingKey) == prioritizedWorkItem){
+						this.pendingByCoalescingKey.remove(coalescingKey);
+					}
+					this.size--;
+					this.numTaken++;
+					this.recordWaitTime(System.nanoTime() - prioritizedWorkItem.getEnqueueTimeNanos());
+					this.notFullByPriority.get(p).signal();
+					return workItem;
+				}
+			}
+			throw new Exception("Expected to find a work item in a queue with size=" + this.size + ".");
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	private void recordWaitTime(long waitNanos){
+		this.totalWaitNanos += waitNanos;
+		this.maxWaitNanos = Math.max(this.maxWaitNanos, waitNanos);
+		long waitMicroseconds = waitNanos / 1000L;
+		int bucket = 64 - Long.numberOfLeadingZeros(waitMicroseconds);
+		this.waitTimeHistogram[Math.min(bucket, NUM_WAIT_TIME_BUCKETS - 1)]++;
+	}
+
+	private String getRejectionDescription(WorkItemPriority priority){
+		return "The work item queue for " + priority + " is full with capacity=" + this.capacityPerPriority + " and overflowPolicy=" + this.overflowPolicy + ".";
 	}
 
 	public WorkItemResult putBlockingWorkItem(T workItem, WorkItemPriority priority) throws Exception {
@@ -99,12 +239,26 @@ public class WorkItemQueue<T extends WorkItem> {
 		 */
 		if(workItem.getIsBlocking()){
 			Long currentThreadId = workItem.getThreadId();
-			if(!blockingWorkItemResults.containsKey(currentThreadId)){
-				blockingWorkItemResults.put(currentThreadId, new LinkedBlockingDeque<WorkItemResult>());
-				logger.info("Added a new result queue for blocking work items that will be returned to thread_id=" + currentThreadId);
+			WorkItemResultFuture future = this.resultFuturePool.poll();
+			if(future == null){
+				future = new WorkItemResultFuture();
+				this.numResultFuturesAllocated.incrementAndGet();
 			}
-			this.putWorkItemInternal(workItem, priority);
-			return blockingWorkItemResults.get(currentThreadId).take();
+			this.pendingResultFutures.put(currentThreadId, future);
+			WorkItemResult result = null;
+			try{
+				if(!this.offerWorkItemInternal(workItem, priority, this.blockTimeoutMilliseconds)){
+					workItem.onRejected(this.getRejectionDescription(priority));
+					throw new Exception("Blocking work item " + workItem.getClass().getName() + " was rejected.  " + this.getRejectionDescription(priority));
+				}
+				result = future.take();
+			}finally{
+				this.pendingResultFutures.remove(currentThreadId);
+			}
+			//  Only reuse it after it was completed, otherwise a late result could land in someone else's wait:
+			future.reset();
+			this.resultFuturePool.offer(future);
+			return result;
 		}else{
 			throw new Exception("Expected a blocking work item.");
 		}
@@ -112,6 +266,89 @@ public class WorkItemQueue<T extends WorkItem> {
 
 	public void addResultForThreadId(WorkItemResult workItemResult, Long threadId) throws Exception {
 		logger.info("About to return a blocking result " + workItemResult.getClass() + " to thread_id=" + threadId);
-		this.blockingWorkItemResults.get(threadId).put(workItemResult);
+		WorkItemResultFuture future = this.pendingResultFutures.get(threadId);
+		if(future == null){
+			logger.info("Dropped a blocking result " + workItemResult.getClass() + " because thread_id=" + threadId + " isn't waiting on one.");
+		}else{
+			future.complete(workItemResult);
+		}
+	}
+
+	public long getNumResultFuturesAllocated(){
+		return this.numResultFuturesAllocated.get();
+	}
+
+	public long getNumRejected(){
+		lock.lock();
+		try{
+			return this.numRejected;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	public long getNumCoalesced(){
+		lock.lock();
+		try{
+			return this.numCoalesced;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	public long getNumProducerWaits(){
+		lock.lock();
+		try{
+			return this.numProducerWaits;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	public int getMaxSizeSeen(){
+		lock.lock();
+		try{
+			return this.maxSizeSeen;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	public int getSizeForPriority(WorkItemPriority priority){
+		lock.lock();
+		try{
+			return this.queuesByPriority.get(priority.getPriorityValue()).size();
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	public long [] getWaitTimeHistogram(){
+		lock.lock();
+		try{
+			return Arrays.copyOf(this.waitTimeHistogram, this.waitTimeHistogram.length);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	public String getMetricsSummary(){
+		lock.lock();
+		try{
+			List<Integer> sizeByPriority = new ArrayList<Integer>();
+			for(ArrayDeque<PrioritizedWorkItem<T>> queue : this.queuesByPriority){
+				sizeByPriority.add(queue.size());
+			}
+			//  Only show the histogram up to the longest wait:
+			int lastBucket = 0;
+			for(int i = 0; i < NUM_WAIT_TIME_BUCKETS; i++){
+				if(this.waitTimeHistogram[i] > 0L){
+					lastBucket = i;
+				}
+			}
+			return "sizeByPriority=" + sizeByPriority + ", capacityPerPriority=" + this.capacityPerPriority + ", overflowPolicy=" + this.overflowPolicy + ", maxSizeSeen=" + this.maxSizeSeen + ", numPut=" + this.numPut + ", numTaken=" + this.numTaken + ", numCoalesced=" + this.numCoalesced + ", numRejected=" + this.numRejected + ", numProducerWaits=" + this.numProducerWaits + ", totalProducerWaitMs=" + (this.totalProducerWaitNanos / 1000000L) + ", averageWaitUs=" + (this.numTaken == 0L ? 0L : (this.totalWaitNanos / this.numTaken) / 1000L) + ", maxWaitUs=" + (this.maxWaitNanos / 1000L) + ", waitTimeHistogramLog2Us=" + Arrays.toString(Arrays.copyOf(this.waitTimeHistogram, lastBucket + 1)) + ", numResultFuturesAllocated=" + this.numResultFuturesAllocated.get();
+		}finally{
+			lock.unlock();
+		}
 	}
 }
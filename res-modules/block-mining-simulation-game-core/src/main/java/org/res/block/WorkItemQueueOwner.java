@@ -67,4 +67,12 @@ public abstract class WorkItemQueueOwner<T extends WorkItem> {
 	public int getWorkItemQueueSize(){
 		return this.workItemQueue.size();
 	}
+
+	public String getWorkItemQueueMetricsSummary(){
+		return this.workItemQueue.getMetricsSummary();
+	}
+
+	public boolean getIsBlockingInNativeCode(){
+		return false;
+	}
 }
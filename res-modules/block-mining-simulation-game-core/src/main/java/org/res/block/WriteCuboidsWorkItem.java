@@ -55,17 +55,14 @@ public class WriteCuboidsWorkItem extends BlockModelContextWorkItem {
 	}
 
 	public void doWork() throws Exception{
-		for(Cuboid c : this.cuboidsToWrite){
-			blockModelContext.getBlockModelInterface().writeBlocksInRegion(c);
-		}
+		//  All cuboids in this work item are written in a single transaction:
+		blockModelContext.getBlockModelInterface().writeBlocksInRegions(this.cuboidsToWrite);
 
-		List<CuboidAddress> cuboidAddresses = new ArrayList<CuboidAddress>();
 		for(Cuboid c : this.cuboidsToWrite){
 			this.blockModelContext.logMessage("In doWork for WriteCuboitsWorkItem with ca=" + c.getCuboidAddress());
-			cuboidAddresses.add(c.getCuboidAddress());
 		}
 
-		blockModelContext.postCuboidsWrite(this.numDimensions, cuboidAddresses, this.authorizedClientId);
+		blockModelContext.postCuboidsWrite(this.numDimensions, this.cuboidsToWrite, this.authorizedClientId);
 
 		AcknowledgementBlockMessage acknowledgementBlockMessage = new AcknowledgementBlockMessage(this.blockModelContext, this.conversationId, this.authorizedClientId);
 		SendBlockMessageToSessionWorkItem notifyWorkItem = new SendBlockMessageToSessionWorkItem(this.blockModelContext, this.blockSession, acknowledgementBlockMessage);
@@ -46,8 +46,11 @@ import org.res.block.BlockManagerServerApplicationContextParameters;
 public interface BlockDAO {
         List<Cuboid> getBlocksInRegions(List<CuboidAddress> cuboidAddresses) throws Exception;
         void writeBlocksInRegion(Cuboid cuboid) throws Exception;
+        void writeBlocksInRegions(List<Cuboid> cuboids) throws Exception;
 	void setBlockModelContext(BlockModelContext blockModelContext);
         void setBlockManagerServerApplicationContextParameters(BlockManagerServerApplicationContextParameters blockManagerServerApplicationContextParameters);
         void ensureBlockTableExists() throws Exception;
         void turnOffAutoCommit() throws Exception;
+        String getWorldMetadataValue(String name) throws Exception;
+        void setWorldMetadataValue(String name, String value) throws Exception;
 }
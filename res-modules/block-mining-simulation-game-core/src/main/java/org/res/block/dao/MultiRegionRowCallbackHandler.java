@@ -0,0 +1,128 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.ArrayList;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import org.res.block.Cuboid;
+import org.res.block.CuboidAddress;
+import org.res.block.CuboidData;
+import org.res.block.CuboidDataLengths;
+import org.res.block.Coordinate;
+
+public class MultiRegionRowCallbackHandler implements RowCallbackHandler {
+
+	/*
+		Collects the rows of a single multi-region read statement and sorts them
+		into one buffer per requested region.  Every row is expected to have a
+		'region_index' column that identifies which requested region it was
+		selected for, followed by one column per coordinate dimension and the
+		block data.
+	*/
+	private final List<CuboidAddress> cuboidAddresses;
+	private final long [][] lowerValues;
+	private final long [][] dimensionStrides;
+	private final byte [][][] blockDataByRegion;
+	private long numRows = 0L;
+
+	public MultiRegionRowCallbackHandler(List<CuboidAddress> cuboidAddresses) {
+		this.cuboidAddresses = cuboidAddresses;
+		this.lowerValues = new long [cuboidAddresses.size()][];
+		this.dimensionStrides = new long [cuboidAddresses.size()][];
+		this.blockDataByRegion = new byte [cuboidAddresses.size()][][];
+		for(int r = 0; r < cuboidAddresses.size(); r++){
+			CuboidAddress cuboidAddress = cuboidAddresses.get(r);
+			int numDimensions = cuboidAddress.getNumDimensions().intValue();
+			Coordinate lower = cuboidAddress.getCanonicalLowerCoordinate();
+			this.lowerValues[r] = new long [numDimensions];
+			this.dimensionStrides[r] = new long [numDimensions];
+			long stride = 1L;
+			for(int i = 0; i < numDimensions; i++){
+				this.lowerValues[r][i] = lower.getValueAtIndex((long)i);
+				this.dimensionStrides[r][i] = stride;
+				stride *= cuboidAddress.getWidthForIndex((long)i);
+			}
+			this.blockDataByRegion[r] = new byte [(int)cuboidAddress.getVolume()][];
+		}
+	}
+
+	public void processRow(ResultSet rs) throws SQLException {
+		int regionIndex = rs.getInt(1);
+		long [] lower = this.lowerValues[regionIndex];
+		long [] strides = this.dimensionStrides[regionIndex];
+		//  Same calculation as CuboidAddress.getLinearArrayIndexForCoordinate, without building a Coordinate:
+		long blockOffsetInArray = 0L;
+		for(int i = 0; i < lower.length; i++){
+			blockOffsetInArray += (rs.getLong(i + 2) - lower[i]) * strides[i];
+		}
+		this.blockDataByRegion[regionIndex][(int)blockOffsetInArray] = rs.getBytes(lower.length + 2);
+		this.numRows++;
+	}
+
+	public long getNumRows(){
+		return this.numRows;
+	}
+
+	public List<Cuboid> getCuboids() throws Exception {
+		List<Cuboid> cuboids = new ArrayList<Cuboid>();
+		for(int r = 0; r < this.cuboidAddresses.size(); r++){
+			CuboidAddress cuboidAddress = this.cuboidAddresses.get(r);
+			byte [][] blocks = this.blockDataByRegion[r];
+			long [] dataLengths = new long [blocks.length];
+			int totalSize = 0;
+			for(int j = 0; j < blocks.length; j++){
+				if(blocks[j] == null){
+					dataLengths[j] = -1L; /*  Default to block not present. */
+				}else{
+					dataLengths[j] = (long)blocks[j].length;
+					totalSize += blocks[j].length;
+				}
+			}
+
+			byte [] data = new byte [totalSize];
+			int offset = 0;
+			for(int j = 0; j < blocks.length; j++){
+				if(blocks[j] != null){
+					System.arraycopy(blocks[j], 0, data, offset, blocks[j].length);
+					offset += blocks[j].length;
+				}
+			}
+			cuboids.add(new Cuboid(cuboidAddress, new CuboidDataLengths(cuboidAddress, dataLengths), new CuboidData(data)));
+		}
+		return cuboids;
+	}
+}
@@ -45,6 +45,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Arrays;
 import java.sql.Types;
 
@@ -54,6 +55,7 @@ import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.res.block.dao.BlockDAO;
 import org.res.block.dao.BlockRecordRowMapper;
 import org.res.block.dao.BlockRecord;
+import org.res.block.dao.MultiRegionRowCallbackHandler;
 import org.res.block.Cuboid;
 import org.res.block.CuboidAddress;
 import org.res.block.CuboidDataLengths;
@@ -66,7 +68,8 @@ import org.res.block.BlockModelContext;
 import org.res.block.RegionIteration;
 import org.res.block.BlockManagerServerApplicationContextParameters;
 
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.transaction.support.TransactionCallback;
@@ -95,6 +98,25 @@ public class BlockDAOImpl implements BlockDAO {
 
 	private TransactionTemplate transactionTemplate;
 
+	public static final int DEFAULT_WRITE_BATCH_SIZE = 1000;
+	private int writeBatchSize = DEFAULT_WRITE_BATCH_SIZE;
+	private String upsertBlockSQL = null;
+
+	private static final int MAX_REGIONS_PER_READ_STATEMENT = 100;
+	private static final int MAX_CACHED_MULTI_REGION_SELECT_SHAPES = 512;
+	private Map<String, String> multiRegionSelectSQLCache = new ConcurrentHashMap<String, String>();
+
+	public void setWriteBatchSize(int writeBatchSize) throws Exception{
+		if(writeBatchSize < 1){
+			throw new Exception("Write batch size must be at least 1, but it was " + writeBatchSize + ".");
+		}
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	public int getWriteBatchSize(){
+		return this.writeBatchSize;
+	}
+
 	public void setBlockModelContext(BlockModelContext blockModelContext){
 		this.blockModelContext = blockModelContext;
                 blockModelContext.logMessage("Set blockModelContext in BlockDAOImpl.");
@@ -138,6 +160,19 @@ public class BlockDAOImpl implements BlockDAO {
                 this.namedParameterJdbcTemplate.update(createIndexSQL, queryParams);
         }
 
+	public void createWorldMetadataTable() throws Exception{
+		//  Small named values that belong to the whole world, like the seed used to generate its terrain:
+		String createTableSQL =
+		"CREATE TABLE IF NOT EXISTS world_metadata (" + 
+		"	name text NOT NULL," + 
+		"	value text NOT NULL," + 
+		"	PRIMARY KEY(name)" + 
+		");";
+		Map<String, Object> queryParams = new HashMap<String, Object>();
+                logger.info("About to run: " + createTableSQL);
+                this.namedParameterJdbcTemplate.update(createTableSQL, queryParams);
+	}
+
 	public void turnOffAutoCommit() throws Exception{
                 this.dataSource.getConnection().setAutoCommit(false);
 	}
@@ -164,6 +199,7 @@ public class BlockDAOImpl implements BlockDAO {
 					logger.info("Verified that table 'block' DOES NOT exist for sqlite.  Need to create...");
 					this.createBlockTable();
 				}
+				this.createWorldMetadataTable();
 			}else if(blockManagerServerApplicationContextParameters.getDatabaseBlockWorldConnectionParameters().getSubprotocol().equals("postgresql")){
 				String SQL = "SELECT EXISTS (" + 
 				"	SELECT FROM information_schema.tables" + 
@@ -175,6 +211,7 @@ public class BlockDAOImpl implements BlockDAO {
 				if(!hasBlockTable){
 					this.createBlockTable();
 				}
+				this.createWorldMetadataTable();
 			}else{
 				status.setRollbackOnly();
 				this.blockModelContext.getBlockManagerThreadCollection().setIsProcessFinished(true, new Exception("Unknown database subprotocol."));
@@ -226,10 +263,7 @@ public class BlockDAOImpl implements BlockDAO {
 			queryParams.put("x" + String.valueOf(i) + "_max", cuboidAddress.getCanonicalUpperCoordinate().getValueAtIndex(i));
         	}
 		List<BlockRecord> blocks = this.namedParameterJdbcTemplate.query(sql, queryParams, new BlockRecordRowMapper());
-		blockModelContext.logMessage("Did a read request for region: " + cuboidAddress.toString() + "'");
-		for(BlockRecord b : blocks){
-			blockModelContext.logMessage("Got a block from database: " + b.getCoordinate().getValueAtIndex(0L) + ", " + b.getCoordinate().getValueAtIndex(1L) + ", " + b.getCoordinate().getValueAtIndex(2L) + ": '" + new String(b.getData(), "UTF-8") + "'");
-		}
+		blockModelContext.logMessage("Did a read request for region: " + cuboidAddress.toString() + "', got " + blocks.size() + " blocks.");
 
 		long cuboidVolumeInBlocks = cuboidAddress.getVolume();
 		BlockMessageBinaryBuffer dataForOneCuboid = new BlockMessageBinaryBuffer();
@@ -241,7 +275,6 @@ public class BlockDAOImpl implements BlockDAO {
 		for(int j = 0; j < blocks.size(); j++){
 			BlockRecord r = blocks.get(j);
 			long blockOffsetInArray = cuboidAddress.getLinearArrayIndexForCoordinate(r.getCoordinate());
-			blockModelContext.logMessage("OFFSET IS " + blockOffsetInArray);
 			dataLengths[(int)blockOffsetInArray] = (long)r.getData().length;
 			dataForOneCuboid.writeBytes(r.getData());
 		}
@@ -252,12 +285,92 @@ public class BlockDAOImpl implements BlockDAO {
 		return new Cuboid(cuboidAddress, currentCuboidDataLengths, currentCuboidData);
 	}
 
+	public String getMultiRegionSelectSQL(int numRegions, long numDimensions) throws Exception {
+		/*
+			Every region gets its own range predicate, and the results are combined with
+			UNION ALL so that all regions are read with a single statement.  The
+			'region_index' column tells the row handler which region a row was selected
+			for, which also works when requested regions overlap.  Only the shape of
+			the query depends on the number of regions, so the SQL is cached by shape.
+		*/
+		String subprotocol = blockManagerServerApplicationContextParameters.getDatabaseBlockWorldConnectionParameters().getSubprotocol();
+		String shapeKey = subprotocol + ":" + numRegions + ":" + numDimensions;
+		String cachedSQL = this.multiRegionSelectSQLCache.get(shapeKey);
+		if(cachedSQL != null){
+			return cachedSQL;
+		}
+
+		List<String> selectCoordinatesString = new ArrayList<String>();
+		List<String> coordinateFiltersString = new ArrayList<String>();
+		for(long i = 0; i < numDimensions; i++){
+			selectCoordinatesString.add("x" + String.valueOf(i));
+			coordinateFiltersString.add("(x" + String.valueOf(i) + " >= ? AND x" + String.valueOf(i) + " < ?)");
+		}
+
+		List<String> regionSelects = new ArrayList<String>();
+		for(int r = 0; r < numRegions; r++){
+			regionSelects.add(
+				"SELECT\n" +
+				"	" + String.valueOf(r) + " AS region_index,\n" +
+				"	" + String.join(",", selectCoordinatesString) + ",\n" +
+				"	data\n" +
+				"FROM\n" +
+				"	block\n" +
+				"WHERE\n" +
+				String.join(" AND ", coordinateFiltersString) + "\n"
+			);
+		}
+		String sql = String.join("UNION ALL\n", regionSelects) + ";";
+
+		if(this.multiRegionSelectSQLCache.size() >= MAX_CACHED_MULTI_REGION_SELECT_SHAPES){
+			this.multiRegionSelectSQLCache.clear();
+		}
+		this.multiRegionSelectSQLCache.put(shapeKey, sql);
+		return sql;
+	}
+
+	public List<Cuboid> getBlocksInRegionsWithSingleStatement(List<CuboidAddress> cuboidAddresses) throws Exception {
+		long numDimensions = cuboidAddresses.get(0).getNumDimensions();
+		for(CuboidAddress cuboidAddress : cuboidAddresses){
+			if(cuboidAddress.getNumDimensions() != numDimensions){
+				//  Not expected in practice, but the query shape assumes a fixed number of dimensions:
+				List<Cuboid> cuboids = new ArrayList<Cuboid>();
+				for(CuboidAddress ca : cuboidAddresses){
+					cuboids.add(this.getBlocksInRegion(ca));
+				}
+				return cuboids;
+			}
+		}
+
+		MultiRegionRowCallbackHandler multiRegionRowCallbackHandler = new MultiRegionRowCallbackHandler(cuboidAddresses);
+		this.jdbcTemplate.query(
+			this.getMultiRegionSelectSQL(cuboidAddresses.size(), numDimensions),
+			new PreparedStatementSetter() {
+				public void setValues(PreparedStatement ps) throws SQLException {
+					int parameterIndex = 1;
+					for(CuboidAddress cuboidAddress : cuboidAddresses){
+						Coordinate lower = cuboidAddress.getCanonicalLowerCoordinate();
+						Coordinate upper = cuboidAddress.getCanonicalUpperCoordinate();
+						for(long i = 0; i < numDimensions; i++){
+							ps.setLong(parameterIndex++, lower.getValueAtIndex(i));
+							ps.setLong(parameterIndex++, upper.getValueAtIndex(i));
+						}
+					}
+				}
+			},
+			multiRegionRowCallbackHandler
+		);
+		blockModelContext.logMessage("Did a read request for " + cuboidAddresses.size() + " regions, got " + multiRegionRowCallbackHandler.getNumRows() + " blocks.");
+		return multiRegionRowCallbackHandler.getCuboids();
+	}
+
         public List<Cuboid> getBlocksInRegionsInTransaction(List<CuboidAddress> cuboidAddresses, TransactionStatus status) {
 		try{
 			List<Cuboid> cuboids = new ArrayList<Cuboid>();
 
-			for(int i = 0; i < cuboidAddresses.size(); i++){
-				cuboids.add(this.getBlocksInRegion(cuboidAddresses.get(i)));
+			//  Very large requests are split up to stay below the bind parameter limits of the database:
+			for(int i = 0; i < cuboidAddresses.size(); i += MAX_REGIONS_PER_READ_STATEMENT){
+				cuboids.addAll(this.getBlocksInRegionsWithSingleStatement(cuboidAddresses.subList(i, Math.min(i + MAX_REGIONS_PER_READ_STATEMENT, cuboidAddresses.size()))));
 			}
 
 			return cuboids;
@@ -351,52 +464,16 @@ public class BlockDAOImpl implements BlockDAO {
         	}
         }
 
-        public void writeBlocksInRegionInTransaction(Cuboid c, TransactionStatus status) {
-		try{
-			CuboidAddress cuboidAddress = c.getCuboidAddress();
-			CuboidDataLengths dataLengths = c.getCuboidDataLengths();
-			CuboidData data = c.getCuboidData();
-
-			Coordinate lower = cuboidAddress.getCanonicalLowerCoordinate();
-			Coordinate upper = cuboidAddress.getCanonicalUpperCoordinate();
-
-			Coordinate currentCoordinate = cuboidAddress.getCanonicalLowerCoordinate();
-
-
-			List<BlockUpdateRecord> blockUpdateRecords = new ArrayList<BlockUpdateRecord>();
-
-			RegionIteration regionIteration = new RegionIteration(cuboidAddress.getCanonicalLowerCoordinate(), cuboidAddress);
-			do{
-				currentCoordinate = regionIteration.getCurrentCoordinate();
-				blockModelContext.logMessage("Here is currentCoordinate: " + currentCoordinate);
-
-
-				long blockOffsetInArray = cuboidAddress.getLinearArrayIndexForCoordinate(currentCoordinate);
-				long sizeOfBlock = dataLengths.getLengths()[(int)blockOffsetInArray];
-				long offsetOfBlock = dataLengths.getOffsets()[(int)blockOffsetInArray];
-				blockModelContext.logMessage("OFFSET index is " + blockOffsetInArray + " offset of block in data is " + offsetOfBlock + " size of data is " + sizeOfBlock);
-				byte [] blockData = data.getDataAtOffset(offsetOfBlock, sizeOfBlock);
-
-				String blockClassName = this.blockModelContext.getBlockSchema().getFirstBlockMatchDescriptionForByteArray(blockData);
-				blockModelContext.logMessage("Write block of class '" + blockClassName + "' at coordinate:" + currentCoordinate.toString() + " with data '" + new String(blockData, "UTF-8") + "'.");
-				if(blockClassName == null){
-					throw new Exception("Refusing to allow block of unrecogned type into database.");
-				}
-
-				blockUpdateRecords.add(new BlockUpdateRecord(currentCoordinate, blockData));
-			}while (regionIteration.incrementCoordinateWithinCuboidAddress());
-
+	public String getUpsertBlockSQL(){
+		if(this.upsertBlockSQL == null){
 			List<String> coordinateStrings = new ArrayList<String>();
-			for(long i = 0; i < NUM_DIMENSION_IN_DATABASE; i++){
-				coordinateStrings.add("x" + String.valueOf(i));
-			}
-
 			List<String> coordinateParamQuestionMarks = new ArrayList<String>();
 			for(long i = 0; i < NUM_DIMENSION_IN_DATABASE; i++){
+				coordinateStrings.add("x" + String.valueOf(i));
 				coordinateParamQuestionMarks.add("?");
 			}
 
-			this.jdbcTemplate.batchUpdate(
+			this.upsertBlockSQL =
 				"INSERT INTO\n" +
 				"	block\n" +
 				"	(\n" +
@@ -413,42 +490,154 @@ public class BlockDAOImpl implements BlockDAO {
 				"ON CONFLICT (" + String.join(",", coordinateStrings) + ") DO UPDATE\n" +
 				"SET\n" +
 				"	data = EXCLUDED.data,\n" +
-				"	last_modified = EXCLUDED.last_modified\n",
-				new BatchPreparedStatementSetter() {
-					public void setValues(PreparedStatement ps, int i) throws SQLException {
-						BlockUpdateRecord blockUpdateRecord = blockUpdateRecords.get(i);
+				"	last_modified = EXCLUDED.last_modified\n";
+		}
+		return this.upsertBlockSQL;
+	}
+
+	public void addBlockUpdateRecordsForCuboid(Cuboid c, List<BlockUpdateRecord> blockUpdateRecords) throws Exception {
+		CuboidAddress cuboidAddress = c.getCuboidAddress();
+		CuboidData data = c.getCuboidData();
+		long [] lengths = c.getCuboidDataLengths().getLengths();
+		long [] offsets = c.getCuboidDataLengths().getOffsets();
+
+		//  The region iteration visits blocks in the same order as their linear array index,
+		//  so the index can simply be counted instead of re-computed for every coordinate.
+		int blockOffsetInArray = 0;
+		RegionIteration regionIteration = new RegionIteration(cuboidAddress.getCanonicalLowerCoordinate(), cuboidAddress);
+		while(!regionIteration.isDone()){
+			Coordinate currentCoordinate = regionIteration.getCurrentCoordinate();
+			long sizeOfBlock = lengths[blockOffsetInArray];
+			byte [] blockData = data.getDataAtOffset(offsets[blockOffsetInArray], sizeOfBlock);
+			String blockClassName = this.blockModelContext.getBlockSchema().getFirstBlockMatchDescriptionForByteArray(blockData);
+			if(blockClassName == null){
+				throw new Exception("Refusing to allow block of unrecogned type into database at coordinate " + currentCoordinate + ".");
+			}
+			blockUpdateRecords.add(new BlockUpdateRecord(currentCoordinate, blockData));
+			blockOffsetInArray++;
+			regionIteration.incrementCoordinateWithinCuboidAddress();
+		}
+	}
+
+        public void writeBlocksInRegionsInTransaction(List<Cuboid> cuboids, TransactionStatus status) {
+		try{
+			List<BlockUpdateRecord> blockUpdateRecords = new ArrayList<BlockUpdateRecord>();
+			for(Cuboid c : cuboids){
+				this.addBlockUpdateRecordsForCuboid(c, blockUpdateRecords);
+			}
 
+			this.jdbcTemplate.batchUpdate(
+				this.getUpsertBlockSQL(),
+				blockUpdateRecords,
+				this.writeBatchSize,
+				new ParameterizedPreparedStatementSetter<BlockUpdateRecord>() {
+					public void setValues(PreparedStatement ps, BlockUpdateRecord blockUpdateRecord) throws SQLException {
+						Coordinate coordinate = blockUpdateRecord.getCoordinate();
 						for(int index = 0; index < NUM_DIMENSION_IN_DATABASE; index++){
-							if(index < cuboidAddress.getNumDimensions()){
-								ps.setLong(index + 1, blockUpdateRecord.getCoordinate().getValueAtIndex(Long.valueOf(index)));
-							}else{
-								ps.setLong(index + 1, 0L);
-							}
+							//  Any coordinate that was not specified is stored as zero:
+							ps.setLong(index + 1, coordinate.getValueAtIndex(Long.valueOf(index)));
 						}
 
 						ps.setBytes(NUM_DIMENSION_IN_DATABASE.intValue() + 1, blockUpdateRecord.getData());
 
 						ps.setLong(NUM_DIMENSION_IN_DATABASE.intValue() + 2, 0L); // Last modified
 					}
-
-					public int getBatchSize() {
-						return blockUpdateRecords.size();
-					}
 				}
 			);
+			blockModelContext.logMessage("Wrote " + blockUpdateRecords.size() + " blocks from " + cuboids.size() + " cuboids in batches of " + this.writeBatchSize + ".");
         	}catch(Exception e){
 			status.setRollbackOnly();
 			this.blockModelContext.getBlockManagerThreadCollection().setIsProcessFinished(true, e);
         	}
         }
 
+        public static void checkNoMissingBlocks(List<Cuboid> cuboids) throws Exception{
+		/*
+			A block with a negative length is not present, and there's no way to store that.  Writes
+			with missing blocks are refused before anything is written, so the database, the chunk
+			cache and the notifications sent to subscribers all keep agreeing with each other.
+		*/
+		for(Cuboid c : cuboids){
+			long numMissingBlocks = c.getCuboidDataLengths().getNumMissingBlocks();
+			if(numMissingBlocks > 0L){
+				throw new Exception("Refusing to write " + numMissingBlocks + " missing blocks (negative data length) in cuboid " + c.getCuboidAddress() + ".");
+			}
+		}
+	}
+
+        @Override
+        public void writeBlocksInRegions(List<Cuboid> cuboids) throws Exception{
+		BlockDAOImpl.checkNoMissingBlocks(cuboids);
+		this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+			        writeBlocksInRegionsInTransaction(cuboids, status);
+			}
+		});
+	}
+
         @Override
         public void writeBlocksInRegion(Cuboid c) throws Exception{
+		this.writeBlocksInRegions(Arrays.asList(c));
+	}
+
+	public void writeBlocksInRegionWithoutBatch(Cuboid c) throws Exception{
+		/*  The older literal SQL write path.  Only kept around to compare against the batched path. */
+		BlockDAOImpl.checkNoMissingBlocks(Arrays.asList(c));
 		this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
 			protected void doInTransactionWithoutResult(TransactionStatus status) {
-			        //writeBlocksInRegionInTransaction(c, status);
 			        writeBlocksInRegionInTransactionWithoutBatch(c, status);
 			}
 		});
 	}
+
+        public String getWorldMetadataValueInTransaction(String name, TransactionStatus status) {
+		/*  Errors are left to propagate so that a failed read can't be mistaken for a missing value. */
+		String sql = "SELECT value FROM world_metadata WHERE name = :name;";
+		Map<String, Object> queryParams = new HashMap<String, Object>();
+		queryParams.put("name", name);
+		List<String> values = this.namedParameterJdbcTemplate.queryForList(sql, queryParams, String.class);
+		return values.size() == 0 ? null : values.get(0);
+        }
+
+        @Override
+        public String getWorldMetadataValue(String name) throws Exception{
+		try{
+			return transactionTemplate.execute(new TransactionCallback<String>() {
+				public String doInTransaction(TransactionStatus status) {
+					return getWorldMetadataValueInTransaction(name, status);
+				}
+			});
+		}catch(RuntimeException e){
+			throw new Exception("Unable to read world metadata value '" + name + "'.", e);
+		}
+        }
+
+        public void setWorldMetadataValueInTransaction(String name, String value, TransactionStatus status) {
+		try{
+			String sql =
+				"INSERT INTO\n" +
+				"	world_metadata (name, value)\n" +
+				"VALUES\n" +
+				"	(:name, :value)\n" +
+				"ON CONFLICT (name) DO UPDATE\n" +
+				"SET\n" +
+				"	value = EXCLUDED.value\n";
+			Map<String, Object> queryParams = new HashMap<String, Object>();
+			queryParams.put("name", name);
+			queryParams.put("value", value);
+			this.namedParameterJdbcTemplate.update(sql, queryParams);
+		}catch(Exception e){
+			status.setRollbackOnly();
+			this.blockModelContext.getBlockManagerThreadCollection().setIsProcessFinished(true, e);
+		}
+        }
+
+        @Override
+        public void setWorldMetadataValue(String name, String value) throws Exception{
+		this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+			        setWorldMetadataValueInTransaction(name, value, status);
+			}
+		});
+	}
 }
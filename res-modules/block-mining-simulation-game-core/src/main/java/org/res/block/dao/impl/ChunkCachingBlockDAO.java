@@ -0,0 +1,450 @@
+//  Copyright (c) 2026 Robert Elder Software Inc.
+//   
+//  Robert Elder Software Proprietary License (Version 2026-04-09)
+//  
+//  In the context of this license, a 'Patron' means any individual who has made a 
+//  membership pledge, a purchase of merchandise, a donation, or any other 
+//  completed and committed financial contribution to Robert Elder Software Inc. 
+//  for an amount of money greater than $1.  For a list of ways to contribute 
+//  financially, visit https://blog.robertelder.org/patron
+//  
+//  Permission is hereby granted, to any 'Patron' the right to use this software 
+//  and associated documentation under the following conditions:
+//  
+//  1) The 'Patron' must be a natural person and NOT a commercial entity.
+//  2) The 'Patron' may use or modify the software for personal use only.
+//  3) The 'Patron' is NOT permitted to re-distribute this software in any way, 
+//  either unmodified, modified, or incorporated into another software product, 
+//  except as described in the document "REDISTRIBUTION.md" (a file with SHA256 
+//  hash value 'c39a6c8200a22caf30eac97095b78def80c9cab1b6f7ddd3fca7fdae71df43da').
+//  
+//  An individual natural person may use this software for a temporary one-time 
+//  trial period of up to 30 calendar days without becoming a 'Patron'.  After 
+//  these 30 days have elapsed, the individual must either become a 'Patron' or 
+//  stop using the software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+//  SOFTWARE.
+package org.res.block.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.res.block.dao.BlockDAO;
+import org.res.block.Cuboid;
+import org.res.block.CuboidAddress;
+import org.res.block.CuboidData;
+import org.res.block.CuboidDataLengths;
+import org.res.block.RegionCursor;
+import org.res.block.ChunkCacheEvictionPolicy;
+import org.res.block.BlockModelContext;
+import org.res.block.BlockManagerServerApplicationContextParameters;
+
+public class ChunkCachingBlockDAO implements BlockDAO {
+
+	/*
+		A write-through cache of whole chunks in front of another BlockDAO.  A read
+		is split into the chunks it covers, the chunks that aren't cached yet are
+		read with a single call to the database, and the requested regions are
+		then stitched together out of the cached chunks.  Writes always go to the
+		database first and then update any cached chunks they touch.  A read that
+		covers more chunks than the cache can hold is passed straight through.
+		The lock only guards the cache itself and is never held while the
+		database is being used.
+	*/
+
+	private static class CachedChunk {
+		private final CuboidAddress chunkAddress;
+		private final byte [][] blocks;  //  A null entry means that no block is present.
+		private boolean isReferenced = true;
+		private int clockIndex = -1;
+
+		public CachedChunk(CuboidAddress chunkAddress, byte [][] blocks){
+			this.chunkAddress = chunkAddress;
+			this.blocks = blocks;
+		}
+	}
+
+	private final Object lock = new Object();
+	private final BlockDAO blockDAO;
+	private final CuboidAddress chunkSize;
+	private final int maxChunks;
+	private final ChunkCacheEvictionPolicy evictionPolicy;
+	private final LinkedHashMap<CuboidAddress, CachedChunk> chunks;
+	private final List<CachedChunk> clock = new ArrayList<CachedChunk>();
+	private int clockHand = 0;
+	//  Bumped by every write and invalidation so that a read can tell if the chunks it read from the database might be out of date:
+	private long writeGeneration = 0L;
+	private int numWritesInProgress = 0;
+
+	private long numChunkHits = 0L;
+	private long numChunkMisses = 0L;
+	private long numEvictions = 0L;
+	private long numInvalidations = 0L;
+	private long numDatabaseReads = 0L;
+	private long numPassThroughReads = 0L;
+
+	public ChunkCachingBlockDAO(BlockDAO blockDAO, CuboidAddress chunkSize, int maxChunks, ChunkCacheEvictionPolicy evictionPolicy) throws Exception {
+		if(maxChunks < 1){
+			throw new Exception("Chunk cache must hold at least one chunk, but maxChunks=" + maxChunks);
+		}
+		this.blockDAO = blockDAO;
+		this.chunkSize = chunkSize;
+		this.maxChunks = maxChunks;
+		this.evictionPolicy = evictionPolicy;
+		//  With access order the least recently used chunk is always first:
+		this.chunks = new LinkedHashMap<CuboidAddress, CachedChunk>(16, 0.75f, evictionPolicy == ChunkCacheEvictionPolicy.LRU);
+	}
+
+	public BlockDAO getBlockDAO(){
+		return this.blockDAO;
+	}
+
+	private static long getLinearArrayIndex(CuboidAddress cuboidAddress, RegionCursor cursor){
+		long index = 0L;
+		for(int i = 0; i < cuboidAddress.getNumDimensions().intValue(); i++){
+			index += (cursor.getValueAtIndex(i) - cuboidAddress.getLowerValueForIndex(i)) * cuboidAddress.getStrideForIndex(i);
+		}
+		return index;
+	}
+
+	private static Cuboid makeCuboid(CuboidAddress cuboidAddress, byte [][] blocks){
+		long [] dataLengths = new long [blocks.length];
+		int totalSize = 0;
+		for(int j = 0; j < blocks.length; j++){
+			if(blocks[j] == null){
+				dataLengths[j] = -1L; /*  Default to block not present. */
+			}else{
+				dataLengths[j] = (long)blocks[j].length;
+				totalSize += blocks[j].length;
+			}
+		}
+
+		byte [] data = new byte [totalSize];
+		int offset = 0;
+		for(int j = 0; j < blocks.length; j++){
+			if(blocks[j] != null){
+				System.arraycopy(blocks[j], 0, data, offset, blocks[j].length);
+				offset += blocks[j].length;
+			}
+		}
+		return new Cuboid(cuboidAddress, new CuboidDataLengths(cuboidAddress, dataLengths), new CuboidData(data));
+	}
+
+	private static void copyBlocksFromCuboid(Cuboid cuboid, CuboidAddress destinationAddress, byte [][] destination) throws Exception {
+		/*  Copy the blocks from the part of 'cuboid' that overlaps 'destinationAddress': */
+		CuboidAddress intersection = cuboid.getCuboidAddress().getIntersectionCuboidAddress(destinationAddress, true);
+		if(intersection == null){
+			return;
+		}
+		long [] lengths = cuboid.getCuboidDataLengths().getLengths();
+		long [] offsets = cuboid.getCuboidDataLengths().getOffsets();
+		RegionCursor cursor = new RegionCursor(intersection);
+		while(!cursor.isDone()){
+			int sourceIndex = (int)getLinearArrayIndex(cuboid.getCuboidAddress(), cursor);
+			long length = lengths[sourceIndex];
+			destination[(int)getLinearArrayIndex(destinationAddress, cursor)] = length < 0L ? null : cuboid.getCuboidData().getDataAtOffset(offsets[sourceIndex], length);
+			cursor.next();
+		}
+	}
+
+	private CachedChunk lookupChunk(CuboidAddress chunkAddress){
+		CachedChunk chunk = this.chunks.get(chunkAddress);
+		if(chunk != null){
+			chunk.isReferenced = true;
+		}
+		return chunk;
+	}
+
+	private void removeChunk(CachedChunk chunk){
+		this.chunks.remove(chunk.chunkAddress);
+		if(this.evictionPolicy == ChunkCacheEvictionPolicy.CLOCK){
+			//  Move the last chunk into the hole so removal doesn't shift the whole ring:
+			CachedChunk last = this.clock.remove(this.clock.size() - 1);
+			if(last != chunk){
+				this.clock.set(chunk.clockIndex, last);
+				last.clockIndex = chunk.clockIndex;
+			}
+		}
+	}
+
+	private void evictOneChunk(){
+		CachedChunk victim = null;
+		if(this.evictionPolicy == ChunkCacheEvictionPolicy.LRU){
+			victim = this.chunks.values().iterator().next();
+		}else{
+			while(victim == null){
+				if(this.clockHand >= this.clock.size()){
+					this.clockHand = 0;
+				}
+				CachedChunk candidate = this.clock.get(this.clockHand);
+				if(candidate.isReferenced){
+					candidate.isReferenced = false;
+					this.clockHand++;
+				}else{
+					victim = candidate;
+				}
+			}
+		}
+		this.removeChunk(victim);
+		this.numEvictions++;
+	}
+
+	private void insertChunk(CachedChunk chunk){
+		while(this.chunks.size() >= this.maxChunks){
+			this.evictOneChunk();
+		}
+		this.chunks.put(chunk.chunkAddress, chunk);
+		if(this.evictionPolicy == ChunkCacheEvictionPolicy.CLOCK){
+			chunk.clockIndex = this.clock.size();
+			this.clock.add(chunk);
+		}
+	}
+
+	public List<Cuboid> getBlocksInRegions(List<CuboidAddress> cuboidAddresses) throws Exception {
+		List<Set<CuboidAddress>> chunksForRegions = new ArrayList<Set<CuboidAddress>>();
+		Map<CuboidAddress, CachedChunk> requiredChunks = new HashMap<CuboidAddress, CachedChunk>();
+		for(CuboidAddress cuboidAddress : cuboidAddresses){
+			if(!cuboidAddress.getNumDimensions().equals(this.chunkSize.getNumDimensions())){
+				return this.passThroughRead(cuboidAddresses);
+			}
+			Set<CuboidAddress> chunksForRegion = cuboidAddress.getIntersectingChunkSet(this.chunkSize);
+			chunksForRegions.add(chunksForRegion);
+			for(CuboidAddress chunkAddress : chunksForRegion){
+				requiredChunks.put(chunkAddress, null);
+			}
+		}
+
+		if(requiredChunks.size() > this.maxChunks){
+			return this.passThroughRead(cuboidAddresses);
+		}
+
+		List<CuboidAddress> missingChunks = new ArrayList<CuboidAddress>();
+		long writeGenerationBeforeRead;
+		synchronized(lock){
+			for(Map.Entry<CuboidAddress, CachedChunk> e : requiredChunks.entrySet()){
+				CachedChunk chunk = this.lookupChunk(e.getKey());
+				if(chunk == null){
+					missingChunks.add(e.getKey());
+					this.numChunkMisses++;
+				}else{
+					e.setValue(chunk);
+					this.numChunkHits++;
+				}
+			}
+			writeGenerationBeforeRead = this.numWritesInProgress == 0 ? this.writeGeneration : -1L;
+		}
+
+		if(missingChunks.size() > 0){
+			//  The database is read without holding the lock so that other reads and writes don't queue up behind it:
+			List<Cuboid> missingCuboids = this.blockDAO.getBlocksInRegions(missingChunks);
+			if(missingCuboids == null || missingCuboids.size() != missingChunks.size()){
+				throw new Exception("Expected " + missingChunks.size() + " chunks from the database, but got " + (missingCuboids == null ? "null" : String.valueOf(missingCuboids.size())) + ".");
+			}
+			synchronized(lock){
+				this.numDatabaseReads++;
+				//  A write that overlapped the read might not be in what came back, so only cache it if there wasn't one:
+				boolean canCache = writeGenerationBeforeRead == this.writeGeneration;
+				for(Cuboid missingCuboid : missingCuboids){
+					CuboidAddress chunkAddress = missingCuboid.getCuboidAddress();
+					CachedChunk chunk = this.lookupChunk(chunkAddress);  //  Another read might have cached it in the meantime.
+					if(chunk == null){
+						byte [][] blocks = new byte [(int)chunkAddress.getVolume()][];
+						copyBlocksFromCuboid(missingCuboid, chunkAddress, blocks);
+						chunk = new CachedChunk(chunkAddress, blocks);
+						if(canCache){
+							this.insertChunk(chunk);
+						}
+					}
+					requiredChunks.put(chunkAddress, chunk);
+				}
+			}
+		}
+
+		//  Stitch every requested region together out of its chunks:
+		synchronized(lock){
+			List<Cuboid> cuboids = new ArrayList<Cuboid>();
+			for(int r = 0; r < cuboidAddresses.size(); r++){
+				CuboidAddress cuboidAddress = cuboidAddresses.get(r);
+				byte [][] blocks = new byte [(int)cuboidAddress.getVolume()][];
+				for(CuboidAddress chunkAddress : chunksForRegions.get(r)){
+					CachedChunk chunk = requiredChunks.get(chunkAddress);
+					CuboidAddress intersection = chunkAddress.getIntersectionCuboidAddress(cuboidAddress, true);
+					RegionCursor cursor = new RegionCursor(intersection);
+					while(!cursor.isDone()){
+						blocks[(int)getLinearArrayIndex(cuboidAddress, cursor)] = chunk.blocks[(int)getLinearArrayIndex(chunkAddress, cursor)];
+						cursor.next();
+					}
+				}
+				cuboids.add(makeCuboid(cuboidAddress, blocks));
+			}
+			return cuboids;
+		}
+	}
+
+	private List<Cuboid> passThroughRead(List<CuboidAddress> cuboidAddresses) throws Exception {
+		synchronized(lock){
+			this.numPassThroughReads++;
+		}
+		return this.blockDAO.getBlocksInRegions(cuboidAddresses);
+	}
+
+	public void writeBlocksInRegion(Cuboid cuboid) throws Exception {
+		this.writeBlocksInRegions(Arrays.asList(cuboid));
+	}
+
+	public void writeBlocksInRegions(List<Cuboid> cuboids) throws Exception {
+		//  Refused before the cache is touched, so the cached chunks stay as they are:
+		BlockDAOImpl.checkNoMissingBlocks(cuboids);
+		long writeGenerationAtStart;
+		synchronized(lock){
+			writeGenerationAtStart = ++this.writeGeneration;
+			this.numWritesInProgress++;
+		}
+		try{
+			try{
+				this.blockDAO.writeBlocksInRegions(cuboids);
+			}catch(Exception e){
+				//  Don't know what made it into the database, so forget everything this write touched:
+				for(Cuboid cuboid : cuboids){
+					this.invalidateRegion(cuboid.getCuboidAddress());
+				}
+				throw e;
+			}
+			synchronized(lock){
+				//  If another write overlapped this one, there's no telling which of them reached the database last:
+				boolean hadConcurrentWrite = this.numWritesInProgress > 1 || this.writeGeneration != writeGenerationAtStart;
+				for(Cuboid cuboid : cuboids){
+					if(!cuboid.getNumDimensions().equals(this.chunkSize.getNumDimensions())){
+						continue;
+					}
+					for(CuboidAddress chunkAddress : cuboid.getCuboidAddress().getIntersectingChunkSet(this.chunkSize)){
+						CachedChunk chunk = this.chunks.get(chunkAddress);
+						if(chunk == null){
+							continue;
+						}else if(hadConcurrentWrite){
+							this.removeChunk(chunk);
+							this.numInvalidations++;
+						}else{
+							copyBlocksFromCuboid(cuboid, chunkAddress, chunk.blocks);
+						}
+					}
+				}
+			}
+		}finally{
+			synchronized(lock){
+				this.numWritesInProgress--;
+			}
+		}
+	}
+
+	public void invalidateRegion(CuboidAddress cuboidAddress) throws Exception {
+		/*  Drop every cached chunk that overlaps this region so the next read goes to the database. */
+		synchronized(lock){
+			this.writeGeneration++;
+			if(!cuboidAddress.getNumDimensions().equals(this.chunkSize.getNumDimensions())){
+				this.invalidateAll();
+				return;
+			}
+			for(CuboidAddress chunkAddress : cuboidAddress.getIntersectingChunkSet(this.chunkSize)){
+				CachedChunk chunk = this.chunks.get(chunkAddress);
+				if(chunk != null){
+					this.removeChunk(chunk);
+					this.numInvalidations++;
+				}
+			}
+		}
+	}
+
+	public void invalidateAll(){
+		synchronized(lock){
+			this.writeGeneration++;
+			this.numInvalidations += this.chunks.size();
+			this.chunks.clear();
+			this.clock.clear();
+			this.clockHand = 0;
+		}
+	}
+
+	public void setBlockModelContext(BlockModelContext blockModelContext){
+		this.blockDAO.setBlockModelContext(blockModelContext);
+	}
+
+	public void setBlockManagerServerApplicationContextParameters(BlockManagerServerApplicationContextParameters blockManagerServerApplicationContextParameters){
+		this.blockDAO.setBlockManagerServerApplicationContextParameters(blockManagerServerApplicationContextParameters);
+	}
+
+	public void ensureBlockTableExists() throws Exception {
+		this.blockDAO.ensureBlockTableExists();
+	}
+
+	public void turnOffAutoCommit() throws Exception {
+		this.blockDAO.turnOffAutoCommit();
+	}
+
+	public String getWorldMetadataValue(String name) throws Exception {
+		return this.blockDAO.getWorldMetadataValue(name);
+	}
+
+	public void setWorldMetadataValue(String name, String value) throws Exception {
+		this.blockDAO.setWorldMetadataValue(name, value);
+	}
+
+	public int getNumCachedChunks(){
+		synchronized(lock){
+			return this.chunks.size();
+		}
+	}
+
+	public long getNumChunkHits(){
+		synchronized(lock){
+			return this.numChunkHits;
+		}
+	}
+
+	public long getNumChunkMisses(){
+		synchronized(lock){
+			return this.numChunkMisses;
+		}
+	}
+
+	public long getNumEvictions(){
+		synchronized(lock){
+			return this.numEvictions;
+		}
+	}
+
+	public long getNumInvalidations(){
+		synchronized(lock){
+			return this.numInvalidations;
+		}
+	}
+
+	public long getNumDatabaseReads(){
+		synchronized(lock){
+			return this.numDatabaseReads + this.numPassThroughReads;
+		}
+	}
+
+	public long getNumPassThroughReads(){
+		synchronized(lock){
+			return this.numPassThroughReads;
+		}
+	}
+
+	public String getMetricsSummary(){
+		synchronized(lock){
+			return "policy=" + this.evictionPolicy + ", chunks=" + this.chunks.size() + "/" + this.maxChunks + ", hits=" + this.numChunkHits + ", misses=" + this.numChunkMisses + ", evictions=" + this.numEvictions + ", invalidations=" + this.numInvalidations + ", databaseReads=" + this.numDatabaseReads + ", passThroughReads=" + this.numPassThroughReads;
+		}
+	}
+}
@@ -91,6 +91,8 @@ public class ServerThreadLauncher {
 		defaultArgumentValues.put("--disable-jni", Arrays.asList());
 		String [] args = new String[0];
 		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(args, defaultArgumentValues);
+		//  Before any virtual threads get made:
+		BlockManagerThreadCollection.configureVirtualThreadScheduler();
 		this.blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
 
 		logger.info("In ServerThreadLauncher constructor.");
@@ -123,7 +125,7 @@ public class ServerThreadLauncher {
 	}
 
 	public void onOpen(Session session) throws Exception {
-		this.blockManagerThreadCollection.onOpen(this.serverBlockModelContext.getBlockWorldConnection(), new WebsocketBlockSession(session));
+		this.blockManagerThreadCollection.onOpen(this.serverBlockModelContext.getBlockWorldConnection(), new WebsocketBlockSession(session, this.blockManagerThreadCollection.getSlowConsumerPolicy(), this.blockManagerThreadCollection.getMaxOutboundQueueBytes()));
 	}
 
 	public void onBinaryMessage(byte[] inputBytes, boolean last, Session session) throws Exception {
@@ -41,9 +41,11 @@ import java.io.IOException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.TreeSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Collections;
 import java.util.ArrayList;
 
 import java.util.Random;
@@ -60,6 +62,7 @@ import java.io.OutputStream;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -73,6 +76,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.TreeMap;
 
 import java.awt.Container;
@@ -82,6 +86,17 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.security.MessageDigest;
 import org.junit.Test;
+import org.junit.Assume;
+import org.res.block.dao.impl.BlockDAOImpl;
+import org.res.block.dao.impl.ChunkCachingBlockDAO;
+import org.res.block.dao.BlockDAO;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class BlockManagerUnitTest {
 
@@ -2447,6 +2462,11 @@ public class BlockManagerUnitTest {
 		inMemoryChunksMockClient.giveRandomRequestedChunk(blockManagerThreadCollection, rand, imc, this, doShutdown);
 	}
 
+	public void assumeBenchmarksEnabled(){
+		//  The benchmarks are slow and only print timings, so they are skipped unless 'mvn test -DrunBenchmarks=true' is used:
+		Assume.assumeTrue(Boolean.getBoolean("runBenchmarks"));
+	}
+
 	public void checkForExceptions(BlockManagerThreadCollection blockManagerThreadCollection) throws Exception {
 
 		List<Exception> offendingExceptions = blockManagerThreadCollection.getOffendingExceptions();
@@ -2472,10 +2492,10 @@ public class BlockManagerUnitTest {
 		Long maxPendingChunks = 1L;
 		InMemoryChunks imc = new InMemoryChunks(blockManagerThreadCollection, chunkSizeCuboidAddress, maxPendingChunks);
 		imc.putWorkItem(new InitializeYourselfInMemoryChunksWorkItem(imc), WorkItemPriority.PRIORITY_LOW);
-		blockManagerThreadCollection.addThread(new WorkItemProcessorTask<InMemoryChunksWorkItem>(imc, InMemoryChunksWorkItem.class, imc.getClass()));
+		blockManagerThreadCollection.addThread(new WorkItemProcessorTask<InMemoryChunksWorkItem>(blockManagerThreadCollection, imc, InMemoryChunksWorkItem.class, imc.getClass()));
 
 		InMemoryChunksMockClient inMemoryChunksMockClient = new InMemoryChunksMockClient(blockManagerThreadCollection, chunkSizeCuboidAddress);
-		blockManagerThreadCollection.addThread(new WorkItemProcessorTask<InMemoryChunksMockClientWorkItem>(inMemoryChunksMockClient, InMemoryChunksMockClientWorkItem.class, inMemoryChunksMockClient.getClass()));
+		blockManagerThreadCollection.addThread(new WorkItemProcessorTask<InMemoryChunksMockClientWorkItem>(blockManagerThreadCollection, inMemoryChunksMockClient, InMemoryChunksMockClientWorkItem.class, inMemoryChunksMockClient.getClass()));
 
 		CuboidAddress areaToLoadChunksIn = new CuboidAddress(new Coordinate(Arrays.asList(-2L, -2L, -2L, 0L)), new Coordinate(Arrays.asList(2L, 2L, 2L, 2L)));
 
@@ -2525,4 +2545,4222 @@ public class BlockManagerUnitTest {
 			runOneInMemoryChunksTest(i);
 		}
 	}
+
+	public ServerBlockModelContext makeSqliteServerBlockModelContext(BlockManagerThreadCollection blockManagerThreadCollection, File databaseFile) throws Exception{
+		DatabaseBlockWorldConnectionParameters dbParams = new DatabaseBlockWorldConnectionParameters("sqlite", null, null, null, null, null, databaseFile.getAbsolutePath());
+		DatabaseBlockWorldConnection bwc = new DatabaseBlockWorldConnection(blockManagerThreadCollection, new LocalSessionOperationInterface(), dbParams);
+		ServerBlockModelContext serverBlockModelContext = new ServerBlockModelContext(blockManagerThreadCollection, new LocalSessionOperationInterface(), bwc);
+		serverBlockModelContext.init(null);
+		return serverBlockModelContext;
+	}
+
+	public List<Cuboid> getRandomChunkCuboids(BlockManagerThreadCollection blockManagerThreadCollection, Random rand, CuboidAddress chunkSize, long numChunksX, long numChunksZ) throws Exception{
+		List<Cuboid> cuboids = new ArrayList<Cuboid>();
+		for(long x = 0L; x < numChunksX; x++){
+			for(long z = 0L; z < numChunksZ; z++){
+				Coordinate lower = new Coordinate(Arrays.asList(x * chunkSize.getWidthForIndex(0L), -chunkSize.getWidthForIndex(1L), z * chunkSize.getWidthForIndex(2L), 0L));
+				CuboidAddress ca = new CuboidAddress(lower, lower.add(chunkSize.getCanonicalUpperCoordinate()));
+				cuboids.add(getRandomCuboid(blockManagerThreadCollection, rand, ca));
+			}
+		}
+		return cuboids;
+	}
+
+	public void assertCuboidsHaveSameBlocks(Cuboid expected, Cuboid actual) throws Exception{
+		if(!expected.getCuboidAddress().equals(actual.getCuboidAddress())){
+			throw new Exception("Cuboid address " + actual.getCuboidAddress() + " did not match " + expected.getCuboidAddress());
+		}
+		if(!Arrays.equals(expected.getCuboidDataLengths().getLengths(), actual.getCuboidDataLengths().getLengths())){
+			throw new Exception("Data lengths did not match for " + expected.getCuboidAddress());
+		}
+		if(!Arrays.equals(expected.getCuboidData().getData(), actual.getCuboidData().getData())){
+			throw new Exception("Data did not match for " + expected.getCuboidAddress());
+		}
+	}
+
+	@Test
+	public void runBlockDAOBulkWriteBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = new CuboidAddress(new Coordinate(Arrays.asList(0L, 0L, 0L, 0L)), new Coordinate(Arrays.asList(3L, 3L, 5L, 1L)));
+		Random rand = new Random(1234);
+		List<Cuboid> cuboids = getRandomChunkCuboids(blockManagerThreadCollection, rand, chunkSize, 20L, 20L);
+		int cuboidsPerWorkItem = 20;
+
+		File literalDatabaseFile = File.createTempFile("literal-write-benchmark-", ".sqlite");
+		File batchedDatabaseFile = File.createTempFile("batched-write-benchmark-", ".sqlite");
+		literalDatabaseFile.deleteOnExit();
+		batchedDatabaseFile.deleteOnExit();
+
+		BlockDAOImpl literalBlockDAO = (BlockDAOImpl)makeSqliteServerBlockModelContext(blockManagerThreadCollection, literalDatabaseFile).getBlockDAO();
+		BlockDAOImpl batchedBlockDAO = (BlockDAOImpl)makeSqliteServerBlockModelContext(blockManagerThreadCollection, batchedDatabaseFile).getBlockDAO();
+
+		long literalStart = System.nanoTime();
+		for(Cuboid c : cuboids){
+			literalBlockDAO.writeBlocksInRegionWithoutBatch(c);
+		}
+		long literalNanos = System.nanoTime() - literalStart;
+
+		long batchedStart = System.nanoTime();
+		for(int i = 0; i < cuboids.size(); i += cuboidsPerWorkItem){
+			batchedBlockDAO.writeBlocksInRegions(cuboids.subList(i, Math.min(i + cuboidsPerWorkItem, cuboids.size())));
+		}
+		long batchedNanos = System.nanoTime() - batchedStart;
+		this.checkForExceptions(blockManagerThreadCollection);
+
+		List<CuboidAddress> cuboidAddresses = new ArrayList<CuboidAddress>();
+		long totalBlocks = 0L;
+		for(Cuboid c : cuboids){
+			cuboidAddresses.add(c.getCuboidAddress());
+			totalBlocks += c.getCuboidAddress().getVolume();
+		}
+		List<Cuboid> literalCuboids = literalBlockDAO.getBlocksInRegions(cuboidAddresses);
+		List<Cuboid> batchedCuboids = batchedBlockDAO.getBlocksInRegions(cuboidAddresses);
+		for(int i = 0; i < cuboids.size(); i++){
+			assertCuboidsHaveSameBlocks(cuboids.get(i), literalCuboids.get(i));
+			assertCuboidsHaveSameBlocks(cuboids.get(i), batchedCuboids.get(i));
+		}
+		this.checkForExceptions(blockManagerThreadCollection);
+
+		System.out.println("Literal SQL write path: " + totalBlocks + " blocks in " + (literalNanos / 1000000L) + "ms (" + (long)(totalBlocks / (literalNanos / 1000000000.0)) + " blocks/s).");
+		System.out.println("Batched write path: " + totalBlocks + " blocks in " + (batchedNanos / 1000000L) + "ms (" + (long)(totalBlocks / (batchedNanos / 1000000000.0)) + " blocks/s).");
+	}
+
+	@Test
+	public void runBlockDAOMultiRegionReadBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = new CuboidAddress(new Coordinate(Arrays.asList(0L, 0L, 0L, 0L)), new Coordinate(Arrays.asList(3L, 3L, 5L, 1L)));
+		Random rand = new Random(4321);
+		List<Cuboid> cuboids = getRandomChunkCuboids(blockManagerThreadCollection, rand, chunkSize, 10L, 10L);
+
+		File databaseFile = File.createTempFile("multi-region-read-benchmark-", ".sqlite");
+		databaseFile.deleteOnExit();
+		BlockDAOImpl blockDAO = (BlockDAOImpl)makeSqliteServerBlockModelContext(blockManagerThreadCollection, databaseFile).getBlockDAO();
+		blockDAO.writeBlocksInRegions(cuboids);
+
+		//  Random regions that overlap each other, and that are partly outside the written area:
+		CuboidAddress areaToProbe = new CuboidAddress(new Coordinate(Arrays.asList(-5L, -6L, -5L, 0L)), new Coordinate(Arrays.asList(35L, 3L, 55L, 1L)));
+		List<CuboidAddress> regions = new ArrayList<CuboidAddress>();
+		for(int i = 0; i < 250; i++){
+			regions.add(getRandomCuboidAddress(rand, areaToProbe));
+		}
+		regions.addAll(Arrays.asList(cuboids.get(0).getCuboidAddress(), cuboids.get(0).getCuboidAddress()));
+
+		int numRepetitions = 5;
+		List<Cuboid> perRegionCuboids = null;
+		long perRegionStart = System.nanoTime();
+		for(int n = 0; n < numRepetitions; n++){
+			perRegionCuboids = new ArrayList<Cuboid>();
+			for(CuboidAddress ca : regions){
+				perRegionCuboids.add(blockDAO.getBlocksInRegion(ca));
+			}
+		}
+		long perRegionNanos = System.nanoTime() - perRegionStart;
+
+		List<Cuboid> multiRegionCuboids = null;
+		long multiRegionStart = System.nanoTime();
+		for(int n = 0; n < numRepetitions; n++){
+			multiRegionCuboids = blockDAO.getBlocksInRegions(regions);
+		}
+		long multiRegionNanos = System.nanoTime() - multiRegionStart;
+		this.checkForExceptions(blockManagerThreadCollection);
+
+		if(multiRegionCuboids.size() != regions.size()){
+			throw new Exception("Expected " + regions.size() + " cuboids, but got " + multiRegionCuboids.size());
+		}
+		for(int i = 0; i < regions.size(); i++){
+			assertCuboidsHaveSameBlocks(perRegionCuboids.get(i), multiRegionCuboids.get(i));
+		}
+		assertCuboidsHaveSameBlocks(cuboids.get(0), multiRegionCuboids.get(multiRegionCuboids.size() - 1));
+
+		System.out.println("Per-region read path: " + (regions.size() * numRepetitions) + " regions in " + (perRegionNanos / 1000000L) + "ms.");
+		System.out.println("Multi-region read path: " + (regions.size() * numRepetitions) + " regions in " + (multiRegionNanos / 1000000L) + "ms.");
+	}
+
+	@Test
+	public void runPrimitiveCoordinateUnitTest() throws Exception {
+		Random rand = new Random(1234);
+		System.out.println("Begin runPrimitiveCoordinateUnitTest:");
+
+		//  The old (value+1) product hash gave every coordinate containing -1 the same hash:
+		Set<Integer> distinctHashes = new TreeSet<Integer>();
+		long numCoordinates = 0L;
+		for(long x = -8L; x < 8L; x++){
+			for(long y = -8L; y < 8L; y++){
+				for(long z = -8L; z < 8L; z++){
+					distinctHashes.add(Coordinate.makeCoordinate(x, y, z).hashCode());
+					numCoordinates++;
+				}
+			}
+		}
+		System.out.println(distinctHashes.size() + " distinct hashes for " + numCoordinates + " coordinates.");
+		if(!(distinctHashes.size() > (numCoordinates * 99L) / 100L)){
+			throw new Exception("Too many hash collisions: " + distinctHashes.size() + " distinct hashes for " + numCoordinates + " coordinates.");
+		}
+
+		for(int i = 0; i < 10000; i++){
+			Long numDimensions = (long)rand.nextInt(4) + 1;
+			Coordinate a = Coordinate.getRandomCoordinate(rand, numDimensions, -5, 5);
+			Coordinate b = new Coordinate(a.toList());
+			Coordinate c = Coordinate.getRandomCoordinate(rand, numDimensions, -5, 5);
+			if(!(a.equals(b) && a.hashCode() == b.hashCode() && a.compareTo(b) == 0)){
+				throw new Exception("Coordinates " + a + " and " + b + " should be equal with the same hash code.");
+			}
+			if(!a.add(c).subtract(c).equals(a)){
+				throw new Exception("Adding then subtracting " + c + " did not give back " + a + ".");
+			}
+			if(!(Integer.signum(a.compareTo(c)) == -Integer.signum(c.compareTo(a)))){
+				throw new Exception("compareTo is not antisymmetric for " + a + " and " + c + ".");
+			}
+			if(!(a.equals(c) == (a.compareTo(c) == 0))){
+				throw new Exception("equals and compareTo disagree for " + a + " and " + c + ".");
+			}
+
+			CuboidAddress ca = new CuboidAddress(a, c);
+			if(ca.getVolume() > 0L){
+				//  Compare the cached strides against a straightforward boxed calculation:
+				Coordinate inside = ca.getCanonicalLowerCoordinate();
+				for(long d = 0L; d < numDimensions; d++){
+					inside = inside.changeValueAtIndex(d, inside.getValueAtIndex(d) + rand.nextInt((int)ca.getWidthForIndex(d)));
+				}
+				long expectedIndex = 0L;
+				long dimensionValue = 1L;
+				for(long d = 0L; d < numDimensions; d++){
+					expectedIndex += (inside.getValueAtIndex(d) - ca.getCanonicalLowerCoordinate().getValueAtIndex(d)) * dimensionValue;
+					dimensionValue *= ca.getCanonicalUpperCoordinate().getValueAtIndex(d) - ca.getCanonicalLowerCoordinate().getValueAtIndex(d);
+				}
+				if(!ca.containsCoordinate(inside)){
+					throw new Exception("" + ca + " should contain " + inside + ".");
+				}
+				if(!(ca.getLinearArrayIndexForLongCoordinate(inside) == expectedIndex)){
+					throw new Exception("Linear index for " + inside + " in " + ca + " was " + ca.getLinearArrayIndexForLongCoordinate(inside) + " but expected " + expectedIndex + ".");
+				}
+				if(!(ca.getVolume() == dimensionValue)){
+					throw new Exception("Volume of " + ca + " was " + ca.getVolume() + " but expected " + dimensionValue + ".");
+				}
+				if(ca.containsCoordinate(ca.getCanonicalUpperCoordinate())){
+					throw new Exception("Upper coordinate should be exclusive for " + ca + ".");
+				}
+			}
+		}
+
+		Coordinate start = Coordinate.makeCoordinate(1L, 2L, 3L, 4L);
+		int numIterations = 1000000;
+		long startTime = System.nanoTime();
+		Coordinate current = start;
+		for(int i = 0; i < numIterations; i++){
+			current = current.changeByDeltaXYZ(1L, -1L, 1L);
+		}
+		long endTime = System.nanoTime();
+		if(!(current.equals(Coordinate.makeCoordinate(1L + numIterations, 2L - numIterations, 3L + numIterations, 4L)))){
+			throw new Exception("Unexpected final coordinate " + current + ".");
+		}
+		System.out.println("Did " + numIterations + " changeByDeltaXYZ calls in " + ((endTime - startTime) / 1000000L) + "ms.");
+	}
+
+	@Test
+	public void runRegionCursorUnitTest() throws Exception {
+		Random rand = new Random(1234);
+		System.out.println("Begin runRegionCursorUnitTest:");
+		for(int i = 0; i < 1000; i++){
+			Long numDimensions = (long)rand.nextInt(5) + 1;
+			CuboidAddress ca = new CuboidAddress(
+				Coordinate.getRandomCoordinate(rand, numDimensions, -4, 4),
+				Coordinate.getRandomCoordinate(rand, numDimensions, -4, 4)
+			);
+			//  The cursor must visit exactly the same coordinates in the same order as RegionIteration:
+			RegionCursor cursor = new RegionCursor(ca);
+			CuboidAddress chunkSize = new CuboidAddress(Coordinate.makeOriginCoordinate(numDimensions), Coordinate.getRandomCoordinate(rand, numDimensions, 1, 4));
+			long numVisited = 0L;
+			if(ca.getVolume() > 0L){
+				RegionIteration regionIteration = new RegionIteration(ca.getCanonicalLowerCoordinate(), ca);
+				do{
+					Coordinate expected = regionIteration.getCurrentCoordinate();
+					if(cursor.isDone() || !cursor.getCoordinate().equals(expected)){
+						throw new Exception("Cursor was at " + (cursor.isDone() ? "done" : cursor.getCoordinate()) + " but expected " + expected + " in " + ca + ".");
+					}
+					if(!cursor.getChunkCuboidAddress(chunkSize).equals(CuboidAddress.blockCoordinateToChunkCuboidAddress(expected, chunkSize))){
+						throw new Exception("Cursor was in chunk " + cursor.getChunkCuboidAddress(chunkSize) + " at " + expected + " with chunk size " + chunkSize + ".");
+					}
+					//  The same chunk's address is reused rather than made again:
+					if(cursor.getChunkCuboidAddress(chunkSize) != cursor.getChunkCuboidAddress(chunkSize)){
+						throw new Exception("Cursor made a new chunk address for " + expected + " with chunk size " + chunkSize + ".");
+					}
+					if(cursor.getLinearArrayIndex() != ca.getLinearArrayIndexForCoordinate(expected)){
+						throw new Exception("Cursor index was " + cursor.getLinearArrayIndex() + " at " + expected + " in " + ca + ".");
+					}
+					cursor.next();
+					numVisited++;
+				}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+			}
+			if(!cursor.isDone() || numVisited != ca.getVolume()){
+				throw new Exception("Cursor visited " + numVisited + " coordinates in " + ca + " with volume " + ca.getVolume() + ".");
+			}
+		}
+
+		CuboidAddress chunk = new CuboidAddress(
+			new Coordinate(Arrays.asList(16L, -16L, 32L, 0L)),
+			new Coordinate(Arrays.asList(32L, 0L, 48L, 1L))
+		);
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().threadId();
+		int numRounds = 200;
+		long [] checksum = new long [1];
+		IntLongLongLongConsumer visitor = (index, x, y, z) -> { checksum[0] += index + x + y + z; };
+
+		//  Warm up so the measured rounds are JIT compiled:
+		for(int round = 0; round < numRounds; round++){
+			RegionCursor.forEach(chunk, visitor);
+			RegionIteration regionIteration = new RegionIteration(chunk.getCanonicalLowerCoordinate(), chunk);
+			do{
+				checksum[0] += chunk.getLinearArrayIndexForCoordinate(regionIteration.getCurrentCoordinate());
+			}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+		}
+
+		long iterationBytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+		long iterationStart = System.nanoTime();
+		for(int round = 0; round < numRounds; round++){
+			RegionIteration regionIteration = new RegionIteration(chunk.getCanonicalLowerCoordinate(), chunk);
+			do{
+				checksum[0] += chunk.getLinearArrayIndexForCoordinate(regionIteration.getCurrentCoordinate());
+			}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+		}
+		long iterationTime = System.nanoTime() - iterationStart;
+		long iterationBytes = threadMXBean.getThreadAllocatedBytes(threadId) - iterationBytesBefore;
+
+		long cursorBytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+		long cursorStart = System.nanoTime();
+		for(int round = 0; round < numRounds; round++){
+			RegionCursor.forEach(chunk, visitor);
+		}
+		long cursorTime = System.nanoTime() - cursorStart;
+		long cursorBytes = threadMXBean.getThreadAllocatedBytes(threadId) - cursorBytesBefore;
+
+		long numBlocks = numRounds * chunk.getVolume();
+		System.out.println("RegionIteration: " + (iterationTime / 1000000L) + "ms, " + ((double)iterationBytes / numBlocks) + " bytes allocated per block.");
+		System.out.println("RegionCursor.forEach: " + (cursorTime / 1000000L) + "ms, " + ((double)cursorBytes / numBlocks) + " bytes allocated per block (checksum " + checksum[0] + ").");
+		//  Only the cursor itself is allocated for each chunk, nothing per block:
+		if(cursorBytes / numBlocks > 0L){
+			throw new Exception("Expected no per-block allocations, but saw " + cursorBytes + " bytes for " + numBlocks + " blocks.");
+		}
+	}
+
+	public List<byte []> getMixedBlockWorkload(BlockSchema blockSchema, Random rand, int numBlocks) throws Exception {
+		List<byte []> byteComparisonPatterns = new ArrayList<byte []>();
+		for(BlockMatchDescription bmd : blockSchema.getBlockMatchDescriptions()){
+			if(bmd instanceof ByteComparisonBlockMatchDescription){
+				byteComparisonPatterns.add(((ByteComparisonBlockMatchDescription)bmd).getBytePattern());
+			}
+		}
+		String playerUUID = "0f8fad5b-d9cb-469f-a165-70867728950e";
+		List<byte []> rtn = new ArrayList<byte []>();
+		for(int i = 0; i < numBlocks; i++){
+			int choice = rand.nextInt(100);
+			String s = null;
+			if(choice < 80){
+				rtn.add(byteComparisonPatterns.get(rand.nextInt(byteComparisonPatterns.size())));
+			}else if(choice < 85){
+				s = "{\"x0\":" + rand.nextInt(10) + ",\"x1\":" + rand.nextInt(10) + ",\"x2\":" + rand.nextInt(10) + ",\"x3\":0,\"player_uuid\":\"" + playerUUID + "\"}";
+			}else if(choice < 88){
+				s = "{\"x\":" + rand.nextInt(10) + ",\"y\":" + rand.nextInt(10) + ",\"z\":" + rand.nextInt(10) + ",\"player_uuid\":\"" + playerUUID + "\"}";
+			}else if(choice < 92){
+				s = "[{\"quantity\":" + rand.nextInt(5) + ",\"block_data_base_64\":\"\"}]";
+			}else if(choice < 94){
+				s = "{\"player_uuid\":\"" + playerUUID + "\",\"player_skin_id\":" + rand.nextInt(3) + "}";
+			}else if(choice < 96){
+				s = "{\"player_position\":{\"x0\":0,\"x1\":0,\"x2\":0,\"x3\":" + rand.nextInt(5) + "}}";
+			}else{
+				//  Random bytes that should mostly not match anything:
+				byte [] b = new byte [rand.nextInt(8)];
+				rand.nextBytes(b);
+				rtn.add(b);
+			}
+			if(s != null){
+				rtn.add(s.getBytes("UTF-8"));
+			}
+		}
+		return rtn;
+	}
+
+	@Test
+	public void runBlockClassifierBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		Random rand = new Random(1234);
+		System.out.println("Begin runBlockClassifierBenchmark:");
+		for(int version = 1; version <= 6; version++){
+			String json = new String(BlockManagerUnitTest.class.getResourceAsStream("/v" + version + "_block_schema.json").readAllBytes(), "UTF-8");
+			for(boolean allowUnrecognized : new boolean [] {false, true}){
+				BlockSchema blockSchema = new BlockSchema(json, allowUnrecognized);
+				List<byte []> workload = getMixedBlockWorkload(blockSchema, rand, 20000);
+
+				//  The classifier must agree with a plain in-order scan for every block:
+				for(byte [] data : workload){
+					String expected = blockSchema.getFirstBlockMatchDescriptionForByteArrayByLinearScan(data);
+					String actual = blockSchema.getFirstBlockMatchDescriptionForByteArray(data);
+					if(!Objects.equals(expected, actual)){
+						throw new Exception("For schema v" + version + " classifier gave " + actual + " but linear scan gave " + expected + " for '" + new String(data, "UTF-8") + "'.");
+					}
+				}
+
+				if(allowUnrecognized){
+					long linearStart = System.nanoTime();
+					for(byte [] data : workload){
+						blockSchema.getFirstBlockMatchDescriptionForByteArrayByLinearScan(data);
+					}
+					long linearTime = System.nanoTime() - linearStart;
+
+					long classifierStart = System.nanoTime();
+					for(byte [] data : workload){
+						blockSchema.getFirstBlockMatchDescriptionForByteArray(data);
+					}
+					long classifierTime = System.nanoTime() - classifierStart;
+					BlockClassifier classifier = blockSchema.getBlockClassifier();
+					System.out.println("Schema v" + version + " classified " + workload.size() + " mixed blocks: linear scan " + (linearTime / 1000000L) + "ms, classifier " + (classifierTime / 1000000L) + "ms (cache hits=" + classifier.getNumCacheHits() + ", misses=" + classifier.getNumCacheMisses() + ").");
+				}
+			}
+		}
+	}
+
+	public long getUsedHeapBytesAfterGC() throws Exception {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++){
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Test
+	public void runBlockFactoryBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		Random rand = new Random(1234);
+		System.out.println("Begin runBlockFactoryBenchmark:");
+		String json = new String(BlockManagerUnitTest.class.getResourceAsStream("/v6_block_schema.json").readAllBytes(), "UTF-8");
+		BlockSchema blockSchema = new BlockSchema(json, false);
+
+		//  Simulate a fully loaded client view of 64 chunks with 16x16x16 blocks each:
+		int numChunks = 64;
+		int blocksPerChunk = 16 * 16 * 16;
+		List<byte []> workload = getMixedBlockWorkload(blockSchema, rand, blocksPerChunk);
+		List<String> classNames = new ArrayList<String>();
+		List<byte []> recognizedWorkload = new ArrayList<byte []>();
+		int numStatefulBlocks = 0;
+		for(byte [] data : workload){
+			String className = blockSchema.getFirstBlockMatchDescriptionForByteArray(data);
+			//  A real view only has a handful of player related blocks:
+			if(className != null && !BlockFactory.isStatelessBlockClass(className) && numStatefulBlocks++ >= 16){
+				className = null;
+			}
+			if(className != null){
+				classNames.add(className);
+				//  Every chunk reads its data into a new buffer:
+				recognizedWorkload.add(data.clone());
+			}
+		}
+		int n = recognizedWorkload.size();
+
+		for(int i = 0; i < n; i++){
+			IndividualBlock expected = IndividualBlock.makeBlockInstanceFromClassNameByReflection(classNames.get(i), recognizedWorkload.get(i));
+			IndividualBlock actual = IndividualBlock.makeBlockInstanceFromClassName(classNames.get(i), recognizedWorkload.get(i));
+			boolean isStateless = BlockFactory.isStatelessBlockClass(classNames.get(i));
+			if(!expected.getClass().equals(actual.getClass()) || (isStateless && !expected.equals(actual))){
+				throw new Exception("Factory made " + actual.getClass().getName() + " instead of " + expected.getClass().getName() + ".");
+			}
+			if(isStateless != (actual == IndividualBlock.makeBlockInstanceFromClassName(classNames.get(i), recognizedWorkload.get(i).clone()))){
+				throw new Exception("Only stateless blocks should be shared, but " + classNames.get(i) + " was not.");
+			}
+		}
+
+		for(boolean useFactory : new boolean [] {false, true, false, true}){
+			long heapBefore = getUsedHeapBytesAfterGC();
+			IndividualBlock [][] view = new IndividualBlock [numChunks][n];
+			long start = System.nanoTime();
+			for(int c = 0; c < numChunks; c++){
+				for(int i = 0; i < n; i++){
+					byte [] data = recognizedWorkload.get(i).clone();
+					view[c][i] = useFactory ? IndividualBlock.makeBlockInstanceFromClassName(classNames.get(i), data) : IndividualBlock.makeBlockInstanceFromClassNameByReflection(classNames.get(i), data);
+				}
+			}
+			long time = System.nanoTime() - start;
+			long heapAfter = getUsedHeapBytesAfterGC();
+			long numBlocks = (long)numChunks * n;
+			System.out.println((useFactory ? "BlockFactory" : "Reflection") + " deserialized " + numBlocks + " blocks in " + (time / 1000000L) + "ms (" + (numBlocks * 1000000000L / Math.max(1L, time)) + " blocks/s), view retains about " + ((heapAfter - heapBefore) / 1024L) + "KiB (" + view[numChunks - 1].length + " blocks in last chunk).");
+		}
+		System.out.println("BlockFactory is holding " + BlockFactory.getNumFlyweightInstances() + " shared block instances.");
+	}
+
+
+	public Cuboid getTerrainLikeCuboid(BlockManagerThreadCollection blockManagerThreadCollection, Random rand, CuboidAddress ca) throws Exception{
+		//  Mostly rock below a surface height, mostly empty above it, with a few ores and unloaded blocks:
+		byte [] rock = blockManagerThreadCollection.getBlockDataForClass(Rock.class);
+		byte [] empty = blockManagerThreadCollection.getBlockDataForClass(EmptyBlock.class);
+		long surfaceY = ca.getLowerValueForIndex(1) + ca.getWidthForIndex(1L) / 2L;
+		BlockMessageBinaryBuffer cuboidData = new BlockMessageBinaryBuffer();
+		long [] dataLengths = new long [(int)ca.getVolume()];
+		RegionCursor.forEach(ca, (linearArrayIndex, x, y, z) -> {
+			byte [] blockData = null;
+			double r = rand.nextDouble();
+			if(r < 0.01){
+				blockData = null;
+			}else if(r < 0.05){
+				int randomBlockIndex = rand.nextInt(ChunkInitializerThreadState.interestingBlocks.length);
+				blockData = blockManagerThreadCollection.getBlockDataForClass((Class)ChunkInitializerThreadState.interestingBlocks[randomBlockIndex]);
+			}else{
+				blockData = y < surfaceY ? rock : empty;
+			}
+			if(blockData == null){
+				dataLengths[linearArrayIndex] = -1L;
+			}else{
+				dataLengths[linearArrayIndex] = blockData.length;
+				cuboidData.writeBytes(blockData);
+			}
+		});
+		return new Cuboid(ca, new CuboidDataLengths(ca, dataLengths), new CuboidData(cuboidData.getUsedBuffer()));
+	}
+
+	public void checkDescribeRegionsRoundTrip(DescribeRegionsBlockMessage m, int protocolVersion) throws Exception{
+		byte [] encoded = m.asByteArray(protocolVersion);
+		long extractedClientId = BlockMessage.extractAuthorizedClientId(new BlockMessageBinaryBuffer(encoded, 0));
+		if(extractedClientId != m.getAuthorizedClientId()){
+			throw new Exception("Protocol v" + protocolVersion + " extracted authorizedClientId=" + extractedClientId + " but expected " + m.getAuthorizedClientId());
+		}
+		BlockMessage decoded = BlockMessage.consumeBlockMessage(null, new BlockMessageBinaryBuffer(encoded, 0));
+		if(!(decoded instanceof DescribeRegionsBlockMessage)){
+			throw new Exception("Protocol v" + protocolVersion + " decoded a " + decoded.getClass().getName());
+		}
+		DescribeRegionsBlockMessage d = (DescribeRegionsBlockMessage)decoded;
+		if(!d.getConversationId().equals(m.getConversationId()) || !d.getNumDimensions().equals(m.getNumDimensions()) || !d.getNumCuboids().equals(m.getNumCuboids())){
+			throw new Exception("Protocol v" + protocolVersion + " header mismatch: conversationId=" + d.getConversationId() + ", numDimensions=" + d.getNumDimensions() + ", numCuboids=" + d.getNumCuboids());
+		}
+		for(int i = 0; i < m.getCuboids().size(); i++){
+			Cuboid expected = m.getCuboids().get(i);
+			Cuboid actual = d.getCuboids().get(i);
+			if(!expected.getCuboidAddress().equals(actual.getCuboidAddress())){
+				throw new Exception("Protocol v" + protocolVersion + " cuboid " + i + " address " + actual.getCuboidAddress() + " != " + expected.getCuboidAddress());
+			}
+			if(!Arrays.equals(expected.getCuboidDataLengths().getLengths(), actual.getCuboidDataLengths().getLengths())){
+				throw new Exception("Protocol v" + protocolVersion + " cuboid " + i + " data lengths differ.");
+			}
+			if(!Arrays.equals(expected.getCuboidData().getData(), actual.getCuboidData().getData())){
+				throw new Exception("Protocol v" + protocolVersion + " cuboid " + i + " data differs.");
+			}
+		}
+	}
+
+	@Test
+	public void runWireProtocolBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runWireProtocolBenchmark:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		Random rand = new Random(1234);
+
+		//  Varint edge cases:
+		long [] edgeValues = new long [] {0L, 1L, -1L, 63L, -64L, 64L, 127L, 128L, 300L, -300L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+		BlockMessageBinaryBuffer varints = new BlockMessageBinaryBuffer(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2);
+		varints.writeLongValues(edgeValues);
+		BlockMessageBinaryBuffer varintReader = new BlockMessageBinaryBuffer(varints.getUsedBuffer(), 0);
+		varintReader.setProtocolVersion(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2);
+		long [] readBack = varintReader.readNLongValues(edgeValues.length);
+		if(!Arrays.equals(edgeValues, readBack)){
+			throw new Exception("Varint round trip failed: " + Arrays.toString(readBack));
+		}
+
+		//  Small messages in both formats:
+		for(int protocolVersion : new int [] {BlockMessageBinaryBuffer.PROTOCOL_VERSION_1, BlockMessageBinaryBuffer.PROTOCOL_VERSION_2}){
+			CommandBlockMessage command = new CommandBlockMessage(null, -5L, Long.MIN_VALUE + 7L, CommandType.COMMAND_TYPE_RESPOND_ROOT_DICTIONARY_ADDRESS, Coordinate.makeCoordinate(-100L, 2000000L, 3L, 0L));
+			byte [] encoded = command.asByteArray(protocolVersion);
+			if(BlockMessage.extractAuthorizedClientId(new BlockMessageBinaryBuffer(encoded, 0)) != Long.MIN_VALUE + 7L){
+				throw new Exception("Protocol v" + protocolVersion + " did not extract the authorized client id of a command.");
+			}
+			BlockMessage decoded = BlockMessage.consumeBlockMessage(null, new BlockMessageBinaryBuffer(encoded, 0));
+			if(!(decoded instanceof CommandBlockMessage) || decoded.getConversationId() != -5L){
+				throw new Exception("Protocol v" + protocolVersion + " command round trip failed.");
+			}
+			System.out.println("Protocol v" + protocolVersion + " command message is " + encoded.length + " bytes.");
+		}
+		if(new CommandBlockMessage(null, 1L, 2L, CommandType.COMMAND_TYPE_PROVISION_PLAYER).asByteArray()[0] != 0){
+			throw new Exception("Version 1 messages must keep starting with a zero byte.");
+		}
+
+		//  One client view worth of chunks:
+		int numChunks = 64;
+		Map<String, List<Cuboid>> workloads = new LinkedHashMap<String, List<Cuboid>>();
+		workloads.put("terrain", new ArrayList<Cuboid>());
+		workloads.put("random", new ArrayList<Cuboid>());
+		for(int c = 0; c < numChunks; c++){
+			long x = (c % 8) * 16L - 64L;
+			long z = (c / 8) * 16L - 64L;
+			CuboidAddress ca = new CuboidAddress(Coordinate.makeCoordinate(x, -8L, z, 0L), Coordinate.makeCoordinate(x + 16L, 8L, z + 16L, 1L));
+			workloads.get("terrain").add(getTerrainLikeCuboid(blockManagerThreadCollection, rand, ca));
+			workloads.get("random").add(getRandomCuboid(blockManagerThreadCollection, rand, ca));
+		}
+
+		int iterations = 5;
+		for(Map.Entry<String, List<Cuboid>> e : workloads.entrySet()){
+			DescribeRegionsBlockMessage m = new DescribeRegionsBlockMessage(null, 4L, e.getValue(), 123456789L, 987654321012L);
+			long numBlocks = 0L;
+			for(Cuboid cuboid : e.getValue()){
+				numBlocks += cuboid.getCuboidAddress().getVolume();
+			}
+			for(int protocolVersion : new int [] {BlockMessageBinaryBuffer.PROTOCOL_VERSION_1, BlockMessageBinaryBuffer.PROTOCOL_VERSION_2}){
+				checkDescribeRegionsRoundTrip(m, protocolVersion);
+				byte [] encoded = null;
+				long encodeStart = System.nanoTime();
+				for(int i = 0; i < iterations; i++){
+					encoded = m.asByteArray(protocolVersion);
+				}
+				long encodeTime = System.nanoTime() - encodeStart;
+				long decodeStart = System.nanoTime();
+				for(int i = 0; i < iterations; i++){
+					BlockMessage.consumeBlockMessage(null, new BlockMessageBinaryBuffer(encoded, 0));
+				}
+				long decodeTime = System.nanoTime() - decodeStart;
+				long blocksEncoded = numBlocks * iterations;
+				System.out.println("Protocol v" + protocolVersion + " " + e.getKey() + " view of " + numBlocks + " blocks: " + encoded.length + " bytes (" + String.format("%.2f", (double)encoded.length / numBlocks) + " B/block), encode " + (blocksEncoded * 1000000000L / Math.max(1L, encodeTime)) + " blocks/s, decode " + (blocksEncoded * 1000000000L / Math.max(1L, decodeTime)) + " blocks/s.");
+			}
+		}
+	}
+
+
+	public long encodeDescribeRegionsBurst(List<DescribeRegionsBlockMessage> burst, int protocolVersion, String mode) throws Exception{
+		//  Returns a checksum of the encoded bytes so the work can't be optimized away:
+		long checksum = 0L;
+		for(DescribeRegionsBlockMessage m : burst){
+			if(mode.equals("growing")){
+				BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer(protocolVersion);
+				BlockMessage.writeProtocolHeader(buffer);
+				m.writeToBuffer(buffer);
+				checksum += buffer.getUsedBuffer().length;
+			}else if(mode.equals("presized")){
+				BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer(protocolVersion, m.getEstimatedSize(protocolVersion));
+				BlockMessage.writeProtocolHeader(buffer);
+				m.writeToBuffer(buffer);
+				checksum += buffer.getUsedBuffer().length;
+			}else{
+				BlockMessageBinaryBuffer buffer = m.asPooledBuffer(protocolVersion);
+				checksum += buffer.getUsedByteBuffer().remaining();
+				buffer.release();
+			}
+		}
+		return checksum;
+	}
+
+	@Test
+	public void runPooledMessageBufferBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runPooledMessageBufferBenchmark:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		Random rand = new Random(1234);
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().threadId();
+
+		//  A burst of DescribeRegions messages with four 16x16x16 chunks each, like a client loading its view:
+		List<DescribeRegionsBlockMessage> burst = new ArrayList<DescribeRegionsBlockMessage>();
+		for(int m = 0; m < 16; m++){
+			List<Cuboid> cuboids = new ArrayList<Cuboid>();
+			for(int c = 0; c < 4; c++){
+				long x = (m * 4L + c) * 16L;
+				CuboidAddress ca = new CuboidAddress(Coordinate.makeCoordinate(x, 0L, 0L, 0L), Coordinate.makeCoordinate(x + 16L, 16L, 16L, 1L));
+				cuboids.add(getTerrainLikeCuboid(blockManagerThreadCollection, rand, ca));
+			}
+			burst.add(new DescribeRegionsBlockMessage(null, 4L, cuboids, (long)m, 99L));
+		}
+
+		for(int protocolVersion : new int [] {BlockMessageBinaryBuffer.PROTOCOL_VERSION_1, BlockMessageBinaryBuffer.PROTOCOL_VERSION_2}){
+			//  Pooled output has to match the plain encoding byte for byte:
+			for(DescribeRegionsBlockMessage m : burst){
+				BlockMessageBinaryBuffer pooled = m.asPooledBuffer(protocolVersion);
+				ByteBuffer slice = pooled.getUsedByteBuffer();
+				byte [] pooledBytes = new byte [slice.remaining()];
+				slice.get(pooledBytes);
+				pooled.release();
+				if(!Arrays.equals(pooledBytes, m.asByteArray(protocolVersion))){
+					throw new Exception("Protocol v" + protocolVersion + " pooled encoding differs from asByteArray for conversationId=" + m.getConversationId());
+				}
+				if(!slice.isReadOnly()){
+					throw new Exception("getUsedByteBuffer should return a read-only view.");
+				}
+			}
+
+			int numRounds = protocolVersion == BlockMessageBinaryBuffer.PROTOCOL_VERSION_1 ? 20 : 4;
+			for(String mode : new String [] {"growing", "presized", "pooled"}){
+				//  Warm up:
+				encodeDescribeRegionsBurst(burst, protocolVersion, mode);
+				long checksum = 0L;
+				long bytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+				long start = System.nanoTime();
+				for(int round = 0; round < numRounds; round++){
+					checksum += encodeDescribeRegionsBurst(burst, protocolVersion, mode);
+				}
+				long time = System.nanoTime() - start;
+				long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+				long numMessages = (long)numRounds * burst.size();
+				System.out.println("Protocol v" + protocolVersion + " " + mode + " buffers encoded " + numMessages + " messages (" + (checksum / numMessages) + " bytes each) in " + (time / 1000000L) + "ms, allocating " + (allocatedBytes / numMessages) + " bytes per message.");
+			}
+		}
+	}
+
+
+	public static class FakeAsyncBinaryMessageSender implements AsyncBinaryMessageSender {
+		//  Completes every send on its own thread after 'delayMillis', like a client on a slow link.
+		private final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+		private final long delayMillis;
+		private final java.util.concurrent.atomic.AtomicLong bytesReceived = new java.util.concurrent.atomic.AtomicLong(0L);
+		private volatile boolean isClosed = false;
+
+		public FakeAsyncBinaryMessageSender(long delayMillis){
+			this.delayMillis = delayMillis;
+		}
+
+		public void sendBinaryAsync(ByteBuffer byteBuffer, javax.websocket.SendHandler handler) throws Exception{
+			int length = byteBuffer.remaining();
+			this.executor.submit(() -> {
+				try{
+					if(this.delayMillis > 0L){
+						Thread.sleep(this.delayMillis);
+					}
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+				this.bytesReceived.addAndGet(length);
+				handler.onResult(new javax.websocket.SendResult());
+			});
+		}
+
+		public void close(String reason) throws Exception{
+			this.isClosed = true;
+		}
+
+		public boolean getIsClosed(){
+			return this.isClosed;
+		}
+
+		public void shutdown() throws Exception{
+			//  Let the sends already handed to the executor finish, interrupting them would fail them part way through:
+			this.executor.shutdown();
+			if(!this.executor.awaitTermination(10L, TimeUnit.SECONDS)){
+				throw new Exception("Fake sender still had sends in flight after 10 seconds.");
+			}
+		}
+	}
+
+	@Test
+	public void runOutboundMessageQueueSlowConsumerTest() throws Exception {
+		System.out.println("Begin runOutboundMessageQueueSlowConsumerTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		Random rand = new Random(1234);
+
+		//  Repeated updates to 8 regions, as if blocks in them keep changing:
+		int numRegions = 8;
+		List<BlockMessage> regionUpdates = new ArrayList<BlockMessage>();
+		for(int i = 0; i < 400; i++){
+			long x = (i % numRegions) * 4L;
+			CuboidAddress ca = new CuboidAddress(Coordinate.makeCoordinate(x, 0L, 0L, 0L), Coordinate.makeCoordinate(x + 4L, 4L, 4L, 1L));
+			List<Cuboid> cuboids = new ArrayList<Cuboid>();
+			cuboids.add(getRandomCuboid(blockManagerThreadCollection, rand, ca));
+			regionUpdates.add(new DescribeRegionsBlockMessage(null, 4L, cuboids, 7L, 99L));
+		}
+		long messageSize = 0L;
+		for(BlockMessage m : regionUpdates){
+			messageSize = Math.max(messageSize, m.asByteArray().length);
+		}
+		//  Room for one update per region plus a little slack:
+		long slowLimit = messageSize * (numRegions + 2L);
+		long slowDelayMillis = 20L;
+
+		FakeAsyncBinaryMessageSender fastSender1 = new FakeAsyncBinaryMessageSender(0L);
+		FakeAsyncBinaryMessageSender fastSender2 = new FakeAsyncBinaryMessageSender(0L);
+		FakeAsyncBinaryMessageSender slowCoalesceSender = new FakeAsyncBinaryMessageSender(slowDelayMillis);
+		FakeAsyncBinaryMessageSender slowDropSender = new FakeAsyncBinaryMessageSender(slowDelayMillis);
+		FakeAsyncBinaryMessageSender slowDisconnectSender = new FakeAsyncBinaryMessageSender(slowDelayMillis);
+		OutboundMessageQueue fast1 = new OutboundMessageQueue(fastSender1, SlowConsumerPolicy.COALESCE, null);
+		OutboundMessageQueue fast2 = new OutboundMessageQueue(fastSender2, SlowConsumerPolicy.DROP, null);
+		OutboundMessageQueue slowCoalesce = new OutboundMessageQueue(slowCoalesceSender, SlowConsumerPolicy.COALESCE, slowLimit);
+		OutboundMessageQueue slowDrop = new OutboundMessageQueue(slowDropSender, SlowConsumerPolicy.DROP, slowLimit);
+		//  Too small to hold one update per region, so coalescing can't keep up:
+		long disconnectLimit = messageSize * numRegions / 2L;
+		OutboundMessageQueue slowDisconnect = new OutboundMessageQueue(slowDisconnectSender, SlowConsumerPolicy.DISCONNECT, disconnectLimit);
+		List<OutboundMessageQueue> queues = Arrays.asList(fast1, slowCoalesce, slowDrop, slowDisconnect, fast2);
+
+		try{
+			//  Broadcast every update to every session, the way region notifications are sent:
+			long start = System.nanoTime();
+			for(BlockMessage m : regionUpdates){
+				for(OutboundMessageQueue q : queues){
+					q.enqueue(m, BlockMessageBinaryBuffer.PROTOCOL_VERSION_1);
+				}
+			}
+			long broadcastMillis = (System.nanoTime() - start) / 1000000L;
+			while((fast1.getNumSent() + fast1.getNumCoalesced() < regionUpdates.size() || fast2.getNumSent() < regionUpdates.size()) && (System.nanoTime() - start) < 10000000000L){
+				Thread.sleep(1);
+			}
+			long fastMillis = (System.nanoTime() - start) / 1000000L;
+			System.out.println("Broadcast of " + regionUpdates.size() + " updates returned after " + broadcastMillis + "ms and fast sessions finished after " + fastMillis + "ms.  A blocking send to the slow sessions would have taken at least " + (regionUpdates.size() * slowDelayMillis) + "ms.");
+			for(OutboundMessageQueue q : queues){
+				System.out.println(q.getSlowConsumerPolicy() + ": " + q.getMetricsSummary());
+			}
+
+			//  The coalescing fast session may still skip updates that were superseded before it got to them:
+			if(fast1.getNumSent() + fast1.getNumCoalesced() != regionUpdates.size() || fast2.getNumSent() != regionUpdates.size()){
+				throw new Exception("Fast sessions only sent " + fast1.getMetricsSummary() + " and " + fast2.getMetricsSummary() + " of " + regionUpdates.size() + " messages.");
+			}
+			if(fast1.getNumDropped() != 0L || fast2.getNumDropped() != 0L){
+				throw new Exception("Fast sessions should not drop anything.");
+			}
+			if(broadcastMillis >= regionUpdates.size() * slowDelayMillis / 4L){
+				throw new Exception("Broadcast took " + broadcastMillis + "ms, the slow sessions are holding up the sender.");
+			}
+			for(OutboundMessageQueue q : Arrays.asList(slowCoalesce, slowDrop, slowDisconnect)){
+				if(q.getMaxQueuedBytesSeen() > q.getMaxQueuedBytes()){
+					throw new Exception(q.getSlowConsumerPolicy() + " queue grew to " + q.getMaxQueuedBytesSeen() + " bytes, over the limit of " + q.getMaxQueuedBytes() + ".");
+				}
+			}
+			if(slowCoalesce.getNumCoalesced() == 0L || slowCoalesce.getNumDropped() != 0L || slowCoalesceSender.getIsClosed()){
+				throw new Exception("Slow coalescing session should replace superseded updates instead of dropping: " + slowCoalesce.getMetricsSummary());
+			}
+			if(slowDrop.getNumDropped() == 0L || slowDrop.getNumCoalesced() != 0L){
+				throw new Exception("Slow dropping session should drop without coalescing: " + slowDrop.getMetricsSummary());
+			}
+			if(!slowDisconnectSender.getIsClosed() || !slowDisconnect.isClosed()){
+				throw new Exception("Slow disconnecting session should have been closed: " + slowDisconnect.getMetricsSummary());
+			}
+
+			//  Once the slow coalescing session catches up it has the latest version of every region:
+			while(slowCoalesce.getQueuedMessages() > 0L && (System.nanoTime() - start) < 20000000000L){
+				Thread.sleep(5);
+			}
+			if(slowCoalesce.getQueuedMessages() != 0L){
+				throw new Exception("Slow coalescing session did not drain: " + slowCoalesce.getMetricsSummary());
+			}
+		}finally{
+			//  Stop the queues first, so the sends that are still in flight don't start new ones on a sender that's shutting down:
+			for(OutboundMessageQueue q : queues){
+				q.close();
+			}
+			for(FakeAsyncBinaryMessageSender s : Arrays.asList(fastSender1, fastSender2, slowCoalesceSender, slowDropSender, slowDisconnectSender)){
+				s.shutdown();
+			}
+		}
+	}
+
+
+	public Map<Long, Map<CuboidAddress, Long>> getSubscriptionIntersectionsByLinearScan(Map<Long, Map<CuboidAddress, Long>> subscribedRegions, List<CuboidAddress> addresses) throws Exception {
+		//  The original every address x every client x every subscription search, without the empty per-client maps:
+		Map<Long, Map<CuboidAddress, Long>> intersections = new TreeMap<Long, Map<CuboidAddress, Long>>();
+		for(CuboidAddress address : addresses){
+			for(Map.Entry<Long, Map<CuboidAddress, Long>> e : subscribedRegions.entrySet()){
+				for(Map.Entry<CuboidAddress, Long> r : e.getValue().entrySet()){
+					CuboidAddress intersection = r.getKey().getIntersectionCuboidAddress(address, true);
+					if(intersection != null){
+						if(!intersections.containsKey(e.getKey())){
+							intersections.put(e.getKey(), new TreeMap<CuboidAddress, Long>());
+						}
+						intersections.get(e.getKey()).put(intersection, r.getValue());
+					}
+				}
+			}
+		}
+		return intersections;
+	}
+
+	@Test
+	public void runRegionSubscriptionIndexBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runRegionSubscriptionIndexBenchmark:");
+		Random rand = new Random(1234);
+		int numClients = 100;
+		int subscriptionsPerClient = 5000;
+		RegionSubscriptionIndex index = new RegionSubscriptionIndex();
+		Map<Long, Map<CuboidAddress, Long>> reference = new TreeMap<Long, Map<CuboidAddress, Long>>();
+
+		//  Each client subscribes to a 50x10x10 block of 16x16x16 chunks around its own position, so nearby clients overlap:
+		long addStart = System.nanoTime();
+		for(long client = 0L; client < numClients; client++){
+			long baseX = (long)rand.nextInt(64) * 16L - 512L;
+			long baseZ = (long)rand.nextInt(64) * 16L - 512L;
+			Map<CuboidAddress, Long> clientSubscriptions = new HashMap<CuboidAddress, Long>();
+			reference.put(client, clientSubscriptions);
+			for(int i = 0; i < subscriptionsPerClient; i++){
+				long x = baseX + (i % 50) * 16L;
+				long y = ((i / 50) % 10) * 16L - 80L;
+				long z = baseZ + (i / 500) * 16L;
+				CuboidAddress ca = new CuboidAddress(Coordinate.makeCoordinate(x, y, z, 0L), Coordinate.makeCoordinate(x + 16L, y + 16L, z + 16L, 1L));
+				if(index.findIntersectingSubscription(client, ca) != null){
+					throw new Exception("Client " + client + " subscriptions should not overlap, but " + ca + " does.");
+				}
+				index.addSubscription(client, ca, client * 1000L + i);
+				clientSubscriptions.put(ca, client * 1000L + i);
+			}
+		}
+		long addMillis = (System.nanoTime() - addStart) / 1000000L;
+		System.out.println("Added " + index.getNumSubscriptions() + " subscriptions with overlap checks in " + addMillis + "ms.");
+
+		//  Writes of single blocks, whole chunks, unaligned multi-chunk regions and one huge region:
+		List<List<CuboidAddress>> writes = new ArrayList<List<CuboidAddress>>();
+		for(int i = 0; i < 200; i++){
+			long x = (long)rand.nextInt(1600) - 800L;
+			long y = (long)rand.nextInt(200) - 100L;
+			long z = (long)rand.nextInt(1600) - 800L;
+			long w = i % 3 == 0 ? 1L : (i % 3 == 1 ? 16L : 37L);
+			writes.add(Arrays.asList(new CuboidAddress(Coordinate.makeCoordinate(x, y, z, 0L), Coordinate.makeCoordinate(x + w, y + w, z + w, 1L))));
+		}
+		writes.add(Arrays.asList(new CuboidAddress(Coordinate.makeCoordinate(-2000L, -200L, -2000L, 0L), Coordinate.makeCoordinate(2000L, 200L, 2000L, 1L))));
+
+		int numChecked = 20;
+		long linearStart = System.nanoTime();
+		List<Map<Long, Map<CuboidAddress, Long>>> expected = new ArrayList<Map<Long, Map<CuboidAddress, Long>>>();
+		for(int i = 0; i < numChecked; i++){
+			expected.add(getSubscriptionIntersectionsByLinearScan(reference, writes.get(i)));
+		}
+		long linearNanos = System.nanoTime() - linearStart;
+		expected.add(getSubscriptionIntersectionsByLinearScan(reference, writes.get(writes.size() - 1)));
+
+		long indexStart = System.nanoTime();
+		long numIntersections = 0L;
+		List<Map<Long, Map<CuboidAddress, Long>>> actual = new ArrayList<Map<Long, Map<CuboidAddress, Long>>>();
+		for(int i = 0; i < writes.size() - 1; i++){
+			Map<Long, Map<CuboidAddress, Long>> result = index.getIntersections(writes.get(i));
+			for(Map<CuboidAddress, Long> m : result.values()){
+				numIntersections += m.size();
+			}
+			actual.add(result);
+		}
+		long indexNanos = System.nanoTime() - indexStart;
+		actual.add(index.getIntersections(writes.get(writes.size() - 1)));
+
+		for(int i = 0; i <= numChecked; i++){
+			int writeIndex = i < numChecked ? i : writes.size() - 1;
+			int actualIndex = i < numChecked ? i : actual.size() - 1;
+			if(!expected.get(i).equals(actual.get(actualIndex))){
+				throw new Exception("Index intersections for write " + writes.get(writeIndex) + " differ from the linear scan.");
+			}
+		}
+		System.out.println("Linear scan: " + (linearNanos / numChecked / 1000L) + "us per write.  Spatial index: " + (indexNanos / (writes.size() - 1) / 1000L) + "us per write (" + numIntersections + " intersections over " + (writes.size() - 1) + " writes).");
+
+		//  Bulk unsubscribe half of one client, then all of another:
+		long removeStart = System.nanoTime();
+		List<CuboidAddress> toRemove = new ArrayList<CuboidAddress>(reference.get(0L).keySet()).subList(0, subscriptionsPerClient / 2);
+		if(index.removeSubscriptions(0L, toRemove) != toRemove.size()){
+			throw new Exception("Expected to remove " + toRemove.size() + " subscriptions.");
+		}
+		if(index.removeAllSubscriptions(1L) != subscriptionsPerClient){
+			throw new Exception("Expected to remove all " + subscriptionsPerClient + " subscriptions of client 1.");
+		}
+		long removeMillis = (System.nanoTime() - removeStart) / 1000000L;
+		for(CuboidAddress ca : new ArrayList<CuboidAddress>(toRemove)){
+			reference.get(0L).remove(ca);
+		}
+		reference.remove(1L);
+		if(index.getNumSubscriptions() != (long)numClients * subscriptionsPerClient - subscriptionsPerClient / 2 - subscriptionsPerClient){
+			throw new Exception("Unexpected number of subscriptions after removal: " + index.getNumSubscriptions());
+		}
+		for(int i = 0; i < numChecked; i++){
+			if(!getSubscriptionIntersectionsByLinearScan(reference, writes.get(i)).equals(index.getIntersections(writes.get(i)))){
+				throw new Exception("Index intersections for write " + writes.get(i) + " differ from the linear scan after removal.");
+			}
+		}
+		System.out.println("Removed " + (toRemove.size() + subscriptionsPerClient) + " subscriptions in " + removeMillis + "ms.");
+	}
+
+
+	@Test
+	public void runOutboundMessageQueueCoalesceOrderTest() throws Exception {
+		System.out.println("Begin runOutboundMessageQueueCoalesceOrderTest:");
+		//  Holds every send until the test completes it, so the queue contents are known exactly:
+		List<byte []> sent = new ArrayList<byte []>();
+		List<javax.websocket.SendHandler> pendingHandlers = new ArrayList<javax.websocket.SendHandler>();
+		AsyncBinaryMessageSender sender = new AsyncBinaryMessageSender(){
+			public void sendBinaryAsync(ByteBuffer byteBuffer, javax.websocket.SendHandler handler) throws Exception{
+				byte [] bytes = new byte[byteBuffer.remaining()];
+				byteBuffer.get(bytes);
+				sent.add(bytes);
+				pendingHandlers.add(handler);
+			}
+
+			public void close(String reason) throws Exception{
+			}
+		};
+		OutboundMessageQueue q = new OutboundMessageQueue(sender, SlowConsumerPolicy.COALESCE, null);
+		List<BlockMessageBinaryBuffer> buffers = new ArrayList<BlockMessageBinaryBuffer>();
+		for(byte [] bytes : Arrays.asList(new byte [] {0}, new byte [] {1}, new byte [] {2}, new byte [] {3, 3})){
+			BlockMessageBinaryBuffer buffer = BlockMessageBinaryBuffer.acquirePooledBuffer(BlockMessageBinaryBuffer.PROTOCOL_VERSION_1, bytes.length);
+			buffer.writeBytes(bytes);
+			buffers.add(buffer);
+		}
+		q.enqueue(buffers.get(0), null);
+		q.enqueue(buffers.get(1), "a");
+		q.enqueue(buffers.get(2), "b");
+		q.enqueue(buffers.get(3), "a");
+		if(q.getQueuedMessages() != 2L || q.getQueuedBytes() != 3L || q.getNumCoalesced() != 1L){
+			throw new Exception("Expected the newer 'a' to replace the older one: " + q.getMetricsSummary());
+		}
+		//  A released buffer is empty, and the replaced one won't be sent:
+		if(buffers.get(1).getUsedCapacity() != 0 || buffers.get(3).getUsedCapacity() == 0){
+			throw new Exception("Expected only the replaced buffer to be released.");
+		}
+		while(!pendingHandlers.isEmpty()){
+			pendingHandlers.remove(0).onResult(new javax.websocket.SendResult());
+		}
+		for(BlockMessageBinaryBuffer buffer : buffers){
+			if(buffer.getUsedCapacity() != 0){
+				throw new Exception("Expected every buffer to be released once its send completed.");
+			}
+		}
+		List<Byte> order = new ArrayList<Byte>();
+		for(byte [] bytes : sent){
+			order.add(bytes[0]);
+		}
+		System.out.println("Send order: " + order + ", " + q.getMetricsSummary());
+		//  The replacement keeps the place in line of the message it replaced:
+		if(!order.equals(Arrays.asList((byte)0, (byte)3, (byte)2)) || q.getNumSent() != 3L){
+			throw new Exception("Expected [0, 3, 2] but sent " + order + ".");
+		}
+	}
+
+
+	@Test
+	public void runWriteNotificationCoalescingTest() throws Exception {
+		System.out.println("Begin runWriteNotificationCoalescingTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		Random rand = new Random(4321);
+
+		//  Two sessions, each with two clients subscribed to a grid of 16x16x16 chunks:
+		List<BlockSession> sessions = new ArrayList<BlockSession>();
+		for(int s = 0; s < 2; s++){
+			BlockSession session = new LocalBlockSession(null, "session-" + s);
+			for(long acid = 0L; acid < 2L; acid++){
+				for(long x = -64L; x < 64L; x += 16L){
+					for(long z = -64L; z < 64L; z += 16L){
+						CuboidAddress ca = new CuboidAddress(Coordinate.makeCoordinate(x + s * 8L, 0L, z, 0L), Coordinate.makeCoordinate(x + s * 8L + 16L, 16L, z + 16L, 1L));
+						session.subscribedRegions.addSubscription(acid, ca, acid * 1000L + x * 100L + z);
+					}
+				}
+			}
+			sessions.add(session);
+		}
+
+		//  A burst of overlapping writes, including some that write exactly the same region again:
+		List<List<Cuboid>> writes = new ArrayList<List<Cuboid>>();
+		for(int i = 0; i < 200; i++){
+			List<Cuboid> cuboids = new ArrayList<Cuboid>();
+			for(int j = 0; j < 1 + i % 3; j++){
+				long w = i % 2 == 0 ? 1L : 1L + rand.nextInt(24);
+				long x = i % 10 == 9 ? -8L : (long)rand.nextInt(128) - 64L;
+				long y = (long)rand.nextInt(16);
+				long z = i % 10 == 9 ? -8L : (long)rand.nextInt(128) - 64L;
+				CuboidAddress ca = new CuboidAddress(Coordinate.makeCoordinate(x, y, z, 0L), Coordinate.makeCoordinate(x + w, Math.min(y + w, 16L), z + w, 1L));
+				Cuboid c = getTerrainLikeCuboid(blockManagerThreadCollection, rand, ca);
+				//  Blocks are never written with a missing length:
+				long [] lengths = c.getCuboidDataLengths().getLengths();
+				BlockMessageBinaryBuffer data = new BlockMessageBinaryBuffer();
+				long [] offsets = c.getCuboidDataLengths().getOffsets();
+				for(int k = 0; k < lengths.length; k++){
+					if(lengths[k] < 0L){
+						lengths[k] = 0L;
+					}
+					data.writeBytes(c.getCuboidData().getDataAtOffset(offsets[k], lengths[k]));
+				}
+				cuboids.add(new Cuboid(ca, new CuboidDataLengths(ca, lengths), new CuboidData(data.getUsedBuffer())));
+			}
+			writes.add(cuboids);
+		}
+
+		//  The 'database' the old implementation would have read the notifications back from:
+		Map<String, String> database = new HashMap<String, String>();
+		SubscriptionNotificationCoalescer coalescer = new SubscriptionNotificationCoalescer(SubscriptionNotificationCoalescer.DEFAULT_COALESCING_WINDOW_MILLISECONDS);
+		long addNanos = 0L;
+		long expectedDatabaseReadsAvoided = 0L;
+		for(List<Cuboid> write : writes){
+			for(Cuboid c : write){
+				long [] lengths = c.getCuboidDataLengths().getLengths();
+				long [] offsets = c.getCuboidDataLengths().getOffsets();
+				RegionIteration regionIteration = new RegionIteration(c.getCuboidAddress().getCanonicalLowerCoordinate(), c.getCuboidAddress());
+				int k = 0;
+				do{
+					database.put(regionIteration.getCurrentCoordinate().toString(), new String(c.getCuboidData().getDataAtOffset(offsets[k], lengths[k]), "UTF-8"));
+					k++;
+				}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+			}
+			long start = System.nanoTime();
+			for(BlockSession session : sessions){
+				coalescer.addWrittenCuboids(session, write, start);
+			}
+			addNanos += System.nanoTime() - start;
+			//  The old path did one database read for each client of each session with an intersecting subscription:
+			List<CuboidAddress> writtenAddresses = new ArrayList<CuboidAddress>();
+			for(Cuboid c : write){
+				writtenAddresses.add(c.getCuboidAddress());
+			}
+			for(BlockSession session : sessions){
+				expectedDatabaseReadsAvoided += session.getSubscriptionIntersections(writtenAddresses).size();
+			}
+			if(coalescer.scheduleFlushIfNeeded() != (write == writes.get(0))){
+				throw new Exception("Expected exactly one flush to be scheduled for the whole burst.");
+			}
+		}
+		if(!coalescer.isInsideCoalescingWindow(System.nanoTime()) && coalescer.isInsideCoalescingWindow(System.nanoTime() - 1000000000L)){
+			throw new Exception("Unexpected coalescing window state.");
+		}
+
+		//  Applying every flushed message in order must give each subscriber exactly what's in the database:
+		List<SubscriptionNotificationCoalescer.PendingNotification> pendingNotifications = coalescer.takePendingNotifications();
+		Map<String, String> subscriberView = new HashMap<String, String>();
+		Set<String> seenSubscriptions = new HashSet<String>();
+		for(SubscriptionNotificationCoalescer.PendingNotification n : pendingNotifications){
+			String subscription = n.getBlockSession().toString() + "/" + n.getAuthorizedClientId() + "/" + n.getConversationId();
+			if(!seenSubscriptions.add(subscription)){
+				throw new Exception("Subscription " + subscription + " was notified more than once in the same flush.");
+			}
+			DescribeRegionsBlockMessage m = new DescribeRegionsBlockMessage(null, 4L, n.getCuboids(), n.getConversationId(), n.getAuthorizedClientId());
+			checkDescribeRegionsRoundTrip(m, BlockMessageBinaryBuffer.PROTOCOL_VERSION_2);
+			for(Cuboid c : n.getCuboids()){
+				long [] lengths = c.getCuboidDataLengths().getLengths();
+				long [] offsets = c.getCuboidDataLengths().getOffsets();
+				RegionIteration regionIteration = new RegionIteration(c.getCuboidAddress().getCanonicalLowerCoordinate(), c.getCuboidAddress());
+				int k = 0;
+				do{
+					subscriberView.put(subscription + "/" + regionIteration.getCurrentCoordinate(), new String(c.getCuboidData().getDataAtOffset(offsets[k], lengths[k]), "UTF-8"));
+					k++;
+				}while (regionIteration.incrementCoordinateWithinCuboidAddress());
+			}
+		}
+		int numBlocksChecked = 0;
+		for(Map.Entry<String, String> e : subscriberView.entrySet()){
+			String coordinateString = e.getKey().substring(e.getKey().lastIndexOf('/') + 1);
+			String databaseValue = database.get(coordinateString);
+			if(databaseValue == null){
+				throw new Exception("Subscriber " + e.getKey() + " was sent a block that was never written.");
+			}else if(!databaseValue.equals(e.getValue())){
+				throw new Exception("Subscriber " + e.getKey() + " has '" + e.getValue() + "' but the database has '" + databaseValue + "'.");
+			}
+			numBlocksChecked++;
+		}
+		if(coalescer.scheduleFlushIfNeeded() || coalescer.takePendingNotifications().size() != 0){
+			throw new Exception("Expected nothing to be pending after the flush.");
+		}
+		if(coalescer.getNumDatabaseReadsAvoided() != expectedDatabaseReadsAvoided){
+			throw new Exception("Expected " + expectedDatabaseReadsAvoided + " database reads to be avoided: " + coalescer.getMetricsSummary());
+		}
+		if(coalescer.getNumMessagesFlushed() >= coalescer.getNumRegionUpdates()){
+			throw new Exception("Expected writes to the same subscription to be coalesced: " + coalescer.getMetricsSummary());
+		}
+		System.out.println("Checked " + numBlocksChecked + " notified blocks against the database.  Clipping took " + (addNanos / writes.size() / 1000L) + "us per write.  " + coalescer.getMetricsSummary());
+	}
+
+
+	@Test
+	public void runVarLongTest() throws Exception {
+		System.out.println("Begin runVarLongTest:");
+		long [] values = new long [] {0L, 1L, -1L, 63L, -64L, 64L, 300L, Long.MAX_VALUE, Long.MIN_VALUE};
+		BlockMessageBinaryBuffer writer = new BlockMessageBinaryBuffer(BlockMessageBinaryBuffer.PROTOCOL_VERSION_2);
+		for(long v : values){
+			writer.writeZigZagVarLong(v);
+		}
+		BlockMessageBinaryBuffer reader = new BlockMessageBinaryBuffer(writer.getUsedBuffer(), 0);
+		for(long v : values){
+			long read = reader.readZigZagVarLong();
+			if(read != v){
+				throw new Exception("Wrote " + v + " but read " + read + ".");
+			}
+		}
+
+		//  Truncated and overlong varints from a bad peer must be reported as ordinary errors:
+		byte [] truncated = new byte [] {(byte)0x80, (byte)0x80};
+		byte [] overlong = new byte [11];
+		Arrays.fill(overlong, (byte)0x80);
+		for(byte [] bad : Arrays.asList(truncated, overlong)){
+			boolean rejected = false;
+			try{
+				new BlockMessageBinaryBuffer(bad, 0).readVarLong();
+			}catch(RuntimeException e){
+				throw new Exception("Expected a checked exception for " + Arrays.toString(bad) + ".", e);
+			}catch(Exception e){
+				System.out.println("Rejected " + Arrays.toString(bad) + ": " + e.getMessage());
+				rejected = true;
+			}
+			if(!rejected){
+				throw new Exception("Expected " + Arrays.toString(bad) + " to be rejected.");
+			}
+		}
+	}
+
+	public List<BlockMessage> processCommandOnServer(ServerBlockModelContext serverBlockModelContext, List<BlockMessage> sentMessages, long commandTypeValue, Coordinate coordinate) throws Exception{
+		//  Write the command by hand so values that aren't in CommandType can be sent too:
+		BlockMessageBinaryBuffer buffer = new BlockMessageBinaryBuffer();
+		BlockMessage.writeBlockMessageType(buffer, BlockMessageType.BLOCK_MESSAGE_TYPE_COMMAND);
+		BlockMessage.writeConversationId(buffer, 12345L);
+		BlockMessage.writeAuthorizedClientId(buffer, 0L);
+		buffer.writeOneLongValue(commandTypeValue);
+		buffer.writeOneLongValue(coordinate.getNumDimensions());
+		Coordinate.writeCoordinate(buffer, coordinate);
+		BlockMessage m = BlockMessage.consumeBlockMessage(serverBlockModelContext, new BlockMessageBinaryBuffer(buffer.getUsedBuffer(), 0));
+		sentMessages.clear();
+		m.doWork(new LocalBlockSession(serverBlockModelContext, "unknown-command-session"));
+		return new ArrayList<BlockMessage>(sentMessages);
+	}
+
+	@Test
+	public void runUnknownCommandTypeTest() throws Exception {
+		System.out.println("Begin runUnknownCommandTypeTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		File databaseFile = File.createTempFile("unknown-command-test", ".sqlite");
+		databaseFile.deleteOnExit();
+		final List<BlockMessage> sentMessages = new ArrayList<BlockMessage>();
+		SessionOperationInterface capturingSessionOperationInterface = new SessionOperationInterface(){
+			public void sendBlockMessage(BlockMessage m, BlockSession session) throws Exception{
+				sentMessages.add(m);
+			}
+		};
+		DatabaseBlockWorldConnectionParameters dbParams = new DatabaseBlockWorldConnectionParameters("sqlite", null, null, null, null, null, databaseFile.getAbsolutePath());
+		DatabaseBlockWorldConnection bwc = new DatabaseBlockWorldConnection(blockManagerThreadCollection, capturingSessionOperationInterface, dbParams);
+		ServerBlockModelContext serverBlockModelContext = new ServerBlockModelContext(blockManagerThreadCollection, capturingSessionOperationInterface, bwc);
+		serverBlockModelContext.init(null);
+
+		//  A command type from a newer client, and one that only clients should receive:
+		for(long commandTypeValue : new long [] {999L, CommandType.COMMAND_TYPE_RESPOND_ROOT_DICTIONARY_ADDRESS.toLong()}){
+			List<BlockMessage> responses = processCommandOnServer(serverBlockModelContext, sentMessages, commandTypeValue, new Coordinate(Arrays.asList()));
+			if(responses.size() != 1 || !(responses.get(0) instanceof ErrorNotificationBlockMessage) || ((ErrorNotificationBlockMessage)responses.get(0)).getBlockMessageErrorType() != BlockMessageErrorType.UNKNOWN_COMMAND_TYPE){
+				throw new Exception("Expected command type " + commandTypeValue + " to be answered with a single UNKNOWN_COMMAND_TYPE error, but the server sent " + responses + ".");
+			}
+		}
+
+		//  Older clients send no coordinate, and only get the root dictionary answer:
+		List<BlockMessage> responses = processCommandOnServer(serverBlockModelContext, sentMessages, CommandType.COMMAND_TYPE_REQUEST_ROOT_DICTIONARY_ADDRESS.toLong(), new Coordinate(Arrays.asList()));
+		if(responses.size() != 1 || !(responses.get(0) instanceof ErrorNotificationBlockMessage) || ((ErrorNotificationBlockMessage)responses.get(0)).getBlockMessageErrorType() != BlockMessageErrorType.ROOT_BLOCK_DICTIONARY_UNINITIALIZED){
+			throw new Exception("Expected a single ROOT_BLOCK_DICTIONARY_UNINITIALIZED error for an older client, but the server sent " + responses + ".");
+		}
+
+		//  Newer clients put the highest version they can decode in the coordinate:
+		responses = processCommandOnServer(serverBlockModelContext, sentMessages, CommandType.COMMAND_TYPE_REQUEST_ROOT_DICTIONARY_ADDRESS.toLong(), Coordinate.makeCoordinate(99L));
+		if(responses.size() != 3 || !(responses.get(0) instanceof CommandBlockMessage) || ((CommandBlockMessage)responses.get(0)).getAuthorizedCommandType() != CommandType.COMMAND_TYPE_RESPOND_PROTOCOL_VERSION){
+			throw new Exception("Expected the protocol version to be answered before the root dictionary, but the server sent " + responses + ".");
+		}
+		long agreedVersion = ((CommandBlockMessage)responses.get(0)).getCoordinate().getLongValueAtIndex(0L);
+		if(agreedVersion != BlockMessageBinaryBuffer.MAX_SUPPORTED_PROTOCOL_VERSION){
+			throw new Exception("Expected the server to agree on version " + BlockMessageBinaryBuffer.MAX_SUPPORTED_PROTOCOL_VERSION + ", but it chose " + agreedVersion + ".");
+		}
+		//  The world seed also has to arrive before the root dictionary answer, so the client never guesses it:
+		if(!(responses.get(1) instanceof CommandBlockMessage) || ((CommandBlockMessage)responses.get(1)).getAuthorizedCommandType() != CommandType.COMMAND_TYPE_RESPOND_WORLD_SEED){
+			throw new Exception("Expected the world seed to be answered before the root dictionary, but the server sent " + responses + ".");
+		}
+		long worldSeed = ((CommandBlockMessage)responses.get(1)).getCoordinate().getLongValueAtIndex(0L);
+		if(worldSeed != serverBlockModelContext.getWorldSeed()){
+			throw new Exception("Expected world seed " + serverBlockModelContext.getWorldSeed() + " but the server sent " + worldSeed + ".");
+		}
+		databaseFile.delete();
+		System.out.println("End runUnknownCommandTypeTest:");
+	}
+
+
+	public static class CountingBlockDAO implements BlockDAO {
+		//  Passes everything through to another BlockDAO and counts the reads that reach it.
+		private final BlockDAO blockDAO;
+		private long numReads = 0L;
+		private long numRegionsRead = 0L;
+		private long readNanos = 0L;
+
+		public CountingBlockDAO(BlockDAO blockDAO){
+			this.blockDAO = blockDAO;
+		}
+
+		public List<Cuboid> getBlocksInRegions(List<CuboidAddress> cuboidAddresses) throws Exception {
+			long start = System.nanoTime();
+			List<Cuboid> rtn = this.blockDAO.getBlocksInRegions(cuboidAddresses);
+			this.readNanos += System.nanoTime() - start;
+			this.numReads++;
+			this.numRegionsRead += cuboidAddresses.size();
+			return rtn;
+		}
+
+		public void writeBlocksInRegion(Cuboid cuboid) throws Exception {
+			this.blockDAO.writeBlocksInRegion(cuboid);
+		}
+
+		public void writeBlocksInRegions(List<Cuboid> cuboids) throws Exception {
+			this.blockDAO.writeBlocksInRegions(cuboids);
+		}
+
+		public void setBlockModelContext(BlockModelContext blockModelContext){
+			this.blockDAO.setBlockModelContext(blockModelContext);
+		}
+
+		public void setBlockManagerServerApplicationContextParameters(BlockManagerServerApplicationContextParameters blockManagerServerApplicationContextParameters){
+			this.blockDAO.setBlockManagerServerApplicationContextParameters(blockManagerServerApplicationContextParameters);
+		}
+
+		public void ensureBlockTableExists() throws Exception {
+			this.blockDAO.ensureBlockTableExists();
+		}
+
+		public void turnOffAutoCommit() throws Exception {
+			this.blockDAO.turnOffAutoCommit();
+		}
+
+		public String getWorldMetadataValue(String name) throws Exception {
+			return this.blockDAO.getWorldMetadataValue(name);
+		}
+
+		public void setWorldMetadataValue(String name, String value) throws Exception {
+			this.blockDAO.setWorldMetadataValue(name, value);
+		}
+
+		public long getNumReads(){
+			return this.numReads;
+		}
+
+		public long getNumRegionsRead(){
+			return this.numRegionsRead;
+		}
+
+		public long getReadNanos(){
+			return this.readNanos;
+		}
+	}
+
+	@Test
+	public void runServerChunkCacheLoadTest() throws Exception {
+		System.out.println("Begin runServerChunkCacheLoadTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		Random rand = new Random(2468);
+		List<Cuboid> cuboids = getRandomChunkCuboids(blockManagerThreadCollection, rand, chunkSize, 20L, 20L);
+
+		File databaseFile = File.createTempFile("server-chunk-cache-", ".sqlite");
+		databaseFile.deleteOnExit();
+		BlockDAO blockDAO = makeSqliteServerBlockModelContext(blockManagerThreadCollection, databaseFile).getBlockDAO();
+		blockDAO.writeBlocksInRegions(cuboids);
+
+		//  The same workload is run against the database directly, and through an LRU and a CLOCK cache that are too small for the whole world:
+		CountingBlockDAO uncached = new CountingBlockDAO(blockDAO);
+		CountingBlockDAO lruDatabase = new CountingBlockDAO(blockDAO);
+		CountingBlockDAO clockDatabase = new CountingBlockDAO(blockDAO);
+		ChunkCachingBlockDAO lruCache = new ChunkCachingBlockDAO(lruDatabase, chunkSize, 150, ChunkCacheEvictionPolicy.LRU);
+		ChunkCachingBlockDAO clockCache = new ChunkCachingBlockDAO(clockDatabase, chunkSize, 150, ChunkCacheEvictionPolicy.CLOCK);
+		List<BlockDAO> daos = Arrays.asList(uncached, lruCache, clockCache);
+		long [] readNanos = new long [daos.size()];
+
+		byte [] rock = blockManagerThreadCollection.getBlockDataForClass(Rock.class);
+		long [][] players = new long [][]{{10L, 10L}, {40L, 70L}, {50L, 20L}};
+		int numSteps = 300;
+		for(int step = 0; step < numSteps; step++){
+			long [] player = players[step % players.length];
+			player[0] = Math.max(0L, Math.min(59L, player[0] + rand.nextInt(3) - 1));
+			player[1] = Math.max(0L, Math.min(99L, player[1] + rand.nextInt(3) - 1));
+
+			List<CuboidAddress> toRead = new ArrayList<CuboidAddress>();
+			int operation = rand.nextInt(10);
+			if(operation < 6){
+				//  Probe the chunks around the player, like a client does when it moves:
+				Coordinate playerCoordinate = Coordinate.makeCoordinate(player[0], -1L, player[1], 0L);
+				CuboidAddress around = new CuboidAddress(playerCoordinate.add(Coordinate.makeCoordinate(-6L, -2L, -10L, 0L)), playerCoordinate.add(Coordinate.makeCoordinate(7L, 2L, 11L, 1L)));
+				toRead.addAll(around.getIntersectingChunkSet(chunkSize));
+			}else if(operation < 8){
+				//  Walk up a column one block at a time, like getNearestEmptyCoordinate:
+				for(long y = -3L; y < 0L; y++){
+					toRead.add(new CuboidAddress(Coordinate.makeCoordinate(player[0], y, player[1], 0L), Coordinate.makeCoordinate(player[0] + 1L, y + 1L, player[1] + 1L, 1L)));
+				}
+			}else{
+				//  Write a few blocks near the player, then read back an unaligned region covering them:
+				CuboidAddress written = new CuboidAddress(Coordinate.makeCoordinate(player[0], -2L, player[1], 0L), Coordinate.makeCoordinate(player[0] + 2L, -1L, player[1] + 2L, 1L));
+				BlockMessageBinaryBuffer data = new BlockMessageBinaryBuffer();
+				long [] lengths = new long [(int)written.getVolume()];
+				for(int i = 0; i < lengths.length; i++){
+					lengths[i] = rock.length;
+					data.writeBytes(rock);
+				}
+				Cuboid writtenCuboid = new Cuboid(written, new CuboidDataLengths(written, lengths), new CuboidData(data.getUsedBuffer()));
+				for(int d = 1; d < daos.size(); d++){
+					daos.get(d).writeBlocksInRegions(Arrays.asList(writtenCuboid));
+				}
+				toRead.add(new CuboidAddress(Coordinate.makeCoordinate(player[0] - 1L, -3L, player[1] - 1L, 0L), Coordinate.makeCoordinate(player[0] + 3L, 0L, player[1] + 3L, 1L)));
+			}
+
+			List<List<Cuboid>> results = new ArrayList<List<Cuboid>>();
+			for(int d = 0; d < daos.size(); d++){
+				//  Individual reads, the way the server issues them:
+				List<Cuboid> result = new ArrayList<Cuboid>();
+				long start = System.nanoTime();
+				if(operation < 6){
+					result.addAll(daos.get(d).getBlocksInRegions(toRead));
+				}else{
+					for(CuboidAddress ca : toRead){
+						result.addAll(daos.get(d).getBlocksInRegions(Arrays.asList(ca)));
+					}
+				}
+				readNanos[d] += System.nanoTime() - start;
+				results.add(result);
+			}
+			for(int d = 1; d < daos.size(); d++){
+				for(int i = 0; i < toRead.size(); i++){
+					assertCuboidsHaveSameBlocks(results.get(0).get(i), results.get(d).get(i));
+				}
+			}
+		}
+		this.checkForExceptions(blockManagerThreadCollection);
+
+		//  A read bigger than the cache goes straight to the database:
+		CuboidAddress everything = new CuboidAddress(Coordinate.makeCoordinate(0L, -3L, 0L, 0L), Coordinate.makeCoordinate(60L, 0L, 100L, 1L));
+		assertCuboidsHaveSameBlocks(uncached.getBlocksInRegions(Arrays.asList(everything)).get(0), lruCache.getBlocksInRegions(Arrays.asList(everything)).get(0));
+		if(lruCache.getNumPassThroughReads() != 1L){
+			throw new Exception("Expected a read larger than the cache to be passed through: " + lruCache.getMetricsSummary());
+		}
+
+		for(ChunkCachingBlockDAO cache : Arrays.asList(lruCache, clockCache)){
+			if(cache.getNumEvictions() == 0L || cache.getNumChunkHits() == 0L || cache.getNumCachedChunks() > 150){
+				throw new Exception("Expected the cache to both hit and evict without growing past its size: " + cache.getMetricsSummary());
+			}
+		}
+		if(lruDatabase.getNumReads() >= uncached.getNumReads() || clockDatabase.getNumReads() >= uncached.getNumReads()){
+			throw new Exception("Expected the caches to make fewer database reads than " + uncached.getNumReads() + ", but LRU made " + lruDatabase.getNumReads() + " and CLOCK made " + clockDatabase.getNumReads() + ".");
+		}
+		System.out.println("No cache: " + uncached.getNumReads() + " database reads (" + uncached.getNumRegionsRead() + " regions) in " + (readNanos[0] / 1000000L) + "ms.");
+		System.out.println("LRU cache: " + lruDatabase.getNumReads() + " database reads (" + lruDatabase.getNumRegionsRead() + " regions) in " + (readNanos[1] / 1000000L) + "ms.  " + lruCache.getMetricsSummary());
+		System.out.println("CLOCK cache: " + clockDatabase.getNumReads() + " database reads (" + clockDatabase.getNumRegionsRead() + " regions) in " + (readNanos[2] / 1000000L) + "ms.  " + clockCache.getMetricsSummary());
+	}
+
+	public static class PausingBlockDAO extends CountingBlockDAO {
+		//  Once armed, the next read stops after it has read the database and waits to be let go.
+		private volatile boolean isArmed = false;
+		private volatile CountDownLatch readFinished = null;
+		private volatile CountDownLatch release = null;
+
+		public PausingBlockDAO(BlockDAO blockDAO){
+			super(blockDAO);
+		}
+
+		public void pauseNextRead(){
+			this.readFinished = new CountDownLatch(1);
+			this.release = new CountDownLatch(1);
+			this.isArmed = true;
+		}
+
+		public boolean awaitPausedRead() throws Exception {
+			return this.readFinished.await(10L, TimeUnit.SECONDS);
+		}
+
+		public void releasePausedRead(){
+			this.release.countDown();
+		}
+
+		@Override
+		public List<Cuboid> getBlocksInRegions(List<CuboidAddress> cuboidAddresses) throws Exception {
+			List<Cuboid> rtn = super.getBlocksInRegions(cuboidAddresses);
+			if(this.isArmed){
+				this.isArmed = false;
+				this.readFinished.countDown();
+				this.release.await(10L, TimeUnit.SECONDS);
+			}
+			return rtn;
+		}
+	}
+
+	@Test
+	public void runChunkCacheConcurrentAccessTest() throws Exception {
+		System.out.println("Begin runChunkCacheConcurrentAccessTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		List<Cuboid> cuboids = getRandomChunkCuboids(blockManagerThreadCollection, new Random(1357), chunkSize, 2L, 1L);
+
+		File databaseFile = File.createTempFile("server-chunk-cache-concurrent-", ".sqlite");
+		databaseFile.deleteOnExit();
+		BlockDAO blockDAO = makeSqliteServerBlockModelContext(blockManagerThreadCollection, databaseFile).getBlockDAO();
+		blockDAO.writeBlocksInRegions(cuboids);
+		PausingBlockDAO database = new PausingBlockDAO(blockDAO);
+		ChunkCachingBlockDAO cache = new ChunkCachingBlockDAO(database, chunkSize, 16, ChunkCacheEvictionPolicy.LRU);
+		CuboidAddress cachedChunk = cuboids.get(0).getCuboidAddress();
+		CuboidAddress missingChunk = cuboids.get(1).getCuboidAddress();
+		cache.getBlocksInRegions(Arrays.asList(cachedChunk));
+
+		//  A read that is stuck on the database:
+		database.pauseNextRead();
+		List<Exception> exceptions = Collections.synchronizedList(new ArrayList<Exception>());
+		Thread slowReader = new Thread(() -> {
+			try{
+				cache.getBlocksInRegions(Arrays.asList(missingChunk));
+			}catch(Exception e){
+				exceptions.add(e);
+			}
+		});
+		slowReader.start();
+		if(!database.awaitPausedRead()){
+			throw new Exception("Expected the read of the missing chunk to reach the database.");
+		}
+
+		//  ...doesn't hold up a read that hits the cache, or a write:
+		byte [] rock = blockManagerThreadCollection.getBlockDataForClass(Rock.class);
+		BlockMessageBinaryBuffer data = new BlockMessageBinaryBuffer();
+		long [] lengths = new long [(int)missingChunk.getVolume()];
+		for(int i = 0; i < lengths.length; i++){
+			lengths[i] = rock.length;
+			data.writeBytes(rock);
+		}
+		Cuboid rockChunk = new Cuboid(missingChunk, new CuboidDataLengths(missingChunk, lengths), new CuboidData(data.getUsedBuffer()));
+		AtomicBoolean otherWorkFinished = new AtomicBoolean(false);
+		Thread otherWork = new Thread(() -> {
+			try{
+				cache.getBlocksInRegions(Arrays.asList(cachedChunk));
+				cache.writeBlocksInRegions(Arrays.asList(rockChunk));
+				otherWorkFinished.set(true);
+			}catch(Exception e){
+				exceptions.add(e);
+			}
+		});
+		otherWork.start();
+		otherWork.join(10000L);
+		boolean finishedWhilePaused = otherWorkFinished.get();
+		database.releasePausedRead();
+		slowReader.join(10000L);
+		otherWork.join(10000L);
+		if(exceptions.size() > 0){
+			throw exceptions.get(0);
+		}
+		if(!finishedWhilePaused){
+			throw new Exception("Expected a cache hit and a write to finish while another read was waiting on the database: " + cache.getMetricsSummary());
+		}
+
+		//  The slow read started before the write, so what it read must not have been cached:
+		assertCuboidsHaveSameBlocks(rockChunk, cache.getBlocksInRegions(Arrays.asList(missingChunk)).get(0));
+		assertCuboidsHaveSameBlocks(rockChunk, cache.getBlocksInRegions(Arrays.asList(missingChunk)).get(0));
+		System.out.println(cache.getMetricsSummary());
+		System.out.println("End runChunkCacheConcurrentAccessTest:");
+	}
+
+
+	public long getUsedHeapAfterGC() throws Exception {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++){
+			System.gc();
+			Thread.sleep(20);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public long [] getGarbageCollectionCountAndMillis(){
+		long [] rtn = new long [2];
+		for(java.lang.management.GarbageCollectorMXBean bean : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()){
+			rtn[0] += Math.max(0L, bean.getCollectionCount());
+			rtn[1] += Math.max(0L, bean.getCollectionTime());
+		}
+		return rtn;
+	}
+
+	public void fillChunkFromTemplate(ChunkBlockStore store, CuboidAddress chunkAddress, byte [][] blockData, String [] blockClassNames) throws Exception {
+		store.addChunk(chunkAddress);
+		for(int i = 0; i < blockData.length; i++){
+			store.writeBlock(chunkAddress, i, blockData[i], blockClassNames[i]);
+		}
+	}
+
+	@Test
+	public void runChunkBlockStoreBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runChunkBlockStoreBenchmark:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		int blocksPerChunk = (int)chunkSize.getVolume();
+		Random rand = new Random(97531);
+
+		//  Chunk contents to copy from, with a player object and some uninitialized blocks mixed in:
+		int numTemplates = 64;
+		byte [][][] templateData = new byte [numTemplates][blocksPerChunk][];
+		String [][] templateClassNames = new String [numTemplates][blocksPerChunk];
+		byte [] playerData = new PlayerObject("7c2c2d84-2b1e-4b3c-9a55-7a0c5c1e3f11", PlayerObjectSkinType.HAPPY_FACE).getBlockData();
+		for(int t = 0; t < numTemplates; t++){
+			Cuboid c = getTerrainLikeCuboid(blockManagerThreadCollection, rand, new CuboidAddress(Coordinate.makeOriginCoordinate(4L), chunkSize.getCanonicalUpperCoordinate()));
+			long [] lengths = c.getCuboidDataLengths().getLengths();
+			long [] offsets = c.getCuboidDataLengths().getOffsets();
+			for(int i = 0; i < blocksPerChunk; i++){
+				byte [] data = lengths[i] < 0L ? null : c.getCuboidData().getDataAtOffset(offsets[i], lengths[i]);
+				if(i == t % blocksPerChunk){
+					data = playerData;
+				}
+				templateData[t][i] = data;
+				templateClassNames[t][i] = data == null ? null : blockManagerThreadCollection.getBlockSchema().getFirstBlockMatchDescriptionForByteArray(data);
+			}
+		}
+
+		File spillDirectory = Files.createTempDirectory("chunk-store-spill-").toFile();
+		spillDirectory.deleteOnExit();
+
+		//  Random adds, rewrites and removals must read back the same from every store:
+		List<ChunkBlockStore> stores = Arrays.asList(
+			new HeapChunkBlockStore(chunkSize),
+			new OffHeapChunkBlockStore(chunkSize, null, 64 * 1024),
+			new OffHeapChunkBlockStore(chunkSize, new ChunkStoreSpillFile(spillDirectory), 64 * 1024)
+		);
+		List<CuboidAddress> loaded = new ArrayList<CuboidAddress>();
+		for(int step = 0; step < 20000; step++){
+			int operation = rand.nextInt(10);
+			if(operation < 3 || loaded.size() == 0){
+				CuboidAddress chunkAddress = CuboidAddress.blockCoordinateToChunkCuboidAddress(Coordinate.makeCoordinate((long)rand.nextInt(300), (long)rand.nextInt(30), (long)rand.nextInt(300), 0L), chunkSize);
+				int t = rand.nextInt(numTemplates);
+				for(ChunkBlockStore store : stores){
+					fillChunkFromTemplate(store, chunkAddress, templateData[t], templateClassNames[t]);
+				}
+				if(!loaded.contains(chunkAddress)){
+					loaded.add(chunkAddress);
+				}
+			}else if(operation < 5){
+				CuboidAddress chunkAddress = loaded.remove(rand.nextInt(loaded.size()));
+				for(ChunkBlockStore store : stores){
+					store.removeChunk(chunkAddress);
+				}
+			}else if(operation < 7){
+				CuboidAddress chunkAddress = loaded.get(rand.nextInt(loaded.size()));
+				int index = rand.nextInt(blocksPerChunk);
+				int t = rand.nextInt(numTemplates);
+				for(ChunkBlockStore store : stores){
+					store.writeBlock(chunkAddress, index, templateData[t][index], templateClassNames[t][index]);
+				}
+			}else{
+				CuboidAddress chunkAddress = loaded.get(rand.nextInt(loaded.size()));
+				for(int index = 0; index < blocksPerChunk; index++){
+					IndividualBlock expected = stores.get(0).readBlock(chunkAddress, index);
+					for(ChunkBlockStore store : stores){
+						IndividualBlock actual = store.readBlock(chunkAddress, index);
+						if(!expected.getClass().equals(actual.getClass()) || !Arrays.equals(expected.getBlockData(), actual.getBlockData())){
+							throw new Exception("Block " + index + " of " + chunkAddress + " was " + actual.getClass().getName() + " in " + store.getClass().getName() + " but expected " + expected.getClass().getName() + ".");
+						}
+					}
+				}
+			}
+			for(ChunkBlockStore store : stores){
+				if(store.getNumChunks() != loaded.size()){
+					throw new Exception("Expected " + loaded.size() + " chunks but " + store.getClass().getName() + " has " + store.getNumChunks() + ".");
+				}
+			}
+		}
+		for(int s = 1; s < stores.size(); s++){
+			if(((OffHeapChunkBlockStore)stores.get(s)).getNumCompactions() == 0L){
+				throw new Exception("Expected the off-heap store to have compacted its payloads at least once.");
+			}
+		}
+		for(ChunkBlockStore store : stores){
+			store.close();
+		}
+
+		//  Heap usage and garbage collection with a large view area loaded, then while moving through it:
+		int numChunks = 40000;
+		List<CuboidAddress> chunkAddresses = new ArrayList<CuboidAddress>();
+		for(int i = 0; i < numChunks * 2; i++){
+			chunkAddresses.add(CuboidAddress.blockCoordinateToChunkCuboidAddress(Coordinate.makeCoordinate((long)(i % 400) * chunkSize.getWidthForIndex(0L), 0L, (long)(i / 400) * chunkSize.getWidthForIndex(2L), 0L), chunkSize));
+		}
+		for(String storeType : Arrays.asList("heap", "off-heap", "off-heap-spill")){
+			long heapBefore = getUsedHeapAfterGC();
+			ChunkBlockStore store = storeType.equals("heap") ? new HeapChunkBlockStore(chunkSize) : new OffHeapChunkBlockStore(chunkSize, storeType.equals("off-heap") ? null : new ChunkStoreSpillFile(spillDirectory), OffHeapChunkBlockStore.DEFAULT_PAGE_SIZE);
+			for(int i = 0; i < numChunks; i++){
+				fillChunkFromTemplate(store, chunkAddresses.get(i), templateData[i % numTemplates], templateClassNames[i % numTemplates]);
+			}
+			long heapLoaded = getUsedHeapAfterGC() - heapBefore;
+
+			long [] gcBefore = getGarbageCollectionCountAndMillis();
+			long start = System.nanoTime();
+			long numReads = 0L;
+			for(int shift = 0; shift < numChunks; shift += 400){
+				//  Load one row of chunks ahead, unload one row behind, and read back a row in the middle:
+				for(int i = 0; i < 400; i++){
+					store.removeChunk(chunkAddresses.get(shift + i));
+					fillChunkFromTemplate(store, chunkAddresses.get(numChunks + shift + i), templateData[i % numTemplates], templateClassNames[i % numTemplates]);
+					CuboidAddress middle = chunkAddresses.get(numChunks / 2 + shift + i);
+					for(int index = 0; index < blocksPerChunk; index++){
+						if(store.readBlock(middle, index) == null){
+							throw new Exception("Expected every block in " + middle + " to be written.");
+						}
+						numReads++;
+					}
+				}
+			}
+			long churnMillis = (System.nanoTime() - start) / 1000000L;
+			long [] gcAfter = getGarbageCollectionCountAndMillis();
+			String offHeap = store instanceof OffHeapChunkBlockStore ? ", " + (((OffHeapChunkBlockStore)store).getBytesAllocated() / 1024L / 1024L) + "MiB off-heap, " + ((OffHeapChunkBlockStore)store).getNumCompactions() + " compactions" : "";
+			System.out.println(storeType + ": " + numChunks + " chunks use " + (heapLoaded / 1024L / 1024L) + "MiB of heap" + offHeap + ".  Moving through the area took " + churnMillis + "ms for " + numReads + " reads with " + (gcAfter[0] - gcBefore[0]) + " collections taking " + (gcAfter[1] - gcBefore[1]) + "ms.");
+			store.close();
+		}
+	}
+
+	@Test
+	public void runMissingBlockWriteTest() throws Exception {
+		System.out.println("Begin runMissingBlockWriteTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		File databaseFile = File.createTempFile("missing-block-write-", ".sqlite");
+		databaseFile.deleteOnExit();
+		BlockDAO blockDAO = makeSqliteServerBlockModelContext(blockManagerThreadCollection, databaseFile).getBlockDAO();
+		ChunkCachingBlockDAO cache = new ChunkCachingBlockDAO(blockDAO, chunkSize, 16, ChunkCacheEvictionPolicy.LRU);
+		CuboidAddress chunk = new CuboidAddress(chunkSize.getCanonicalLowerCoordinate(), chunkSize.getCanonicalLowerCoordinate().add(chunkSize.getCanonicalUpperCoordinate()));
+		byte [] rock = blockManagerThreadCollection.getBlockDataForClass(Rock.class);
+		BlockMessageBinaryBuffer rockData = new BlockMessageBinaryBuffer();
+		long [] rockLengths = new long [(int)chunk.getVolume()];
+		for(int i = 0; i < rockLengths.length; i++){
+			rockLengths[i] = rock.length;
+			rockData.writeBytes(rock);
+		}
+		Cuboid rockChunk = new Cuboid(chunk, new CuboidDataLengths(chunk, rockLengths), new CuboidData(rockData.getUsedBuffer()));
+		cache.writeBlocksInRegions(Arrays.asList(rockChunk));
+		//  Make sure the chunk is cached before the bad write:
+		assertCuboidsHaveSameBlocks(rockChunk, cache.getBlocksInRegions(Arrays.asList(chunk)).get(0));
+
+		//  The same chunk filled with empty blocks, except for one that is missing:
+		byte [] empty = blockManagerThreadCollection.getBlockDataForClass(EmptyBlock.class);
+		long [] lengths = new long [(int)chunk.getVolume()];
+		BlockMessageBinaryBuffer data = new BlockMessageBinaryBuffer();
+		for(int i = 0; i < lengths.length; i++){
+			if(i == lengths.length / 2){
+				lengths[i] = -1L;
+			}else{
+				lengths[i] = empty.length;
+				data.writeBytes(empty);
+			}
+		}
+		Cuboid partialChunk = new Cuboid(chunk, new CuboidDataLengths(chunk, lengths), new CuboidData(data.getUsedBuffer()));
+
+		for(BlockDAO writer : Arrays.asList(cache, blockDAO)){
+			boolean rejected = false;
+			try{
+				writer.writeBlocksInRegions(Arrays.asList(partialChunk));
+			}catch(Exception e){
+				System.out.println("Rejected by " + writer.getClass().getSimpleName() + ": " + e.getMessage());
+				rejected = true;
+			}
+			if(!rejected){
+				throw new Exception("Expected " + writer.getClass().getName() + " to refuse a write with a missing block.");
+			}
+		}
+		//  Nothing from the refused write reached the database or the cache:
+		assertCuboidsHaveSameBlocks(rockChunk, blockDAO.getBlocksInRegions(Arrays.asList(chunk)).get(0));
+		assertCuboidsHaveSameBlocks(rockChunk, cache.getBlocksInRegions(Arrays.asList(chunk)).get(0));
+		if(blockManagerThreadCollection.getIsProcessFinished()){
+			throw new Exception("A refused write should not stop the process.");
+		}
+		databaseFile.delete();
+		System.out.println("End runMissingBlockWriteTest:");
+	}
+
+	public static class ContentionTestChunksClient implements InMemoryChunksClient {
+		public void onChunkSignal(ChunkSignal chunkSignal) throws Exception{
+		}
+
+		public Long getAuthorizedClientId(){
+			return 0L;
+		}
+
+		@Override
+		public int compareTo(InMemoryChunksClient other) {
+			return this.getAuthorizedClientId().compareTo(other.getAuthorizedClientId());
+		}
+	}
+
+	public CuboidAddress getStreamingViewArea(CuboidAddress chunkSize, long step) throws Exception{
+		long chunkWidth = chunkSize.getWidthForIndex(0L);
+		return new CuboidAddress(
+			new Coordinate(Arrays.asList(step * chunkWidth, 0L, 0L, 0L)),
+			new Coordinate(Arrays.asList(step * chunkWidth + 8L * chunkWidth, 6L * chunkSize.getWidthForIndex(1L), 2L * chunkSize.getWidthForIndex(2L), 1L))
+		);
+	}
+
+	public void runOneInMemoryChunksContentionTest(String chunkStore, boolean useSingleLock, int numReaderThreads, int numSteps, Map<CuboidAddress, Cuboid> chunkContents) throws Exception{
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{"--chunk-store=" + chunkStore}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		InMemoryChunks imc = new InMemoryChunks(blockManagerThreadCollection, chunkSize, Long.MAX_VALUE);
+		ContentionTestChunksClient client = new ContentionTestChunksClient();
+
+		final Object viewLock = new Object();
+		final CuboidAddress [] currentView = new CuboidAddress [] {getStreamingViewArea(chunkSize, 0L)};
+		final AtomicBoolean isStreaming = new AtomicBoolean(true);
+		final AtomicLong numFramesRendered = new AtomicLong(0L);
+		final AtomicLong maxFrameNanos = new AtomicLong(0L);
+		final List<Exception> readerExceptions = new ArrayList<Exception>();
+
+		//  Each reader thread stands in for the map area rendering the current view as fast as it can:
+		List<Thread> readers = new ArrayList<Thread>();
+		for(int r = 0; r < numReaderThreads; r++){
+			readers.add(new Thread(() -> {
+				try{
+					ThreeDimensionalCircularBuffer<IndividualBlock> blockBuffer = new ThreeDimensionalCircularBuffer<IndividualBlock>(IndividualBlock.class, new PendingLoadBlock());
+					while(isStreaming.get()){
+						CuboidAddress view;
+						synchronized(viewLock){
+							view = currentView[0];
+						}
+						long frameStart = System.nanoTime();
+						blockBuffer.updateBufferRegion(view.getSubDimensions(0L, 3L));
+						if(useSingleLock){
+							//  How every read worked before, behind the same lock as the writes:
+							synchronized(imc.lock){
+								imc.loadBlocksFromMemory(blockBuffer, view, null);
+							}
+						}else{
+							imc.loadBlocksFromMemory(blockBuffer, view, null);
+						}
+						maxFrameNanos.accumulateAndGet(System.nanoTime() - frameStart, Math::max);
+						numFramesRendered.incrementAndGet();
+					}
+				}catch(Exception e){
+					synchronized(readerExceptions){
+						readerExceptions.add(e);
+					}
+				}
+			}));
+		}
+		for(Thread t : readers){
+			t.start();
+		}
+
+		//  Stream chunks in as the view moves one chunk at a time, discarding the ones left behind:
+		Set<CuboidAddress> loadedChunks = new TreeSet<CuboidAddress>();
+		long numChunksStreamed = 0L;
+		long streamStart = System.nanoTime();
+		CuboidAddress view = null;
+		for(long step = 0L; step < numSteps; step++){
+			view = getStreamingViewArea(chunkSize, step);
+			imc.updateRequiredRegions(new TreeSet<CuboidAddress>(Arrays.asList(view)), client);
+			imc.onHasPendingNotYetRequestedChunks();
+			Set<CuboidAddress> requiredChunks = view.getIntersectingChunkSet(chunkSize);
+			loadedChunks.retainAll(requiredChunks);
+			for(CuboidAddress chunk : requiredChunks){
+				if(!loadedChunks.contains(chunk)){
+					imc.addInMemoryChunk(chunkContents.get(chunk), client);
+					loadedChunks.add(chunk);
+					numChunksStreamed++;
+				}
+			}
+			synchronized(viewLock){
+				currentView[0] = view;
+			}
+		}
+		long streamNanos = System.nanoTime() - streamStart;
+		isStreaming.set(false);
+		for(Thread t : readers){
+			t.join();
+		}
+		if(readerExceptions.size() > 0){
+			throw readerExceptions.get(0);
+		}
+
+		//  The incrementally kept counts must agree with the state machines:
+		synchronized(imc.lock){
+			for(MemoryChunkStateType stateType : Arrays.asList(MemoryChunkStateType.PENDING, MemoryChunkStateType.REQUESTED, MemoryChunkStateType.AVAILABLE)){
+				if(imc.getNumChunksInState(stateType) != imc.getAllChunksInState(stateType).size()){
+					throw new Exception("Count for " + stateType + " was " + imc.getNumChunksInState(stateType) + " but there were " + imc.getAllChunksInState(stateType).size() + " chunks in that state.");
+				}
+			}
+		}
+		if(imc.getNumChunksInState(MemoryChunkStateType.AVAILABLE) != loadedChunks.size() || !imc.isEmptyAndFinished()){
+			throw new Exception("Expected " + loadedChunks.size() + " available chunks and nothing loading, but found " + imc.getNumChunksInState(MemoryChunkStateType.AVAILABLE) + " available chunks.");
+		}
+
+		//  Everything in the final view must read back as it was streamed in:
+		RegionCursor cursor = new RegionCursor(view);
+		for(; !cursor.isDone(); cursor.next()){
+			CuboidAddress chunk = CuboidAddress.blockCoordinateToChunkCuboidAddress(cursor.getCoordinate(), chunkSize);
+			Cuboid expected = chunkContents.get(chunk);
+			int index = (int)cursor.getLinearArrayIndexIn(chunk);
+			long length = expected.getCuboidDataLengths().getLengths()[index];
+			byte [] expectedData = expected.getCuboidData().getDataAtOffset(expected.getCuboidDataLengths().getOffsets()[index], length);
+			IndividualBlock b = imc.readBlockAtCoordinate(cursor.getCoordinate());
+			if(b == null || !Arrays.equals(b.getBlockData(), expectedData)){
+				throw new Exception("Block at " + cursor.getCoordinate() + " did not read back as it was written.");
+			}
+		}
+		//  Reading the whole view at once must give the same blocks as reading them one at a time:
+		ThreeDimensionalCircularBuffer<IndividualBlock> finalBuffer = new ThreeDimensionalCircularBuffer<IndividualBlock>(IndividualBlock.class, new PendingLoadBlock());
+		finalBuffer.updateBufferRegion(view.getSubDimensions(0L, 3L));
+		imc.loadBlocksFromMemory(finalBuffer, view, null);
+		for(cursor = new RegionCursor(view); !cursor.isDone(); cursor.next()){
+			if(cursor.getValueAtIndex(3) == 0L && !Arrays.equals(finalBuffer.getObjectAtXYZ(cursor.getX(), cursor.getY(), cursor.getZ()).getBlockData(), imc.readBlockAtCoordinate(cursor.getCoordinate()).getBlockData())){
+				throw new Exception("Block at " + cursor.getCoordinate() + " was different when the whole view was loaded at once.");
+			}
+		}
+		imc.destroy(null);
+
+		double streamSeconds = streamNanos / 1000000000.0;
+		System.out.println(
+			"chunkStore=" + chunkStore + ", " + (useSingleLock ? "single lock" : "concurrent reads") + ", readers=" + numReaderThreads +
+			": streamed " + numChunksStreamed + " chunks in " + (streamNanos / 1000000L) + "ms (" + String.format("%.0f", numChunksStreamed / streamSeconds) + " chunks/s)" +
+			", rendered " + numFramesRendered.get() + " frames (" + String.format("%.0f", numFramesRendered.get() / streamSeconds) + " frames/s)" +
+			", slowest frame " + (maxFrameNanos.get() / 1000000L) + "ms"
+		);
+	}
+
+	@Test
+	public void runInMemoryChunksContentionTest() throws Exception {
+		System.out.println("Begin runInMemoryChunksContentionTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		Random rand = new Random(24680);
+
+		int numSteps = 120;
+		Map<CuboidAddress, Cuboid> chunkContents = new TreeMap<CuboidAddress, Cuboid>();
+		for(long step = 0L; step < numSteps; step++){
+			for(CuboidAddress chunk : getStreamingViewArea(chunkSize, step).getIntersectingChunkSet(chunkSize)){
+				if(!chunkContents.containsKey(chunk)){
+					chunkContents.put(chunk, getRandomCuboid(blockManagerThreadCollection, rand, chunk));
+				}
+			}
+		}
+
+		for(String chunkStore : Arrays.asList("heap", "off-heap")){
+			for(boolean useSingleLock : Arrays.asList(true, false)){
+				runOneInMemoryChunksContentionTest(chunkStore, useSingleLock, 4, numSteps, chunkContents);
+			}
+		}
+		System.out.println("End runInMemoryChunksContentionTest:");
+	}
+
+	public CuboidAddress getChunksAroundCoordinate(CuboidAddress chunkSize, Coordinate c, long radiusX, long radiusY, long radiusZ) throws Exception{
+		CuboidAddress centerChunk = CuboidAddress.blockCoordinateToChunkCuboidAddress(c, chunkSize);
+		long wx = chunkSize.getWidthForIndex(0L);
+		long wy = chunkSize.getWidthForIndex(1L);
+		long wz = chunkSize.getWidthForIndex(2L);
+		Coordinate lower = centerChunk.getCanonicalLowerCoordinate();
+		return new CuboidAddress(
+			new Coordinate(Arrays.asList(lower.getX() - radiusX * wx, lower.getY() - radiusY * wy, lower.getZ() - radiusZ * wz, 0L)),
+			new Coordinate(Arrays.asList(lower.getX() + (radiusX + 1L) * wx, lower.getY() + (radiusY + 1L) * wy, lower.getZ() + (radiusZ + 1L) * wz, 1L))
+		);
+	}
+
+	@Test
+	public void runOffHeapChunkBlockStorePageReuseTest() throws Exception {
+		System.out.println("Begin runOffHeapChunkBlockStorePageReuseTest:");
+		CuboidAddress chunkSize = new CuboidAddress(Coordinate.makeCoordinate(0L, 0L, 0L, 0L), Coordinate.makeCoordinate(2L, 2L, 2L, 1L));
+		CuboidAddress chunkAddress = new CuboidAddress(Coordinate.makeCoordinate(4L, 0L, 4L, 0L), Coordinate.makeCoordinate(6L, 2L, 6L, 1L));
+		byte [] playerData = new PlayerObject("7c2c2d84-2b1e-4b3c-9a55-7a0c5c1e3f11", PlayerObjectSkinType.HAPPY_FACE).getBlockData();
+		String playerClassName = PlayerObject.class.getName();
+		//  Pages smaller than the player object, so every payload needs a page of its own:
+		int pageSize = playerData.length / 2;
+		File spillDirectory = Files.createTempDirectory("chunk-store-spill-").toFile();
+		spillDirectory.deleteOnExit();
+		for(File directory : Arrays.asList(null, spillDirectory)){
+			OffHeapChunkBlockStore store = new OffHeapChunkBlockStore(chunkSize, directory == null ? null : new ChunkStoreSpillFile(directory), pageSize);
+			//  Reload the same chunk over and over, like moving back and forth across it:
+			for(int i = 0; i < 1000; i++){
+				if(i % 8 == 0){
+					store.addChunk(chunkAddress);
+				}
+				store.writeBlock(chunkAddress, i % 8, playerData, playerClassName);
+			}
+			for(int i = 0; i < 8; i++){
+				if(!Arrays.equals(store.readBlock(chunkAddress, i).getBlockData(), playerData)){
+					throw new Exception("Block " + i + " did not read back.");
+				}
+			}
+			long spillFileSize = directory == null ? 0L : store.getSpillFile().length();
+			System.out.println((directory == null ? "Direct" : "Spill file") + ": " + store.getNumCompactions() + " compactions, " + store.getBytesAllocated() + " bytes allocated, spill file is " + spillFileSize + " bytes.");
+			//  Oversized pages left behind by compaction must be freed or reused instead of piling up:
+			long limit = 64L * playerData.length;
+			if(store.getNumCompactions() == 0L || store.getBytesAllocated() > limit || spillFileSize > limit){
+				throw new Exception("Expected at most " + limit + " bytes to be held after " + store.getNumCompactions() + " compactions, but " + store.getBytesAllocated() + " bytes are allocated and the spill file is " + spillFileSize + " bytes.");
+			}
+			store.close();
+			if(directory != null && store.getSpillFile().exists()){
+				throw new Exception("Spill file " + store.getSpillFile() + " was not deleted on close.");
+			}
+		}
+
+		//  Rewriting the blocks of a chunk that stays loaded must also compact the garbage it leaves behind:
+		int rewritePageSize = playerData.length * 4;
+		OffHeapChunkBlockStore rewrittenStore = new OffHeapChunkBlockStore(chunkSize, null, rewritePageSize);
+		rewrittenStore.addChunk(chunkAddress);
+		for(int i = 0; i < 1000; i++){
+			rewrittenStore.writeBlock(chunkAddress, i % 8, playerData, playerClassName);
+		}
+		System.out.println("Rewritten: " + rewrittenStore.getNumCompactions() + " compactions, " + rewrittenStore.getUsedPayloadBytes() + " payload bytes used.");
+		if(rewrittenStore.getNumCompactions() == 0L || rewrittenStore.getUsedPayloadBytes() > 8L * rewritePageSize){
+			throw new Exception("Expected rewrites to be compacted, but " + rewrittenStore.getUsedPayloadBytes() + " payload bytes are used after " + rewrittenStore.getNumCompactions() + " compactions.");
+		}
+		for(int i = 0; i < 8; i++){
+			if(!Arrays.equals(rewrittenStore.readBlock(chunkAddress, i).getBlockData(), playerData)){
+				throw new Exception("Block " + i + " did not read back after compaction.");
+			}
+		}
+		rewrittenStore.close();
+
+		//  Stores that share a spill file reuse each other's pages, and the file lasts until the last one is closed:
+		ChunkStoreSpillFile sharedSpillFile = new ChunkStoreSpillFile(spillDirectory);
+		OffHeapChunkBlockStore first = new OffHeapChunkBlockStore(chunkSize, sharedSpillFile, pageSize);
+		OffHeapChunkBlockStore second = new OffHeapChunkBlockStore(chunkSize, sharedSpillFile, pageSize);
+		for(OffHeapChunkBlockStore store : Arrays.asList(first, second)){
+			for(int i = 0; i < 1000; i++){
+				if(i % 8 == 0){
+					store.addChunk(chunkAddress);
+				}
+				store.writeBlock(chunkAddress, i % 8, playerData, playerClassName);
+			}
+		}
+		long sizeAfterFirst = sharedSpillFile.getSize();
+		System.out.println("Shared spill file is " + sizeAfterFirst + " bytes.");
+		if(first.getSpillFile() != second.getSpillFile() || sizeAfterFirst > 64L * playerData.length){
+			throw new Exception("Expected both stores to share one spill file of at most " + (64L * playerData.length) + " bytes, but it is " + sizeAfterFirst + " bytes.");
+		}
+		first.close();
+		if(!sharedSpillFile.getFile().exists() || !Arrays.equals(second.readBlock(chunkAddress, 0).getBlockData(), playerData)){
+			throw new Exception("Closing one store must not affect the other store sharing its spill file.");
+		}
+		second.close();
+		if(sharedSpillFile.getFile().exists()){
+			throw new Exception("Shared spill file " + sharedSpillFile.getFile() + " was not deleted once both stores were closed.");
+		}
+	}
+
+	public CuboidAddress getNextScheduledChunkBruteForce(ChunkLoadScheduler scheduler, Set<CuboidAddress> scheduledChunks){
+		CuboidAddress rtn = null;
+		double rtnPriority = 0.0;
+		for(CuboidAddress ca : scheduledChunks){  //  In address order, so only a strictly smaller priority wins.
+			double priority = scheduler.getPriority(ca);
+			if(rtn == null || priority < rtnPriority){
+				rtn = ca;
+				rtnPriority = priority;
+			}
+		}
+		return rtn;
+	}
+
+	@Test
+	public void runChunkLoadSchedulerTest() throws Exception {
+		System.out.println("Begin runChunkLoadSchedulerTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		Random rand = new Random(13579);
+
+		//  A box of chunks around the player has lots of chunks at exactly the same distance:
+		Coordinate origin = new Coordinate(Arrays.asList(0L, 0L, 0L, 0L));
+		Set<CuboidAddress> symmetricChunks = getChunksAroundCoordinate(chunkSize, origin, 4L, 2L, 4L).getIntersectingChunkSet(chunkSize);
+		Set<Double> distinctDistances = new TreeSet<Double>();
+		for(CuboidAddress ca : symmetricChunks){
+			distinctDistances.add(ca.getCentroidDistanceFromCoordinate(origin));
+		}
+		ChunkLoadScheduler symmetricScheduler = new ChunkLoadScheduler(chunkSize, ChunkLoadScheduler.DEFAULT_DIRECTION_BIAS);
+		symmetricScheduler.setPlayerPosition(0L, origin);
+		for(CuboidAddress ca : symmetricChunks){
+			symmetricScheduler.addChunk(ca);
+		}
+		Set<CuboidAddress> drained = new TreeSet<CuboidAddress>();
+		double lastPriority = -1.0;
+		CuboidAddress ca = null;
+		while((ca = symmetricScheduler.pollFirstChunk()) != null){
+			double priority = symmetricScheduler.getPriority(ca);
+			if(priority < lastPriority || !drained.add(ca)){
+				throw new Exception("Chunk " + ca + " came out of order or more than once.");
+			}
+			lastPriority = priority;
+		}
+		if(!drained.equals(symmetricChunks)){
+			throw new Exception("Scheduled " + symmetricChunks.size() + " chunks, but only " + drained.size() + " came back out.");
+		}
+		System.out.println("All " + symmetricChunks.size() + " chunks came out in order, a map keyed by distance would have kept " + distinctDistances.size() + " of them.");
+
+		//  Random adds, removes, polls and moves must always agree with a brute force search:
+		ChunkLoadScheduler scheduler = new ChunkLoadScheduler(chunkSize, ChunkLoadScheduler.DEFAULT_DIRECTION_BIAS);
+		Set<CuboidAddress> expected = new TreeSet<CuboidAddress>();
+		List<CuboidAddress> candidates = new ArrayList<CuboidAddress>(getChunksAroundCoordinate(chunkSize, origin, 8L, 2L, 8L).getIntersectingChunkSet(chunkSize));
+		Coordinate playerPosition = origin;
+		for(int i = 0; i < 20000; i++){
+			int op = rand.nextInt(10);
+			if(op < 4){
+				CuboidAddress c = candidates.get(rand.nextInt(candidates.size()));
+				if(scheduler.addChunk(c) != expected.add(c)){
+					throw new Exception("Add of " + c + " disagreed with the expected set.");
+				}
+			}else if(op < 6){
+				CuboidAddress c = candidates.get(rand.nextInt(candidates.size()));
+				if(scheduler.removeChunk(c) != expected.remove(c)){
+					throw new Exception("Remove of " + c + " disagreed with the expected set.");
+				}
+			}else if(op < 8){
+				CuboidAddress expectedNext = getNextScheduledChunkBruteForce(scheduler, expected);
+				CuboidAddress next = scheduler.pollFirstChunk();
+				if(!Objects.equals(expectedNext, next)){
+					throw new Exception("Expected the next chunk to be " + expectedNext + " but it was " + next + ".");
+				}
+				if(next != null){
+					expected.remove(next);
+				}
+			}else{
+				playerPosition = new Coordinate(Arrays.asList(playerPosition.getX() + getRandBetweenRange(rand, -3L, 4L), playerPosition.getY() + getRandBetweenRange(rand, -1L, 2L), playerPosition.getZ() + getRandBetweenRange(rand, -3L, 4L), 0L));
+				scheduler.setPlayerPosition(0L, playerPosition);
+			}
+			if(scheduler.size() != expected.size()){
+				throw new Exception("Scheduler has " + scheduler.size() + " chunks but expected " + expected.size() + ".");
+			}
+		}
+		System.out.println("Random operations: " + scheduler.getNumReprioritizations() + " reprioritizations moved " + scheduler.getNumPriorityChanges() + " chunks.");
+
+		//  Moving in +x must load the chunk ahead before the chunk the same distance behind:
+		ChunkLoadScheduler directionScheduler = new ChunkLoadScheduler(chunkSize, ChunkLoadScheduler.DEFAULT_DIRECTION_BIAS);
+		long wx = chunkSize.getWidthForIndex(0L);
+		directionScheduler.setPlayerPosition(0L, new Coordinate(Arrays.asList(0L, 1L, 1L, 0L)));
+		directionScheduler.setPlayerPosition(0L, new Coordinate(Arrays.asList(wx, 1L, 1L, 0L)));
+		Coordinate playerChunkLower = CuboidAddress.blockCoordinateToChunkCuboidAddress(new Coordinate(Arrays.asList(wx, 1L, 1L, 0L)), chunkSize).getCanonicalLowerCoordinate();
+		CuboidAddress behind = CuboidAddress.blockCoordinateToChunkCuboidAddress(new Coordinate(Arrays.asList(playerChunkLower.getX() - 3L * wx, 1L, 1L, 0L)), chunkSize);
+		CuboidAddress ahead = CuboidAddress.blockCoordinateToChunkCuboidAddress(new Coordinate(Arrays.asList(playerChunkLower.getX() + 3L * wx, 1L, 1L, 0L)), chunkSize);
+		directionScheduler.addChunk(behind);
+		directionScheduler.addChunk(ahead);
+		if(!ahead.equals(directionScheduler.pollFirstChunk())){
+			throw new Exception("Chunk " + ahead + " in the direction of movement should have been first.");
+		}
+
+		//  InMemoryChunks must never have more than maxPendingChunks requested, and must load every required chunk closest first:
+		Long maxPendingChunks = 3L;
+		InMemoryChunks imc = new InMemoryChunks(blockManagerThreadCollection, chunkSize, maxPendingChunks);
+		ContentionTestChunksClient client = new ContentionTestChunksClient();
+		imc.onPlayerPositionChange(new AuthorizedPlayerPositionXYZ(0L, new PlayerPositionXYZ("3f1e7a52-6c0b-4b8e-9a44-2d7f5c8e1b90", origin)));
+		CuboidAddress requiredRegion = getChunksAroundCoordinate(chunkSize, origin, 3L, 1L, 3L);
+		Set<CuboidAddress> requiredChunks = requiredRegion.getIntersectingChunkSet(chunkSize);
+		imc.updateRequiredRegions(new TreeSet<CuboidAddress>(Arrays.asList(requiredRegion)), client);
+		double lastDistance = -1.0;
+		long numLoaded = 0L;
+		while(!imc.isEmptyAndFinished()){
+			imc.onHasPendingNotYetRequestedChunks();
+			if(imc.getNumChunksInState(MemoryChunkStateType.REQUESTED) > maxPendingChunks){
+				throw new Exception("There were " + imc.getNumChunksInState(MemoryChunkStateType.REQUESTED) + " chunks requested at once, max is " + maxPendingChunks + ".");
+			}
+			List<Map.Entry<InMemoryChunksClient, CuboidAddress>> requested;
+			synchronized(imc.lock){
+				requested = imc.getAllChunksInState(MemoryChunkStateType.REQUESTED);
+			}
+			//  Answer the request for the closest chunk only, so the order they're requested in shows:
+			CuboidAddress closest = null;
+			for(Map.Entry<InMemoryChunksClient, CuboidAddress> e : requested){
+				if(closest == null || e.getValue().getCentroidDistanceFromCoordinate(origin) < closest.getCentroidDistanceFromCoordinate(origin)){
+					closest = e.getValue();
+				}
+			}
+			double distance = closest.getCentroidDistanceFromCoordinate(origin);
+			if(distance < lastDistance){
+				throw new Exception("Chunk " + closest + " was requested after a chunk that was further away.");
+			}
+			lastDistance = distance;
+			imc.addInMemoryChunk(getRandomCuboid(blockManagerThreadCollection, rand, closest), client);
+			numLoaded++;
+		}
+		if(numLoaded != requiredChunks.size() || imc.getNumChunksInState(MemoryChunkStateType.AVAILABLE) != requiredChunks.size()){
+			throw new Exception("Expected " + requiredChunks.size() + " chunks to be loaded, but " + numLoaded + " were loaded.");
+		}
+		imc.destroy(null);
+		System.out.println("End runChunkLoadSchedulerTest:");
+	}
+
+	public List<CuboidAddress> getClosestByDistanceTreeMap(Set<CuboidAddress> cuboidAddresses, Coordinate currentCoordinate){
+		//  How chunks used to be ordered, chunks at the same distance replace each other:
+		Map<Double, CuboidAddress> distanceSortedTreemap = new TreeMap<Double, CuboidAddress>();
+		for(CuboidAddress ca : cuboidAddresses){
+			distanceSortedTreemap.put(ca.getCentroidDistanceFromCoordinate(currentCoordinate), ca);
+		}
+		return new ArrayList<CuboidAddress>(distanceSortedTreemap.values());
+	}
+
+	public void runOneChunkLoadSchedulerBenchmark(String schedulerType, CuboidAddress chunkSize, int numTicks, long maxPendingChunks) throws Exception{
+		double directionBias = schedulerType.equals("heap with direction") ? ChunkLoadScheduler.DEFAULT_DIRECTION_BIAS : 0.0;
+		ChunkLoadScheduler scheduler = new ChunkLoadScheduler(chunkSize, directionBias);
+		Set<CuboidAddress> pendingChunks = new TreeSet<CuboidAddress>();
+		Set<CuboidAddress> loadedChunks = new TreeSet<CuboidAddress>();
+		long schedulingNanos = 0L;
+		long numTicksFullyVisible = 0L;
+		long numTicksWaiting = 0L;
+		long numWaits = 0L;
+		long waitStartTick = -1L;
+		long firstFullyVisibleTick = -1L;
+		for(int tick = 0; tick < numTicks; tick++){
+			//  The player walks in +x one block per tick:
+			Coordinate player = new Coordinate(Arrays.asList((long)tick, 1L, 1L, 0L));
+			Set<CuboidAddress> requiredChunks = getChunksAroundCoordinate(chunkSize, player, 6L, 1L, 6L).getIntersectingChunkSet(chunkSize);
+			Set<CuboidAddress> visibleChunks = getChunksAroundCoordinate(chunkSize, player, 2L, 1L, 2L).getIntersectingChunkSet(chunkSize);
+			loadedChunks.retainAll(requiredChunks);
+
+			long start = System.nanoTime();
+			for(CuboidAddress ca : new ArrayList<CuboidAddress>(pendingChunks)){
+				if(!requiredChunks.contains(ca)){
+					pendingChunks.remove(ca);
+					scheduler.removeChunk(ca);
+				}
+			}
+			for(CuboidAddress ca : requiredChunks){
+				if(!loadedChunks.contains(ca) && pendingChunks.add(ca)){
+					scheduler.addChunk(ca);
+				}
+			}
+			scheduler.setPlayerPosition(0L, player);
+			//  The server answers maxPendingChunks requests each tick:
+			List<CuboidAddress> toLoad = new ArrayList<CuboidAddress>();
+			if(schedulerType.equals("distance map")){
+				for(CuboidAddress ca : getClosestByDistanceTreeMap(pendingChunks, player)){
+					if(toLoad.size() < maxPendingChunks){
+						toLoad.add(ca);
+					}
+				}
+			}else{
+				toLoad.addAll(scheduler.getFirstChunks(maxPendingChunks));
+			}
+			for(CuboidAddress ca : toLoad){
+				pendingChunks.remove(ca);
+				scheduler.removeChunk(ca);
+			}
+			schedulingNanos += System.nanoTime() - start;
+			loadedChunks.addAll(toLoad);
+
+			if(loadedChunks.containsAll(visibleChunks)){
+				numTicksFullyVisible++;
+				if(firstFullyVisibleTick < 0L){
+					firstFullyVisibleTick = tick;
+				}
+				if(waitStartTick >= 0L){
+					numTicksWaiting += tick - waitStartTick;
+					numWaits++;
+					waitStartTick = -1L;
+				}
+			}else if(waitStartTick < 0L){
+				waitStartTick = tick;
+			}
+		}
+		System.out.println(
+			"scheduler=" + schedulerType + ", maxPendingChunks=" + maxPendingChunks + ": visible area first fully loaded at tick " + firstFullyVisibleTick +
+			", fully loaded for " + numTicksFullyVisible + " of " + numTicks + " ticks" +
+			", " + (numWaits == 0L ? "0" : String.format("%.1f", (double)numTicksWaiting / numWaits)) + " ticks on average until fully loaded again" +
+			", " + (schedulingNanos / 1000000L) + "ms spent scheduling"
+		);
+	}
+
+	@Test
+	public void runChunkLoadSchedulerBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runChunkLoadSchedulerBenchmark:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		//  With 6 chunks per tick loading can't keep up with walking, with 10 it just can:
+		for(long maxPendingChunks : Arrays.asList(6L, 10L)){
+			for(String schedulerType : Arrays.asList("distance map", "heap", "heap with direction")){
+				runOneChunkLoadSchedulerBenchmark(schedulerType, chunkSize, 2000, maxPendingChunks);
+			}
+		}
+		System.out.println("End runChunkLoadSchedulerBenchmark:");
+	}
+
+	public double [][] getTerrainOctavesForRegion(NoiseGenerator noiseGenerator, CuboidAddress region) throws Exception{
+		//  The same three octaves that the chunk initializer uses for every block:
+		return new double [][] {
+			noiseGenerator.octaveNoiseForRegion(region, 0.08, Math.pow(0.08, 1.2)),
+			noiseGenerator.octaveNoiseForRegion(region, 0.01, Math.pow(0.01, 1.2)),
+			noiseGenerator.octaveNoiseForRegion(region, 0.005, Math.pow(0.005, 1.2))
+		};
+	}
+
+	public double [][] getTerrainOctavesPerBlock(NoiseGenerator noiseGenerator, CuboidAddress region) throws Exception{
+		double [][] rtn = new double [3][(int)region.getVolume()];
+		long [] coordinate = new long [3];
+		RegionCursor cursor = new RegionCursor(region);
+		for(; !cursor.isDone(); cursor.next()){
+			int i = (int)cursor.getLinearArrayIndex();
+			coordinate[0] = cursor.getX();
+			coordinate[1] = cursor.getY();
+			coordinate[2] = cursor.getZ();
+			rtn[0][i] = noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {0.08}, new double [] {Math.pow(0.08, 1.2)});
+			rtn[1][i] = noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {0.01}, new double [] {Math.pow(0.01, 1.2)});
+			rtn[2][i] = noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {0.005}, new double [] {Math.pow(0.005, 1.2)});
+		}
+		return rtn;
+	}
+
+	public CuboidAddress getNoiseBenchmarkChunk(CuboidAddress chunkSize, int i) throws Exception{
+		//  Chunks along a diagonal so that no two chunks share any lattice vertices:
+		long wx = chunkSize.getWidthForIndex(0L);
+		long wy = chunkSize.getWidthForIndex(1L);
+		long wz = chunkSize.getWidthForIndex(2L);
+		long step = 1000L;
+		return new CuboidAddress(
+			new Coordinate(Arrays.asList(i * step * wx, -i * step * wy, i * step * wz)),
+			new Coordinate(Arrays.asList(i * step * wx + wx, -i * step * wy + wy, i * step * wz + wz))
+		);
+	}
+
+	@Test
+	public void runFastHashNoiseGeneratorTest() throws Exception {
+		System.out.println("Begin runFastHashNoiseGeneratorTest:");
+		Random rand = new Random(8642);
+		FastHashNoiseGenerator fast = new FastHashNoiseGenerator(0L);
+		MultiDimensionalNoiseGenerator sha = new MultiDimensionalNoiseGenerator(0L, MessageDigest.getInstance("SHA-512"));
+
+		//  Whole region evaluation must give exactly the same values as one block at a time, for both backends:
+		List<CuboidAddress> regions = Arrays.asList(
+			new CuboidAddress(new Coordinate(Arrays.asList(-7L, -3L, 5L)), new Coordinate(Arrays.asList(9L, 4L, 17L))),
+			new CuboidAddress(new Coordinate(Arrays.asList(123456L, -98765L, -4L)), new Coordinate(Arrays.asList(123460L, -98761L, 2L))),
+			new CuboidAddress(new Coordinate(Arrays.asList(-2L, -2L, -2L, -2L)), new Coordinate(Arrays.asList(3L, 3L, 3L, 3L)))
+		);
+		for(CuboidAddress region : regions){
+			for(NoiseGenerator noiseGenerator : Arrays.asList((NoiseGenerator)fast, (NoiseGenerator)sha)){
+				for(double frequency : new double [] {0.08, 0.01, 0.005, 0.37, 1.5}){
+					double [] regionValues = noiseGenerator.octaveNoiseForRegion(region, frequency, 2.5);
+					RegionCursor cursor = new RegionCursor(region);
+					for(; !cursor.isDone(); cursor.next()){
+						long [] coordinate = new long [region.getNumDimensions().intValue()];
+						for(int d = 0; d < coordinate.length; d++){
+							coordinate[d] = cursor.getValueAtIndex(d);
+						}
+						double expected = noiseGenerator.multiOctaveNoiseAtCoordinate(coordinate, new double [] {frequency}, new double [] {2.5});
+						if(regionValues[(int)cursor.getLinearArrayIndex()] != expected){
+							throw new Exception(noiseGenerator.getClass().getSimpleName() + " region value at " + cursor.getCoordinate() + " for frequency " + frequency + " was " + regionValues[(int)cursor.getLinearArrayIndex()] + " but per block value was " + expected);
+						}
+					}
+				}
+			}
+		}
+
+		//  Values stay in range, are centered and only depend on the seed:
+		FastHashNoiseGenerator sameSeed = new FastHashNoiseGenerator(0L);
+		FastHashNoiseGenerator otherSeed = new FastHashNoiseGenerator(1L);
+		double total = 0.0;
+		double min = 0.0;
+		double max = 0.0;
+		int numSamples = 200000;
+		int numSameAsOtherSeed = 0;
+		for(int i = 0; i < numSamples; i++){
+			double [] p = new double [] {rand.nextDouble() * 2000.0 - 1000.0, rand.nextDouble() * 2000.0 - 1000.0, rand.nextDouble() * 2000.0 - 1000.0};
+			double n = fast.noiseAtCoordinate(p);
+			if(n < -1.0 || n > 1.0){
+				throw new Exception("Noise value out of range: " + n + " at " + Arrays.toString(p));
+			}
+			if(n != sameSeed.noiseAtCoordinate(p)){
+				throw new Exception("Same seed gave different noise at " + Arrays.toString(p));
+			}
+			if(n == otherSeed.noiseAtCoordinate(p)){
+				numSameAsOtherSeed++;
+			}
+			total += n;
+			min = Math.min(min, n);
+			max = Math.max(max, n);
+		}
+		double mean = total / numSamples;
+		if(Math.abs(mean) > 0.01 || numSameAsOtherSeed > numSamples / 100){
+			throw new Exception("Noise doesn't look random: mean=" + mean + ", numSameAsOtherSeed=" + numSameAsOtherSeed);
+		}
+		System.out.println("Fast hash noise over " + numSamples + " samples: min=" + min + ", max=" + max + ", mean=" + mean);
+
+		//  One instance used from many threads must give the same values as a single thread:
+		CuboidAddress chunkSize = new CuboidAddress(Coordinate.makeOriginCoordinate(3L), new Coordinate(Arrays.asList(16L, 16L, 16L)));
+		int numChunks = 64;
+		List<double [][]> singleThreaded = new ArrayList<double [][]>();
+		for(int i = 0; i < numChunks; i++){
+			singleThreaded.add(getTerrainOctavesForRegion(fast, getNoiseBenchmarkChunk(chunkSize, i)));
+		}
+		List<Exception> threadExceptions = new ArrayList<Exception>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 8; t++){
+			final int threadNumber = t;
+			threads.add(new Thread(() -> {
+				try{
+					for(int i = threadNumber; i < numChunks; i += 8){
+						double [][] values = getTerrainOctavesForRegion(fast, getNoiseBenchmarkChunk(chunkSize, i));
+						for(int o = 0; o < values.length; o++){
+							if(!Arrays.equals(values[o], singleThreaded.get(i)[o])){
+								throw new Exception("Chunk " + i + " was different when generated on another thread.");
+							}
+						}
+					}
+				}catch(Exception e){
+					synchronized(threadExceptions){
+						threadExceptions.add(e);
+					}
+				}
+			}));
+		}
+		for(Thread t : threads){
+			t.start();
+		}
+		for(Thread t : threads){
+			t.join();
+		}
+		if(threadExceptions.size() > 0){
+			throw threadExceptions.get(0);
+		}
+		System.out.println("End runFastHashNoiseGeneratorTest:");
+	}
+
+	@Test
+	public void runNoiseBackendBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runNoiseBackendBenchmark:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		long blocksPerChunk = chunkSize.getWidthForIndex(0L) * chunkSize.getWidthForIndex(1L) * chunkSize.getWidthForIndex(2L);
+
+		//  Blocks per second on one core, with the three terrain octaves per block:
+		for(String mode : Arrays.asList("sha-512 per block", "fast-hash per block", "fast-hash per chunk")){
+			NoiseGenerator noiseGenerator = mode.startsWith("sha-512") ? new MultiDimensionalNoiseGenerator(0L, MessageDigest.getInstance("SHA-512")) : new FastHashNoiseGenerator(0L);
+			int numChunks = mode.startsWith("sha-512") ? 100 : 4000;
+			double checksum = 0.0;
+			for(int i = 0; i < numChunks; i++){  //  Warm up
+				CuboidAddress chunk = getNoiseBenchmarkChunk(chunkSize, numChunks + i);
+				double [][] values = mode.endsWith("per chunk") ? getTerrainOctavesForRegion(noiseGenerator, chunk) : getTerrainOctavesPerBlock(noiseGenerator, chunk);
+				checksum += values[0][0];
+			}
+			long start = System.nanoTime();
+			for(int i = 0; i < numChunks; i++){
+				CuboidAddress chunk = getNoiseBenchmarkChunk(chunkSize, i);
+				double [][] values = mode.endsWith("per chunk") ? getTerrainOctavesForRegion(noiseGenerator, chunk) : getTerrainOctavesPerBlock(noiseGenerator, chunk);
+				checksum += values[0][0] + values[1][values[1].length - 1] + values[2][values[2].length / 2];
+			}
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+			System.out.println(mode + ": " + String.format("%.0f", (numChunks * blocksPerChunk) / seconds) + " blocks/s on one core (checksum " + checksum + ")");
+		}
+
+		//  The fast hash generator shared by a thread per core:
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		FastHashNoiseGenerator fast = new FastHashNoiseGenerator(0L);
+		int chunksPerThread = 4000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < numThreads; t++){
+			final int threadNumber = t;
+			threads.add(new Thread(() -> {
+				try{
+					for(int i = 0; i < chunksPerThread; i++){
+						getTerrainOctavesForRegion(fast, getNoiseBenchmarkChunk(chunkSize, threadNumber * chunksPerThread + i));
+					}
+				}catch(Exception e){
+					throw new RuntimeException(e);
+				}
+			}));
+		}
+		long start = System.nanoTime();
+		for(Thread t : threads){
+			t.start();
+		}
+		for(Thread t : threads){
+			t.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		double blocksPerSecond = (numThreads * (double)chunksPerThread * blocksPerChunk) / seconds;
+		System.out.println("fast-hash per chunk on " + numThreads + " threads: " + String.format("%.0f", blocksPerSecond) + " blocks/s, " + String.format("%.0f", blocksPerSecond / numThreads) + " blocks/s per core");
+		System.out.println("End runNoiseBackendBenchmark:");
+	}
+
+	public List<Cuboid> getChunkGenerationTestCuboids(BlockManagerThreadCollection blockManagerThreadCollection, int numChunks) throws Exception{
+		//  A row of chunks at, below and above ground.  Some blocks are already initialized, and every fourth chunk is completely initialized:
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		long wx = chunkSize.getWidthForIndex(0L);
+		long wy = chunkSize.getWidthForIndex(1L);
+		long wz = chunkSize.getWidthForIndex(2L);
+		long ww = chunkSize.getWidthForIndex(3L);
+		byte [] pickData = blockManagerThreadCollection.getBlockDataForClass(IronPick.class);
+		List<Cuboid> rtn = new ArrayList<Cuboid>();
+		for(int i = 0; i < numChunks; i++){
+			long x = 20L + i * wx;
+			long y = ((i % 3) - 1) * wy;
+			CuboidAddress address = new CuboidAddress(new Coordinate(Arrays.asList(x, y, 0L, 0L)), new Coordinate(Arrays.asList(x + wx, y + wy, wz, ww)));
+			int volume = (int)address.getVolume();
+			long [] lengths = new long [volume];
+			BlockMessageBinaryBuffer data = new BlockMessageBinaryBuffer();
+			for(int j = 0; j < volume; j++){
+				if(i % 4 == 3 || j % 5 == 0){
+					lengths[j] = pickData.length;
+					data.writeBytes(pickData);
+				}else{
+					lengths[j] = -1L;
+				}
+			}
+			rtn.add(new Cuboid(address, new CuboidDataLengths(address, lengths), new CuboidData(data.getUsedBuffer())));
+		}
+		return rtn;
+	}
+
+	public boolean isSameCuboid(Cuboid a, Cuboid b){
+		return a.getCuboidAddress().equals(b.getCuboidAddress()) &&
+			Arrays.equals(a.getCuboidDataLengths().getLengths(), b.getCuboidDataLengths().getLengths()) &&
+			Arrays.equals(a.getCuboidData().getData(), b.getCuboidData().getData());
+	}
+
+	public Map<CuboidAddress, Cuboid> runChunkGenerationPipeline(BlockManagerThreadCollection blockManagerThreadCollection, List<Cuboid> cuboids, int numWorkerThreads, int writeWindow, long ackLatencyMillis) throws Exception{
+		//  Drives the pipeline the same way the chunk initializer thread does, with a pretend server that acknowledges writes after a delay:
+		LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+		Map<CuboidAddress, Cuboid> written = new HashMap<CuboidAddress, Cuboid>();
+		Set<Long> conversationIds = new HashSet<Long>();
+		ScheduledExecutorService server = Executors.newSingleThreadScheduledExecutor();
+		ChunkGenerationPipeline [] pipeline = new ChunkGenerationPipeline [1];
+		ChunkGenerationPipelineListener listener = new ChunkGenerationPipelineListener(){
+			public void onChunkGenerated(Cuboid generatedCuboid, Long conversationId) throws Exception{
+				synchronized(written){
+					if(written.put(generatedCuboid.getCuboidAddress(), generatedCuboid) != null){
+						throw new Exception("Chunk " + generatedCuboid.getCuboidAddress() + " was written twice.");
+					}
+					if(!conversationIds.add(conversationId)){
+						throw new Exception("conversationId=" + conversationId + " was used twice.");
+					}
+				}
+				long outstanding = pipeline[0].getNumGenerating() + pipeline[0].getNumInFlightWrites();
+				if(outstanding > writeWindow){
+					throw new Exception("There were " + outstanding + " chunks outstanding, but the write window is only " + writeWindow);
+				}
+				server.schedule(() -> events.add(conversationId), ackLatencyMillis, TimeUnit.MILLISECONDS);
+			}
+
+			public void onPipelineCapacityAvailable() throws Exception{
+				events.add("capacity");
+			}
+
+			public void onChunkGenerationException(Exception e){
+				events.add(e);
+			}
+		};
+		pipeline[0] = new ChunkGenerationPipeline(new ChunkGenerator(blockManagerThreadCollection, ServerBlockModelContext.DEFAULT_WORLD_SEED), listener, numWorkerThreads, writeWindow);
+		try{
+			int nextCuboid = 0;
+			while(true){
+				while(nextCuboid < cuboids.size() && pipeline[0].hasCapacity()){
+					pipeline[0].generate(cuboids.get(nextCuboid++));
+				}
+				if(pipeline[0].getNumChunksGenerated() == cuboids.size() && pipeline[0].getNumInFlightWrites() == 0L){
+					break;
+				}
+				Object event = events.poll(30L, TimeUnit.SECONDS);
+				if(event == null){
+					throw new Exception("Timed out waiting on the chunk generation pipeline: " + pipeline[0].getMetricsSummary());
+				}else if(event instanceof Exception){
+					throw (Exception)event;
+				}else if(event instanceof Long){
+					if(!pipeline[0].onWriteAcknowledged((Long)event)){
+						throw new Exception("conversationId=" + event + " was acknowledged but the pipeline didn't know about it.");
+					}
+				}
+			}
+			if(pipeline[0].onWriteAcknowledged(12345L)){
+				throw new Exception("An unrelated conversationId was treated as a chunk write.");
+			}
+			System.out.println(pipeline[0].getMetricsSummary());
+		}finally{
+			pipeline[0].shutdown();
+			server.shutdownNow();
+		}
+		return written;
+	}
+
+	@Test
+	public void runChunkGenerationPipelineTest() throws Exception {
+		System.out.println("Begin runChunkGenerationPipelineTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		List<Cuboid> cuboids = getChunkGenerationTestCuboids(blockManagerThreadCollection, 48);
+
+		//  What one thread generates on its own:
+		ChunkGenerator chunkGenerator = new ChunkGenerator(blockManagerThreadCollection, ServerBlockModelContext.DEFAULT_WORLD_SEED);
+		Map<CuboidAddress, Cuboid> expected = new HashMap<CuboidAddress, Cuboid>();
+		byte [] pickData = blockManagerThreadCollection.getBlockDataForClass(IronPick.class);
+		for(Cuboid cuboid : cuboids){
+			Cuboid generated = chunkGenerator.generateCuboid(cuboid);
+			long [] oldLengths = cuboid.getCuboidDataLengths().getLengths();
+			if(generated == null){
+				for(long length : oldLengths){
+					if(length < 0L){
+						throw new Exception("Nothing was generated for " + cuboid.getCuboidAddress() + " even though it had uninitialized blocks.");
+					}
+				}
+			}else{
+				//  Blocks that were already initialized must be left alone:
+				long [] newLengths = generated.getCuboidDataLengths().getLengths();
+				long [] newOffsets = generated.getCuboidDataLengths().getOffsets();
+				for(int j = 0; j < oldLengths.length; j++){
+					if(oldLengths[j] >= 0L && !Arrays.equals(pickData, generated.getCuboidData().getDataAtOffset(newOffsets[j], newLengths[j]))){
+						throw new Exception("Block " + j + " of " + cuboid.getCuboidAddress() + " was already initialized but it was overwritten.");
+					}
+				}
+				expected.put(cuboid.getCuboidAddress(), generated);
+			}
+		}
+
+		for(int numWorkerThreads : Arrays.asList(0, 1, 4)){
+			for(int writeWindow : Arrays.asList(1, 2, 16)){
+				for(String noiseBackend : Arrays.asList("sha-512", "fast-hash")){
+					BlockManagerThreadCollection btc = new BlockManagerThreadCollection(ArgumentParser.parseArguments(new String []{"--noise-backend=" + noiseBackend}, ArgumentParser.getDefaultArgumentValues()), false);
+					Map<CuboidAddress, Cuboid> written = runChunkGenerationPipeline(btc, cuboids, numWorkerThreads, writeWindow, 1L);
+					if(noiseBackend.equals("sha-512")){
+						if(!written.keySet().equals(expected.keySet())){
+							throw new Exception("Pipeline wrote " + written.size() + " chunks, but expected " + expected.size() + " with numWorkerThreads=" + numWorkerThreads + ", writeWindow=" + writeWindow);
+						}
+						for(Map.Entry<CuboidAddress, Cuboid> e : expected.entrySet()){
+							if(!isSameCuboid(e.getValue(), written.get(e.getKey()))){
+								throw new Exception("Chunk " + e.getKey() + " was different from the pipeline with numWorkerThreads=" + numWorkerThreads + ", writeWindow=" + writeWindow);
+							}
+						}
+					}else if(written.size() != expected.size()){
+						throw new Exception("The fast-hash backend wrote " + written.size() + " chunks, but expected " + expected.size());
+					}
+				}
+			}
+		}
+		System.out.println("End runChunkGenerationPipelineTest:");
+	}
+
+	@Test
+	public void runChunkGenerationPipelineRejectedWriteTest() throws Exception {
+		System.out.println("Begin runChunkGenerationPipelineRejectedWriteTest:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		List<Cuboid> cuboids = getChunkGenerationTestCuboids(blockManagerThreadCollection, 48);
+		List<Long> sentConversationIds = new ArrayList<Long>();
+		List<Cuboid> sentCuboids = new ArrayList<Cuboid>();
+		ChunkGenerationPipelineListener listener = new ChunkGenerationPipelineListener(){
+			public void onChunkGenerated(Cuboid generatedCuboid, Long conversationId) throws Exception{
+				sentConversationIds.add(conversationId);
+				sentCuboids.add(generatedCuboid);
+			}
+
+			public void onPipelineCapacityAvailable() throws Exception{
+			}
+
+			public void onChunkGenerationException(Exception e){
+			}
+		};
+		int writeWindow = 2;
+		ChunkGenerationPipeline pipeline = new ChunkGenerationPipeline(new ChunkGenerator(blockManagerThreadCollection, ServerBlockModelContext.DEFAULT_WORLD_SEED), listener, 0, writeWindow);
+		try{
+			for(int i = 0; i < cuboids.size() && pipeline.hasCapacity(); i++){
+				pipeline.generate(cuboids.get(i));
+			}
+			if(pipeline.hasCapacity() || sentConversationIds.size() != writeWindow){
+				throw new Exception("Expected the write window to fill up: " + pipeline.getMetricsSummary());
+			}
+			//  A rejected write gives back its slot and the chunk that needs to be sent again:
+			Cuboid rejected = pipeline.onWriteRejected(sentConversationIds.get(0));
+			if(rejected != sentCuboids.get(0) || !pipeline.hasCapacity() || pipeline.getNumWritesRejected() != 1L){
+				throw new Exception("Expected a rejected write to free its slot: " + pipeline.getMetricsSummary());
+			}
+			if(pipeline.onWriteRejected(sentConversationIds.get(0)) != null || pipeline.onWriteRejected(12345L) != null){
+				throw new Exception("Expected unknown conversation ids to be ignored.");
+			}
+			Long retryConversationId = pipeline.retryWrite(rejected);
+			if(pipeline.hasCapacity() || sentConversationIds.contains(retryConversationId)){
+				throw new Exception("Expected the retry to take a slot with a new conversation id: " + pipeline.getMetricsSummary());
+			}
+			if(!pipeline.onWriteAcknowledged(retryConversationId) || !pipeline.onWriteAcknowledged(sentConversationIds.get(1)) || pipeline.getNumInFlightWrites() != 0L){
+				throw new Exception("Expected both writes to be acknowledged: " + pipeline.getMetricsSummary());
+			}
+			System.out.println(pipeline.getMetricsSummary());
+		}finally{
+			pipeline.shutdown();
+		}
+		System.out.println("End runChunkGenerationPipelineRejectedWriteTest:");
+	}
+
+	@Test
+	public void runChunkGenerationPipelineBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runChunkGenerationPipelineBenchmark:");
+		CommandLineArgumentCollection commandLineArgumentCollection = ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues());
+		BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(commandLineArgumentCollection, false);
+		List<Cuboid> cuboids = getChunkGenerationTestCuboids(blockManagerThreadCollection, 400);
+		long ackLatencyMillis = 5L;
+		//  Warm up
+		runChunkGenerationPipeline(blockManagerThreadCollection, cuboids.subList(0, 100), 1, 16, ackLatencyMillis);
+
+		int defaultThreads = ChunkGenerationPipeline.getDefaultNumWorkerThreads();
+		int [][] configurations = new int [][] {{0, 2}, {defaultThreads, 2}, {0, ChunkGenerationPipeline.DEFAULT_WRITE_WINDOW}, {defaultThreads, ChunkGenerationPipeline.DEFAULT_WRITE_WINDOW}};
+		for(int [] configuration : configurations){
+			long start = System.nanoTime();
+			runChunkGenerationPipeline(blockManagerThreadCollection, cuboids, configuration[0], configuration[1], ackLatencyMillis);
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+			String description = configuration[0] == 0 && configuration[1] == 2 ? " (the old single threaded behaviour)" : "";
+			System.out.println("numWorkerThreads=" + configuration[0] + ", writeWindow=" + configuration[1] + description + ": " + String.format("%.1f", cuboids.size() / seconds) + " chunks/s with a " + ackLatencyMillis + "ms write acknowledgement latency");
+		}
+		System.out.println("End runChunkGenerationPipelineBenchmark:");
+	}
+
+	public List<Cuboid> getGoldenHashChunks(BlockManagerThreadCollection blockManagerThreadCollection) throws Exception{
+		//  Completely uninitialized chunks spread out at and below ground level, one at the origin, and a few far away:
+		CuboidAddress chunkSize = blockManagerThreadCollection.getChunkSizeCuboidAddress();
+		List<Coordinate> chunkCorners = new ArrayList<Coordinate>();
+		chunkCorners.add(Coordinate.makeOriginCoordinate(4L));
+		for(long i = -3L; i <= 3L; i++){
+			for(long j = -3L; j <= 3L; j++){
+				for(long y : Arrays.asList(0L, -3L * chunkSize.getWidthForIndex(1L))){
+					chunkCorners.add(new Coordinate(Arrays.asList(i * 97L * chunkSize.getWidthForIndex(0L), y, j * 89L * chunkSize.getWidthForIndex(2L), 0L)));
+				}
+			}
+		}
+		chunkCorners.add(new Coordinate(Arrays.asList(999999L, -6L, -1000005L, 0L)));
+		chunkCorners.add(new Coordinate(Arrays.asList(-123456789L, 0L, 987654321L, 0L)));
+		chunkCorners.add(new Coordinate(Arrays.asList(300L, -300L, 300L, 0L)));
+		List<Cuboid> rtn = new ArrayList<Cuboid>();
+		for(Coordinate corner : chunkCorners){
+			CuboidAddress address = new CuboidAddress(corner, corner.add(chunkSize.getCanonicalUpperCoordinate()));
+			long [] lengths = new long [(int)address.getVolume()];
+			Arrays.fill(lengths, -1L);
+			rtn.add(new Cuboid(address, new CuboidDataLengths(address, lengths), new CuboidData(new byte [0])));
+		}
+		return rtn;
+	}
+
+	public String getGeneratedChunksHash(ChunkGenerator chunkGenerator, List<Cuboid> cuboids) throws Exception{
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		for(Cuboid cuboid : cuboids){
+			Cuboid generated = chunkGenerator.generateCuboid(cuboid);
+			if(generated == null){
+				digest.update((byte)0);
+			}else{
+				long [] lengths = generated.getCuboidDataLengths().getLengths();
+				ByteBuffer lengthBytes = ByteBuffer.allocate(lengths.length * Long.BYTES);
+				lengthBytes.asLongBuffer().put(lengths);
+				digest.update((byte)1);
+				digest.update(lengthBytes.array());
+				digest.update(generated.getCuboidData().getData());
+			}
+		}
+		return BlockModelContext.convertToHex(digest.digest());
+	}
+
+	@Test
+	public void runWorldGenerationGoldenHashTest() throws Exception {
+		System.out.println("Begin runWorldGenerationGoldenHashTest:");
+		/*
+			Hashes of the terrain generated for a fixed set of chunks.  If any of these
+			change, existing worlds will no longer line up with newly generated terrain,
+			so a faster generator has to reproduce them exactly.
+		*/
+		Map<String, String> goldenHashes = new TreeMap<String, String>();
+		goldenHashes.put("sha-512:0", "e5f931d143925e140baf7d2744e27a5ebf3efb6635964e31e638c2c630b79c95");
+		goldenHashes.put("sha-512:1", "d5312d4b3c94ee4db545ec0e8aeb910eebb8153aa7f57e6e2f44338ae540ad8a");
+		goldenHashes.put("sha-512:12345", "dbf97185b59c3913585212247e73bbd2ef9726158c9b9103a815f9913c40133d");
+		goldenHashes.put("sha-512:-7346289156", "8681973fa1685147c3ea63aef33725be636ee5576710c82cc58ce35976f45c4d");
+		goldenHashes.put("fast-hash:0", "20474148dcd7d090a4e266f636aef7772b59d6fd017a91dcd8b343906ee40987");
+		goldenHashes.put("fast-hash:1", "6d61f000fe57598365113c062f6289558aab8992c1e47d713daacfa64ad184c8");
+		goldenHashes.put("fast-hash:12345", "0b248ca5cd4f796263150b8f2c542acaa471fdff280273f9127adc36ee048fd1");
+		goldenHashes.put("fast-hash:-7346289156", "6abd3d51d74bf865dc9b7f99602136e9cbe742e394c2fced7de35f14b9ef373f");
+
+		Set<String> distinctHashes = new HashSet<String>();
+		for(String noiseBackend : Arrays.asList("sha-512", "fast-hash")){
+			BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(ArgumentParser.parseArguments(new String []{"--noise-backend=" + noiseBackend}, ArgumentParser.getDefaultArgumentValues()), false);
+			List<Cuboid> cuboids = getGoldenHashChunks(blockManagerThreadCollection);
+			long numBlocks = 0L;
+			for(Cuboid cuboid : cuboids){
+				numBlocks += cuboid.getCuboidAddress().getVolume();
+			}
+			for(Long seed : Arrays.asList(0L, 1L, 12345L, -7346289156L)){
+				ChunkGenerator chunkGenerator = new ChunkGenerator(blockManagerThreadCollection, seed);
+				long start = System.nanoTime();
+				String hash = getGeneratedChunksHash(chunkGenerator, cuboids);
+				double seconds = (System.nanoTime() - start) / 1000000000.0;
+				String key = noiseBackend + ":" + seed;
+				System.out.println(key + " hash=" + hash + " generated " + cuboids.size() + " chunks in " + String.format("%.3f", seconds) + "s (" + String.format("%.0f", numBlocks / seconds) + " blocks/s)");
+				if(!hash.equals(goldenHashes.get(key))){
+					throw new Exception("Generated terrain for " + key + " has drifted.  Expected hash " + goldenHashes.get(key) + " but got " + hash);
+				}
+				distinctHashes.add(hash);
+
+				//  The whole chunk path must agree with the one block at a time reference, also when only a few blocks are missing:
+				List<Cuboid> partlyGeneratedCuboids = new ArrayList<Cuboid>();
+				for(Cuboid cuboid : cuboids.subList(0, Math.min(4, cuboids.size()))){
+					partlyGeneratedCuboids.add(forgetEveryNthBlock(chunkGenerator.generateCuboid(cuboid), 7));
+				}
+				List<Cuboid> referenceCuboids = new ArrayList<Cuboid>(cuboids);
+				referenceCuboids.addAll(partlyGeneratedCuboids);
+				for(Cuboid cuboid : referenceCuboids){
+					Cuboid generated = chunkGenerator.generateCuboid(cuboid);
+					long [] lengths = generated.getCuboidDataLengths().getLengths();
+					long [] offsets = generated.getCuboidDataLengths().getOffsets();
+					RegionCursor cursor = new RegionCursor(cuboid.getCuboidAddress());
+					for(; !cursor.isDone(); cursor.next()){
+						int index = (int)cursor.getLinearArrayIndex();
+						byte [] expected = chunkGenerator.getBlockDataAtXYZW(cursor.getX(), cursor.getY(), cursor.getZ(), cursor.getValueAtIndex(3));
+						byte [] actual = lengths[index] < 0L ? null : generated.getCuboidData().getDataAtOffset(offsets[index], lengths[index]);
+						if(!Arrays.equals(expected, actual)){
+							throw new Exception("For " + key + " block " + index + " of " + cuboid.getCuboidAddress() + " was different from the reference generator.");
+						}
+					}
+				}
+			}
+		}
+		if(distinctHashes.size() != goldenHashes.size()){
+			throw new Exception("Expected every seed and backend to generate different terrain, but there were only " + distinctHashes.size() + " distinct hashes.");
+		}
+		System.out.println("End runWorldGenerationGoldenHashTest:");
+	}
+
+	public Cuboid forgetEveryNthBlock(Cuboid cuboid, int n) throws Exception{
+		/*  A copy of the cuboid with every nth block made uninitialized again. */
+		long [] lengths = cuboid.getCuboidDataLengths().getLengths();
+		long [] offsets = cuboid.getCuboidDataLengths().getOffsets();
+		long [] newLengths = new long [lengths.length];
+		BlockMessageBinaryBuffer newData = new BlockMessageBinaryBuffer();
+		for(int i = 0; i < lengths.length; i++){
+			if(i % n == 0 || lengths[i] < 0L){
+				newLengths[i] = -1L;
+			}else{
+				newLengths[i] = lengths[i];
+				newData.writeBytes(cuboid.getCuboidData().getDataAtOffset(offsets[i], lengths[i]));
+			}
+		}
+		return new Cuboid(cuboid.getCuboidAddress(), new CuboidDataLengths(cuboid.getCuboidAddress(), newLengths), new CuboidData(newData.getUsedBuffer()));
+	}
+
+	@Test
+	public void runWorldSeedPersistenceTest() throws Exception {
+		System.out.println("Begin runWorldSeedPersistenceTest:");
+		File databaseFile = File.createTempFile("world-seed-", ".sqlite");
+		databaseFile.deleteOnExit();
+		BlockManagerThreadCollection withSeed = new BlockManagerThreadCollection(ArgumentParser.parseArguments(new String []{"--world-seed=42"}, ArgumentParser.getDefaultArgumentValues()), false);
+		BlockManagerThreadCollection withoutSeed = new BlockManagerThreadCollection(ArgumentParser.parseArguments(new String []{}, ArgumentParser.getDefaultArgumentValues()), false);
+		BlockManagerThreadCollection withOtherSeed = new BlockManagerThreadCollection(ArgumentParser.parseArguments(new String []{"--world-seed=7"}, ArgumentParser.getDefaultArgumentValues()), false);
+
+		//  A new world stores the seed it was created with:
+		Long seed = makeSqliteServerBlockModelContext(withSeed, databaseFile).getWorldSeed();
+		if(seed != 42L){
+			throw new Exception("Expected the new world to use seed 42, but it was " + seed);
+		}
+		//  and keeps using it even when no seed is given:
+		seed = makeSqliteServerBlockModelContext(withoutSeed, databaseFile).getWorldSeed();
+		if(seed != 42L){
+			throw new Exception("Expected the stored seed 42 to be used when reopening the world, but it was " + seed);
+		}
+		//  Opening it with a different seed is an error:
+		boolean threwException = false;
+		try{
+			makeSqliteServerBlockModelContext(withOtherSeed, databaseFile);
+		}catch(Exception e){
+			threwException = true;
+		}
+		if(!threwException){
+			throw new Exception("Expected an exception when opening a world with a different seed.");
+		}
+
+		//  A new world with no seed given uses the default:
+		File otherDatabaseFile = File.createTempFile("world-seed-default-", ".sqlite");
+		otherDatabaseFile.deleteOnExit();
+		seed = makeSqliteServerBlockModelContext(withoutSeed, otherDatabaseFile).getWorldSeed();
+		if(seed != ServerBlockModelContext.DEFAULT_WORLD_SEED){
+			throw new Exception("Expected a new world with no seed to use " + ServerBlockModelContext.DEFAULT_WORLD_SEED + ", but it was " + seed);
+		}
+		//  A seed that can't be read must not be replaced with the default:
+		File brokenDatabaseFile = File.createTempFile("world-seed-broken-", ".sqlite");
+		brokenDatabaseFile.deleteOnExit();
+		try(java.sql.Connection connection = java.sql.DriverManager.getConnection("jdbc:sqlite:" + brokenDatabaseFile.getAbsolutePath())){
+			connection.createStatement().execute("CREATE TABLE world_metadata (name text NOT NULL, stored_value text NOT NULL, PRIMARY KEY(name));");
+		}
+		threwException = false;
+		try{
+			makeSqliteServerBlockModelContext(withoutSeed, brokenDatabaseFile);
+		}catch(Exception e){
+			threwException = true;
+		}
+		if(!threwException){
+			throw new Exception("Expected an exception when the stored world seed couldn't be read.");
+		}
+		System.out.println("End runWorldSeedPersistenceTest:");
+	}
+
+	public static class RingWorkItem extends WorkItem {
+		//  Passes itself on to the next owner in the ring until it runs out of hops.
+		private RingWorkItemQueueOwner owner;
+		private long remainingHops;
+
+		public RingWorkItem(RingWorkItemQueueOwner owner, long remainingHops){
+			super(false);
+			this.owner = owner;
+			this.remainingHops = remainingHops;
+		}
+
+		public void doWork() throws Exception{
+			if(this.remainingHops == 0L){
+				this.owner.getFinishedLatch().countDown();
+			}else{
+				RingWorkItemQueueOwner next = this.owner.getNext();
+				next.putWorkItem(new RingWorkItem(next, this.remainingHops - 1L), WorkItemPriority.PRIORITY_LOW);
+			}
+		}
+	}
+
+	public static class RingWorkItemQueueOwner extends WorkItemQueueOwner<RingWorkItem> {
+		private BlockManagerThreadCollection blockManagerThreadCollection;
+		private RingWorkItemQueueOwner next = null;
+		private java.util.concurrent.CountDownLatch finishedLatch = null;
+
+		public RingWorkItemQueueOwner(BlockManagerThreadCollection blockManagerThreadCollection){
+			this.blockManagerThreadCollection = blockManagerThreadCollection;
+		}
+
+		public RingWorkItem takeWorkItem() throws Exception {
+			return this.workItemQueue.takeWorkItem();
+		}
+
+		public void putWorkItem(RingWorkItem workItem, WorkItemPriority priority) throws Exception {
+			this.workItemQueue.putWorkItem(workItem, priority);
+		}
+
+		public BlockManagerThreadCollection getBlockManagerThreadCollection(){
+			return this.blockManagerThreadCollection;
+		}
+
+		public boolean doBackgroundProcessing() throws Exception{
+			return false;
+		}
+
+		protected void init(Object o) throws Exception{
+		}
+
+		protected void destroy(Object o) throws Exception{
+		}
+
+		public RingWorkItemQueueOwner getNext(){
+			return this.next;
+		}
+
+		public void setNext(RingWorkItemQueueOwner next){
+			this.next = next;
+		}
+
+		public java.util.concurrent.CountDownLatch getFinishedLatch(){
+			return this.finishedLatch;
+		}
+
+		public void setFinishedLatch(java.util.concurrent.CountDownLatch finishedLatch){
+			this.finishedLatch = finishedLatch;
+		}
+	}
+
+	public long getProcessCpuTimeNanos(){
+		return ((com.sun.management.OperatingSystemMXBean)java.lang.management.ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+	}
+
+	@Test
+	public void runThreadExecutionModeBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runThreadExecutionModeBenchmark:");
+		BlockManagerThreadCollection.configureVirtualThreadScheduler();
+		int numOwners = 200;
+		long numTokens = 20L;
+		long hopsPerToken = 2000L;
+		long idleMilliseconds = 1000L;
+		for(String threadMode : Arrays.asList("platform", "virtual")){
+			BlockManagerThreadCollection blockManagerThreadCollection = new BlockManagerThreadCollection(ArgumentParser.parseArguments(new String []{"--thread-mode=" + threadMode}, ArgumentParser.getDefaultArgumentValues()), false);
+			int threadsBefore = java.lang.management.ManagementFactory.getThreadMXBean().getThreadCount();
+			List<RingWorkItemQueueOwner> owners = new ArrayList<RingWorkItemQueueOwner>();
+			for(int i = 0; i < numOwners; i++){
+				owners.add(new RingWorkItemQueueOwner(blockManagerThreadCollection));
+			}
+			for(int i = 0; i < numOwners; i++){
+				owners.get(i).setNext(owners.get((i + 1) % numOwners));
+				blockManagerThreadCollection.addThread(new WorkItemProcessorTask<RingWorkItem>(blockManagerThreadCollection, owners.get(i), RingWorkItem.class, RingWorkItemQueueOwner.class));
+			}
+			int threadsAfter = java.lang.management.ManagementFactory.getThreadMXBean().getThreadCount();
+
+			//  Nothing is queued, so nothing should be using any CPU:
+			Thread.sleep(2000L);
+			long idleCpuStart = getProcessCpuTimeNanos();
+			Thread.sleep(idleMilliseconds);
+			double idleCpuPercent = 100.0 * (getProcessCpuTimeNanos() - idleCpuStart) / (idleMilliseconds * 1000000.0);
+
+			//  Pass some tokens around the ring:
+			java.util.concurrent.CountDownLatch finishedLatch = new java.util.concurrent.CountDownLatch((int)numTokens);
+			for(RingWorkItemQueueOwner owner : owners){
+				owner.setFinishedLatch(finishedLatch);
+			}
+			long loadCpuStart = getProcessCpuTimeNanos();
+			long loadStart = System.nanoTime();
+			for(long i = 0L; i < numTokens; i++){
+				RingWorkItemQueueOwner owner = owners.get((int)(i * numOwners / numTokens));
+				owner.putWorkItem(new RingWorkItem(owner, hopsPerToken), WorkItemPriority.PRIORITY_LOW);
+			}
+			if(!finishedLatch.await(120L, TimeUnit.SECONDS)){
+				throw new Exception("Tokens didn't make it around the ring in " + threadMode + " mode.");
+			}
+			double loadSeconds = (System.nanoTime() - loadStart) / 1000000000.0;
+			double loadCpuSeconds = (getProcessCpuTimeNanos() - loadCpuStart) / 1000000000.0;
+
+			blockManagerThreadCollection.setIsProcessFinished(true, null);
+			blockManagerThreadCollection.blockUntilAllTasksHaveTerminated();
+			if(blockManagerThreadCollection.getOffendingExceptions().size() > 0){
+				throw blockManagerThreadCollection.getOffendingExceptions().get(0);
+			}
+			long numHops = numTokens * hopsPerToken;
+			System.out.println(threadMode + ": " + numOwners + " work item queues added " + (threadsAfter - threadsBefore) + " platform threads, idle CPU " + String.format("%.2f", idleCpuPercent) + "%, " + String.format("%.0f", numHops / loadSeconds) + " work items/s under load using " + String.format("%.1f", 1000000.0 * loadCpuSeconds / numHops) + "us of CPU per work item");
+			if(threadMode.equals("virtual") && (threadsAfter - threadsBefore) >= numOwners){
+				throw new Exception("Expected virtual thread mode to use fewer than " + numOwners + " platform threads, but it added " + (threadsAfter - threadsBefore) + ".");
+			}
+		}
+		System.out.println("End runThreadExecutionModeBenchmark:");
+	}
+
+	public static class BackpressureTestWorkItem extends WorkItem {
+		private final int id;
+		private final Object coalescingKey;
+		private boolean wasRejected = false;
+
+		public BackpressureTestWorkItem(int id, Object coalescingKey, boolean isBlocking){
+			super(isBlocking);
+			this.id = id;
+			this.coalescingKey = coalescingKey;
+		}
+
+		public int getId(){
+			return this.id;
+		}
+
+		public boolean getWasRejected(){
+			return this.wasRejected;
+		}
+
+		@Override
+		public Object getCoalescingKey(){
+			return this.coalescingKey;
+		}
+
+		@Override
+		public void onRejected(String reason) throws Exception{
+			this.wasRejected = true;
+		}
+
+		public void doWork() throws Exception{
+		}
+	}
+
+	public static class BackpressureTestWorkItemResult extends WorkItemResult {
+		private final int id;
+
+		public BackpressureTestWorkItemResult(int id){
+			this.id = id;
+		}
+
+		public int getId(){
+			return this.id;
+		}
+	}
+
+	@Test
+	public void runWorkItemQueueOverflowPolicyTest() throws Exception {
+		System.out.println("Begin runWorkItemQueueOverflowPolicyTest:");
+		//  Reject:  Only the full priority turns work items away.
+		WorkItemQueue<BackpressureTestWorkItem> rejectQueue = new WorkItemQueue<BackpressureTestWorkItem>();
+		rejectQueue.configure(2, WorkItemQueueOverflowPolicy.REJECT, null);
+		List<BackpressureTestWorkItem> rejectItems = new ArrayList<BackpressureTestWorkItem>();
+		for(int i = 0; i < 3; i++){
+			rejectItems.add(new BackpressureTestWorkItem(i, null, false));
+			rejectQueue.putWorkItem(rejectItems.get(i), WorkItemPriority.PRIORITY_LOW);
+		}
+		BackpressureTestWorkItem highItem = new BackpressureTestWorkItem(3, null, false);
+		rejectQueue.putWorkItem(highItem, WorkItemPriority.PRIORITY_HIGH);
+		if(rejectItems.get(0).getWasRejected() || rejectItems.get(1).getWasRejected() || !rejectItems.get(2).getWasRejected() || highItem.getWasRejected()){
+			throw new Exception("Expected only the third low priority work item to be rejected.");
+		}
+		if(rejectQueue.getNumRejected() != 1L || rejectQueue.size() != 3){
+			throw new Exception("Expected 1 rejection and 3 queued work items, but got " + rejectQueue.getMetricsSummary());
+		}
+		if(rejectQueue.takeWorkItem().getId() != 3 || rejectQueue.takeWorkItem().getId() != 0 || rejectQueue.takeWorkItem().getId() != 1){
+			throw new Exception("Work items came out in the wrong order.");
+		}
+
+		//  Coalesce:  A newer work item takes over the queued one's place in line.
+		WorkItemQueue<BackpressureTestWorkItem> coalesceQueue = new WorkItemQueue<BackpressureTestWorkItem>();
+		//  Nothing is coalesced while there is room, so 0 and 2 are both queued:
+		coalesceQueue.configure(3, WorkItemQueueOverflowPolicy.COALESCE, null);
+		coalesceQueue.putWorkItem(new BackpressureTestWorkItem(0, "a", false), WorkItemPriority.PRIORITY_LOW);
+		coalesceQueue.putWorkItem(new BackpressureTestWorkItem(1, null, false), WorkItemPriority.PRIORITY_LOW);
+		coalesceQueue.putWorkItem(new BackpressureTestWorkItem(2, "a", false), WorkItemPriority.PRIORITY_LOW);
+		//  Once full, 4 replaces the newest queued "a", and "b" has nothing to replace:
+		coalesceQueue.putWorkItem(new BackpressureTestWorkItem(4, "a", false), WorkItemPriority.PRIORITY_LOW);
+		if(coalesceQueue.offerWorkItem(new BackpressureTestWorkItem(3, "b", false), WorkItemPriority.PRIORITY_LOW, 50L)){
+			throw new Exception("Expected a work item with no key to replace to wait on a full queue.");
+		}
+		List<Integer> coalescedIds = new ArrayList<Integer>();
+		while(coalesceQueue.size() > 0){
+			coalescedIds.add(coalesceQueue.takeWorkItem().getId());
+		}
+		if(!coalescedIds.equals(Arrays.asList(0, 1, 4)) || coalesceQueue.getNumCoalesced() != 1L){
+			throw new Exception("Expected coalesced ids [0, 1, 4] but got " + coalescedIds + ", " + coalesceQueue.getMetricsSummary());
+		}
+		//  Once taken, the key can be queued again:
+		coalesceQueue.putWorkItem(new BackpressureTestWorkItem(5, "a", false), WorkItemPriority.PRIORITY_LOW);
+		if(coalesceQueue.size() != 1 || coalesceQueue.takeWorkItem().getId() != 5){
+			throw new Exception("Expected a key to be queued again after it was taken.");
+		}
+
+		//  Block:  The producer waits for room, a timed offer gives up, and the consumer never waits on itself.
+		WorkItemQueue<BackpressureTestWorkItem> blockQueue = new WorkItemQueue<BackpressureTestWorkItem>();
+		blockQueue.configure(1, WorkItemQueueOverflowPolicy.BLOCK, null);
+		blockQueue.putWorkItem(new BackpressureTestWorkItem(0, null, false), WorkItemPriority.PRIORITY_LOW);
+		if(blockQueue.offerWorkItem(new BackpressureTestWorkItem(1, null, false), WorkItemPriority.PRIORITY_LOW, 50L)){
+			throw new Exception("Expected the timed offer to a full queue to fail.");
+		}
+		AtomicBoolean producerFinished = new AtomicBoolean(false);
+		Thread producer = new Thread(() -> {
+			try{
+				blockQueue.putWorkItem(new BackpressureTestWorkItem(2, null, false), WorkItemPriority.PRIORITY_LOW);
+				producerFinished.set(true);
+			}catch(Exception e){
+				e.printStackTrace();
+			}
+		});
+		producer.start();
+		Thread.sleep(200L);
+		if(producerFinished.get()){
+			throw new Exception("Expected the producer to block on a full queue.");
+		}
+		if(blockQueue.takeWorkItem().getId() != 0){
+			throw new Exception("Expected work item 0.");
+		}
+		producer.join(10000L);
+		if(!producerFinished.get() || blockQueue.takeWorkItem().getId() != 2){
+			throw new Exception("Expected the blocked producer to finish once there was room.");
+		}
+		blockQueue.putWorkItem(new BackpressureTestWorkItem(3, null, false), WorkItemPriority.PRIORITY_LOW);
+		BackpressureTestWorkItem selfPut = new BackpressureTestWorkItem(4, null, false);
+		blockQueue.putWorkItem(selfPut, WorkItemPriority.PRIORITY_LOW);
+		if(!selfPut.getWasRejected()){
+			throw new Exception("Expected the consumer's own put to a full queue to be rejected instead of deadlocking.");
+		}
+		if(blockQueue.getNumProducerWaits() != 2L){
+			throw new Exception("Expected 2 producer waits: " + blockQueue.getMetricsSummary());
+		}
+
+		//  Blocking work items reuse one pooled result future:
+		WorkItemQueue<BackpressureTestWorkItem> resultQueue = new WorkItemQueue<BackpressureTestWorkItem>();
+		int numBlockingItems = 1000;
+		AtomicLong numCorrectResults = new AtomicLong(0L);
+		Thread requester = new Thread(() -> {
+			try{
+				for(int i = 0; i < numBlockingItems; i++){
+					BackpressureTestWorkItemResult result = (BackpressureTestWorkItemResult)resultQueue.putBlockingWorkItem(new BackpressureTestWorkItem(i, null, true), WorkItemPriority.PRIORITY_LOW);
+					if(result.getId() == i){
+						numCorrectResults.incrementAndGet();
+					}
+				}
+			}catch(Exception e){
+				e.printStackTrace();
+			}
+		});
+		requester.start();
+		for(int i = 0; i < numBlockingItems; i++){
+			BackpressureTestWorkItem w = resultQueue.takeWorkItem();
+			resultQueue.addResultForThreadId(new BackpressureTestWorkItemResult(w.getId()), w.getThreadId());
+		}
+		requester.join(10000L);
+		if(numCorrectResults.get() != numBlockingItems || resultQueue.getNumResultFuturesAllocated() != 1L){
+			throw new Exception("Expected " + numBlockingItems + " correct results from 1 result future, but got " + numCorrectResults.get() + " from " + resultQueue.getNumResultFuturesAllocated());
+		}
+		long numInHistogram = 0L;
+		for(long count : resultQueue.getWaitTimeHistogram()){
+			numInHistogram += count;
+		}
+		if(numInHistogram != numBlockingItems){
+			throw new Exception("Expected " + numBlockingItems + " waits in the histogram but there were " + numInHistogram);
+		}
+		System.out.println("Result queue: " + resultQueue.getMetricsSummary());
+		System.out.println("End runWorkItemQueueOverflowPolicyTest:");
+	}
+
+	@Test
+	public void runWorkItemQueueBurstBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		//  Producers outrun a slow consumer.  Work items used to throw once 10000 were queued, now the producers wait.
+		System.out.println("Begin runWorkItemQueueBurstBenchmark:");
+		int numProducers = 4;
+		int numItemsPerProducer = 25000;
+		WorkItemQueue<BackpressureTestWorkItem> workItemQueue = new WorkItemQueue<BackpressureTestWorkItem>();
+		workItemQueue.configure(1000, WorkItemQueueOverflowPolicy.BLOCK, null);
+		List<Thread> producers = new ArrayList<Thread>();
+		AtomicLong numProducerErrors = new AtomicLong(0L);
+		long start = System.nanoTime();
+		for(int p = 0; p < numProducers; p++){
+			Thread producer = new Thread(() -> {
+				try{
+					for(int i = 0; i < numItemsPerProducer; i++){
+						BackpressureTestWorkItem w = new BackpressureTestWorkItem(i, null, false);
+						workItemQueue.putWorkItem(w, WorkItemPriority.valueOf(i % WorkItemPriority.size));
+						if(w.getWasRejected()){
+							numProducerErrors.incrementAndGet();
+						}
+					}
+				}catch(Exception e){
+					e.printStackTrace();
+					numProducerErrors.incrementAndGet();
+				}
+			});
+			producers.add(producer);
+			producer.start();
+		}
+		int numTaken = 0;
+		while(numTaken < numProducers * numItemsPerProducer){
+			workItemQueue.takeWorkItem();
+			numTaken++;
+			if(numTaken % 50 == 0){
+				Thread.sleep(1L); //  A burst always outruns the consumer for a while.
+			}
+		}
+		for(Thread producer : producers){
+			producer.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		if(numProducerErrors.get() > 0L || workItemQueue.getNumRejected() > 0L){
+			throw new Exception("Expected no rejections: " + workItemQueue.getMetricsSummary());
+		}
+		if(workItemQueue.getNumProducerWaits() == 0L){
+			throw new Exception("Expected the producers to have to wait for room at least once: " + workItemQueue.getMetricsSummary());
+		}
+		if(workItemQueue.getMaxSizeSeen() > 3 * 1000){
+			throw new Exception("The queue grew past its capacity: " + workItemQueue.getMetricsSummary());
+		}
+		System.out.println("Moved " + numTaken + " work items in " + String.format("%.3f", seconds) + " seconds (" + String.format("%.0f", numTaken / seconds) + " per second): " + workItemQueue.getMetricsSummary());
+		System.out.println("End runWorkItemQueueBurstBenchmark:");
+	}
+
+	@Test
+	public void runScreenLayerStorageTest() throws Exception {
+		System.out.println("Begin runScreenLayerStorageTest:");
+		//  Colour codes that fit in a long should survive a round trip, and longer ones should be interned:
+		int [][] colourCodeCases = new int [][] {
+			new int [] {},
+			new int [] {UserInterfaceFrameThreadState.RED_FG_COLOR},
+			new int [] {38, 2, 255, 0, 128},
+			new int [] {1, 4, 38, 2, 10, 20, 30},
+			new int [] {38, 2, 10, 20, 30, 48, 2, 40, 50, 60},
+			new int [] {300},
+			null
+		};
+		for(int [] colourCodes : colourCodeCases){
+			long key = ScreenLayerColourCodes.encode(colourCodes);
+			this.verifyArray(ScreenLayerColourCodes.decode(key), colourCodes, "colour code round trip");
+			if(colourCodes != null && key != ScreenLayerColourCodes.encode(Arrays.copyOf(colourCodes, colourCodes.length))){
+				throw new Exception("Equal colour codes " + Arrays.toString(colourCodes) + " gave different keys.");
+			}
+		}
+		if(ScreenLayerColourCodes.encode(new int [] {}) != ScreenLayerColourCodes.EMPTY){
+			throw new Exception("Empty colour codes should encode to EMPTY.");
+		}
+
+		//  The merge tests should behave the same with the planar storage:
+		ScreenLayerStorageType previousStorageType = ScreenLayer.getDefaultStorageType();
+		try{
+			ScreenLayer.setDefaultStorageType(ScreenLayerStorageType.PLANES);
+			this.mergeChangesTest1();
+			this.mergeChangesTest2();
+			this.mergeChangesTest3();
+			this.mergeChangesTest4();
+			this.mergeChangesTest5();
+			this.mergeChangesTest6();
+
+			this.testSimpleTwoColumn();
+			this.testAscendingMultiColumn();
+			this.testDescendingMultiColumn();
+			this.twoColumnOverOneColumn();
+			this.testMergeDownNoNeedToPrint();
+			this.testInheritBackgroundBelow();
+			this.testIgnoreBackgroundFlaggedFalse();
+			this.testPartiallyCoveredCharacterBackground();
+			this.testMergeIntoInactiveLayer();
+		}finally{
+			ScreenLayer.setDefaultStorageType(previousStorageType);
+		}
+
+		//  Resizing should keep the common area in both storage types:
+		for(ScreenLayerStorageType storageType : ScreenLayerStorageType.values()){
+			ScreenLayer l = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, 4, 3), storageType);
+			l.initialize();
+			l.setMultiColumnCharacter(1, 1, "😀", 2, new int [] {UserInterfaceFrameThreadState.RED_FG_COLOR}, true, true);
+			l.resizeLayer(ScreenLayer.makeDimensionsCA(0, 0, 6, 2));
+			this.verifyObject(l.getColumnCharacter(1, 1), "😀");
+			this.verifyObject(l.getColumnCharacterWidth(2, 1), -1);
+			this.verifyArray(l.getColumnColourCodes(2, 1), new int [] {UserInterfaceFrameThreadState.RED_FG_COLOR}, "resize " + storageType);
+			this.verifyObject(l.getColumnActive(1, 1), true);
+			this.verifyObject(l.getColumnCharacter(5, 1), null);
+			this.verifyArray(l.getColumnColourCodes(5, 1), new int [] {}, "resize " + storageType);
+			this.verifyObject(l.getColumnActive(5, 1), false);
+		}
+		System.out.println("End runScreenLayerStorageTest:");
+	}
+
+	public ScreenLayer [] makeScreenLayerMergeBenchmarkLayers(ScreenLayerStorageType storageType, int width, int height, int seed) throws Exception{
+		//  A full screen frame layer, with two overlapping 'windows' above it that get redrawn on every iteration:
+		Random rand = new Random(seed);
+		String [] characters = new String [] {"A", "b", "#", " ", ".", "█"};
+		int [][] colours = new int [][] {
+			new int [] {UserInterfaceFrameThreadState.RED_FG_COLOR},
+			new int [] {UserInterfaceFrameThreadState.RED_FG_COLOR, UserInterfaceFrameThreadState.GREEN_BG_COLOR},
+			new int [] {38, 2, 200, 100, 50},
+			new int [] {38, 2, 10, 20, 30, 48, 2, 40, 50, 60},
+			new int [] {}
+		};
+		ScreenLayer [] layers = new ScreenLayer [4];
+		layers[0] = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, width, height), storageType);
+		layers[0].initialize();
+		layers[1] = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, width, height), storageType);
+		layers[2] = new ScreenLayer(new Coordinate(Arrays.asList(10L,5L)), ScreenLayer.makeDimensionsCA(0, 0, width / 2, height / 2), storageType);
+		layers[3] = new ScreenLayer(new Coordinate(Arrays.asList((long)(width / 3),(long)(height / 3))), ScreenLayer.makeDimensionsCA(0, 0, width / 2, height / 2), storageType);
+		for(int l = 1; l < layers.length; l++){
+			layers[l].initialize();
+			for(int j = 0; j < layers[l].getHeight(); j++){
+				for(int i = 0; i < layers[l].getWidth(); i++){
+					if(rand.nextInt(8) == 0 && i + 1 < layers[l].getWidth()){
+						layers[l].setMultiColumnCharacter(i, j, "😀", 2, colours[rand.nextInt(colours.length)], true, true);
+						i++;
+					}else{
+						layers[l].setMultiColumnCharacter(i, j, characters[rand.nextInt(characters.length)], 1, colours[rand.nextInt(colours.length)], true, true);
+					}
+				}
+			}
+			layers[l].addChangedRegion(new ScreenRegion(ScreenLayer.makeDimensionsCA(0, 0, layers[l].getWidth(), layers[l].getHeight())));
+		}
+		return layers;
+	}
+
+	public void redrawScreenLayerMergeBenchmarkLayers(ScreenLayer [] layers, Random rand) throws Exception{
+		String [] characters = new String [] {"x", "y", "z", "+"};
+		for(int l = 2; l < layers.length; l++){
+			for(int j = 0; j < layers[l].getHeight(); j++){
+				for(int i = 0; i < layers[l].getWidth(); i += 2){
+					if(layers[l].getColumnCharacterWidth(i, j) == 1){
+						layers[l].setColumnCharacter(i, j, characters[rand.nextInt(characters.length)]);
+						layers[l].setColumnChanged(i, j, true);
+					}
+				}
+			}
+			layers[l].addChangedRegion(new ScreenRegion(ScreenLayer.makeDimensionsCA(0, 0, layers[l].getWidth(), layers[l].getHeight())));
+		}
+	}
+
+	@Test
+	public void runScreenLayerMergeBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runScreenLayerMergeBenchmark:");
+		int width = 400;
+		int height = 120;
+		int numWarmupIterations = 20;
+		int numIterations = 100;
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().threadId();
+		Map<ScreenLayerStorageType, ScreenLayer> results = new TreeMap<ScreenLayerStorageType, ScreenLayer>();
+		for(ScreenLayerStorageType storageType : ScreenLayerStorageType.values()){
+			ScreenLayer [] layers = this.makeScreenLayerMergeBenchmarkLayers(storageType, width, height, 1234);
+			ScreenLayer [] aboveLayers = Arrays.copyOfRange(layers, 1, layers.length);
+			Random rand = new Random(5678);
+			for(int n = 0; n < numWarmupIterations; n++){
+				this.redrawScreenLayerMergeBenchmarkLayers(layers, rand);
+				layers[0].mergeDown(aboveLayers, false);
+			}
+			long totalNanos = 0L;
+			long totalBytes = 0L;
+			for(int n = 0; n < numIterations; n++){
+				this.redrawScreenLayerMergeBenchmarkLayers(layers, rand);
+				long bytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+				long startNanos = System.nanoTime();
+				layers[0].mergeDown(aboveLayers, false);
+				totalNanos += System.nanoTime() - startNanos;
+				totalBytes += threadMXBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+			}
+			System.out.println("storageType=" + storageType + " size=" + width + "x" + height + " layers=" + layers.length + " merges=" + numIterations + " msPerMerge=" + String.format("%.3f", (totalNanos / 1000000.0) / numIterations) + " bytesPerMerge=" + (totalBytes / numIterations));
+			results.put(storageType, layers[0]);
+		}
+
+		//  Both storage types must produce the same merged screen:
+		ScreenLayer columns = results.get(ScreenLayerStorageType.COLUMNS);
+		ScreenLayer planes = results.get(ScreenLayerStorageType.PLANES);
+		for(int j = 0; j < height; j++){
+			for(int i = 0; i < width; i++){
+				String msg = "i=" + i + ", j=" + j;
+				this.verifyObject(planes.getColumnCharacter(i, j), columns.getColumnCharacter(i, j), msg);
+				this.verifyObject(planes.getColumnCharacterWidth(i, j), columns.getColumnCharacterWidth(i, j), msg);
+				this.verifyArray(planes.getColumnColourCodes(i, j), columns.getColumnColourCodes(i, j), msg);
+				this.verifyObject(planes.getColumnChanged(i, j), columns.getColumnChanged(i, j), msg);
+				this.verifyObject(planes.getColumnActive(i, j), columns.getColumnActive(i, j), msg);
+			}
+		}
+		System.out.println("End runScreenLayerMergeBenchmark:");
+	}
+
+	public static class FakeTerminal {
+		//  Just enough of a terminal to replay the output of ScreenLayer.appendChanges.
+		private final int width;
+		private final int height;
+		private final String [][] characters;
+		private final String [][] styles;
+		private int cursorX = 0;
+		private int cursorY = 0;
+		private String foreground = "";
+		private String background = "";
+		private TreeSet<Integer> attributes = new TreeSet<Integer>();
+
+		public FakeTerminal(int width, int height){
+			this.width = width;
+			this.height = height;
+			this.characters = new String [width][height];
+			this.styles = new String [width][height];
+			for(int i = 0; i < width; i++){
+				for(int j = 0; j < height; j++){
+					this.characters[i][j] = " ";
+					this.styles[i][j] = "";
+				}
+			}
+		}
+
+		public static String getStyle(int [] colourCodes){
+			FakeTerminal t = new FakeTerminal(0, 0);
+			t.applySGR(colourCodes);
+			return t.getCurrentStyle();
+		}
+
+		public String getCurrentStyle(){
+			if(this.foreground.length() == 0 && this.background.length() == 0 && this.attributes.size() == 0){
+				return "";
+			}
+			return "fg=" + this.foreground + " bg=" + this.background + " attributes=" + this.attributes;
+		}
+
+		public String getCharacter(int x, int y){
+			return this.characters[x][y];
+		}
+
+		public String getStyle(int x, int y){
+			return this.styles[x][y];
+		}
+
+		private void applySGR(int [] codes){
+			if(codes.length == 0){
+				codes = new int [] {0};
+			}
+			for(int i = 0; i < codes.length; i++){
+				int c = codes[i];
+				if(c == 0){
+					this.foreground = "";
+					this.background = "";
+					this.attributes.clear();
+				}else if(c == 38 || c == 48){
+					int n = codes[i + 1] == 5 ? 3 : 5;
+					String colour = Arrays.toString(Arrays.copyOfRange(codes, i, i + n));
+					if(c == 38){
+						this.foreground = colour;
+					}else{
+						this.background = colour;
+					}
+					i += n - 1;
+				}else if((c >= 30 && c <= 37) || (c >= 90 && c <= 97)){
+					this.foreground = String.valueOf(c);
+				}else if(c == 39){
+					this.foreground = "";
+				}else if((c >= 40 && c <= 47) || (c >= 100 && c <= 107)){
+					this.background = String.valueOf(c);
+				}else if(c == 49){
+					this.background = "";
+				}else{
+					this.attributes.add(c);
+				}
+			}
+		}
+
+		private void put(int x, int y, String character){
+			if(x >= 0 && x < this.width && y >= 0 && y < this.height){
+				//  Overwriting either half of a wide character blanks the other half:
+				if(this.characters[x][y] == null && x > 0){
+					this.characters[x - 1][y] = " ";
+				}
+				if(x + 1 < this.width && this.characters[x + 1][y] == null){
+					this.characters[x + 1][y] = " ";
+				}
+				this.characters[x][y] = character;
+				this.styles[x][y] = this.getCurrentStyle();
+			}
+		}
+
+		public void write(String output, Map<String, Integer> characterWidths) throws Exception{
+			int i = 0;
+			while(i < output.length()){
+				char c = output.charAt(i);
+				if(c == '\033'){
+					int end = i + 2;
+					while(!Character.isLetter(output.charAt(end))){
+						end++;
+					}
+					String params = output.substring(i + 2, end);
+					char command = output.charAt(end);
+					String [] parts = params.length() == 0 ? new String [] {} : params.split(";", -1);
+					int [] values = new int [parts.length];
+					for(int p = 0; p < parts.length; p++){
+						values[p] = parts[p].length() == 0 ? 0 : Integer.parseInt(parts[p]);
+					}
+					int n = (values.length == 0 || values[0] == 0) ? 1 : values[0];
+					switch(command){
+						case 'H':{
+							this.cursorY = Math.max(n, 1) - 1;
+							this.cursorX = (values.length < 2 || values[1] == 0) ? 0 : values[1] - 1;
+							break;
+						}case 'A':{
+							this.cursorY -= n;
+							break;
+						}case 'B':{
+							this.cursorY += n;
+							break;
+						}case 'C':{
+							this.cursorX += n;
+							break;
+						}case 'D':{
+							this.cursorX -= n;
+							break;
+						}case 'K':{
+							for(int x = this.cursorX; x < this.width; x++){
+								this.characters[x][this.cursorY] = " ";
+								this.styles[x][this.cursorY] = this.background.length() == 0 ? "" : "fg= bg=" + this.background + " attributes=[]";
+							}
+							break;
+						}case 'm':{
+							this.applySGR(values);
+							break;
+						}default:{
+							throw new Exception("Unexpected escape sequence command '" + command + "'.");
+						}
+					}
+					i = end + 1;
+				}else if(c == '\r'){
+					this.cursorX = 0;
+					i++;
+				}else{
+					int codePoint = output.codePointAt(i);
+					String character = new String(Character.toChars(codePoint));
+					Integer w = characterWidths.get(character);
+					int characterWidth = w == null ? 1 : w;
+					this.put(this.cursorX, this.cursorY, character);
+					for(int k = 1; k < characterWidth; k++){
+						this.put(this.cursorX + k, this.cursorY, null);
+						this.characters[this.cursorX][this.cursorY] = character;
+					}
+					this.cursorX = Math.min(this.cursorX + characterWidth, this.width - 1);
+					i += Character.charCount(codePoint);
+				}
+			}
+		}
+
+		public void verifyMatchesLayer(ScreenLayer layer, String msg) throws Exception{
+			for(int j = 0; j < layer.getHeight(); j++){
+				for(int i = 0; i < layer.getWidth(); i++){
+					String expectedCharacter = layer.getColumnCharacter(i, j);
+					int characterWidth = layer.getColumnCharacterWidth(i, j);
+					String expectedStyle = FakeTerminal.getStyle(layer.getColumnColourCodes(i, j));
+					if(expectedCharacter == null && characterWidth == 0){
+						expectedCharacter = " ";
+						expectedStyle = "";
+					}
+					boolean isContinuation = characterWidth < 0;
+					if(!Objects.equals(this.characters[i][j], expectedCharacter) || (!isContinuation && !this.styles[i][j].equals(expectedStyle))){
+						throw new Exception("Terminal has '" + this.characters[i][j] + "' with style '" + this.styles[i][j] + "' at i=" + i + ", j=" + j + ", but the layer has '" + expectedCharacter + "' with style '" + expectedStyle + "', msg=" + msg);
+					}
+				}
+			}
+		}
+	}
+
+	public interface ScreenSessionFrameDrawer {
+		void drawFrame(ScreenLayer layer, int frame) throws Exception;
+	}
+
+	public ScreenSessionFrameDrawer makeMapScrollingSession(int width, int height, int seed){
+		//  A map made of two column block characters with a border and a status line,
+		//  scrolling around in the same way as the map area when the player walks:
+		Random rand = new Random(seed);
+		int mapWidth = 400;
+		int mapHeight = 200;
+		String [] blocks = new String [] {"🟫", "🟩", "🪨", "🌲", "💧"};
+		int [][] blockColours = new int [][] {
+			new int [] {UserInterfaceFrameThreadState.GREEN_BG_COLOR},
+			new int [] {UserInterfaceFrameThreadState.GREEN_BG_COLOR},
+			new int [] {38, 2, 120, 120, 120, 48, 2, 0, 0, 0},
+			new int [] {UserInterfaceFrameThreadState.GREEN_BG_COLOR},
+			new int [] {UserInterfaceFrameThreadState.BLACK_BG_COLOR}
+		};
+		final int [][] map = new int [mapWidth][mapHeight];
+		for(int i = 0; i < mapWidth; i++){
+			for(int j = 0; j < mapHeight; j++){
+				//  Clumps of the same block, with a lot of empty space:
+				map[i][j] = rand.nextInt(3) == 0 ? -1 : ((i / 7 + j / 5) % blocks.length);
+			}
+		}
+		final int [] dx = new int [] {1, 1, 1, 0, 0, -1, 0, 1, 0, 0};
+		final int [] dy = new int [] {0, 0, 0, 1, 1, 0, 0, 0, -1, 0};
+		return new ScreenSessionFrameDrawer(){
+			private int x = 10;
+			private int y = 10;
+			public void drawFrame(ScreenLayer layer, int frame) throws Exception{
+				this.x += dx[frame % dx.length];
+				this.y += dy[frame % dy.length];
+				int [] borderColours = new int [] {UserInterfaceFrameThreadState.RED_FG_COLOR};
+				for(int i = 0; i < width; i++){
+					layer.setMultiColumnCharacter(i, 0, "═", 1, borderColours, true, true);
+					layer.setMultiColumnCharacter(i, height - 2, "═", 1, borderColours, true, true);
+				}
+				String status = "Position x=" + this.x + " y=" + this.y + " frame=" + frame;
+				for(int i = 0; i < width; i++){
+					if(i < status.length()){
+						layer.setMultiColumnCharacter(i, height - 1, String.valueOf(status.charAt(i)), 1, new int [] {}, true, true);
+					}else{
+						layer.setMultiColumnCharacter(i, height - 1, " ", 1, new int [] {}, true, true);
+					}
+				}
+				for(int j = 1; j < height - 2; j++){
+					for(int i = 0; i + 1 < width; i += 2){
+						int block = map[(this.x + i / 2) % mapWidth][(this.y + j) % mapHeight];
+						if(i == width / 2 - (width / 2) % 2 && j == height / 2){
+							layer.setMultiColumnCharacter(i, j, "🙂", 2, new int [] {UserInterfaceFrameThreadState.BLACK_BG_COLOR}, true, true);
+						}else if(block == -1){
+							layer.setToEmpty(i, j);
+							layer.setToEmpty(i + 1, j);
+						}else{
+							layer.setMultiColumnCharacter(i, j, blocks[block], 2, blockColours[block], true, true);
+						}
+					}
+					if(width % 2 == 1){
+						layer.setToEmpty(width - 1, j);
+					}
+				}
+				layer.addChangedRegion(new ScreenRegion(ScreenLayer.makeDimensionsCA(0, 0, width, height)));
+			}
+		};
+	}
+
+	public ScreenSessionFrameDrawer makeLogScrollingSession(int width, int height, int seed){
+		//  Lines of text that scroll up one line per frame, like the debug list:
+		Random rand = new Random(seed);
+		final List<String> lines = new ArrayList<String>();
+		for(int n = 0; n < 500; n++){
+			int length = rand.nextInt(width);
+			StringBuilder sb = new StringBuilder("[" + n + "] ");
+			while(sb.length() < length){
+				sb.append(rand.nextInt(2) == 0 ? "chunk " : "x=" + rand.nextInt(1000) + " ");
+			}
+			lines.add(sb.toString());
+		}
+		return new ScreenSessionFrameDrawer(){
+			public void drawFrame(ScreenLayer layer, int frame) throws Exception{
+				for(int j = 0; j < height; j++){
+					String line = lines.get((frame + j) % lines.size());
+					int [] colours = line.contains("[1") ? new int [] {UserInterfaceFrameThreadState.RED_FG_COLOR} : new int [] {};
+					for(int i = 0; i < width; i++){
+						if(i < line.length()){
+							layer.setMultiColumnCharacter(i, j, String.valueOf(line.charAt(i)), 1, colours, true, true);
+						}else{
+							layer.setToEmpty(i, j);
+						}
+					}
+				}
+				layer.addChangedRegion(new ScreenRegion(ScreenLayer.makeDimensionsCA(0, 0, width, height)));
+			}
+		};
+	}
+
+	public long replayScreenSession(ScreenSessionFrameDrawer drawer, int width, int height, int numFrames, ScreenOutputEncoder encoder, boolean useCompatibilityWidth, boolean useRightToLeftPrint, FakeTerminal terminal) throws Exception{
+		Map<String, Integer> characterWidths = new HashMap<String, Integer>();
+		for(String s : new String [] {"🟫", "🟩", "🪨", "🌲", "💧", "🙂"}){
+			characterWidths.put(s, 2);
+		}
+		ScreenLayer merged = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, width, height));
+		merged.initialize();
+		ScreenLayer drawn = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, width, height));
+		drawn.initialize();
+		StringBuilder out = new StringBuilder();
+		long totalBytes = 0L;
+		for(int frame = 0; frame < numFrames; frame++){
+			drawer.drawFrame(drawn, frame);
+			merged.mergeDown(drawn, false);
+			merged.appendChanges(out, useCompatibilityWidth, useRightToLeftPrint, false, 0, 0, null, encoder);
+			totalBytes += out.toString().getBytes("UTF-8").length;
+			if(terminal != null){
+				terminal.write(out.toString(), characterWidths);
+				terminal.verifyMatchesLayer(merged, "frame=" + frame + ", encoder=" + encoder + ", useCompatibilityWidth=" + useCompatibilityWidth + ", useRightToLeftPrint=" + useRightToLeftPrint);
+			}
+			out.setLength(0);
+		}
+		return totalBytes;
+	}
+
+	@Test
+	public void runScreenOutputEncoderTest() throws Exception {
+		System.out.println("Begin runScreenOutputEncoderTest:");
+		int width = 81;
+		int height = 25;
+		int numFrames = 40;
+		//  Replay both sessions through a fake terminal, which must end up showing
+		//  exactly what's in the merged layer after every frame:
+		for(boolean useCompatibilityWidth : new boolean [] {false, true}){
+			for(boolean useRightToLeftPrint : new boolean [] {false, true}){
+				for(ScreenOutputEncoder encoder : new ScreenOutputEncoder [] {null, new ScreenOutputEncoder(false), new ScreenOutputEncoder(true)}){
+					this.replayScreenSession(this.makeMapScrollingSession(width, height, 1), width, height, numFrames, encoder, useCompatibilityWidth, useRightToLeftPrint, new FakeTerminal(width, height));
+					this.replayScreenSession(this.makeLogScrollingSession(width, height, 2), width, height, numFrames, encoder, useCompatibilityWidth, useRightToLeftPrint, new FakeTerminal(width, height));
+				}
+			}
+		}
+		System.out.println("End runScreenOutputEncoderTest:");
+	}
+
+	@Test
+	public void runScreenOutputEncoderBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runScreenOutputEncoderBenchmark:");
+		int width = 200;
+		int height = 60;
+		int numFrames = 200;
+		for(String session : new String [] {"map", "log"}){
+			long absoluteBytes = 0L;
+			long minimalBytes = 0L;
+			for(boolean useMinimal : new boolean [] {false, true}){
+				ScreenSessionFrameDrawer drawer = session.equals("map") ? this.makeMapScrollingSession(width, height, 1) : this.makeLogScrollingSession(width, height, 2);
+				ScreenOutputEncoder encoder = useMinimal ? new ScreenOutputEncoder(true) : null;
+				long startNanos = System.nanoTime();
+				long bytes = this.replayScreenSession(drawer, width, height, numFrames, encoder, false, false, null);
+				double ms = (System.nanoTime() - startNanos) / 1000000.0;
+				System.out.println("session=" + session + " encoding=" + (useMinimal ? "minimal" : "absolute") + " size=" + width + "x" + height + " frames=" + numFrames + " totalBytes=" + bytes + " bytesPerFrame=" + (bytes / numFrames) + " ms=" + String.format("%.1f", ms));
+				if(useMinimal){
+					minimalBytes = bytes;
+				}else{
+					absoluteBytes = bytes;
+				}
+			}
+			System.out.println("session=" + session + " minimal/absolute=" + String.format("%.3f", ((double)minimalBytes) / absoluteBytes));
+			if(!(minimalBytes < absoluteBytes)){
+				throw new Exception("Expected the minimal encoding to use fewer bytes than the absolute encoding, but saw " + minimalBytes + " vs " + absoluteBytes + " for session " + session);
+			}
+		}
+		System.out.println("End runScreenOutputEncoderBenchmark:");
+	}
+
+	public static class CapturingByteChannel implements java.nio.channels.WritableByteChannel {
+		//  Keeps everything written, and optionally accepts only a few bytes per write like a slow pipe would:
+		private final java.io.ByteArrayOutputStream written = new java.io.ByteArrayOutputStream();
+		private final int maxBytesPerWrite;
+		private int numWriteCalls = 0;
+
+		public CapturingByteChannel(int maxBytesPerWrite){
+			this.maxBytesPerWrite = maxBytesPerWrite;
+		}
+
+		public int write(ByteBuffer src){
+			int n = Math.min(src.remaining(), this.maxBytesPerWrite);
+			for(int i = 0; i < n; i++){
+				this.written.write(src.get());
+			}
+			this.numWriteCalls++;
+			return n;
+		}
+
+		public boolean isOpen(){
+			return true;
+		}
+
+		public void close(){
+		}
+
+		public int getNumWriteCalls(){
+			return this.numWriteCalls;
+		}
+
+		public String getWrittenString() throws Exception{
+			return this.written.toString("UTF-8");
+		}
+
+		public void reset(){
+			this.written.reset();
+			this.numWriteCalls = 0;
+		}
+	}
+
+	@Test
+	public void runTerminalFrameOutputSinkTest() throws Exception {
+		System.out.println("Begin runTerminalFrameOutputSinkTest:");
+		String beginSynchronizedUpdate = "\033[?2026h";
+		String endSynchronizedUpdate = "\033[?2026l";
+
+		//  Each frame should arrive whole, in one write, wrapped in the synchronized update sequences:
+		CapturingByteChannel channel = new CapturingByteChannel(Integer.MAX_VALUE);
+		TerminalFrameOutputSink sink = new TerminalFrameOutputSink(channel, true, 0);
+		String frame = "\033[1;1H\033[0;31mHello 😀 █ world";
+		sink.writeFrame(frame);
+		this.verifyObject(channel.getWrittenString(), beginSynchronizedUpdate + frame + endSynchronizedUpdate);
+		this.verifyObject(channel.getNumWriteCalls(), 1);
+		this.verifyObject(sink.getLastFrameBytes(), (long)(beginSynchronizedUpdate + frame + endSynchronizedUpdate).getBytes("UTF-8").length);
+
+		//  Frames much larger than the initial buffer, and a channel that only takes a bit at a time:
+		StringBuilder large = new StringBuilder();
+		Random rand = new Random(123);
+		String [] pieces = new String [] {"a", "\033[0;38;2;1;2;3m", "🟫", "═", "\033[12;40H"};
+		while(large.length() < 500000){
+			large.append(pieces[rand.nextInt(pieces.length)]);
+		}
+		for(int maxBytesPerWrite : new int [] {Integer.MAX_VALUE, 4093}){
+			CapturingByteChannel slowChannel = new CapturingByteChannel(maxBytesPerWrite);
+			TerminalFrameOutputSink plainSink = new TerminalFrameOutputSink(slowChannel, false, 0);
+			for(int n = 0; n < 3; n++){
+				slowChannel.reset();
+				plainSink.writeFrame(large);
+				if(!slowChannel.getWrittenString().equals(large.toString())){
+					throw new Exception("Large frame was not written correctly with maxBytesPerWrite=" + maxBytesPerWrite);
+				}
+			}
+			System.out.println("maxBytesPerWrite=" + maxBytesPerWrite + ": " + plainSink.getMetricsSummary());
+		}
+
+		//  With a frame rate limit, the next frame isn't due right after a write:
+		TerminalFrameOutputSink limitedSink = new TerminalFrameOutputSink(new CapturingByteChannel(Integer.MAX_VALUE), false, 10);
+		this.verifyObject(limitedSink.getNanosUntilNextFrame(), 0L);
+		limitedSink.writeFrame("x");
+		long nanosUntilNextFrame = limitedSink.getNanosUntilNextFrame();
+		if(!(nanosUntilNextFrame > 0L && nanosUntilNextFrame <= 100000000L)){
+			throw new Exception("Expected the next frame to be due within 100ms, but nanosUntilNextFrame=" + nanosUntilNextFrame);
+		}
+		Thread.sleep(110);
+		this.verifyObject(limitedSink.getNanosUntilNextFrame(), 0L);
+		System.out.println("End runTerminalFrameOutputSinkTest:");
+	}
+
+	@Test
+	public void runTerminalFrameOutputSinkBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runTerminalFrameOutputSinkBenchmark:");
+		//  Full screen frames from the map session, written the old way through a
+		//  PrintStream and the new way through the sink, both into /dev/null:
+		int width = 400;
+		int height = 120;
+		int numFrames = 200;
+		ScreenSessionFrameDrawer drawer = this.makeMapScrollingSession(width, height, 1);
+		ScreenLayer merged = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, width, height));
+		merged.initialize();
+		ScreenLayer drawn = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, width, height));
+		drawn.initialize();
+		List<String> frames = new ArrayList<String>();
+		StringBuilder out = new StringBuilder();
+		for(int frame = 0; frame < numFrames; frame++){
+			drawer.drawFrame(drawn, frame);
+			merged.mergeDown(drawn, false);
+			//  Re-print everything, so every frame is a full screen:
+			merged.setAllChangedFlagStates(true);
+			merged.addChangedRegion(new ScreenRegion(ScreenLayer.makeDimensionsCA(0, 0, width, height)));
+			merged.appendChanges(out, false, false, true, 0, 0, null, new ScreenOutputEncoder(true));
+			frames.add(out.toString());
+			out.setLength(0);
+		}
+		java.io.File devNull = new java.io.File("/dev/null");
+		for(int round = 0; round < 2; round++){
+			try(java.io.FileOutputStream printStreamOutput = new java.io.FileOutputStream(devNull); java.io.FileOutputStream channelOutput = new java.io.FileOutputStream(devNull)){
+				java.io.PrintStream printStream = new java.io.PrintStream(new java.io.BufferedOutputStream(printStreamOutput, 8192), true, "UTF-8");
+				long printStreamStart = System.nanoTime();
+				for(String f : frames){
+					printStream.print(f);
+					printStream.flush();
+				}
+				long printStreamNanos = System.nanoTime() - printStreamStart;
+
+				TerminalFrameOutputSink sink = new TerminalFrameOutputSink(channelOutput.getChannel(), true, 0);
+				long sinkStart = System.nanoTime();
+				for(String f : frames){
+					sink.writeFrame(f);
+				}
+				long sinkNanos = System.nanoTime() - sinkStart;
+				System.out.println("round=" + round + " size=" + width + "x" + height + " frames=" + numFrames + " printStreamMsPerFrame=" + String.format("%.3f", printStreamNanos / 1000000.0 / numFrames) + " sinkMsPerFrame=" + String.format("%.3f", sinkNanos / 1000000.0 / numFrames) + " sink: " + sink.getMetricsSummary());
+			}
+		}
+		System.out.println("End runTerminalFrameOutputSinkBenchmark:");
+	}
+
+	public void checkTextDisplacement(TextWidthTable table, String text, TextWidthMeasurementWorkItemResult expected) throws Exception {
+		TextWidthMeasurementWorkItemResult actual = table.getTextDisplacement(text);
+		String description = "'" + TextWidthCalibrationCache.encodeCodePoints(text) + "'";
+		if(expected == null){
+			if(actual != null){
+				throw new Exception("Expected text width table to not know " + description + ", but it gave deltaX=" + actual.getDeltaX() + ", deltaY=" + actual.getDeltaY());
+			}
+		}else{
+			if(actual == null){
+				throw new Exception("Expected text width table to know " + description + ", but it didn't.");
+			}
+			if(!actual.getDeltaX().equals(expected.getDeltaX()) || !actual.getDeltaY().equals(expected.getDeltaY())){
+				throw new Exception("For " + description + " expected deltaX=" + expected.getDeltaX() + ", deltaY=" + expected.getDeltaY() + " but found deltaX=" + actual.getDeltaX() + ", deltaY=" + actual.getDeltaY());
+			}
+		}
+	}
+
+	public static List<String> getTextWidthBenchmarkCharacters() throws Exception {
+		//  The characters the game draws in the first frame:
+		List<String> characters = new ArrayList<String>();
+		for(java.lang.reflect.Field field : CharacterConstants.class.getFields()){
+			if(field.getType().equals(String.class) && java.lang.reflect.Modifier.isStatic(field.getModifiers())){
+				characters.add((String)field.get(null));
+			}
+		}
+		List<Class<?>> blockClasses = Arrays.asList(
+			Rock.class, WoodenPick.class, StonePick.class, IronPick.class, Malachite.class, TitaniumDioxide.class,
+			MetallicTitanium.class, SiliconDioxide.class, Ilmenite.class, Taconite.class, Bauxite.class, IronOxide.class,
+			Hematite.class, Goethite.class, Limonite.class, Siderite.class, Wuestite.class, Magnetite.class, Kaolin.class,
+			Smectite.class, Attapulgite.class, Montmorillonite.class, CalcinedAnthracite.class, MetallicIron.class,
+			MetallicCopper.class, MetallicSilver.class, Chrysoberyl.class, Pyrite.class, WoodenBlock.class,
+			UnrecognizedBlock.class, PendingLoadBlock.class, UninitializedBlock.class, PlayerPositionXYZ.class,
+			PlayerInventory.class, Chalcopyrite.class, Covellite.class, Bornite.class, Azurite.class, Cuprite.class,
+			Tenorite.class, Dioptase.class
+		);
+		for(Class<?> c : blockClasses){
+			characters.add(BlockSkins.getPresentation(c, false));
+		}
+		characters.add("😊");  //  Player skins
+		characters.add("😠");
+		for(char c = 0x20; c < 0x7F; c++){
+			characters.add(String.valueOf(c));
+		}
+		return characters;
+	}
+
+	@Test
+	public void runTextWidthTableTest() throws Exception {
+		System.out.println("Begin runTextWidthTableTest:");
+		TextWidthTable table = TextWidthTable.getInstance();
+		checkTextDisplacement(table, "A", new TextWidthMeasurementWorkItemResult(1L, 0L));
+		checkTextDisplacement(table, "═", new TextWidthMeasurementWorkItemResult(1L, 0L));  //  Box drawing
+		checkTextDisplacement(table, "·", new TextWidthMeasurementWorkItemResult(1L, 0L));  //  Middle dot
+		checkTextDisplacement(table, "🟫", new TextWidthMeasurementWorkItemResult(2L, 0L));  //  Brown square
+		checkTextDisplacement(table, "⛏️", new TextWidthMeasurementWorkItemResult(2L, 0L));  //  Pick with emoji presentation
+		checkTextDisplacement(table, "⛏", new TextWidthMeasurementWorkItemResult(1L, 0L));  //  Pick with text presentation
+		checkTextDisplacement(table, "⚙️", new TextWidthMeasurementWorkItemResult(2L, 0L));  //  Gear
+		checkTextDisplacement(table, "⬜", new TextWidthMeasurementWorkItemResult(2L, 0L));  //  White square
+		checkTextDisplacement(table, "中", new TextWidthMeasurementWorkItemResult(2L, 0L));  //  CJK
+		checkTextDisplacement(table, "Ａ", new TextWidthMeasurementWorkItemResult(2L, 0L));  //  Fullwidth A
+		checkTextDisplacement(table, "e\u0301", new TextWidthMeasurementWorkItemResult(1L, 0L));  //  Combining accent
+		checkTextDisplacement(table, "\u200B", new TextWidthMeasurementWorkItemResult(0L, 0L));  //  Zero width space
+		checkTextDisplacement(table, "\n", new TextWidthMeasurementWorkItemResult(0L, 1L));
+		checkTextDisplacement(table, "\t", null);
+		checkTextDisplacement(table, "\r", null);
+		checkTextDisplacement(table, "🇨", null);  //  Regional indicator
+		checkTextDisplacement(table, "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67", null);  //  Family, joined with zero width joiners
+		checkTextDisplacement(table, "\uD83D\uDC4D\uD83C\uDFFD", null);  //  Thumbs up with a skin tone modifier
+		checkTextDisplacement(table, "\uD83D\uDC4D", new TextWidthMeasurementWorkItemResult(2L, 0L));  //  and without one
+		checkTextDisplacement(table, "\uDB80\uDC00", new TextWidthMeasurementWorkItemResult(1L, 0L));  //  Private use plane 15 is known, but
+		checkTextDisplacement(table, "\uD83E\uDFFF", null);  //  an unassigned code point isn't.
+
+		//  Everything drawn for blocks and frames should be known without measuring:
+		for(String text : getTextWidthBenchmarkCharacters()){
+			TextWidthMeasurementWorkItemResult result = table.getTextDisplacement(text);
+			boolean isControl = text.length() == 1 && Character.getType(text.charAt(0)) == Character.CONTROL;
+			if(result == null && !isControl){
+				throw new Exception("Expected text width table to know '" + TextWidthCalibrationCache.encodeCodePoints(text) + "'.");
+			}
+		}
+
+		//  Measured widths should survive being written to and read back from the cache file:
+		java.io.File cacheFile = java.io.File.createTempFile("text-width-cache", ".txt");
+		cacheFile.delete();
+		try{
+			TextWidthCalibrationCache cache = new TextWidthCalibrationCache(cacheFile);
+			cache.put("🇨", new TextWidthMeasurementWorkItemResult(1L, 0L));
+			cache.put("⛏️", new TextWidthMeasurementWorkItemResult(2L, 0L));
+			cache.put("\t", new TextWidthMeasurementWorkItemResult(8L, 0L));
+			cache.put("\t", new TextWidthMeasurementWorkItemResult(8L, 0L));
+			TextWidthCalibrationCache reloaded = new TextWidthCalibrationCache(cacheFile);
+			if(reloaded.size() != 3){
+				throw new Exception("Expected 3 entries in reloaded text width cache, found " + reloaded.size());
+			}
+			if(!reloaded.get("⛏️").getDeltaX().equals(2L) || !reloaded.get("\t").getDeltaX().equals(8L) || !reloaded.get("🇨").getDeltaX().equals(1L)){
+				throw new Exception("Reloaded text width cache has the wrong widths.");
+			}
+		}finally{
+			cacheFile.delete();
+		}
+		System.out.println("End runTextWidthTableTest:");
+	}
+
+	@Test
+	public void runTextWidthTableBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runTextWidthTableBenchmark:");
+		List<String> characters = getTextWidthBenchmarkCharacters();
+		Set<String> distinctCharacters = new HashSet<String>(characters);
+		for(int round = 0; round < 3; round++){
+			long start = System.nanoTime();
+			TextWidthTable table = new TextWidthTable(TextWidthTable.class.getResourceAsStream(TextWidthTable.TABLE_RESOURCE));
+			long loadNanos = System.nanoTime() - start;
+			int known = 0;
+			for(String text : distinctCharacters){
+				if(table.getTextDisplacement(text) != null){
+					known++;
+				}
+			}
+			long totalNanos = System.nanoTime() - start;
+			int probes = distinctCharacters.size() - known;
+			//  Every probe is one round trip to the terminal, so that's what startup would cost before:
+			StringBuilder modelled = new StringBuilder();
+			for(int rttMs : new int [] {1, 20, 50}){
+				modelled.append(" rtt" + rttMs + "ms: calibrate=" + (distinctCharacters.size() * rttMs) + "ms table=" + String.format("%.2f", totalNanos / 1000000.0 + probes * rttMs) + "ms");
+			}
+			System.out.println("round=" + round + " ranges=" + table.getNumRanges() + " loadMs=" + String.format("%.3f", loadNanos / 1000000.0) + " loadAndLookupMs=" + String.format("%.3f", totalNanos / 1000000.0) + " characters=" + distinctCharacters.size() + " probesAvoided=" + known + " probesLeft=" + probes + modelled);
+		}
+		System.out.println("End runTextWidthTableBenchmark:");
+	}
+
+	public static class DirtyRegionPipeline {
+		//  The layers the way a map frame and the help menu feed them through the console writer:
+		public static final int CHUNK_WIDTH = 40;
+		private final int width;
+		private final int height;
+		private final boolean invalidateAllLayers;
+		private final ScreenSessionFrameDrawer drawer;
+		private final ScreenLayer drawn;
+		private final ScreenLayer frameLayer;
+		private final ScreenLayer menuFrameLayer;
+		private final ScreenLayer [] buffers = new ScreenLayer [ConsoleWriterThreadState.numScreenLayers];
+		private final ScreenLayer merged;
+		private final ScreenOutputEncoder encoder = new ScreenOutputEncoder(true);
+		private final StringBuilder out = new StringBuilder();
+		private long frameLayerRegions = 0L;
+		private boolean hasDrawnMenu = false;
+
+		public DirtyRegionPipeline(ScreenSessionFrameDrawer drawer, int width, int height, boolean invalidateAllLayers) throws Exception{
+			this.width = width;
+			this.height = height;
+			this.invalidateAllLayers = invalidateAllLayers;
+			this.drawer = drawer;
+			CuboidAddress dimensions = ScreenLayer.makeDimensionsCA(0, 0, width, height);
+			this.drawn = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), dimensions);
+			this.drawn.initialize();
+			this.frameLayer = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), dimensions);
+			this.frameLayer.initialize();
+			this.menuFrameLayer = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), dimensions);
+			this.menuFrameLayer.initialize();
+			for(int i = 0; i < this.buffers.length; i++){
+				this.buffers[i] = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), dimensions);
+				this.buffers[i].initialize();
+			}
+			this.merged = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), dimensions);
+			this.merged.initialize();
+		}
+
+		public ScreenLayer getMerged(){
+			return this.merged;
+		}
+
+		public long getFrameLayerRegions(){
+			return this.frameLayerRegions;
+		}
+
+		public void drawMapFrame(int frame) throws Exception{
+			//  The map area sends its updates in small chunks, which pile up as changed
+			//  regions in the frame's layer until the frame is finalized:
+			this.drawer.drawFrame(this.drawn, frame);
+			for(int j = 0; j < this.height; j++){
+				for(int i = 0; i < this.width; i += CHUNK_WIDTH){
+					this.drawn.addChangedRegion(new ScreenRegion(ScreenRegion.makeScreenRegionCA(i, j, Math.min(i + CHUNK_WIDTH, this.width), j + 1)));
+				}
+			}
+			this.frameLayer.mergeDown(this.drawn, false);
+			this.frameLayerRegions = this.frameLayer.getChangedRegions().size();
+			this.buffers[ConsoleWriterThreadState.BUFFER_INDEX_DEFAULT].mergeDown(this.frameLayer, false);
+		}
+
+		public ScreenLayer makeMenuChanges(boolean isOpen) throws Exception{
+			//  Built the same way as the help menu:  A full screen layer that's only active in the menu box.
+			ScreenLayer changes = new ScreenLayer(new Coordinate(Arrays.asList(0L,0L)), ScreenLayer.makeDimensionsCA(0, 0, this.width, this.height));
+			changes.setAllChangedFlagStates(false);
+			int menuWidth = 60;
+			int menuHeight = 20;
+			int xOffset = (this.width - menuWidth) / 2;
+			int yOffset = (this.height - menuHeight) / 2;
+			for(int i = 0; i < this.width; i++){
+				for(int j = 0; j < this.height; j++){
+					boolean isInMenuBox = (i >= xOffset && i < (xOffset + menuWidth)) && (j >= yOffset && j < (yOffset + menuHeight));
+					if(isOpen && isInMenuBox){
+						changes.setMultiColumnCharacter(i, j, (i + j) % 7 == 0 ? "M" : " ", 1, UserInterfaceFrameThreadState.getHelpMenuBackgroundColours(), true, true);
+					}else{
+						changes.setToEmpty(i, j, true, true);
+					}
+				}
+			}
+			//  The menu box doesn't move, so like the help menu only its area is changed after the first time:
+			if(this.hasDrawnMenu){
+				changes.addChangedRegion(new ScreenRegion(ScreenRegion.makeScreenRegionCA(xOffset, yOffset, xOffset + menuWidth, yOffset + menuHeight)));
+			}else{
+				changes.addChangedRegion(new ScreenRegion(ScreenRegion.makeScreenRegionCA(0, 0, this.width, this.height)));
+				this.hasDrawnMenu = true;
+			}
+			return changes;
+		}
+
+		public void setMenuState(ScreenLayer changes, boolean isOpen) throws Exception{
+			this.menuFrameLayer.mergeDown(changes, false, ScreenLayerMergeType.PREFER_INPUT_TRANSPARENCY);
+			this.menuFrameLayer.setIsLayerActive(isOpen);
+
+			//  What the console writer does when it gets the menu frame's layer:
+			if(this.invalidateAllLayers){
+				if(this.buffers[ConsoleWriterThreadState.BUFFER_INDEX_MENU].setIsLayerActive(isOpen)){
+					for(int i = 0; i < this.buffers.length; i++){
+						this.buffers[i].addChangedRegion(new ScreenRegion(ScreenRegion.makeScreenRegionCA(0, 0, this.width, this.height)));
+						this.buffers[i].setAllChangedFlagStates(true);
+					}
+				}
+			}else{
+				ScreenLayer.setIsLayerActive(this.buffers, ConsoleWriterThreadState.BUFFER_INDEX_MENU, isOpen);
+			}
+			this.buffers[ConsoleWriterThreadState.BUFFER_INDEX_MENU].mergeDown(this.menuFrameLayer, false, ScreenLayerMergeType.PREFER_INPUT_TRANSPARENCY);
+		}
+
+		public String printChanges() throws Exception{
+			this.merged.mergeDown(this.buffers, false, ScreenLayerMergeType.PREFER_BOTTOM_LAYER);
+			this.out.setLength(0);
+			this.merged.appendChanges(this.out, false, false, true, 0, 0, null, this.encoder);
+			return this.out.toString();
+		}
+	}
+
+	public void checkScreenRegionSet(ScreenRegionSet set, String expected, String msg) throws Exception {
+		List<String> regions = new ArrayList<String>();
+		for(ScreenRegion r : set.getRegions()){
+			regions.add("(" + r.getStartX() + "," + r.getStartY() + ")-(" + r.getEndX() + "," + r.getEndY() + ")");
+		}
+		Collections.sort(regions);
+		String actual = String.join(" ", regions);
+		if(!actual.equals(expected)){
+			throw new Exception("For " + msg + " expected regions '" + expected + "' but found '" + actual + "'.");
+		}
+	}
+
+	public void checkSameScreen(ScreenLayer a, ScreenLayer b, String msg) throws Exception {
+		for(int j = 0; j < a.getHeight(); j++){
+			for(int i = 0; i < a.getWidth(); i++){
+				if(!Objects.equals(a.getColumnCharacter(i, j), b.getColumnCharacter(i, j)) || a.getColumnCharacterWidth(i, j) != b.getColumnCharacterWidth(i, j) || a.getColumnColourKey(i, j) != b.getColumnColourKey(i, j)){
+					throw new Exception("Screens differ at i=" + i + ", j=" + j + ": '" + a.getColumnCharacter(i, j) + "' and '" + b.getColumnCharacter(i, j) + "', msg=" + msg);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void runDirtyRegionTest() throws Exception {
+		System.out.println("Begin runDirtyRegionTest:");
+		ScreenRegionSet rows = new ScreenRegionSet();
+		rows.add(0, 0, 5, 1);
+		rows.add(5, 0, 10, 1);  //  Touching on the same row
+		rows.add(8, 0, 12, 1);  //  Overlapping on the same row
+		checkScreenRegionSet(rows, "(0,0)-(12,1)", "joined row");
+		rows.add(0, 1, 12, 2);  //  Same columns on the next row, but vertical joins are off
+		checkScreenRegionSet(rows, "(0,0)-(12,1) (0,1)-(12,2)", "vertical neighbours");
+		rows.add(2, 0, 4, 2);   //  Inside the other two, but not inside either one of them
+		rows.add(3, 1, 6, 2);   //  Inside one of them
+		checkScreenRegionSet(rows, "(0,0)-(12,1) (0,1)-(12,2) (2,0)-(4,2)", "contained");
+		rows.add(-5, -5, 20, 20);
+		checkScreenRegionSet(rows, "(-5,-5)-(20,20)", "containing everything");
+		rows.add(3, 3, 3, 10);
+		checkScreenRegionSet(rows, "(-5,-5)-(20,20)", "empty region");
+
+		ScreenRegionSet columns = new ScreenRegionSet(Integer.MAX_VALUE, true);
+		for(int j = 0; j < 10; j++){
+			columns.add(0, j, 8, j + 1);
+		}
+		columns.add(8, 0, 12, 10);
+		checkScreenRegionSet(columns, "(0,0)-(12,10)", "vertical joins");
+
+		ScreenRegionSet bounded = new ScreenRegionSet(4, false);
+		for(int j = 0; j < 4; j++){
+			bounded.add(j, j * 2, j + 1, j * 2 + 1);
+		}
+		checkScreenRegionSet(bounded, "(0,0)-(1,1) (1,2)-(2,3) (2,4)-(3,5) (3,6)-(4,7)", "under the limit");
+		bounded.add(10, 10, 11, 11);
+		checkScreenRegionSet(bounded, "(0,0)-(11,11)", "bounding box");
+
+		//  Only invalidating the area the menu covers must show exactly the same thing as invalidating everything:
+		int width = 81;
+		int height = 25;
+		Map<String, Integer> characterWidths = new HashMap<String, Integer>();
+		for(String s : new String [] {"🟫", "🟩", "🪨", "🌲", "💧", "🙂"}){
+			characterWidths.put(s, 2);
+		}
+		DirtyRegionPipeline everything = new DirtyRegionPipeline(this.makeMapScrollingSession(width, height, 1), width, height, true);
+		DirtyRegionPipeline covered = new DirtyRegionPipeline(this.makeMapScrollingSession(width, height, 1), width, height, false);
+		FakeTerminal everythingTerminal = new FakeTerminal(width, height);
+		FakeTerminal coveredTerminal = new FakeTerminal(width, height);
+		boolean isMenuOpen = false;
+		for(int step = 0; step < 30; step++){
+			for(DirtyRegionPipeline pipeline : new DirtyRegionPipeline [] {everything, covered}){
+				if(step % 3 == 2){
+					pipeline.setMenuState(pipeline.makeMenuChanges(!isMenuOpen), !isMenuOpen);
+				}else{
+					pipeline.drawMapFrame(step);
+				}
+			}
+			if(step % 3 == 2){
+				isMenuOpen = !isMenuOpen;
+			}
+			everythingTerminal.write(everything.printChanges(), characterWidths);
+			coveredTerminal.write(covered.printChanges(), characterWidths);
+			String msg = "step=" + step + ", isMenuOpen=" + isMenuOpen;
+			checkSameScreen(everything.getMerged(), covered.getMerged(), msg);
+			everythingTerminal.verifyMatchesLayer(everything.getMerged(), msg);
+			coveredTerminal.verifyMatchesLayer(covered.getMerged(), msg);
+		}
+		System.out.println("End runDirtyRegionTest:");
+	}
+
+	@Test
+	public void runDirtyRegionBenchmark() throws Exception {
+		assumeBenchmarksEnabled();
+		System.out.println("Begin runDirtyRegionBenchmark:");
+		int numFrames = 40;
+		int numMenuToggles = 40;
+		for(int [] size : new int [][] {new int [] {400, 120}, new int [] {800, 240}}){
+			int width = size[0];
+			int height = size[1];
+			for(boolean invalidateAllLayers : new boolean [] {true, false}){
+				DirtyRegionPipeline pipeline = new DirtyRegionPipeline(this.makeMapScrollingSession(width, height, 1), width, height, invalidateAllLayers);
+				long mapNanos = 0L;
+				long mapBytes = 0L;
+				long frameLayerRegions = 0L;
+				for(int frame = 0; frame < numFrames; frame++){
+					long start = System.nanoTime();
+					pipeline.drawMapFrame(frame);
+					String output = pipeline.printChanges();
+					mapNanos += System.nanoTime() - start;
+					mapBytes += output.length();
+					frameLayerRegions += pipeline.getFrameLayerRegions();
+				}
+				System.out.println("map scrolling size=" + width + "x" + height + " msPerFrame=" + String.format("%.3f", mapNanos / 1000000.0 / numFrames) + " bytesPerFrame=" + (mapBytes / numFrames) + " frameLayerRegions=" + (frameLayerRegions / numFrames));
+
+				long menuNanos = 0L;
+				long menuBytes = 0L;
+				for(int toggle = 0; toggle < numMenuToggles; toggle++){
+					boolean isOpen = toggle % 2 == 0;
+					//  Drawing the menu is the menu's own work, so it isn't timed:
+					ScreenLayer changes = pipeline.makeMenuChanges(isOpen);
+					long start = System.nanoTime();
+					pipeline.setMenuState(changes, isOpen);
+					String output = pipeline.printChanges();
+					menuNanos += System.nanoTime() - start;
+					menuBytes += output.length();
+				}
+				System.out.println("menu open/close size=" + width + "x" + height + " invalidateAllLayers=" + invalidateAllLayers + " msPerToggle=" + String.format("%.3f", menuNanos / 1000000.0 / numMenuToggles) + " bytesPerToggle=" + (menuBytes / numMenuToggles));
+			}
+		}
+		System.out.println("End runDirtyRegionBenchmark:");
+	}
+
+	@Test
+	public void runBlockFactorySharedInstanceTest() throws Exception {
+		System.out.println("Begin runBlockFactorySharedInstanceTest:");
+		byte [] data = new byte [] {1, 2, 3};
+		IndividualBlock shared = BlockFactory.makeBlock(Rock.class.getName(), data);
+		//  The caller's array can't change the shared instance:
+		data[0] = 9;
+		IndividualBlock again = BlockFactory.makeBlock(Rock.class.getName(), new byte [] {1, 2, 3});
+		if(again != shared || !Arrays.equals(shared.getBlockData(), new byte [] {1, 2, 3})){
+			throw new Exception("Shared Rock instance was changed, data is now " + Arrays.toString(shared.getBlockData()));
+		}
+		//  Shared blocks hand out their data without copying it:
+		if(shared.getBlockData() != shared.getBlockData()){
+			throw new Exception("Shared Rock instance copied its data.");
+		}
+		if(BlockFactory.makeBlock(Rock.class.getName(), new byte [] {9, 2, 3}) == shared){
+			throw new Exception("Blocks with different data should not be shared.");
+		}
+		//  Only block types that opt in are shared:
+		if(BlockFactory.isStatelessBlockClass(PlayerInventory.class.getName()) || BlockFactory.isStatelessBlockClass(BlockDictionary.class.getName()) || !BlockFactory.isStatelessBlockClass(IronPick.class.getName())){
+			throw new Exception("Wrong block types are marked as stateless.");
+		}
+		System.out.println("End runBlockFactorySharedInstanceTest:");
+	}
 }
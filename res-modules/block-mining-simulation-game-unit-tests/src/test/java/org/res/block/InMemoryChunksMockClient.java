@@ -151,7 +151,9 @@ public class InMemoryChunksMockClient extends WorkItemQueueOwner<InMemoryChunksM
 	public void giveRandomRequestedChunk(BlockManagerThreadCollection blockManagerThreadCollection, Random rand, InMemoryChunks imc, BlockManagerUnitTest bmut, boolean doShutdown) throws Exception{
 
 		Long i = 0L;
-		Long timeoutNumber = 100000L; //  This is just an arbitrary to timeout on.  You may need to increase if it you get premature failures!
+		//  Give up after a fixed amount of time instead of a fixed number of iterations, since how fast this loop spins depends on the machine:
+		long timeoutNanoseconds = 60L * 1000000000L;
+		long startTime = System.nanoTime();
 		while(true){
 			synchronized(lock){
 				if(requestedChunks.size() > 0){
@@ -169,7 +171,7 @@ public class InMemoryChunksMockClient extends WorkItemQueueOwner<InMemoryChunksM
 				}
 			}
 			if(doShutdown){
-				if(i > timeoutNumber || (imc.isEmptyAndFinished() && this.getWorkItemQueueSize() == 0)){
+				if(System.nanoTime() - startTime > timeoutNanoseconds || (imc.isEmptyAndFinished() && this.getWorkItemQueueSize() == 0)){
 					break;
 				}
 			}else{